@@ -0,0 +1,149 @@
+package com.guardians.udss.benchmarks;
+
+import com.guardians.udss.UserDocumentStorageServiceApplication;
+import com.guardians.udss.services.S3FileService;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The service under benchmark: the application context, without the web layer unless asked for, wired to a
+ * {@link LocalS3Server} on localhost or, with {@code udss.storage.backend=local}, to a temp directory, plus a
+ * worker pool that runs one operation on {@code concurrency} threads at once.
+ */
+final class BenchmarkContext implements AutoCloseable {
+
+    static final String BUCKET = "udss-benchmarks";
+    static final String USER = "benchmark";
+
+    private final LocalS3Server s3Server;
+    private final ConfigurableApplicationContext applicationContext;
+    private final Path cacheDirectory;
+    private final Path storageDirectory;
+    private final int concurrency;
+    private final ExecutorService workers;
+
+    private BenchmarkContext(LocalS3Server s3Server, ConfigurableApplicationContext applicationContext,
+                             Path cacheDirectory, Path storageDirectory, int concurrency) {
+        this.s3Server = s3Server;
+        this.applicationContext = applicationContext;
+        this.cacheDirectory = cacheDirectory;
+        this.storageDirectory = storageDirectory;
+        this.concurrency = concurrency;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(Math.max(1, concurrency - 1), runnable -> {
+            Thread thread = new Thread(runnable, "benchmark-worker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts the stand-in and the application. {@code properties} are extra {@code name=value} settings that
+     * override {@code application.yml}.
+     */
+    static BenchmarkContext start(int concurrency, String... properties) throws IOException {
+        return start(WebApplicationType.NONE, concurrency, properties);
+    }
+
+    /**
+     * Starts the stand-in and the application as a web application of the given type; with a servlet web
+     * server, pass {@code server.port=0} and ask {@link #port()} for the port it listens on.
+     */
+    static BenchmarkContext start(WebApplicationType webApplicationType, int concurrency, String... properties) throws IOException {
+        LocalS3Server s3Server = LocalS3Server.start(BUCKET);
+        Path cacheDirectory = Files.createTempDirectory("udss-benchmark-cache");
+        Path storageDirectory = Files.createTempDirectory("udss-benchmark-storage");
+        List<String> args = new ArrayList<>(List.of(
+                "--aws.s3.bucket-name=" + BUCKET,
+                "--aws.s3.region=us-east-1",
+                "--aws.s3.access-key=benchmark",
+                "--aws.s3.secret-key=benchmark",
+                "--aws.s3.endpoint=" + s3Server.endpoint(),
+                "--aws.s3.path-style-access=true",
+                "--udss.cache.directory=" + cacheDirectory,
+                "--udss.storage.local.root=" + storageDirectory,
+                "--spring.main.banner-mode=off",
+                "--logging.level.root=WARN"));
+        for (String property : properties) {
+            args.add("--" + property);
+        }
+        try {
+            ConfigurableApplicationContext applicationContext = new SpringApplicationBuilder(UserDocumentStorageServiceApplication.class)
+                    .web(webApplicationType)
+                    .logStartupInfo(false)
+                    .run(args.toArray(String[]::new));
+            return new BenchmarkContext(s3Server, applicationContext, cacheDirectory, storageDirectory, concurrency);
+        } catch (RuntimeException e) {
+            s3Server.close();
+            throw e;
+        }
+    }
+
+    S3FileService fileService() {
+        return applicationContext.getBean(S3FileService.class);
+    }
+
+    LocalS3Server s3Server() {
+        return s3Server;
+    }
+
+    int port() {
+        return ((WebServerApplicationContext) applicationContext).getWebServer().getPort();
+    }
+
+    /**
+     * Runs {@code operation} once per worker, all at the same time, and returns the results by worker index.
+     * The calling thread acts as worker 0.
+     */
+    Object[] run(Operation operation) throws Exception {
+        Object[] results = new Object[concurrency];
+        List<Future<?>> pending = new ArrayList<>(concurrency - 1);
+        for (int worker = 1; worker < concurrency; worker++) {
+            int index = worker;
+            pending.add(workers.submit(() -> {
+                results[index] = operation.run(index);
+                return null;
+            }));
+        }
+        results[0] = operation.run(0);
+        for (Future<?> future : pending) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public void close() throws IOException {
+        workers.shutdownNow();
+        applicationContext.close();
+        s3Server.close();
+        FileSystemUtils.deleteRecursively(cacheDirectory);
+        FileSystemUtils.deleteRecursively(storageDirectory);
+    }
+
+    @FunctionalInterface
+    interface Operation {
+        Object run(int worker) throws Exception;
+    }
+}
@@ -0,0 +1,25 @@
+package com.guardians.udss.benchmarks;
+
+import org.openjdk.jmh.Main;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Entry point of {@code benchmarks.jar}: the JMH command line, with the GC profiler enabled unless another
+ * profiler is requested, so every run reports allocation rates next to throughput.
+ */
+public final class BenchmarkMain {
+
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> arguments = new ArrayList<>(List.of(args));
+        if (!arguments.contains("-prof")) {
+            arguments.add("-prof");
+            arguments.add("gc");
+        }
+        Main.main(arguments.toArray(String[]::new));
+    }
+}
@@ -0,0 +1,65 @@
+package com.guardians.udss.benchmarks;
+
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+
+/**
+ * An in-memory {@link MultipartFile}, standing in for an upload the servlet container has already parsed.
+ */
+final class BytesMultipartFile implements MultipartFile {
+
+    private final String filename;
+    private final String contentType;
+    private final byte[] content;
+
+    BytesMultipartFile(String filename, String contentType, byte[] content) {
+        this.filename = filename;
+        this.contentType = contentType;
+        this.content = content;
+    }
+
+    @Override
+    public String getName() {
+        return "file";
+    }
+
+    @Override
+    public String getOriginalFilename() {
+        return filename;
+    }
+
+    @Override
+    public String getContentType() {
+        return contentType;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return content.length == 0;
+    }
+
+    @Override
+    public long getSize() {
+        return content.length;
+    }
+
+    @Override
+    public byte[] getBytes() {
+        return content;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return new ByteArrayInputStream(content);
+    }
+
+    @Override
+    public void transferTo(File dest) throws IOException {
+        Files.write(dest.toPath(), content);
+    }
+}
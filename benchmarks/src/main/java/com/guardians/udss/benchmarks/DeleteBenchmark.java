@@ -0,0 +1,77 @@
+package com.guardians.udss.benchmarks;
+
+import com.guardians.udss.services.S3FileService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link S3FileService#deleteFile(String, String)} of an existing object in a user folder of {@code keyCount}
+ * objects. The deleted objects are put back in the stand-in directly before every invocation.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class DeleteBenchmark {
+
+    private static final byte[] CONTENT = new byte[1024];
+
+    @Param({"100", "10000"})
+    public int keyCount;
+
+    @Param({"1", "16"})
+    public int concurrency;
+
+    private BenchmarkContext context;
+    private S3FileService fileService;
+    private String[] filenames;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        context = BenchmarkContext.start(concurrency);
+        fileService = context.fileService();
+        for (int i = 0; i < keyCount; i++) {
+            context.s3Server().put(String.format("%s/doc-%06d.txt", BenchmarkContext.USER, i), CONTENT, "text/plain");
+        }
+        filenames = new String[concurrency];
+        for (int worker = 0; worker < concurrency; worker++) {
+            filenames[worker] = "delete-" + worker + ".txt";
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void restoreFiles() {
+        for (String filename : filenames) {
+            context.s3Server().put(BenchmarkContext.USER + "/" + filename, CONTENT, "text/plain");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        context.close();
+    }
+
+    @Benchmark
+    public Object[] deleteFile() throws Exception {
+        return context.run(worker -> {
+            fileService.deleteFile(BenchmarkContext.USER, filenames[worker]);
+            return filenames[worker];
+        });
+    }
+}
@@ -0,0 +1,89 @@
+package com.guardians.udss.benchmarks;
+
+import com.guardians.udss.model.FileDownload;
+import com.guardians.udss.services.S3FileService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link S3FileService#downloadFile}, reading each object to the end as the controller does. With the cache
+ * enabled, the first download of each key fills it and later ones are served locally. The local backend has no
+ * object cache and reads straight from the file.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class DownloadBenchmark {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @Param({"1KB", "1MB", "32MB"})
+    public String objectSize;
+
+    @Param({"1", "16"})
+    public int concurrency;
+
+    @Param({"true", "false"})
+    public boolean cache;
+
+    @Param({"s3", "local"})
+    public String backend;
+
+    private BenchmarkContext context;
+    private S3FileService fileService;
+    private String[] keys;
+    private byte[][] buffers;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        context = BenchmarkContext.start(concurrency, "udss.cache.enabled=" + cache, "udss.storage.backend=" + backend);
+        fileService = context.fileService();
+        byte[] content = new byte[Math.toIntExact(DataSize.parse(objectSize).toBytes())];
+        new Random(42).nextBytes(content);
+        keys = new String[concurrency];
+        buffers = new byte[concurrency][BUFFER_SIZE];
+        for (int worker = 0; worker < concurrency; worker++) {
+            String filename = "download-" + worker + ".bin";
+            keys[worker] = BenchmarkContext.USER + "/" + filename;
+            if ("local".equals(backend)) {
+                fileService.uploadFile(BenchmarkContext.USER, new BytesMultipartFile(filename, "application/octet-stream", content));
+            } else {
+                context.s3Server().put(keys[worker], content, "application/octet-stream");
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        context.close();
+    }
+
+    @Benchmark
+    public Object[] downloadFile() throws Exception {
+        return context.run(worker -> {
+            try (FileDownload download = fileService.downloadFile(keys[worker])) {
+                return download.transferTo(OutputStream.nullOutputStream(), buffers[worker]);
+            }
+        });
+    }
+}
@@ -0,0 +1,397 @@
+package com.guardians.udss.benchmarks;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An in-memory, single-bucket S3 stand-in on localhost covering the calls the file service makes: put, get
+ * (with single ranges and {@code If-None-Match}), head, delete, ListObjectsV2, DeleteObjects and the multipart
+ * upload API. Requests are not authenticated, and path-style addressing is required.
+ */
+final class LocalS3Server implements AutoCloseable {
+
+    private static final int MAX_KEYS = 1000;
+    private static final Pattern DELETE_KEY = Pattern.compile("<Key>(.*?)</Key>", Pattern.DOTALL);
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d*)-(\\d*)");
+    private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.RFC_1123_DATE_TIME.withZone(ZoneOffset.UTC);
+
+    static {
+        // The JDK server writes headers and body separately; with Nagle's algorithm on, small responses then
+        // stall on the client's delayed ACK and every request takes ~40ms.
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final String bucket;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ConcurrentNavigableMap<String, StoredObject> objects = new ConcurrentSkipListMap<>();
+    private final Map<String, NavigableMap<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+    private final AtomicLong uploadIds = new AtomicLong();
+
+    private LocalS3Server(String bucket) throws IOException {
+        this.bucket = bucket;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "local-s3");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+    }
+
+    static LocalS3Server start(String bucket) throws IOException {
+        LocalS3Server s3Server = new LocalS3Server(bucket);
+        s3Server.server.start();
+        return s3Server;
+    }
+
+    URI endpoint() {
+        InetSocketAddress address = server.getAddress();
+        return URI.create("http://" + address.getHostString() + ":" + address.getPort());
+    }
+
+    /**
+     * Stores an object directly, without going through HTTP; used to seed data for a benchmark.
+     */
+    void put(String key, byte[] content, String contentType) {
+        objects.put(key, new StoredObject(content, contentType, md5(content), Instant.now()));
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath();
+            String bucketPath = "/" + bucket;
+            if (!path.equals(bucketPath) && !path.startsWith(bucketPath + "/")) {
+                sendError(exchange, 404, "NoSuchBucket", "The specified bucket does not exist");
+                return;
+            }
+            String key = path.length() > bucketPath.length() + 1 ? path.substring(bucketPath.length() + 1) : "";
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            String method = exchange.getRequestMethod();
+            // Read the body up front: a response without a body completes the exchange at once, and the JDK server
+            // drops the keep-alive connection if the request was not read to the end by then.
+            byte[] body = readBody(exchange);
+
+            if (key.isEmpty()) {
+                if ("GET".equals(method) && "2".equals(query.get("list-type"))) {
+                    listObjects(exchange, query);
+                } else if ("POST".equals(method) && query.containsKey("delete")) {
+                    deleteObjects(exchange, body);
+                } else {
+                    sendError(exchange, 501, "NotImplemented", method + " on the bucket is not supported");
+                }
+                return;
+            }
+            switch (method) {
+                case "PUT" -> {
+                    if (query.containsKey("uploadId")) {
+                        uploadPart(exchange, query.get("uploadId"), Integer.parseInt(query.get("partNumber")), body);
+                    } else {
+                        putObject(exchange, key, body);
+                    }
+                }
+                case "POST" -> {
+                    if (query.containsKey("uploads")) {
+                        createMultipartUpload(exchange, key);
+                    } else if (query.containsKey("uploadId")) {
+                        completeMultipartUpload(exchange, key, query.get("uploadId"));
+                    } else {
+                        sendError(exchange, 501, "NotImplemented", "POST on an object is not supported");
+                    }
+                }
+                case "GET", "HEAD" -> getObject(exchange, key, "HEAD".equals(method));
+                case "DELETE" -> {
+                    if (query.containsKey("uploadId")) {
+                        uploads.remove(query.get("uploadId"));
+                    } else {
+                        objects.remove(key);
+                    }
+                    exchange.sendResponseHeaders(204, -1);
+                }
+                default -> sendError(exchange, 405, "MethodNotAllowed", method + " is not allowed");
+            }
+        }
+    }
+
+    private void putObject(HttpExchange exchange, String key, byte[] content) throws IOException {
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        StoredObject object = new StoredObject(content, contentType, md5(content), Instant.now());
+        objects.put(key, object);
+        exchange.getResponseHeaders().set("ETag", quote(object.eTag()));
+        exchange.sendResponseHeaders(200, -1);
+    }
+
+    private void getObject(HttpExchange exchange, String key, boolean head) throws IOException {
+        StoredObject object = objects.get(key);
+        if (object == null) {
+            if (head) {
+                exchange.sendResponseHeaders(404, -1);
+            } else {
+                sendError(exchange, 404, "NoSuchKey", "The specified key does not exist.");
+            }
+            return;
+        }
+        Headers requestHeaders = exchange.getRequestHeaders();
+        Headers responseHeaders = exchange.getResponseHeaders();
+        responseHeaders.set("ETag", quote(object.eTag()));
+        responseHeaders.set("Last-Modified", HTTP_DATE.format(object.lastModified()));
+        responseHeaders.set("Accept-Ranges", "bytes");
+        String ifNoneMatch = requestHeaders.getFirst("If-None-Match");
+        if (ifNoneMatch != null && ifNoneMatch.contains(object.eTag())) {
+            exchange.sendResponseHeaders(304, -1);
+            return;
+        }
+        if (object.contentType() != null) {
+            responseHeaders.set("Content-Type", object.contentType());
+        }
+
+        byte[] content = object.content();
+        int from = 0;
+        int length = content.length;
+        int status = 200;
+        String range = requestHeaders.getFirst("Range");
+        Matcher matcher = range == null ? null : RANGE.matcher(range);
+        if (matcher != null && matcher.matches() && content.length > 0) {
+            if (matcher.group(1).isEmpty()) {
+                length = (int) Math.min(content.length, Long.parseLong(matcher.group(2)));
+                from = content.length - length;
+            } else {
+                from = Integer.parseInt(matcher.group(1));
+                if (from >= content.length) {
+                    sendError(exchange, 416, "InvalidRange", "The requested range is not satisfiable");
+                    return;
+                }
+                long last = matcher.group(2).isEmpty() ? content.length - 1 : Long.parseLong(matcher.group(2));
+                length = (int) (Math.min(last, content.length - 1) - from + 1);
+            }
+            status = 206;
+            responseHeaders.set("Content-Range", "bytes " + from + "-" + (from + length - 1) + "/" + content.length);
+        }
+        if (head) {
+            responseHeaders.set("Content-Length", Integer.toString(length));
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(status, length == 0 ? -1 : length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(content, from, length);
+        }
+    }
+
+    private void listObjects(HttpExchange exchange, Map<String, String> query) throws IOException {
+        String prefix = query.getOrDefault("prefix", "");
+        int maxKeys = Math.min(MAX_KEYS, Integer.parseInt(query.getOrDefault("max-keys", String.valueOf(MAX_KEYS))));
+        String continuationToken = query.get("continuation-token");
+        String startAfter = continuationToken != null ? continuationToken : query.get("start-after");
+
+        NavigableMap<String, StoredObject> candidates = startAfter != null && startAfter.compareTo(prefix) >= 0
+                ? objects.tailMap(startAfter, false)
+                : objects.tailMap(prefix, true);
+        StringBuilder contents = new StringBuilder();
+        int count = 0;
+        String lastKey = null;
+        boolean truncated = false;
+        Iterator<Map.Entry<String, StoredObject>> entries = candidates.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<String, StoredObject> entry = entries.next();
+            if (!entry.getKey().startsWith(prefix)) {
+                break;
+            }
+            if (count == maxKeys) {
+                truncated = true;
+                break;
+            }
+            StoredObject object = entry.getValue();
+            contents.append("<Contents><Key>").append(escape(entry.getKey())).append("</Key>")
+                    .append("<LastModified>").append(object.lastModified()).append("</LastModified>")
+                    .append("<ETag>").append(escape(quote(object.eTag()))).append("</ETag>")
+                    .append("<Size>").append(object.content().length).append("</Size>")
+                    .append("<StorageClass>STANDARD</StorageClass></Contents>");
+            lastKey = entry.getKey();
+            count++;
+        }
+
+        StringBuilder xml = new StringBuilder("<ListBucketResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\">")
+                .append("<Name>").append(escape(bucket)).append("</Name>")
+                .append("<Prefix>").append(escape(prefix)).append("</Prefix>")
+                .append("<KeyCount>").append(count).append("</KeyCount>")
+                .append("<MaxKeys>").append(maxKeys).append("</MaxKeys>")
+                .append("<IsTruncated>").append(truncated).append("</IsTruncated>")
+                .append(contents);
+        if (truncated) {
+            // The last key returned doubles as the continuation token.
+            xml.append("<NextContinuationToken>").append(escape(lastKey)).append("</NextContinuationToken>");
+        }
+        sendXml(exchange, 200, xml.append("</ListBucketResult>").toString());
+    }
+
+    private void deleteObjects(HttpExchange exchange, byte[] body) throws IOException {
+        String request = new String(body, StandardCharsets.UTF_8);
+        boolean quiet = request.contains("<Quiet>true</Quiet>");
+        StringBuilder xml = new StringBuilder("<DeleteResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\">");
+        Matcher matcher = DELETE_KEY.matcher(request);
+        while (matcher.find()) {
+            String key = unescape(matcher.group(1));
+            objects.remove(key);
+            if (!quiet) {
+                xml.append("<Deleted><Key>").append(escape(key)).append("</Key></Deleted>");
+            }
+        }
+        sendXml(exchange, 200, xml.append("</DeleteResult>").toString());
+    }
+
+    private void createMultipartUpload(HttpExchange exchange, String key) throws IOException {
+        String uploadId = "upload-" + uploadIds.incrementAndGet();
+        uploads.put(uploadId, new ConcurrentSkipListMap<>());
+        sendXml(exchange, 200, "<InitiateMultipartUploadResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\">"
+                + "<Bucket>" + escape(bucket) + "</Bucket><Key>" + escape(key) + "</Key>"
+                + "<UploadId>" + uploadId + "</UploadId></InitiateMultipartUploadResult>");
+    }
+
+    private void uploadPart(HttpExchange exchange, String uploadId, int partNumber, byte[] content) throws IOException {
+        NavigableMap<Integer, byte[]> parts = uploads.get(uploadId);
+        if (parts == null) {
+            sendError(exchange, 404, "NoSuchUpload", "The specified upload does not exist.");
+            return;
+        }
+        parts.put(partNumber, content);
+        exchange.getResponseHeaders().set("ETag", quote(md5(content)));
+        exchange.sendResponseHeaders(200, -1);
+    }
+
+    private void completeMultipartUpload(HttpExchange exchange, String key, String uploadId) throws IOException {
+        NavigableMap<Integer, byte[]> parts = uploads.remove(uploadId);
+        if (parts == null) {
+            sendError(exchange, 404, "NoSuchUpload", "The specified upload does not exist.");
+            return;
+        }
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        for (byte[] part : parts.values()) {
+            content.write(part);
+        }
+        String eTag = md5(content.toByteArray()) + "-" + parts.size();
+        objects.put(key, new StoredObject(content.toByteArray(), null, eTag, Instant.now()));
+        sendXml(exchange, 200, "<CompleteMultipartUploadResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\">"
+                + "<Bucket>" + escape(bucket) + "</Bucket><Key>" + escape(key) + "</Key>"
+                + "<ETag>" + escape(quote(eTag)) + "</ETag></CompleteMultipartUploadResult>");
+    }
+
+    /**
+     * Reads the request payload, undoing the {@code aws-chunked} framing the SDK uses for streaming uploads over
+     * plain HTTP.
+     */
+    private static byte[] readBody(HttpExchange exchange) throws IOException {
+        byte[] raw = exchange.getRequestBody().readAllBytes();
+        String contentSha256 = exchange.getRequestHeaders().getFirst("x-amz-content-sha256");
+        String contentEncoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+        boolean chunked = (contentSha256 != null && contentSha256.startsWith("STREAMING-"))
+                || (contentEncoding != null && contentEncoding.contains("aws-chunked"));
+        return chunked ? decodeChunked(raw) : raw;
+    }
+
+    private static byte[] decodeChunked(byte[] raw) {
+        ByteArrayOutputStream content = new ByteArrayOutputStream(raw.length);
+        int position = 0;
+        while (position < raw.length) {
+            int lineEnd = position;
+            while (lineEnd + 1 < raw.length && !(raw[lineEnd] == '\r' && raw[lineEnd + 1] == '\n')) {
+                lineEnd++;
+            }
+            String header = new String(raw, position, lineEnd - position, StandardCharsets.US_ASCII);
+            int semicolon = header.indexOf(';');
+            int size = Integer.parseInt((semicolon < 0 ? header : header.substring(0, semicolon)).trim(), 16);
+            if (size == 0) {
+                break;
+            }
+            position = lineEnd + 2;
+            content.write(raw, position, size);
+            position += size + 2;
+        }
+        return content.toByteArray();
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String code, String message) throws IOException {
+        sendXml(exchange, status, "<Error><Code>" + code + "</Code><Message>" + escape(message) + "</Message></Error>");
+    }
+
+    private static void sendXml(HttpExchange exchange, int status, String xml) throws IOException {
+        byte[] body = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + xml).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/xml");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+        for (String parameter : rawQuery.split("&")) {
+            int equals = parameter.indexOf('=');
+            String name = equals < 0 ? parameter : parameter.substring(0, equals);
+            String value = equals < 0 ? "" : parameter.substring(equals + 1);
+            query.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return query;
+    }
+
+    private static String md5(byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("MD5").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not available", e);
+        }
+    }
+
+    private static String quote(String eTag) {
+        return "\"" + eTag + "\"";
+    }
+
+    private static String escape(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    private static String unescape(String value) {
+        return value.replace("&quot;", "\"").replace("&lt;", "<").replace("&gt;", ">").replace("&amp;", "&");
+    }
+
+    private record StoredObject(byte[] content, String contentType, String eTag, Instant lastModified) {
+    }
+}
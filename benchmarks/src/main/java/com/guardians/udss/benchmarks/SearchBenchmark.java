@@ -0,0 +1,66 @@
+package com.guardians.udss.benchmarks;
+
+import com.guardians.udss.services.S3FileService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link S3FileService#searchFiles(String, String)} over a user folder of {@code keyCount} objects, of which at
+ * most 100 match. Without the metadata index every search pages through the whole listing.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class SearchBenchmark {
+
+    private static final String SEARCH_TERM = "doc-00";
+
+    @Param({"100", "10000"})
+    public int keyCount;
+
+    @Param({"1", "16"})
+    public int concurrency;
+
+    @Param({"true", "false"})
+    public boolean index;
+
+    private BenchmarkContext context;
+    private S3FileService fileService;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        context = BenchmarkContext.start(concurrency, "udss.index.enabled=" + index);
+        fileService = context.fileService();
+        byte[] content = new byte[0];
+        for (int i = 0; i < keyCount; i++) {
+            context.s3Server().put(String.format("%s/doc-%06d.txt", BenchmarkContext.USER, i), content, "text/plain");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        context.close();
+    }
+
+    @Benchmark
+    public Object[] searchFiles() throws Exception {
+        return context.run(worker -> fileService.searchFiles(BenchmarkContext.USER, SEARCH_TERM));
+    }
+}
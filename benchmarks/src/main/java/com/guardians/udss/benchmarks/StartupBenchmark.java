@@ -0,0 +1,98 @@
+package com.guardians.udss.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cold start of the service with its web server, and the first request it then serves, each measured once in a
+ * fresh JVM per fork, with the default settings and with the {@code fast-startup} profile. {@code startup} runs
+ * until the context is refreshed and the server listens; {@code firstRequest} is a search over a few files sent
+ * as soon as that is done. Against a jar built with {@code -Pfast-startup}, add
+ * {@code -jvmArgsAppend -Dspring.aot.enabled=true} to measure the AOT-processed startup as well.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(5)
+public class StartupBenchmark {
+
+    @Benchmark
+    public BenchmarkContext startup(Cold cold) throws IOException {
+        cold.context = start(cold.profile);
+        return cold.context;
+    }
+
+    @Benchmark
+    public int firstRequest(Started started) throws IOException, InterruptedException {
+        return started.httpClient.send(started.request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    private static BenchmarkContext start(String profile) throws IOException {
+        return BenchmarkContext.start(WebApplicationType.SERVLET, 1, "server.port=0", "spring.profiles.active=" + profile);
+    }
+
+    @State(Scope.Benchmark)
+    public static class Cold {
+
+        @Param({"default", "fast-startup"})
+        public String profile;
+
+        private BenchmarkContext context;
+
+        @TearDown(Level.Iteration)
+        public void tearDown() throws IOException {
+            if (context != null) {
+                context.close();
+            }
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Started {
+
+        @Param({"default", "fast-startup"})
+        public String profile;
+
+        private BenchmarkContext context;
+        private HttpClient httpClient;
+        private HttpRequest request;
+
+        @Setup(Level.Iteration)
+        public void setUp() throws IOException, InterruptedException {
+            context = start(profile);
+            for (int i = 0; i < 10; i++) {
+                context.s3Server().put(String.format("%s/doc-%02d.txt", BenchmarkContext.USER, i), new byte[0], "text/plain");
+            }
+            // Loads the HTTP client's own classes on a request to the stand-in, so they are not counted below.
+            httpClient = HttpClient.newHttpClient();
+            httpClient.send(HttpRequest.newBuilder(context.s3Server().endpoint()).build(), HttpResponse.BodyHandlers.discarding());
+            request = HttpRequest.newBuilder(URI.create("http://localhost:" + context.port()
+                    + "/api/files/search?userName=" + BenchmarkContext.USER + "&searchTerm=doc")).build();
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() throws IOException {
+            context.close();
+        }
+    }
+}
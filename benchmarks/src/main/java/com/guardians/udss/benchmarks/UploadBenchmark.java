@@ -0,0 +1,70 @@
+package com.guardians.udss.benchmarks;
+
+import com.guardians.udss.services.S3FileService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link S3FileService#uploadFile}: objects at or above the multipart threshold (16MB by default) go through the
+ * multipart uploader, smaller ones are a single PutObject. Each worker overwrites its own key. The local backend
+ * writes each upload to a temp file and renames it into place.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class UploadBenchmark {
+
+    @Param({"1KB", "1MB", "32MB"})
+    public String objectSize;
+
+    @Param({"1", "16"})
+    public int concurrency;
+
+    @Param({"s3", "local"})
+    public String backend;
+
+    private BenchmarkContext context;
+    private S3FileService fileService;
+    private BytesMultipartFile[] files;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        context = BenchmarkContext.start(concurrency, "udss.storage.backend=" + backend);
+        fileService = context.fileService();
+        byte[] content = new byte[Math.toIntExact(DataSize.parse(objectSize).toBytes())];
+        new Random(42).nextBytes(content);
+        files = new BytesMultipartFile[concurrency];
+        for (int worker = 0; worker < concurrency; worker++) {
+            files[worker] = new BytesMultipartFile("upload-" + worker + ".bin", "application/octet-stream", content);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        context.close();
+    }
+
+    @Benchmark
+    public Object[] uploadFile() throws Exception {
+        return context.run(worker -> fileService.uploadFile(BenchmarkContext.USER, files[worker]));
+    }
+}
@@ -1,11 +1,13 @@
 package com.guardians.udss;
 
+import com.guardians.udss.config.NativeHints;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.ImportRuntimeHints;
 
 @SpringBootApplication
-
+@ImportRuntimeHints(NativeHints.class)
 public class UserDocumentStorageServiceApplication {
 	public static void main(String[] args) {
 		SpringApplication.run(UserDocumentStorageServiceApplication.class, args);
@@ -0,0 +1,228 @@
+package com.guardians.udss.admission;
+
+import com.guardians.udss.config.AdmissionConfig;
+import com.guardians.udss.exception.TooManyRequestsException;
+import com.guardians.udss.model.OperationType;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Decides whether a request may start. A request first takes a token from its user's request bucket, plus its
+ * body size from the user's byte bucket for uploads, then a slot in its operation type's pool. When a bucket is
+ * empty or the pool's queue is full the request is refused at once with a retry hint, so one busy user cannot
+ * tie up the server threads and S3 connections everyone else needs. Limits can be changed at runtime; see
+ * {@link AdmissionEndpoint}.
+ */
+@Component
+@Slf4j
+public class AdmissionControl {
+
+    private final AdmissionConfig admissionConfig;
+    private final MeterRegistry meterRegistry;
+    private final Map<OperationType, OperationPool> pools = new EnumMap<>(OperationType.class);
+    private final Map<String, UserBudget> budgets = new ConcurrentHashMap<>();
+    private final AtomicBoolean sweepRequested = new AtomicBoolean();
+    private volatile AdmissionLimits limits;
+    private ScheduledExecutorService idleSweeper;
+
+    @Autowired
+    public AdmissionControl(AdmissionConfig admissionConfig, MeterRegistry meterRegistry) {
+        this.admissionConfig = admissionConfig;
+        this.meterRegistry = meterRegistry;
+        this.limits = new AdmissionLimits(admissionConfig.getRequestsPerSecond(), admissionConfig.getRequestBurst(),
+                admissionConfig.getBytesPerSecond().toBytes(), admissionConfig.getByteBurst().toBytes());
+        pools.put(OperationType.SEARCH, new OperationPool(admissionConfig.getSearchConcurrency(), admissionConfig.getSearchQueue()));
+        pools.put(OperationType.DOWNLOAD, new OperationPool(admissionConfig.getDownloadConcurrency(), admissionConfig.getDownloadQueue()));
+        pools.put(OperationType.UPLOAD, new OperationPool(admissionConfig.getUploadConcurrency(), admissionConfig.getUploadQueue()));
+        pools.put(OperationType.DELETE, new OperationPool(admissionConfig.getDeleteConcurrency(), admissionConfig.getDeleteQueue()));
+        registerMetrics();
+    }
+
+    /**
+     * Forgets idle users every {@code idle-sweep-interval}, and sooner once more than {@code max-tracked-users}
+     * are tracked. A sweep walks every user, so it runs here rather than in a request.
+     */
+    @PostConstruct
+    public void start() {
+        idleSweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "admission-idle-sweep");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = admissionConfig.getIdleSweepInterval().toMillis();
+        idleSweeper.scheduleWithFixedDelay(this::forgetIdleUsers, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (idleSweeper != null) {
+            idleSweeper.shutdownNow();
+        }
+    }
+
+    public boolean isEnabled() {
+        return admissionConfig.isEnabled();
+    }
+
+    /**
+     * Admits a request by {@code user} for {@code type} carrying {@code bytes} of request body, or throws
+     * {@link TooManyRequestsException}. The returned ticket must be closed when the request completes.
+     */
+    public Ticket admit(String user, OperationType type, long bytes) {
+        long now = System.nanoTime();
+        AdmissionLimits current = limits;
+        UserBudget budget = budgets.computeIfAbsent(user, ignored -> new UserBudget(current, now));
+        long waitNanos = budget.tryAcquire(bytes, current, now);
+        if (waitNanos > 0) {
+            rejected(type, "rate");
+            throw new TooManyRequestsException("Rate limit exceeded for user " + user, toRetryAfterSeconds(waitNanos));
+        }
+
+        OperationPool pool = pools.get(type);
+        boolean entered;
+        try {
+            entered = pool.enter(admissionConfig.getMaxWait().toNanos());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            entered = false;
+        }
+        if (!entered) {
+            rejected(type, "queue");
+            throw new TooManyRequestsException("Too many concurrent " + type.name().toLowerCase() + " requests",
+                    toRetryAfterSeconds(admissionConfig.getRetryAfter().toNanos()));
+        }
+        if (budgets.size() > admissionConfig.getMaxTrackedUsers() && idleSweeper != null
+                && sweepRequested.compareAndSet(false, true)) {
+            idleSweeper.execute(this::forgetIdleUsers);
+        }
+        return new Ticket(budget, pool);
+    }
+
+    /**
+     * Replaces the per-user limits; {@code null} arguments keep their current value.
+     */
+    public synchronized void updateUserLimits(Double requestsPerSecond, Integer requestBurst, Long bytesPerSecond,
+                                              Long byteBurst) {
+        AdmissionLimits current = limits;
+        limits = new AdmissionLimits(
+                requestsPerSecond != null ? requestsPerSecond : current.getRequestsPerSecond(),
+                requestBurst != null ? requestBurst : current.getRequestBurst(),
+                bytesPerSecond != null ? bytesPerSecond : current.getBytesPerSecond(),
+                byteBurst != null ? byteBurst : current.getByteBurst());
+        log.info("Per-user admission limits changed to {} requests/s (burst {}), {} bytes/s (burst {})",
+                limits.getRequestsPerSecond(), limits.getRequestBurst(), limits.getBytesPerSecond(), limits.getByteBurst());
+    }
+
+    /**
+     * Resizes the pool of {@code type}; {@code null} arguments keep their current value.
+     */
+    public void updatePool(OperationType type, Integer concurrency, Integer queueCapacity) {
+        OperationPool pool = pools.get(type);
+        synchronized (pool) {
+            pool.resize(concurrency != null ? concurrency : pool.concurrency(),
+                    queueCapacity != null ? queueCapacity : pool.queueCapacity());
+        }
+        log.info("Admission pool for {} resized to {} slots and {} queued", type, pool.concurrency(), pool.queueCapacity());
+    }
+
+    /**
+     * Current limits, pool occupancy and queue depth, for the actuator endpoint.
+     */
+    public Map<String, Object> describe() {
+        AdmissionLimits current = limits;
+        Map<String, Object> perUser = new LinkedHashMap<>();
+        perUser.put("requestsPerSecond", current.getRequestsPerSecond());
+        perUser.put("requestBurst", current.getRequestBurst());
+        perUser.put("bytesPerSecond", current.getBytesPerSecond());
+        perUser.put("byteBurst", current.getByteBurst());
+
+        Map<String, Object> operations = new LinkedHashMap<>();
+        pools.forEach((type, pool) -> {
+            Map<String, Object> state = new LinkedHashMap<>();
+            state.put("concurrency", pool.concurrency());
+            state.put("queueCapacity", pool.queueCapacity());
+            state.put("active", pool.active());
+            state.put("queued", pool.waiting());
+            operations.put(type.name().toLowerCase(), state);
+        });
+
+        Map<String, Object> description = new LinkedHashMap<>();
+        description.put("enabled", isEnabled());
+        description.put("perUser", perUser);
+        description.put("operations", operations);
+        description.put("trackedUsers", budgets.size());
+        return description;
+    }
+
+    private void forgetIdleUsers() {
+        sweepRequested.set(false);
+        AdmissionLimits current = limits;
+        long now = System.nanoTime();
+        budgets.values().removeIf(budget -> budget.isIdle(current, now));
+    }
+
+    private void rejected(OperationType type, String reason) {
+        meterRegistry.counter("udss.admission.rejected", "operation", type.name().toLowerCase(), "reason", reason).increment();
+    }
+
+    private static long toRetryAfterSeconds(long nanos) {
+        return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(nanos + Duration.ofSeconds(1).toNanos() - 1));
+    }
+
+    private void registerMetrics() {
+        pools.forEach((type, pool) -> {
+            String operation = type.name().toLowerCase();
+            Gauge.builder("udss.admission.active", pool, OperationPool::active)
+                    .description("Requests holding an admission slot")
+                    .tag("operation", operation)
+                    .register(meterRegistry);
+            Gauge.builder("udss.admission.queued", pool, OperationPool::waiting)
+                    .description("Requests waiting for an admission slot")
+                    .tag("operation", operation)
+                    .register(meterRegistry);
+        });
+        Gauge.builder("udss.admission.users", budgets, Map::size)
+                .description("Users with rate limit state")
+                .register(meterRegistry);
+    }
+
+    /**
+     * An admitted request. Closing it frees the pool slot and charges the bytes sent in the response to the
+     * user; only the first close counts.
+     */
+    public final class Ticket {
+        private final UserBudget budget;
+        private final OperationPool pool;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Ticket(UserBudget budget, OperationPool pool) {
+            this.budget = budget;
+            this.pool = pool;
+        }
+
+        public void close(long responseBytes) {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            pool.exit();
+            if (responseBytes > 0) {
+                budget.charge(responseBytes, limits, System.nanoTime());
+            }
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.guardians.udss.admission;
+
+import com.guardians.udss.model.OperationType;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a handler method as subject to admission control, counted against the pool of the given operation.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface AdmissionControlled {
+    OperationType value();
+}
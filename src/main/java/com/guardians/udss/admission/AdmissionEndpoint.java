@@ -0,0 +1,46 @@
+package com.guardians.udss.admission;
+
+import com.guardians.udss.model.OperationType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * {@code /actuator/admission}: reads the admission limits with each pool's live occupancy and queue depth.
+ * A POST replaces the per-user limits; a POST to {@code /actuator/admission/{operation}} resizes that
+ * operation's pool. Every field is required, so a change starts from the values the GET returns.
+ */
+@Component
+@Endpoint(id = "admission")
+public class AdmissionEndpoint {
+
+    private final AdmissionControl admissionControl;
+
+    @Autowired
+    public AdmissionEndpoint(AdmissionControl admissionControl) {
+        this.admissionControl = admissionControl;
+    }
+
+    @ReadOperation
+    public Map<String, Object> admission() {
+        return admissionControl.describe();
+    }
+
+    @WriteOperation
+    public Map<String, Object> updateUserLimits(double requestsPerSecond, int requestBurst, long bytesPerSecond,
+                                                long byteBurst) {
+        admissionControl.updateUserLimits(requestsPerSecond, requestBurst, bytesPerSecond, byteBurst);
+        return admissionControl.describe();
+    }
+
+    @WriteOperation
+    public Map<String, Object> updatePool(@Selector String operation, int concurrency, int queueCapacity) {
+        admissionControl.updatePool(OperationType.valueOf(operation.toUpperCase()), concurrency, queueCapacity);
+        return admissionControl.describe();
+    }
+}
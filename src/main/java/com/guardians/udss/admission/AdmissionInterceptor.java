@@ -0,0 +1,117 @@
+package com.guardians.udss.admission;
+
+import com.guardians.udss.model.OperationType;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.util.Map;
+
+/**
+ * Applies {@link AdmissionControl} to handler methods annotated with {@link AdmissionControlled}. The user is
+ * taken from the {@code userName} request parameter or path variable, falling back to the client address. A
+ * streaming response keeps its slot until the stream completes, not just until the handler method returns.
+ */
+@Component
+public class AdmissionInterceptor implements AsyncHandlerInterceptor {
+
+    /**
+     * Bytes sent by a streaming response that has no {@code Content-Length}, set by the handler once known.
+     */
+    public static final String RESPONSE_BYTES_ATTRIBUTE = AdmissionInterceptor.class.getName() + ".responseBytes";
+
+    private static final String TICKET_ATTRIBUTE = AdmissionInterceptor.class.getName() + ".ticket";
+    private static final String USER_PARAMETER = "userName";
+
+    private final AdmissionControl admissionControl;
+
+    @Autowired
+    public AdmissionInterceptor(AdmissionControl admissionControl) {
+        this.admissionControl = admissionControl;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (!admissionControl.isEnabled() || request.getDispatcherType() != DispatcherType.REQUEST
+                || !(handler instanceof HandlerMethod handlerMethod)) {
+            return true;
+        }
+        AdmissionControlled admission = handlerMethod.getMethodAnnotation(AdmissionControlled.class);
+        if (admission == null) {
+            return true;
+        }
+        long bytes = admission.value() == OperationType.UPLOAD ? Math.max(0, request.getContentLengthLong()) : 0;
+        request.setAttribute(TICKET_ATTRIBUTE, admissionControl.admit(userOf(request), admission.value(), bytes));
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        AdmissionControl.Ticket ticket = (AdmissionControl.Ticket) request.getAttribute(TICKET_ATTRIBUTE);
+        if (ticket == null) {
+            return;
+        }
+        // The async dispatch normally completes the ticket in afterCompletion; this covers timeouts and
+        // disconnects that never get that far.
+        request.getAsyncContext().addListener(new AsyncListener() {
+            @Override
+            public void onComplete(AsyncEvent event) {
+                ticket.close(responseBytes(request, response));
+            }
+
+            @Override
+            public void onTimeout(AsyncEvent event) {
+                ticket.close(0);
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+                ticket.close(0);
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+        });
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        AdmissionControl.Ticket ticket = (AdmissionControl.Ticket) request.getAttribute(TICKET_ATTRIBUTE);
+        if (ticket != null) {
+            ticket.close(responseBytes(request, response));
+        }
+    }
+
+    private static long responseBytes(HttpServletRequest request, HttpServletResponse response) {
+        if (request.getAttribute(RESPONSE_BYTES_ATTRIBUTE) instanceof Long bytes) {
+            return bytes;
+        }
+        String contentLength = response.getHeader(HttpHeaders.CONTENT_LENGTH);
+        try {
+            return contentLength == null ? 0 : Long.parseLong(contentLength);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String userOf(HttpServletRequest request) {
+        // The path variable first: reading a parameter of a streamed multipart request would parse its body.
+        Map<String, String> pathVariables =
+                (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        String user = pathVariables != null ? pathVariables.get(USER_PARAMETER) : null;
+        if (user == null) {
+            user = request.getParameter(USER_PARAMETER);
+        }
+        return user != null ? user : request.getRemoteAddr();
+    }
+}
@@ -0,0 +1,23 @@
+package com.guardians.udss.admission;
+
+import lombok.Getter;
+
+/**
+ * The per-user rate limits in effect. Immutable, so a runtime change swaps in a new instance that every
+ * user's buckets pick up on their next refill. A rate of zero or less disables that limit.
+ */
+@Getter
+public final class AdmissionLimits {
+
+    private final double requestsPerSecond;
+    private final int requestBurst;
+    private final long bytesPerSecond;
+    private final long byteBurst;
+
+    public AdmissionLimits(double requestsPerSecond, int requestBurst, long bytesPerSecond, long byteBurst) {
+        this.requestsPerSecond = requestsPerSecond;
+        this.requestBurst = Math.max(1, requestBurst);
+        this.bytesPerSecond = bytesPerSecond;
+        this.byteBurst = Math.max(0, byteBurst);
+    }
+}
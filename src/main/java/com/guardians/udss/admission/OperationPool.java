@@ -0,0 +1,108 @@
+package com.guardians.udss.admission;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntSupplier;
+
+/**
+ * Concurrency slots for one operation type with a bounded wait queue. A request takes a free slot at once,
+ * otherwise waits in the queue for up to the maximum wait; once the queue is full it is refused without
+ * waiting. Both bounds can be changed while requests are in flight. Uses a lock rather than a monitor so that
+ * waiting virtual threads do not pin their carrier.
+ */
+final class OperationPool {
+
+    private final ReentrantLock lock = new ReentrantLock(true);
+    private final Condition slotFreed = lock.newCondition();
+    private int concurrency;
+    private int queueCapacity;
+    private int active;
+    private int waiting;
+
+    OperationPool(int concurrency, int queueCapacity) {
+        resize(concurrency, queueCapacity);
+    }
+
+    /**
+     * Takes a slot, waiting up to {@code maxWaitNanos} for one. Returns {@code false} if the queue is full or
+     * the wait runs out.
+     */
+    boolean enter(long maxWaitNanos) throws InterruptedException {
+        lock.lock();
+        try {
+            if (active < concurrency) {
+                active++;
+                return true;
+            }
+            if (waiting >= queueCapacity) {
+                return false;
+            }
+            waiting++;
+            try {
+                long remaining = maxWaitNanos;
+                while (active >= concurrency) {
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    remaining = slotFreed.awaitNanos(remaining);
+                }
+                active++;
+                return true;
+            } finally {
+                waiting--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void exit() {
+        lock.lock();
+        try {
+            active--;
+            slotFreed.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Applies new bounds. Requests already holding a slot keep it; a lower concurrency takes effect as they
+     * finish.
+     */
+    void resize(int concurrency, int queueCapacity) {
+        lock.lock();
+        try {
+            this.concurrency = Math.max(1, concurrency);
+            this.queueCapacity = Math.max(0, queueCapacity);
+            slotFreed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int concurrency() {
+        return withLock(() -> concurrency);
+    }
+
+    int queueCapacity() {
+        return withLock(() -> queueCapacity);
+    }
+
+    int active() {
+        return withLock(() -> active);
+    }
+
+    int waiting() {
+        return withLock(() -> waiting);
+    }
+
+    private int withLock(IntSupplier read) {
+        lock.lock();
+        try {
+            return read.getAsInt();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
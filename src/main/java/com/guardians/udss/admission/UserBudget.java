@@ -0,0 +1,71 @@
+package com.guardians.udss.admission;
+
+/**
+ * One user's token buckets, one for requests and one for bytes. Both refill continuously at the configured
+ * rate up to their burst size. The byte bucket may go into debt: a request is admitted while any byte tokens
+ * are left, however large it is, and the next ones wait until the debt is paid back. That way a single file
+ * larger than the burst can still be uploaded.
+ */
+final class UserBudget {
+
+    private static final double NANOS_PER_SECOND = 1_000_000_000d;
+
+    private double requestTokens;
+    private double byteTokens;
+    private long refilledAtNanos;
+
+    UserBudget(AdmissionLimits limits, long nowNanos) {
+        this.requestTokens = limits.getRequestBurst();
+        this.byteTokens = limits.getByteBurst();
+        this.refilledAtNanos = nowNanos;
+    }
+
+    /**
+     * Takes one request and {@code bytes} bytes if both buckets allow it. Returns 0 when admitted, otherwise
+     * the nanoseconds until the bucket that refused would allow it, without taking anything.
+     */
+    synchronized long tryAcquire(long bytes, AdmissionLimits limits, long nowNanos) {
+        refill(limits, nowNanos);
+        if (limits.getRequestsPerSecond() > 0 && requestTokens < 1) {
+            return nanosToRefill(1 - requestTokens, limits.getRequestsPerSecond());
+        }
+        if (limits.getBytesPerSecond() > 0 && bytes > 0 && byteTokens <= 0) {
+            // Wait until the debt is paid back and a little more is available.
+            return nanosToRefill(1 - byteTokens, limits.getBytesPerSecond());
+        }
+        requestTokens -= 1;
+        byteTokens -= bytes;
+        return 0;
+    }
+
+    /**
+     * Charges bytes that were only known after the request was admitted, such as those of a download.
+     */
+    synchronized void charge(long bytes, AdmissionLimits limits, long nowNanos) {
+        refill(limits, nowNanos);
+        byteTokens -= bytes;
+    }
+
+    /**
+     * Whether both buckets are full, i.e. the user has been idle long enough to be forgotten.
+     */
+    synchronized boolean isIdle(AdmissionLimits limits, long nowNanos) {
+        refill(limits, nowNanos);
+        return requestTokens >= limits.getRequestBurst() && byteTokens >= limits.getByteBurst();
+    }
+
+    private void refill(AdmissionLimits limits, long nowNanos) {
+        double elapsedSeconds = (nowNanos - refilledAtNanos) / NANOS_PER_SECOND;
+        refilledAtNanos = nowNanos;
+        requestTokens = limits.getRequestsPerSecond() > 0
+                ? Math.min(limits.getRequestBurst(), requestTokens + elapsedSeconds * limits.getRequestsPerSecond())
+                : limits.getRequestBurst();
+        byteTokens = limits.getBytesPerSecond() > 0
+                ? Math.min(limits.getByteBurst(), byteTokens + elapsedSeconds * limits.getBytesPerSecond())
+                : limits.getByteBurst();
+    }
+
+    private static long nanosToRefill(double tokens, double perSecond) {
+        return (long) Math.ceil(tokens / perSecond * NANOS_PER_SECOND);
+    }
+}
@@ -0,0 +1,221 @@
+package com.guardians.udss.archive;
+
+import com.guardians.udss.config.ArchiveConfig;
+import com.guardians.udss.exception.FileNotFoundException;
+import com.guardians.udss.model.FileDownload;
+import com.guardians.udss.model.SearchPage;
+import com.guardians.udss.services.S3FileService;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Streams a ZIP archive of a user's files straight to a response. Files are opened through
+ * {@link S3FileService#downloadFile} a few at a time ahead of the one being written, so the next entry's first
+ * bytes are usually waiting by the time the current one ends; content is copied through a single buffer and
+ * never held whole in memory or on disk. Files deleted after they were listed are left out of the archive.
+ */
+@Component
+@Slf4j
+public class ZipArchiveStreamer {
+
+    private static final int PAGE_SIZE = 1000;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final S3FileService fileService;
+    private final ArchiveConfig archiveConfig;
+    private final MeterRegistry meterRegistry;
+    private final List<MediaType> storedTypes;
+    private final ExecutorService prefetchExecutor;
+
+    @Autowired
+    public ZipArchiveStreamer(S3FileService fileService, ArchiveConfig archiveConfig, MeterRegistry meterRegistry) {
+        this.fileService = fileService;
+        this.archiveConfig = archiveConfig;
+        this.meterRegistry = meterRegistry;
+        this.storedTypes = archiveConfig.getStoredTypes().stream().map(String::trim).map(MediaType::parseMediaType).toList();
+        AtomicInteger threadCount = new AtomicInteger();
+        this.prefetchExecutor = Executors.newFixedThreadPool(Math.max(1, archiveConfig.getPrefetchThreads()), runnable -> {
+            Thread thread = new Thread(runnable, "zip-prefetch-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        prefetchExecutor.shutdown();
+    }
+
+    /**
+     * Writes an archive of the named files of {@code username}, or of all of the user's files if
+     * {@code fileNames} is {@code null}, and returns the number of bytes written. Entries are named after the
+     * file, without the {@code username/} prefix.
+     */
+    public long write(String username, Collection<String> fileNames, OutputStream out) throws IOException {
+        String prefix = username + "/";
+        Iterator<String> keys = fileNames == null
+                ? new UserKeys(username)
+                : new LinkedHashSet<>(fileNames).stream().map(fileName -> prefix + fileName).iterator();
+        Deque<Prefetch> window = new ArrayDeque<>();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int entries = 0;
+        try (ZipStreamWriter zip = new ZipStreamWriter(new BufferedOutputStream(out, BUFFER_SIZE), archiveConfig.getDeflateLevel())) {
+            fill(window, keys);
+            while (!window.isEmpty()) {
+                Prefetch next = window.poll();
+                fill(window, keys);
+                FileDownload download = next.await();
+                if (download == null) {
+                    continue;
+                }
+                try (download) {
+                    String name = next.key.substring(prefix.length());
+                    boolean stored = isStored(download.getContentType(), name);
+                    // A decoded download is longer than its content length says; let the writer size it as it goes.
+                    Long size = download.isCompressed() ? null : download.getContentLength();
+                    download.transferTo(zip.putEntry(name, download.getLastModified(), stored, size), buffer);
+                    zip.closeEntry();
+                    meterRegistry.counter("udss.archive.entries", "method", stored ? "stored" : "deflated").increment();
+                    entries++;
+                }
+            }
+            zip.finish();
+            log.info("Streamed archive of {} files ({} bytes) for user {}", entries, zip.getBytesWritten(), username);
+            return zip.getBytesWritten();
+        } finally {
+            // Left over only when the archive was abandoned; release each download once it has been opened.
+            for (Prefetch pending : window) {
+                pending.download.thenAccept(ZipArchiveStreamer::closeQuietly);
+            }
+        }
+    }
+
+    private void fill(Deque<Prefetch> window, Iterator<String> keys) {
+        while (window.size() < Math.max(1, archiveConfig.getPrefetch()) && keys.hasNext()) {
+            String key = keys.next();
+            window.add(new Prefetch(key, CompletableFuture.supplyAsync(() -> fileService.downloadFile(key), prefetchExecutor)));
+        }
+    }
+
+    /**
+     * Whether a file is better stored than deflated: its type is known to be compressed already. Files without
+     * a specific content type are judged by their extension.
+     */
+    boolean isStored(String contentType, String name) {
+        MediaType mediaType = null;
+        if (contentType != null) {
+            try {
+                mediaType = MediaType.parseMediaType(contentType);
+            } catch (InvalidMediaTypeException e) {
+                log.debug("Ignoring invalid content type {} of {}", contentType, name);
+            }
+        }
+        if (mediaType == null || MediaType.APPLICATION_OCTET_STREAM.equalsTypeAndSubtype(mediaType)) {
+            mediaType = MediaTypeFactory.getMediaType(name).orElse(null);
+        }
+        if (mediaType == null) {
+            return false;
+        }
+        for (MediaType storedType : storedTypes) {
+            if (storedType.includes(mediaType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void closeQuietly(FileDownload download) {
+        try {
+            download.close();
+        } catch (IOException e) {
+            log.warn("Error closing download of {}: {}", download.getKey(), e.getMessage());
+        }
+    }
+
+    private final class Prefetch {
+        private final String key;
+        private final CompletableFuture<FileDownload> download;
+
+        private Prefetch(String key, CompletableFuture<FileDownload> download) {
+            this.key = key;
+            this.download = download;
+        }
+
+        /**
+         * The opened download, or {@code null} if the file no longer exists.
+         */
+        FileDownload await() throws IOException {
+            try {
+                return download.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                download.thenAccept(ZipArchiveStreamer::closeQuietly);
+                throw new InterruptedIOException("Interrupted while opening " + key);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof FileNotFoundException) {
+                    log.warn("Leaving {} out of the archive: {}", key, e.getCause().getMessage());
+                    meterRegistry.counter("udss.archive.skipped").increment();
+                    return null;
+                }
+                throw new IOException("Error opening " + key + " for the archive", e.getCause());
+            }
+        }
+    }
+
+    /**
+     * All keys of a user in key order, fetched a page at a time through {@link S3FileService#searchFiles} as
+     * the archive is written.
+     */
+    private final class UserKeys implements Iterator<String> {
+        private final String username;
+        private Iterator<String> page;
+        private String nextToken;
+        private boolean lastPage;
+
+        private UserKeys(String username) {
+            this.username = username;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while ((page == null || !page.hasNext()) && !lastPage) {
+                SearchPage searchPage = fileService.searchFiles(username, "", PAGE_SIZE, nextToken);
+                page = searchPage.getKeys().iterator();
+                nextToken = searchPage.getNextToken();
+                lastPage = nextToken == null;
+            }
+            return page.hasNext();
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return page.next();
+        }
+    }
+}
@@ -0,0 +1,349 @@
+package com.guardians.udss.archive;
+
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Writes a ZIP archive to a stream that cannot seek, one entry at a time, without knowing an entry's checksum
+ * or compressed size before its data is written.
+ * <p>
+ * {@link java.util.zip.ZipOutputStream} can only do that for deflated entries: a STORED entry must have its
+ * CRC-32 set before the first byte, which would mean reading each file twice or buffering it. Here every entry,
+ * stored or deflated, sets general purpose bit 3 and follows its data with a data descriptor carrying the CRC
+ * and sizes, as the format allows. ZIP64 records are written where sizes, offsets or the entry count need them.
+ * <p>
+ * Readers that go by the central directory (unzip, 7-Zip, the desktop archive tools, {@link java.util.zip.ZipFile})
+ * read such archives; {@link java.util.zip.ZipInputStream} rejects STORED entries with a data descriptor.
+ */
+public class ZipStreamWriter implements Closeable {
+
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int DATA_DESCRIPTOR = 0x08074b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int ZIP64_END = 0x06064b50;
+    private static final int ZIP64_LOCATOR = 0x07064b50;
+    private static final int END = 0x06054b50;
+
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+    private static final int FLAG_DATA_DESCRIPTOR = 1 << 3;
+    private static final int FLAG_UTF8 = 1 << 11;
+    private static final int VERSION = 20;
+    private static final int VERSION_ZIP64 = 45;
+    private static final int ZIP64_EXTRA = 0x0001;
+
+    private static final long MAX_32 = 0xFFFFFFFFL;
+    private static final int MAX_16 = 0xFFFF;
+    /**
+     * Entries announced at or above this size get ZIP64 sizes from the start, leaving room for deflate's
+     * worst-case growth of incompressible data.
+     */
+    private static final long ZIP64_ENTRY_THRESHOLD = MAX_32 - (64L << 20);
+
+    private final CountingOutputStream out;
+    private final Deflater deflater;
+    private final List<Entry> entries = new ArrayList<>();
+    private Entry current;
+    private EntryOutputStream currentStream;
+    private boolean finished;
+
+    public ZipStreamWriter(OutputStream out, int deflateLevel) {
+        this.out = new CountingOutputStream(out);
+        this.deflater = new Deflater(deflateLevel, true);
+    }
+
+    /**
+     * Starts an entry and returns the stream to write its content to; the entry ends with {@link #closeEntry()}.
+     * {@code size} is the expected uncompressed size, or {@code null} if unknown.
+     */
+    public OutputStream putEntry(String name, Instant lastModified, boolean stored, Long size) throws IOException {
+        if (finished) {
+            throw new IllegalStateException("Archive already finished");
+        }
+        if (current != null) {
+            closeEntry();
+        }
+        Entry entry = new Entry(name.getBytes(StandardCharsets.UTF_8), stored ? STORED : DEFLATED,
+                dosDateTime(lastModified), out.count, size == null || size >= ZIP64_ENTRY_THRESHOLD);
+
+        writeInt(LOCAL_HEADER);
+        writeShort(entry.zip64 ? VERSION_ZIP64 : VERSION);
+        writeShort(FLAG_DATA_DESCRIPTOR | FLAG_UTF8);
+        writeShort(entry.method);
+        writeInt(entry.dosDateTime);
+        writeInt(0);
+        writeInt(entry.zip64 ? MAX_32 : 0);
+        writeInt(entry.zip64 ? MAX_32 : 0);
+        writeShort(entry.name.length);
+        writeShort(entry.zip64 ? 20 : 0);
+        out.write(entry.name);
+        if (entry.zip64) {
+            // Sizes follow in the data descriptor; the extra field only announces that they are 8 bytes wide.
+            writeShort(ZIP64_EXTRA);
+            writeShort(16);
+            writeLong(0);
+            writeLong(0);
+        }
+
+        current = entry;
+        currentStream = new EntryOutputStream(entry);
+        return currentStream;
+    }
+
+    public void closeEntry() throws IOException {
+        if (current == null) {
+            return;
+        }
+        Entry entry = current;
+        currentStream.finish();
+        current = null;
+        currentStream = null;
+
+        entry.compressedSize = out.count - entry.dataOffset;
+        if (!entry.zip64 && (entry.size >= MAX_32 || entry.compressedSize >= MAX_32)) {
+            throw new ZipException("Entry " + new String(entry.name, StandardCharsets.UTF_8)
+                    + " is larger than announced and does not fit a ZIP32 data descriptor");
+        }
+        writeInt(DATA_DESCRIPTOR);
+        writeInt(entry.crc);
+        if (entry.zip64) {
+            writeLong(entry.compressedSize);
+            writeLong(entry.size);
+        } else {
+            writeInt(entry.compressedSize);
+            writeInt(entry.size);
+        }
+        entries.add(entry);
+    }
+
+    /**
+     * Ends the current entry and writes the central directory. The underlying stream is flushed, not closed.
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        closeEntry();
+        long directoryOffset = out.count;
+        for (Entry entry : entries) {
+            writeCentralHeader(entry);
+        }
+        long directorySize = out.count - directoryOffset;
+
+        boolean zip64 = entries.size() >= MAX_16 || directoryOffset >= MAX_32 || directorySize >= MAX_32;
+        if (zip64) {
+            long zip64EndOffset = out.count;
+            writeInt(ZIP64_END);
+            writeLong(44);
+            writeShort(VERSION_ZIP64);
+            writeShort(VERSION_ZIP64);
+            writeInt(0);
+            writeInt(0);
+            writeLong(entries.size());
+            writeLong(entries.size());
+            writeLong(directorySize);
+            writeLong(directoryOffset);
+
+            writeInt(ZIP64_LOCATOR);
+            writeInt(0);
+            writeLong(zip64EndOffset);
+            writeInt(1);
+        }
+        writeInt(END);
+        writeShort(0);
+        writeShort(0);
+        writeShort(Math.min(entries.size(), MAX_16));
+        writeShort(Math.min(entries.size(), MAX_16));
+        writeInt(Math.min(directorySize, MAX_32));
+        writeInt(Math.min(directoryOffset, MAX_32));
+        writeShort(0);
+        out.flush();
+        finished = true;
+    }
+
+    /**
+     * Releases the compressor. Does not finish the archive and does not close the underlying stream, so an
+     * archive abandoned half way stays visibly truncated.
+     */
+    @Override
+    public void close() {
+        deflater.end();
+    }
+
+    public long getBytesWritten() {
+        return out.count;
+    }
+
+    private void writeCentralHeader(Entry entry) throws IOException {
+        boolean sizeOverflow = entry.size >= MAX_32;
+        boolean compressedSizeOverflow = entry.compressedSize >= MAX_32;
+        boolean offsetOverflow = entry.headerOffset >= MAX_32;
+        int extraLength = (sizeOverflow ? 8 : 0) + (compressedSizeOverflow ? 8 : 0) + (offsetOverflow ? 8 : 0);
+        boolean zip64 = extraLength > 0;
+
+        writeInt(CENTRAL_HEADER);
+        writeShort(VERSION_ZIP64);
+        writeShort(zip64 || entry.zip64 ? VERSION_ZIP64 : VERSION);
+        writeShort(FLAG_DATA_DESCRIPTOR | FLAG_UTF8);
+        writeShort(entry.method);
+        writeInt(entry.dosDateTime);
+        writeInt(entry.crc);
+        writeInt(Math.min(entry.compressedSize, MAX_32));
+        writeInt(Math.min(entry.size, MAX_32));
+        writeShort(entry.name.length);
+        writeShort(zip64 ? extraLength + 4 : 0);
+        writeShort(0);
+        writeShort(0);
+        writeShort(0);
+        writeInt(0);
+        writeInt(Math.min(entry.headerOffset, MAX_32));
+        out.write(entry.name);
+        if (zip64) {
+            // Only the fields that overflowed are present, in this fixed order.
+            writeShort(ZIP64_EXTRA);
+            writeShort(extraLength);
+            if (sizeOverflow) {
+                writeLong(entry.size);
+            }
+            if (compressedSizeOverflow) {
+                writeLong(entry.compressedSize);
+            }
+            if (offsetOverflow) {
+                writeLong(entry.headerOffset);
+            }
+        }
+    }
+
+    private static long dosDateTime(Instant instant) {
+        LocalDateTime time = instant == null ? LocalDateTime.now() : LocalDateTime.ofInstant(instant, ZoneId.systemDefault());
+        if (time.getYear() < 1980) {
+            time = LocalDateTime.of(1980, 1, 1, 0, 0);
+        }
+        long date = ((long) (time.getYear() - 1980) << 9) | (time.getMonthValue() << 5) | time.getDayOfMonth();
+        long clock = (time.getHour() << 11) | (time.getMinute() << 5) | (time.getSecond() >> 1);
+        return (date << 16) | clock;
+    }
+
+    private void writeShort(int value) throws IOException {
+        out.write(value & 0xff);
+        out.write((value >>> 8) & 0xff);
+    }
+
+    private void writeInt(long value) throws IOException {
+        writeShort((int) (value & MAX_16));
+        writeShort((int) ((value >>> 16) & MAX_16));
+    }
+
+    private void writeLong(long value) throws IOException {
+        writeInt(value & MAX_32);
+        writeInt(value >>> 32);
+    }
+
+    private static final class Entry {
+        private final byte[] name;
+        private final int method;
+        private final long dosDateTime;
+        private final long headerOffset;
+        private final boolean zip64;
+        private long dataOffset;
+        private long crc;
+        private long size;
+        private long compressedSize;
+
+        private Entry(byte[] name, int method, long dosDateTime, long headerOffset, boolean zip64) {
+            this.name = name;
+            this.method = method;
+            this.dosDateTime = dosDateTime;
+            this.headerOffset = headerOffset;
+            this.zip64 = zip64;
+        }
+    }
+
+    /**
+     * Checksums and counts an entry's content on its way to the archive, deflating it unless it is stored.
+     */
+    private final class EntryOutputStream extends OutputStream {
+        private final Entry entry;
+        private final CRC32 crc = new CRC32();
+        private final OutputStream target;
+        private final DeflaterOutputStream deflating;
+        private boolean closed;
+
+        private EntryOutputStream(Entry entry) {
+            this.entry = entry;
+            entry.dataOffset = out.count;
+            if (entry.method == DEFLATED) {
+                deflater.reset();
+                deflating = new DeflaterOutputStream(out, deflater, 64 * 1024);
+                target = deflating;
+            } else {
+                deflating = null;
+                target = out;
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            if (closed) {
+                throw new IOException("Entry already closed");
+            }
+            crc.update(buffer, offset, length);
+            entry.size += length;
+            target.write(buffer, offset, length);
+        }
+
+        /**
+         * Closing the stream a caller got from {@link #putEntry} only stops further writes; the entry is
+         * completed by {@link #closeEntry()}.
+         */
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        private void finish() throws IOException {
+            closed = true;
+            if (deflating != null) {
+                deflating.finish();
+            }
+            entry.crc = crc.getValue();
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            out.write(buffer, offset, length);
+            count += length;
+        }
+    }
+}
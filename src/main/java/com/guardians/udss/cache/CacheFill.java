@@ -0,0 +1,219 @@
+package com.guardians.udss.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.awssdk.http.Abortable;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+
+/**
+ * Copies an object into the cache while it is being streamed to a client. The entry is committed only once
+ * the client has read the whole object; a short read, a failure or a concurrent invalidation discards it.
+ */
+@Slf4j
+final class CacheFill {
+
+    private final ObjectCache cache;
+    private final String key;
+    private final String eTag;
+    private final String contentType;
+    private final Instant lastModified;
+    private final String contentEncoding;
+    private final Long decodedLength;
+    private final int length;
+    private final ByteBuffer memory;
+    private final Path file;
+    private final FileChannel channel;
+    private int written;
+    private volatile boolean cancelled;
+    private boolean finished;
+
+    CacheFill(ObjectCache cache, String key, String eTag, String contentType, Instant lastModified,
+              String contentEncoding, Long decodedLength, int length, Path directory, boolean inMemory) throws IOException {
+        this.cache = cache;
+        this.key = key;
+        this.eTag = eTag;
+        this.contentType = contentType;
+        this.lastModified = lastModified;
+        this.contentEncoding = contentEncoding;
+        this.decodedLength = decodedLength;
+        this.length = length;
+        if (inMemory) {
+            this.memory = ByteBuffer.allocateDirect(length);
+            this.file = null;
+            this.channel = null;
+        } else {
+            this.memory = null;
+            this.file = Files.createTempFile(directory, "object-", ".cache");
+            this.channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+    }
+
+    String getKey() {
+        return key;
+    }
+
+    int getLength() {
+        return length;
+    }
+
+    boolean isInMemory() {
+        return memory != null;
+    }
+
+    void cancel() {
+        cancelled = true;
+    }
+
+    InputStream tee(InputStream source) {
+        return new TeeStream(source);
+    }
+
+    private void write(byte[] b, int off, int len) {
+        if (finished) {
+            return;
+        }
+        if (cancelled || written + len > length) {
+            discard();
+            return;
+        }
+        try {
+            if (memory != null) {
+                memory.put(b, off, len);
+            } else {
+                ByteBuffer chunk = ByteBuffer.wrap(b, off, len);
+                while (chunk.hasRemaining()) {
+                    channel.write(chunk);
+                }
+            }
+            written += len;
+        } catch (IOException e) {
+            log.warn("Error writing cache entry for key {}: {}", key, e.getMessage());
+            discard();
+        }
+    }
+
+    private void complete() {
+        if (finished) {
+            return;
+        }
+        if (cancelled || written != length) {
+            discard();
+            return;
+        }
+        finished = true;
+        try {
+            ByteBuffer data = memory != null
+                    ? memory.flip().asReadOnlyBuffer()
+                    : channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            closeChannel();
+            cache.commit(this, new CachedObject(key, eTag, contentType, lastModified, contentEncoding, decodedLength, data, file,
+                    System.currentTimeMillis()));
+        } catch (IOException e) {
+            log.warn("Error mapping cache entry for key {}: {}", key, e.getMessage());
+            closeChannel();
+            deleteFile();
+            cache.abandon(this);
+        }
+    }
+
+    void discard() {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        closeChannel();
+        deleteFile();
+        cache.abandon(this);
+    }
+
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Error closing cache file {}: {}", file, e.getMessage());
+            }
+        }
+    }
+
+    private void deleteFile() {
+        if (file != null) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("Error deleting cache file {}: {}", file, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Passes reads through to the client and copies them into the fill. Implements {@link Abortable} so
+     * {@link com.guardians.udss.model.FileDownload#close()} can still abort the underlying S3 stream.
+     */
+    private final class TeeStream extends FilterInputStream implements Abortable {
+
+        TeeStream(InputStream source) {
+            super(source);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value == -1) {
+                complete();
+            } else {
+                write(new byte[]{(byte) value}, 0, 1);
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count;
+            try {
+                count = super.read(b, off, len);
+            } catch (IOException e) {
+                discard();
+                throw e;
+            }
+            if (count == -1) {
+                complete();
+            } else {
+                write(b, off, count);
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Skipped bytes would leave a hole in the entry.
+            discard();
+            return super.skip(n);
+        }
+
+        @Override
+        public void abort() {
+            discard();
+            if (in instanceof Abortable abortable) {
+                abortable.abort();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                discard();
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.guardians.udss.cache;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.Instant;
+
+/**
+ * One cached object. {@code data} is a direct buffer for the memory tier or a read-only mapping of
+ * {@code file} for the disk tier; either way it is never written after the entry is committed.
+ */
+final class CachedObject {
+
+    private final String key;
+    private final String eTag;
+    private final String contentType;
+    private final Instant lastModified;
+    private final String contentEncoding;
+    private final Long decodedLength;
+    private final ByteBuffer data;
+    private final Path file;
+    private volatile long validatedAtMillis;
+
+    CachedObject(String key, String eTag, String contentType, Instant lastModified, String contentEncoding,
+                 Long decodedLength, ByteBuffer data, Path file, long validatedAtMillis) {
+        this.key = key;
+        this.eTag = eTag;
+        this.contentType = contentType;
+        this.lastModified = lastModified;
+        this.contentEncoding = contentEncoding;
+        this.decodedLength = decodedLength;
+        this.data = data;
+        this.file = file;
+        this.validatedAtMillis = validatedAtMillis;
+    }
+
+    String getKey() {
+        return key;
+    }
+
+    String getETag() {
+        return eTag;
+    }
+
+    String getContentType() {
+        return contentType;
+    }
+
+    Instant getLastModified() {
+        return lastModified;
+    }
+
+    String getContentEncoding() {
+        return contentEncoding;
+    }
+
+    Long getDecodedLength() {
+        return decodedLength;
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    boolean onDisk() {
+        return file != null;
+    }
+
+    int length() {
+        return data.capacity();
+    }
+
+    long getValidatedAtMillis() {
+        return validatedAtMillis;
+    }
+
+    void setValidatedAtMillis(long validatedAtMillis) {
+        this.validatedAtMillis = validatedAtMillis;
+    }
+
+    /**
+     * Independent view of {@code length} bytes starting at {@code offset}, safe to read concurrently.
+     */
+    ByteBuffer slice(int offset, int length) {
+        return data.duplicate().position(offset).limit(offset + length).slice();
+    }
+}
@@ -0,0 +1,463 @@
+package com.guardians.udss.cache;
+
+import com.guardians.udss.config.CacheConfig;
+import com.guardians.udss.exception.FileNotFoundException;
+import com.guardians.udss.exception.RangeNotSatisfiableException;
+import com.guardians.udss.model.DownloadOptions;
+import com.guardians.udss.model.FileDownload;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+/**
+ * Read-through cache for downloads, bounded by total bytes. Objects up to {@code udss.cache.memory-object-limit}
+ * are held in direct buffers, larger ones up to {@code udss.cache.max-object-size} in memory-mapped files; each
+ * tier evicts least recently used entries once over its byte budget. A miss on a plain full download fills the
+ * cache as the client reads the object; its size is reserved in the tier before any buffer or file is set up,
+ * so fills in flight count against the budget too, and a miss that does not fit is served without caching.
+ * Range and conditional requests are answered from a cached entry but
+ * never fill one. Entries older than {@code udss.cache.validate-after} are revalidated with a conditional GET
+ * on their ETag before they are served again.
+ */
+@Component
+@Slf4j
+public class ObjectCache {
+
+    private final CacheConfig cacheConfig;
+    private final MeterRegistry meterRegistry;
+    private final Tier memoryTier;
+    private final Tier diskTier;
+    private final Map<String, CacheFill> filling = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder bytesServed = new LongAdder();
+    private Path directory;
+
+    @Autowired
+    public ObjectCache(CacheConfig cacheConfig, MeterRegistry meterRegistry) {
+        this.cacheConfig = cacheConfig;
+        this.meterRegistry = meterRegistry;
+        this.memoryTier = new Tier("memory", cacheConfig.getMaxMemorySize().toBytes());
+        this.diskTier = new Tier("disk", cacheConfig.getMaxDiskSize().toBytes());
+    }
+
+    public boolean isEnabled() {
+        return cacheConfig.isEnabled();
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!isEnabled()) {
+            return;
+        }
+        directory = Paths.get(cacheConfig.getDirectory());
+        Files.createDirectories(directory);
+        // Entries do not survive a restart; clear what a previous run left behind.
+        try (DirectoryStream<Path> stale = Files.newDirectoryStream(directory, "object-*.cache")) {
+            for (Path file : stale) {
+                Files.deleteIfExists(file);
+            }
+        }
+        registerMetrics();
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        memoryTier.clear();
+        diskTier.clear();
+    }
+
+    /**
+     * Serves {@code key} from the cache when possible and otherwise from {@code origin}, filling the cache on
+     * the way for plain full downloads.
+     */
+    public FileDownload download(String key, DownloadOptions options,
+                                 BiFunction<String, DownloadOptions, FileDownload> origin) {
+        if (!isEnabled()) {
+            return origin.apply(key, options);
+        }
+        CachedObject cached = lookup(key);
+        if (cached != null && options.getIfMatch() != null && !options.getIfMatch().equals(cached.getETag())) {
+            // Let S3 decide the precondition against the current object.
+            cached = null;
+        }
+        try {
+            if (cached != null && isStale(cached)) {
+                FileDownload revalidated = origin.apply(key, DownloadOptions.builder().ifNoneMatch(cached.getETag()).build());
+                if (revalidated.isNotModified()) {
+                    cached.setValidatedAtMillis(System.currentTimeMillis());
+                } else {
+                    invalidate(key);
+                    cached = null;
+                    if (isPlain(options)) {
+                        misses.increment();
+                        return fill(key, revalidated);
+                    }
+                    closeQuietly(revalidated);
+                }
+            }
+            if (cached != null) {
+                hits.increment();
+                return serve(cached, options);
+            }
+            misses.increment();
+            FileDownload download = origin.apply(key, options);
+            return isPlain(options) ? fill(key, download) : download;
+        } catch (FileNotFoundException e) {
+            invalidate(key);
+            throw e;
+        }
+    }
+
+    public synchronized void invalidate(String key) {
+        CacheFill fill = filling.remove(key);
+        if (fill != null) {
+            fill.cancel();
+        }
+        memoryTier.remove(key);
+        diskTier.remove(key);
+    }
+
+    /**
+     * Drops every entry whose key starts with {@code prefix}, e.g. all files of a user.
+     */
+    public synchronized void invalidatePrefix(String prefix) {
+        filling.values().removeIf(fill -> {
+            if (fill.getKey().startsWith(prefix)) {
+                fill.cancel();
+                return true;
+            }
+            return false;
+        });
+        memoryTier.removeIf(prefix);
+        diskTier.removeIf(prefix);
+    }
+
+    synchronized void commit(CacheFill fill, CachedObject object) {
+        tierOf(fill).unreserve(fill.getLength());
+        if (!filling.remove(object.getKey(), fill)) {
+            // Invalidated while it was being filled.
+            discardFile(object);
+            return;
+        }
+        memoryTier.remove(object.getKey());
+        diskTier.remove(object.getKey());
+        (object.onDisk() ? diskTier : memoryTier).add(object);
+    }
+
+    synchronized void abandon(CacheFill fill) {
+        tierOf(fill).unreserve(fill.getLength());
+        filling.remove(fill.getKey(), fill);
+    }
+
+    private Tier tierOf(CacheFill fill) {
+        return fill.isInMemory() ? memoryTier : diskTier;
+    }
+
+    private synchronized boolean reserve(Tier tier, long length) {
+        return tier.tryReserve(length);
+    }
+
+    private synchronized void unreserve(Tier tier, long length) {
+        tier.unreserve(length);
+    }
+
+    private synchronized CachedObject lookup(String key) {
+        CachedObject cached = memoryTier.get(key);
+        return cached != null ? cached : diskTier.get(key);
+    }
+
+    private boolean isStale(CachedObject cached) {
+        return System.currentTimeMillis() - cached.getValidatedAtMillis() >= cacheConfig.getValidateAfter().toMillis();
+    }
+
+    private static boolean isPlain(DownloadOptions options) {
+        return options.getRange() == null && options.getIfMatch() == null
+                && options.getIfNoneMatch() == null && options.getIfModifiedSince() == null;
+    }
+
+    private FileDownload fill(String key, FileDownload download) {
+        Long length = download.getContentLength();
+        if (download.isNotModified() || download.isPartial() || length == null
+                || length > cacheConfig.getMaxObjectSize().toBytes() || length > Integer.MAX_VALUE) {
+            return download;
+        }
+        boolean inMemory = length <= cacheConfig.getMemoryObjectLimit().toBytes();
+        Tier tier = inMemory ? memoryTier : diskTier;
+        if (filling.containsKey(key)) {
+            // Another request is already filling this key.
+            return download;
+        }
+        if (!reserve(tier, length)) {
+            // Fills already in flight take up the budget; allocating more would exceed it.
+            return download;
+        }
+        CacheFill fill;
+        try {
+            fill = new CacheFill(this, key, download.getETag(), download.getContentType(), download.getLastModified(),
+                    download.getContentEncoding(), download.getDecodedLength(), length.intValue(), directory, inMemory);
+        } catch (IOException | OutOfMemoryError e) {
+            // allocateDirect fails with OutOfMemoryError once the JVM's direct memory limit is reached.
+            unreserve(tier, length);
+            log.warn("Error creating cache entry for key {}: {}", key, e.getMessage());
+            return download;
+        }
+        if (filling.putIfAbsent(key, fill) != null) {
+            fill.discard();
+            return download;
+        }
+        return download.withContent(fill::tee);
+    }
+
+    private FileDownload serve(CachedObject cached, DownloadOptions options) {
+        if (matchesIfNoneMatch(options.getIfNoneMatch(), cached.getETag())
+                || (options.getIfNoneMatch() == null && options.getIfModifiedSince() != null
+                && cached.getLastModified() != null
+                && !cached.getLastModified().isAfter(options.getIfModifiedSince()))) {
+            return FileDownload.notModified(cached.getKey(), cached.getETag());
+        }
+        int total = cached.length();
+        int first = 0;
+        int last = total - 1;
+        String contentRange = null;
+        if (options.getRange() != null) {
+            long[] bounds = parseRange(options.getRange(), total);
+            if (bounds == null) {
+                throw new RangeNotSatisfiableException("Range " + options.getRange() + " not satisfiable for key: " + cached.getKey());
+            }
+            first = (int) bounds[0];
+            last = (int) bounds[1];
+            contentRange = "bytes " + first + "-" + last + "/" + total;
+        }
+        int length = last - first + 1;
+        bytesServed.add(length);
+        return FileDownload.builder()
+                .key(cached.getKey())
+                .content(new ByteBufferInputStream(cached.slice(first, length)))
+                .contentLength((long) length)
+                .contentType(cached.getContentType())
+                .eTag(cached.getETag())
+                .lastModified(cached.getLastModified())
+                .contentRange(contentRange)
+                .contentEncoding(cached.getContentEncoding())
+                .decodedLength(cached.getDecodedLength())
+                .build();
+    }
+
+    private static boolean matchesIfNoneMatch(String ifNoneMatch, String eTag) {
+        if (ifNoneMatch == null || eTag == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(eTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Resolves a single {@code bytes=first-last}, {@code bytes=first-} or {@code bytes=-suffix} range against
+     * the object length; {@code null} when it is not satisfiable.
+     */
+    static long[] parseRange(String range, long total) {
+        String spec = range.substring(range.indexOf('=') + 1).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0 || total == 0) {
+            return null;
+        }
+        try {
+            if (dash == 0) {
+                long suffix = Long.parseLong(spec.substring(1));
+                return suffix == 0 ? null : new long[]{Math.max(0, total - suffix), total - 1};
+            }
+            long first = Long.parseLong(spec.substring(0, dash));
+            long last = dash == spec.length() - 1 ? total - 1 : Math.min(Long.parseLong(spec.substring(dash + 1)), total - 1);
+            return first >= total || last < first ? null : new long[]{first, last};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private void registerMetrics() {
+        FunctionCounter.builder("udss.cache.requests", hits, LongAdder::sum)
+                .tag("result", "hit")
+                .description("Downloads answered from the object cache")
+                .register(meterRegistry);
+        FunctionCounter.builder("udss.cache.requests", misses, LongAdder::sum)
+                .tag("result", "miss")
+                .description("Downloads that went to S3")
+                .register(meterRegistry);
+        Gauge.builder("udss.cache.hit.ratio", this, ObjectCache::hitRatio)
+                .description("Share of downloads answered from the object cache")
+                .register(meterRegistry);
+        FunctionCounter.builder("udss.cache.served", bytesServed, LongAdder::sum)
+                .baseUnit("bytes")
+                .description("Bytes served from the object cache instead of S3")
+                .register(meterRegistry);
+        for (Tier tier : new Tier[]{memoryTier, diskTier}) {
+            Gauge.builder("udss.cache.size", tier, Tier::bytes)
+                    .tag("tier", tier.name)
+                    .baseUnit("bytes")
+                    .register(meterRegistry);
+            Gauge.builder("udss.cache.reserved", tier, Tier::reserved)
+                    .tag("tier", tier.name)
+                    .baseUnit("bytes")
+                    .description("Bytes reserved by cache fills still in progress")
+                    .register(meterRegistry);
+            Gauge.builder("udss.cache.entries", tier, Tier::count)
+                    .tag("tier", tier.name)
+                    .register(meterRegistry);
+            FunctionCounter.builder("udss.cache.evictions", tier, Tier::evictions)
+                    .tag("tier", tier.name)
+                    .register(meterRegistry);
+        }
+    }
+
+    private double hitRatio() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    private static void discardFile(CachedObject object) {
+        if (object.onDisk()) {
+            try {
+                Files.deleteIfExists(object.getFile());
+            } catch (IOException e) {
+                log.warn("Error deleting cache file {}: {}", object.getFile(), e.getMessage());
+            }
+        }
+    }
+
+    private static void closeQuietly(FileDownload download) {
+        try {
+            download.close();
+        } catch (IOException e) {
+            log.warn("Error closing download of {}: {}", download.getKey(), e.getMessage());
+        }
+    }
+
+    /**
+     * One storage tier in access order. Its budget covers committed entries and the space reserved by fills
+     * in progress. Guarded by the enclosing cache's monitor; the gauges read the counters without it, which is
+     * fine for monitoring.
+     */
+    private static final class Tier {
+        private final String name;
+        private final long maxBytes;
+        private final LinkedHashMap<String, CachedObject> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private volatile long bytes;
+        private volatile long reserved;
+        private volatile long evictions;
+
+        Tier(String name, long maxBytes) {
+            this.name = name;
+            this.maxBytes = maxBytes;
+        }
+
+        CachedObject get(String key) {
+            return entries.get(key);
+        }
+
+        void add(CachedObject object) {
+            entries.put(object.getKey(), object);
+            bytes += object.length();
+            evictToBudget();
+        }
+
+        /**
+         * Sets aside {@code length} bytes for a fill, evicting least recently used entries to make room. Fails,
+         * reserving nothing, when fills already in progress leave no room for it.
+         */
+        boolean tryReserve(long length) {
+            if (reserved + length > maxBytes) {
+                return false;
+            }
+            reserved += length;
+            evictToBudget();
+            return true;
+        }
+
+        void unreserve(long length) {
+            reserved -= length;
+        }
+
+        private void evictToBudget() {
+            Iterator<CachedObject> eldest = entries.values().iterator();
+            while (bytes + reserved > maxBytes && eldest.hasNext()) {
+                CachedObject evicted = eldest.next();
+                eldest.remove();
+                release(evicted);
+                evictions++;
+            }
+        }
+
+        void remove(String key) {
+            CachedObject removed = entries.remove(key);
+            if (removed != null) {
+                release(removed);
+            }
+        }
+
+        void removeIf(String prefix) {
+            Iterator<CachedObject> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                CachedObject object = iterator.next();
+                if (object.getKey().startsWith(prefix)) {
+                    iterator.remove();
+                    release(object);
+                }
+            }
+        }
+
+        void clear() {
+            entries.values().forEach(this::release);
+            entries.clear();
+        }
+
+        private void release(CachedObject object) {
+            bytes -= object.length();
+            // Readers holding a slice keep the mapping alive; on POSIX the unlinked file stays readable too.
+            discardFile(object);
+        }
+
+        double bytes() {
+            return bytes;
+        }
+
+        double reserved() {
+            return reserved;
+        }
+
+        double count() {
+            return entries.size();
+        }
+
+        double evictions() {
+            return evictions;
+        }
+    }
+}
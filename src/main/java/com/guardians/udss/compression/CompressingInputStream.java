@@ -0,0 +1,99 @@
+package com.guardians.udss.compression;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Reads as the compressed form of a source stream. The source is compressed one chunk at a time as this stream
+ * is read, so only a chunk of input and the compressor's output for it are held in memory.
+ */
+public final class CompressingInputStream extends InputStream {
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final InputStream source;
+    private final OutputBuffer compressed = new OutputBuffer();
+    private final OutputStream compressor;
+    private final byte[] chunk = new byte[CHUNK_SIZE];
+    private int position;
+    private long sourceBytes;
+    private long compressedBytes;
+    private boolean finished;
+
+    CompressingInputStream(InputStream source, ContentEncoding encoding, int level) throws IOException {
+        this.source = source;
+        this.compressor = encoding.compress(compressed, level);
+    }
+
+    /**
+     * Uncompressed bytes consumed from the source so far; the original size once this stream is exhausted.
+     */
+    public long getSourceBytes() {
+        return sourceBytes;
+    }
+
+    /**
+     * Compressed bytes returned by this stream so far.
+     */
+    public long getCompressedBytes() {
+        return compressedBytes;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (position == compressed.size()) {
+            if (finished) {
+                return -1;
+            }
+            refill();
+        }
+        int count = Math.min(len, compressed.size() - position);
+        System.arraycopy(compressed.buffer(), position, b, off, count);
+        position += count;
+        compressedBytes += count;
+        return count;
+    }
+
+    private void refill() throws IOException {
+        compressed.reset();
+        position = 0;
+        int read = source.read(chunk);
+        if (read < 0) {
+            // Closing the compressor writes its trailer into the buffer.
+            compressor.close();
+            finished = true;
+        } else {
+            sourceBytes += read;
+            compressor.write(chunk, 0, read);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (!finished) {
+                finished = true;
+                compressor.close();
+            }
+        } finally {
+            source.close();
+        }
+    }
+
+    private static final class OutputBuffer extends ByteArrayOutputStream {
+        byte[] buffer() {
+            return buf;
+        }
+    }
+}
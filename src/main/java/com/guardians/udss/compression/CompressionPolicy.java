@@ -0,0 +1,81 @@
+package com.guardians.udss.compression;
+
+import com.guardians.udss.config.CompressionConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decides which uploads are stored compressed, and how, from {@code udss.compression.*}. Each rule maps a media
+ * type pattern such as {@code text/csv} or {@code text/*} to a coding; the first rule that includes the file's
+ * content type wins. Files without a matching rule, or smaller than {@code min-size}, are stored as uploaded.
+ */
+@Component
+@Slf4j
+public class CompressionPolicy {
+
+    private final CompressionConfig compressionConfig;
+    private final List<Rule> rules = new ArrayList<>();
+
+    @Autowired
+    public CompressionPolicy(CompressionConfig compressionConfig) {
+        this.compressionConfig = compressionConfig;
+        for (String rule : compressionConfig.getRules()) {
+            int separator = rule.lastIndexOf('=');
+            ContentEncoding encoding = separator > 0 ? ContentEncoding.fromToken(rule.substring(separator + 1)) : null;
+            if (encoding == null) {
+                throw new IllegalArgumentException("Invalid compression rule '" + rule + "', expected <media type>=gzip|zstd");
+            }
+            rules.add(new Rule(MediaType.parseMediaType(rule.substring(0, separator).trim()), encoding));
+        }
+    }
+
+    /**
+     * The coding to store a file with, or {@code null} to store it as is. {@code size} is negative when unknown,
+     * in which case the file is assumed to be large enough.
+     */
+    public ContentEncoding select(String contentType, long size) {
+        if (!compressionConfig.isEnabled() || contentType == null
+                || (size >= 0 && size < compressionConfig.getMinSize().toBytes())) {
+            return null;
+        }
+        MediaType mediaType;
+        try {
+            mediaType = MediaType.parseMediaType(contentType);
+        } catch (InvalidMediaTypeException e) {
+            log.debug("Not compressing upload with invalid content type {}", contentType);
+            return null;
+        }
+        for (Rule rule : rules) {
+            if (rule.mediaType.includes(mediaType)) {
+                return rule.encoding;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Wraps {@code source} so that reads return its content compressed with {@code encoding}.
+     */
+    public CompressingInputStream compress(InputStream source, ContentEncoding encoding) throws IOException {
+        int level = encoding == ContentEncoding.GZIP ? compressionConfig.getGzipLevel() : compressionConfig.getZstdLevel();
+        return new CompressingInputStream(source, encoding, level);
+    }
+
+    private static final class Rule {
+        private final MediaType mediaType;
+        private final ContentEncoding encoding;
+
+        Rule(MediaType mediaType, ContentEncoding encoding) {
+            this.mediaType = mediaType;
+            this.encoding = encoding;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.guardians.udss.compression;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The HTTP content codings objects can be stored with, named by their {@code Content-Encoding} token.
+ */
+public enum ContentEncoding {
+
+    GZIP("gzip") {
+        @Override
+        OutputStream compress(OutputStream out, int level) throws IOException {
+            return new GZIPOutputStream(out, BUFFER_SIZE) {
+                {
+                    def.setLevel(level);
+                }
+            };
+        }
+
+        @Override
+        InputStream newDecoder(InputStream in) throws IOException {
+            return new GZIPInputStream(in, BUFFER_SIZE);
+        }
+    },
+
+    ZSTD("zstd") {
+        @Override
+        OutputStream compress(OutputStream out, int level) throws IOException {
+            return new ZstdOutputStream(out, level);
+        }
+
+        @Override
+        InputStream newDecoder(InputStream in) throws IOException {
+            return new ZstdInputStream(in);
+        }
+    };
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String token;
+
+    ContentEncoding(String token) {
+        this.token = token;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    abstract OutputStream compress(OutputStream out, int level) throws IOException;
+
+    abstract InputStream newDecoder(InputStream in) throws IOException;
+
+    /**
+     * Wraps {@code in} so that reads return the decompressed content.
+     */
+    public InputStream decompress(InputStream in) {
+        try {
+            return newDecoder(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error reading " + token + " content", e);
+        }
+    }
+
+    /**
+     * The coding with the given {@code Content-Encoding} token, or {@code null} for identity and for codings this
+     * service does not produce.
+     */
+    public static ContentEncoding fromToken(String token) {
+        if (token == null) {
+            return null;
+        }
+        for (ContentEncoding encoding : values()) {
+            if (encoding.token.equalsIgnoreCase(token.trim())) {
+                return encoding;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Whether an {@code Accept-Encoding} header allows this coding, either by name or through {@code *}, and
+     * not with {@code q=0}. A missing header accepts nothing but identity here, so that clients which never
+     * asked for compression always get plain content.
+     */
+    public boolean isAcceptedBy(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Boolean wildcard = null;
+        for (String element : acceptEncoding.split(",")) {
+            String[] parts = element.split(";");
+            String coding = parts[0].trim();
+            boolean acceptable = true;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        acceptable = Double.parseDouble(parameter.substring(2)) > 0;
+                    } catch (NumberFormatException e) {
+                        acceptable = false;
+                    }
+                }
+            }
+            if (coding.equalsIgnoreCase(token)) {
+                return acceptable;
+            }
+            if (coding.equals("*")) {
+                wildcard = acceptable;
+            }
+        }
+        return Boolean.TRUE.equals(wildcard);
+    }
+}
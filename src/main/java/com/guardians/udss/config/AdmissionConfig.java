@@ -0,0 +1,47 @@
+package com.guardians.udss.config;
+
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+@Configuration
+@Data
+public class AdmissionConfig {
+    @Value("${udss.admission.enabled}")
+    private boolean enabled;
+    @Value("${udss.admission.per-user.requests-per-second}")
+    private double requestsPerSecond;
+    @Value("${udss.admission.per-user.request-burst}")
+    private int requestBurst;
+    @Value("${udss.admission.per-user.bytes-per-second}")
+    private DataSize bytesPerSecond;
+    @Value("${udss.admission.per-user.byte-burst}")
+    private DataSize byteBurst;
+    @Value("${udss.admission.concurrency.search}")
+    private int searchConcurrency;
+    @Value("${udss.admission.concurrency.download}")
+    private int downloadConcurrency;
+    @Value("${udss.admission.concurrency.upload}")
+    private int uploadConcurrency;
+    @Value("${udss.admission.concurrency.delete}")
+    private int deleteConcurrency;
+    @Value("${udss.admission.queue.search}")
+    private int searchQueue;
+    @Value("${udss.admission.queue.download}")
+    private int downloadQueue;
+    @Value("${udss.admission.queue.upload}")
+    private int uploadQueue;
+    @Value("${udss.admission.queue.delete}")
+    private int deleteQueue;
+    @Value("${udss.admission.max-wait}")
+    private Duration maxWait;
+    @Value("${udss.admission.retry-after}")
+    private Duration retryAfter;
+    @Value("${udss.admission.max-tracked-users}")
+    private int maxTrackedUsers;
+    @Value("${udss.admission.idle-sweep-interval}")
+    private Duration idleSweepInterval;
+}
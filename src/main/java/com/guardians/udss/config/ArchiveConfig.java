@@ -0,0 +1,20 @@
+package com.guardians.udss.config;
+
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.List;
+
+@Configuration
+@Data
+public class ArchiveConfig {
+    @Value("${udss.archive.prefetch}")
+    private int prefetch;
+    @Value("${udss.archive.prefetch-threads}")
+    private int prefetchThreads;
+    @Value("${udss.archive.deflate-level}")
+    private int deflateLevel;
+    @Value("${udss.archive.stored-types}")
+    private List<String> storedTypes;
+}
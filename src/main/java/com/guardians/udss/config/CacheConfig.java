@@ -0,0 +1,27 @@
+package com.guardians.udss.config;
+
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+@Configuration
+@Data
+public class CacheConfig {
+    @Value("${udss.cache.enabled}")
+    private boolean enabled;
+    @Value("${udss.cache.max-memory-size}")
+    private DataSize maxMemorySize;
+    @Value("${udss.cache.max-disk-size}")
+    private DataSize maxDiskSize;
+    @Value("${udss.cache.memory-object-limit}")
+    private DataSize memoryObjectLimit;
+    @Value("${udss.cache.max-object-size}")
+    private DataSize maxObjectSize;
+    @Value("${udss.cache.directory}")
+    private String directory;
+    @Value("${udss.cache.validate-after}")
+    private Duration validateAfter;
+}
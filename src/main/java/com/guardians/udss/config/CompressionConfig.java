@@ -0,0 +1,23 @@
+package com.guardians.udss.config;
+
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.util.List;
+
+@Configuration
+@Data
+public class CompressionConfig {
+    @Value("${udss.compression.enabled}")
+    private boolean enabled;
+    @Value("${udss.compression.min-size}")
+    private DataSize minSize;
+    @Value("${udss.compression.rules}")
+    private List<String> rules;
+    @Value("${udss.compression.gzip-level}")
+    private int gzipLevel;
+    @Value("${udss.compression.zstd-level}")
+    private int zstdLevel;
+}
@@ -0,0 +1,14 @@
+package com.guardians.udss.config;
+
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@Data
+public class DedupConfig {
+    @Value("${udss.dedup.enabled}")
+    private boolean enabled;
+    @Value("${udss.dedup.prefix}")
+    private String prefix;
+}
@@ -0,0 +1,20 @@
+package com.guardians.udss.config;
+
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@Data
+public class IndexConfig {
+    @Value("${udss.index.enabled}")
+    private boolean enabled;
+    @Value("${udss.index.refresh-after}")
+    private Duration refreshAfter;
+    @Value("${udss.index.snapshot-path:}")
+    private String snapshotPath;
+    @Value("${udss.index.snapshot-interval}")
+    private Duration snapshotInterval;
+}
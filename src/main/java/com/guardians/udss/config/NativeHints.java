@@ -0,0 +1,35 @@
+package com.guardians.udss.config;
+
+import com.guardians.udss.response.ApiResponse;
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.ExecutableMode;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.TypeReference;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executors;
+
+/**
+ * What a GraalVM native image of the service needs beyond what Spring AOT infers from the bean definitions and
+ * controllers: the reflective virtual-thread factory lookup, the error body written by hand for downloads, and
+ * the zstd-jni library with the fields its native code reads and writes.
+ */
+public class NativeHints implements RuntimeHintsRegistrar {
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        Method virtualThreadExecutor = ReflectionUtils.findMethod(Executors.class, "newVirtualThreadPerTaskExecutor");
+        if (virtualThreadExecutor != null) {
+            hints.reflection().registerMethod(virtualThreadExecutor, ExecutableMode.INVOKE);
+        }
+        new BindingReflectionHintsRegistrar().registerReflectionHints(hints.reflection(), ApiResponse.class);
+
+        hints.resources().registerPattern("*/*/libzstd-jni-*");
+        for (String stream : new String[]{"ZstdInputStreamNoFinalizer", "ZstdOutputStreamNoFinalizer"}) {
+            hints.jni().registerType(TypeReference.of("com.github.luben.zstd." + stream), MemberCategory.DECLARED_FIELDS);
+        }
+    }
+}
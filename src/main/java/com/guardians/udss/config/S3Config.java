@@ -1,15 +1,29 @@
 package com.guardians.udss.config;
 
-import com.amazonaws.auth.AWSStaticCredentialsProvider;
-import com.amazonaws.auth.BasicAWSCredentials;
-import com.amazonaws.services.s3.AmazonS3;
-import com.amazonaws.services.s3.AmazonS3ClientBuilder;
-import jakarta.validation.Valid;
+import com.guardians.udss.metrics.S3MetricsInterceptor;
 import lombok.Data;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.util.StringUtils;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.awscore.retry.AwsRetryStrategy;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.core.retry.RetryMode;
+import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.http.crt.AwsCrtHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+
+import java.net.URI;
+import java.time.Duration;
 
 @Configuration
 @Data
@@ -23,14 +37,165 @@ public class S3Config {
 
     @Value("${aws.s3.region}")
     private String region;
+    @Value("${aws.s3.endpoint:}")
+    private String endpoint;
+    @Value("${aws.s3.path-style-access}")
+    private boolean pathStyleAccess;
+
+    @Value("${aws.s3.multipart.threshold}")
+    private DataSize multipartThreshold;
+    @Value("${aws.s3.multipart.part-size}")
+    private DataSize multipartPartSize;
+    @Value("${aws.s3.multipart.parallelism}")
+    private int multipartParallelism;
+    @Value("${aws.s3.multipart.max-part-retries}")
+    private int multipartMaxPartRetries;
+
+    @Value("${aws.s3.batch-delete.parallelism}")
+    private int batchDeleteParallelism;
+
+    @Value("${aws.s3.batch-upload.parallelism}")
+    private int batchUploadParallelism;
+    @Value("${aws.s3.batch-upload.buffer-size}")
+    private DataSize batchUploadBufferSize;
+
+    @Value("${aws.s3.presign.expiry}")
+    private Duration presignExpiry;
+
+    @Value("${aws.s3.http.client}")
+    private String httpClient;
+    @Value("${aws.s3.http.max-connections}")
+    private int maxConnections;
+    @Value("${aws.s3.http.connection-acquisition-timeout}")
+    private Duration connectionAcquisitionTimeout;
+    @Value("${aws.s3.http.connection-timeout}")
+    private Duration connectionTimeout;
+    @Value("${aws.s3.http.socket-timeout}")
+    private Duration socketTimeout;
+    @Value("${aws.s3.http.connection-ttl}")
+    private Duration connectionTtl;
+    @Value("${aws.s3.http.connection-max-idle-time}")
+    private Duration connectionMaxIdleTime;
+    @Value("${aws.s3.http.tcp-keep-alive}")
+    private boolean tcpKeepAlive;
+
+    @Value("${aws.s3.retry.mode}")
+    private RetryMode retryMode;
+    @Value("${aws.s3.retry.max-attempts}")
+    private int retryMaxAttempts;
+
+    @Value("${aws.s3.concurrency.search}")
+    private int searchConcurrency;
+    @Value("${aws.s3.concurrency.download}")
+    private int downloadConcurrency;
+    @Value("${aws.s3.concurrency.upload}")
+    private int uploadConcurrency;
+    @Value("${aws.s3.concurrency.delete}")
+    private int deleteConcurrency;
+    @Value("${aws.s3.concurrency.acquire-timeout}")
+    private Duration concurrencyAcquireTimeout;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    @Value("${aws.s3.async.target-throughput-gbps}")
+    private double asyncTargetThroughputGbps;
+    @Value("${aws.s3.async.max-concurrency}")
+    private int asyncMaxConcurrency;
+    @Value("${aws.s3.async.io-threads}")
+    private int asyncIoThreads;
+
+    /**
+     * The HTTP client behind {@link #s3Client}. Apache gives a classic blocking connection pool; CRT uses the
+     * native AWS Common Runtime and has no socket read timeout, so a minimum-throughput health check stands in
+     * for it.
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "udss.storage", name = "backend", havingValue = StorageConfig.S3, matchIfMissing = true)
+    public SdkHttpClient s3HttpClient() {
+        if ("crt".equalsIgnoreCase(httpClient)) {
+            AwsCrtHttpClient.Builder crt = AwsCrtHttpClient.builder()
+                    .maxConcurrency(maxConnections)
+                    .connectionTimeout(connectionTimeout)
+                    .connectionMaxIdleTime(connectionMaxIdleTime)
+                    .connectionHealthConfiguration(health -> health
+                            .minimumThroughputInBps(1L)
+                            .minimumThroughputTimeout(socketTimeout));
+            if (tcpKeepAlive) {
+                // Without a keep-alive configuration the CRT client sends no keep-alive probes.
+                crt.tcpKeepAliveConfiguration(keepAlive -> keepAlive
+                        .keepAliveInterval(Duration.ofSeconds(30))
+                        .keepAliveTimeout(Duration.ofSeconds(10)));
+            }
+            return crt.build();
+        }
+        return ApacheHttpClient.builder()
+                .maxConnections(maxConnections)
+                .connectionAcquisitionTimeout(connectionAcquisitionTimeout)
+                .connectionTimeout(connectionTimeout)
+                .socketTimeout(socketTimeout)
+                .connectionTimeToLive(connectionTtl)
+                .connectionMaxIdleTime(connectionMaxIdleTime)
+                .tcpKeepAlive(tcpKeepAlive)
+                .build();
+    }
+
+    /**
+     * The client behind the blocking services. Its {@code apiCallTimeout} is the write deadline; reads made
+     * through {@link com.guardians.udss.resilience.S3CallGuard} override it with the shorter read deadline.
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "udss.storage", name = "backend", havingValue = StorageConfig.S3, matchIfMissing = true)
+    public S3Client s3Client(SdkHttpClient s3HttpClient, S3MetricsInterceptor s3MetricsInterceptor,
+                             S3ResilienceConfig s3ResilienceConfig) {
+        return S3Client.builder()
+                .region(Region.of(region))
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKey, secretKey)))
+                .httpClient(s3HttpClient)
+                .endpointOverride(endpointUri())
+                .forcePathStyle(pathStyleAccess)
+                .overrideConfiguration(ClientOverrideConfiguration.builder()
+                        .retryStrategy(AwsRetryStrategy.forRetryMode(retryMode).toBuilder()
+                                .maxAttempts(retryMaxAttempts)
+                                .build())
+                        .apiCallTimeout(s3ResilienceConfig.getWriteDeadline())
+                        .addExecutionInterceptor(s3MetricsInterceptor)
+                        .build())
+                .build();
+    }
 
     @Bean
-    public AmazonS3 amazonS3() {
-        BasicAWSCredentials awsCredentials = new BasicAWSCredentials(accessKey, secretKey);
-        return AmazonS3ClientBuilder.standard()
-                .withRegion(region)
-                .withCredentials(new AWSStaticCredentialsProvider(awsCredentials))
+    @ConditionalOnProperty(prefix = "udss.storage", name = "backend", havingValue = StorageConfig.S3, matchIfMissing = true)
+    public S3Presigner s3Presigner() {
+        return S3Presigner.builder()
+                .region(Region.of(region))
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKey, secretKey)))
+                .endpointOverride(endpointUri())
+                .serviceConfiguration(S3Configuration.builder().pathStyleAccessEnabled(pathStyleAccess).build())
                 .build();
     }
 
+    @Bean
+    @ConditionalOnProperty(prefix = "aws.s3.async", name = "enabled", havingValue = "true")
+    public S3AsyncClient s3AsyncClient() {
+        return S3AsyncClient.crtBuilder()
+                .region(Region.of(region))
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKey, secretKey)))
+                .endpointOverride(endpointUri())
+                .forcePathStyle(pathStyleAccess)
+                .targetThroughputInGbps(asyncTargetThroughputGbps)
+                .maxConcurrency(asyncMaxConcurrency)
+                .minimumPartSizeInBytes(multipartPartSize.toBytes())
+                .thresholdInBytes(multipartThreshold.toBytes())
+                .retryConfiguration(retry -> retry.numRetries(Math.max(0, retryMaxAttempts - 1)))
+                .build();
+    }
+
+    /**
+     * The S3-compatible endpoint to use instead of AWS, such as MinIO or a local stand-in; {@code null} when unset.
+     */
+    private URI endpointUri() {
+        return StringUtils.hasText(endpoint) ? URI.create(endpoint) : null;
+    }
+
 }
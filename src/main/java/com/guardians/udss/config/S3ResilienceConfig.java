@@ -0,0 +1,42 @@
+package com.guardians.udss.config;
+
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@Data
+public class S3ResilienceConfig {
+    @Value("${aws.s3.deadline.read}")
+    private Duration readDeadline;
+    @Value("${aws.s3.deadline.write}")
+    private Duration writeDeadline;
+
+    @Value("${aws.s3.hedging.enabled}")
+    private boolean hedgingEnabled;
+    @Value("${aws.s3.hedging.percentile}")
+    private double hedgingPercentile;
+    @Value("${aws.s3.hedging.min-delay}")
+    private Duration hedgingMinDelay;
+    @Value("${aws.s3.hedging.max-delay}")
+    private Duration hedgingMaxDelay;
+    @Value("${aws.s3.hedging.max-ratio}")
+    private double hedgingMaxRatio;
+    @Value("${aws.s3.hedging.threads}")
+    private int hedgingThreads;
+
+    @Value("${aws.s3.circuit-breaker.enabled}")
+    private boolean circuitBreakerEnabled;
+    @Value("${aws.s3.circuit-breaker.failure-rate-threshold}")
+    private int circuitBreakerFailureRateThreshold;
+    @Value("${aws.s3.circuit-breaker.window}")
+    private int circuitBreakerWindow;
+    @Value("${aws.s3.circuit-breaker.minimum-calls}")
+    private int circuitBreakerMinimumCalls;
+    @Value("${aws.s3.circuit-breaker.open-duration}")
+    private Duration circuitBreakerOpenDuration;
+    @Value("${aws.s3.circuit-breaker.half-open-calls}")
+    private int circuitBreakerHalfOpenCalls;
+}
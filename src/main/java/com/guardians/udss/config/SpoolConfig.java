@@ -0,0 +1,31 @@
+package com.guardians.udss.config;
+
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+@Configuration
+@Data
+public class SpoolConfig {
+    @Value("${udss.spool.enabled}")
+    private boolean enabled;
+    @Value("${udss.spool.directory}")
+    private String directory;
+    @Value("${udss.spool.fsync}")
+    private boolean fsync;
+    @Value("${udss.spool.segment-size}")
+    private DataSize segmentSize;
+    @Value("${udss.spool.max-size}")
+    private DataSize maxSize;
+    @Value("${udss.spool.upload-parallelism}")
+    private int uploadParallelism;
+    @Value("${udss.spool.batch-size}")
+    private int batchSize;
+    @Value("${udss.spool.retry.initial-delay}")
+    private Duration retryInitialDelay;
+    @Value("${udss.spool.retry.max-delay}")
+    private Duration retryMaxDelay;
+}
@@ -0,0 +1,12 @@
+package com.guardians.udss.config;
+
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@Data
+public class StartupConfig {
+    @Value("${udss.startup.warm-up}")
+    private boolean warmUp;
+}
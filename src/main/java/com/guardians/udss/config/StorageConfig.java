@@ -0,0 +1,25 @@
+package com.guardians.udss.config;
+
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+@Configuration
+@Data
+public class StorageConfig {
+    public static final String S3 = "s3";
+    public static final String LOCAL = "local";
+
+    @Value("${udss.storage.backend}")
+    private String backend;
+
+    @Value("${udss.storage.local.root}")
+    private String localRoot;
+    @Value("${udss.storage.local.fsync}")
+    private boolean localFsync;
+    @Value("${udss.storage.local.batch-upload.parallelism}")
+    private int localBatchUploadParallelism;
+    @Value("${udss.storage.local.batch-upload.buffer-size}")
+    private DataSize localBatchUploadBufferSize;
+}
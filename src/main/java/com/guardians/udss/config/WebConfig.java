@@ -0,0 +1,27 @@
+package com.guardians.udss.config;
+
+import com.guardians.udss.admission.AdmissionInterceptor;
+import com.guardians.udss.controller.ReservedNameInterceptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+
+    private final ReservedNameInterceptor reservedNameInterceptor;
+    private final AdmissionInterceptor admissionInterceptor;
+
+    @Autowired
+    public WebConfig(ReservedNameInterceptor reservedNameInterceptor, AdmissionInterceptor admissionInterceptor) {
+        this.reservedNameInterceptor = reservedNameInterceptor;
+        this.admissionInterceptor = admissionInterceptor;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(reservedNameInterceptor).addPathPatterns("/api/files/**", "/api/async/files/**");
+        registry.addInterceptor(admissionInterceptor).addPathPatterns("/api/files/**");
+    }
+}
@@ -0,0 +1,75 @@
+package com.guardians.udss.controller;
+
+import com.guardians.udss.admission.AdmissionControlled;
+import com.guardians.udss.admission.AdmissionInterceptor;
+import com.guardians.udss.archive.ZipArchiveStreamer;
+import com.guardians.udss.model.OperationType;
+import io.swagger.v3.oas.annotations.Operation;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * ZIP downloads of several files, or all files, of a user. The archive is written as it is read from storage,
+ * so its size is not known up front and the response is sent chunked.
+ */
+@RestController
+@Slf4j
+@RequestMapping("/api/files/archive")
+public class ArchiveController {
+
+    private static final MediaType APPLICATION_ZIP = MediaType.parseMediaType("application/zip");
+
+    private final ZipArchiveStreamer archiveStreamer;
+
+    @Autowired
+    public ArchiveController(ZipArchiveStreamer archiveStreamer) {
+        this.archiveStreamer = archiveStreamer;
+    }
+
+    @Operation(summary = "Download the named files of a user, or all of them if none are named, as a ZIP archive")
+    @AdmissionControlled(OperationType.DOWNLOAD)
+    @GetMapping
+    public ResponseEntity<StreamingResponseBody> downloadArchive(
+            @RequestParam String userName,
+            @RequestParam(required = false) List<String> fileNames,
+            HttpServletRequest request) {
+        return archive(userName, fileNames, request);
+    }
+
+    @Operation(summary = "Download the files named in the request body as a ZIP archive")
+    @AdmissionControlled(OperationType.DOWNLOAD)
+    @PostMapping
+    public ResponseEntity<StreamingResponseBody> downloadArchiveOf(
+            @RequestParam String userName,
+            @RequestBody List<String> fileNames,
+            HttpServletRequest request) {
+        return archive(userName, fileNames, request);
+    }
+
+    private ResponseEntity<StreamingResponseBody> archive(String userName, List<String> fileNames, HttpServletRequest request) {
+        StreamingResponseBody body = out -> {
+            try {
+                long written = archiveStreamer.write(userName, fileNames, out);
+                request.setAttribute(AdmissionInterceptor.RESPONSE_BYTES_ATTRIBUTE, written);
+            } catch (Exception e) {
+                // The status line is long gone; the client sees a truncated archive.
+                log.error("Error streaming archive for user {}: {}", userName, e.getMessage());
+                throw e;
+            }
+        };
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(APPLICATION_ZIP);
+        headers.setContentDisposition(ContentDisposition.attachment().filename(userName + ".zip", StandardCharsets.UTF_8).build());
+        return ResponseEntity.ok().headers(headers).body(body);
+    }
+}
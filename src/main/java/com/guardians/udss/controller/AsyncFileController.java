@@ -0,0 +1,130 @@
+package com.guardians.udss.controller;
+
+import com.guardians.udss.admission.AdmissionControlled;
+import com.guardians.udss.exception.PreconditionFailedException;
+import com.guardians.udss.exception.RangeNotSatisfiableException;
+import com.guardians.udss.model.OperationType;
+import com.guardians.udss.response.ApiResponse;
+import com.guardians.udss.services.S3AsyncFileService;
+import io.swagger.v3.oas.annotations.Operation;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Same operations as {@link FileController}, served from {@link S3AsyncFileService}. Handlers return
+ * {@link CompletableFuture}s, so no servlet thread is held while S3 is working. Only registered when
+ * {@code aws.s3.async.enabled=true}; multi-range downloads fall back to the full body here.
+ */
+@RestController
+@Slf4j
+@RequestMapping("/api/async/files")
+@ConditionalOnProperty(prefix = "aws.s3.async", name = "enabled", havingValue = "true")
+public class AsyncFileController {
+
+    private final S3AsyncFileService s3AsyncFileService;
+
+    @Autowired
+    public AsyncFileController(S3AsyncFileService s3AsyncFileService) {
+        this.s3AsyncFileService = s3AsyncFileService;
+    }
+
+    @Operation(summary = "Upload a file to the S3 bucket for a user without blocking a request thread")
+    @AdmissionControlled(OperationType.UPLOAD)
+    @PostMapping(value = "/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public CompletableFuture<ResponseEntity<ApiResponse<String>>> uploadFile(
+            @RequestParam String userName,
+            @RequestPart("file") MultipartFile file) {
+        return s3AsyncFileService.uploadFile(userName, file).handle((fileKey, error) -> {
+            if (error != null) {
+                log.error("Error uploading file for user {}: {}", userName, unwrap(error).getMessage());
+                ApiResponse<String> response = new ApiResponse<>(HttpStatus.INTERNAL_SERVER_ERROR.value(), "Failed to upload file. Please try again.", null);
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+            }
+            log.info("File uploaded successfully for user: {}", userName);
+            ApiResponse<String> response = new ApiResponse<>(HttpStatus.CREATED.value(), "File uploaded successfully", fileKey);
+            return ResponseEntity.status(HttpStatus.CREATED).body(response);
+        });
+    }
+
+    @Operation(summary = "Search files for a user in the S3 bucket without blocking a request thread")
+    @AdmissionControlled(OperationType.SEARCH)
+    @GetMapping("/search")
+    public CompletableFuture<ResponseEntity<ApiResponse<List<String>>>> searchFiles(
+            @RequestParam String userName,
+            @RequestParam String searchTerm) {
+        return s3AsyncFileService.searchFiles(userName, searchTerm).handle((files, error) -> {
+            if (error != null) {
+                log.error("Error searching files for user {}: {}", userName, unwrap(error).getMessage());
+                ApiResponse<List<String>> response = new ApiResponse<>(HttpStatus.INTERNAL_SERVER_ERROR.value(), "Failed to search files. Please try again.", null);
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+            }
+            if (files.isEmpty()) {
+                ApiResponse<List<String>> response = new ApiResponse<>(HttpStatus.NOT_FOUND.value(), "No files found matching the search term.", null);
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+            }
+            ApiResponse<List<String>> response = new ApiResponse<>(HttpStatus.OK.value(), "Files retrieved successfully", files);
+            return ResponseEntity.ok(response);
+        });
+    }
+
+    @Operation(summary = "Download a specific file from S3 for a user without blocking a request thread")
+    @AdmissionControlled(OperationType.DOWNLOAD)
+    @GetMapping("/download")
+    public CompletableFuture<ResponseEntity<StreamingResponseBody>> downloadFile(
+            @RequestParam String userName,
+            @RequestParam String fileName,
+            @RequestHeader HttpHeaders requestHeaders) {
+        String key = userName + "/" + fileName;
+        List<HttpRange> ranges = DownloadResponses.parseRanges(requestHeaders);
+
+        // Several ranges are answered with the whole file here; only the blocking endpoint builds multipart bodies.
+        List<HttpRange> requested = ranges.size() > 1 ? List.of() : ranges;
+        return s3AsyncFileService.downloadFile(key, DownloadResponses.toOptions(requestHeaders, requested))
+                .thenApply(download -> download.isNotModified()
+                        ? DownloadResponses.notModified(download)
+                        : DownloadResponses.single(download, fileName))
+                .exceptionally(error -> {
+                    Throwable cause = unwrap(error);
+                    if (cause instanceof RangeNotSatisfiableException) {
+                        return DownloadResponses.error(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE, "Requested range not satisfiable.");
+                    }
+                    if (cause instanceof PreconditionFailedException) {
+                        return DownloadResponses.error(HttpStatus.PRECONDITION_FAILED, "Precondition failed.");
+                    }
+                    log.error("Error downloading file for user {}: {}", userName, cause.getMessage());
+                    return DownloadResponses.error(HttpStatus.NOT_FOUND, "File not found.");
+                });
+    }
+
+    @Operation(summary = "Delete a specific file from S3 for a user without blocking a request thread")
+    @AdmissionControlled(OperationType.DELETE)
+    @DeleteMapping("/delete")
+    public CompletableFuture<ResponseEntity<ApiResponse<String>>> deleteFile(@RequestParam String userName, @RequestParam String fileName) {
+        return s3AsyncFileService.deleteFile(userName, fileName).handle((ignored, error) -> {
+            if (error != null) {
+                log.error("Error deleting file for user {}: {}", userName, unwrap(error).getMessage());
+                ApiResponse<String> response = new ApiResponse<>(HttpStatus.NOT_FOUND.value(), "Error deleting file", null);
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+            }
+            ApiResponse<String> response = new ApiResponse<>(HttpStatus.NO_CONTENT.value(), "File deleted successfully", null);
+            return ResponseEntity.ok(response);
+        });
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+}
@@ -0,0 +1,187 @@
+package com.guardians.udss.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.guardians.udss.model.DownloadOptions;
+import com.guardians.udss.model.FileDownload;
+import com.guardians.udss.response.ApiResponse;
+import com.guardians.udss.util.BufferPool;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiFunction;
+
+/**
+ * Builds streaming HTTP responses for downloads: full 200 bodies, single-range 206 bodies, multi-range
+ * {@code multipart/byteranges} bodies and 304 answers to conditional requests.
+ */
+@Slf4j
+final class DownloadResponses {
+
+    private static final BufferPool DOWNLOAD_BUFFERS = new BufferPool(64 * 1024, 512);
+    private static final String BYTES_UNIT = "bytes=";
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+            .configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+
+    private DownloadResponses() {
+    }
+
+    /**
+     * Translates the request's {@code Range}, {@code If-Match}, {@code If-None-Match}, {@code If-Modified-Since}
+     * and {@code Accept-Encoding} headers into download options. Only the first of several ranges is requested; the
+     * others are fetched by {@link #multipart}. A malformed {@code Range} header is ignored, as RFC 9110 allows.
+     */
+    static DownloadOptions toOptions(HttpHeaders requestHeaders, List<HttpRange> ranges) {
+        DownloadOptions.DownloadOptionsBuilder options = DownloadOptions.builder();
+        if (!ranges.isEmpty()) {
+            options.range(BYTES_UNIT + ranges.get(0));
+        }
+        options.ifMatch(requestHeaders.getFirst(HttpHeaders.IF_MATCH));
+        String ifNoneMatch = requestHeaders.getFirst(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            options.ifNoneMatch(ifNoneMatch);
+        } else if (requestHeaders.getIfModifiedSince() >= 0) {
+            options.ifModifiedSince(Instant.ofEpochMilli(requestHeaders.getIfModifiedSince()));
+        }
+        options.acceptEncoding(requestHeaders.getFirst(HttpHeaders.ACCEPT_ENCODING));
+        return options.build();
+    }
+
+    static List<HttpRange> parseRanges(HttpHeaders requestHeaders) {
+        try {
+            return requestHeaders.getRange();
+        } catch (IllegalArgumentException e) {
+            log.warn("Ignoring malformed Range header: {}", e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    static ResponseEntity<StreamingResponseBody> notModified(FileDownload download) {
+        ResponseEntity.HeadersBuilder<?> builder = ResponseEntity.status(HttpStatus.NOT_MODIFIED);
+        if (download.getETag() != null) {
+            builder.eTag(download.getETag());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Error answer for a download endpoint. The body is still a {@link StreamingResponseBody} so the handler
+     * method can declare a single, concrete return type that Spring MVC routes to its streaming handler.
+     */
+    static ResponseEntity<StreamingResponseBody> error(HttpStatus status, String message) {
+        ApiResponse<String> response = new ApiResponse<>(status.value(), message, null);
+        return ResponseEntity.status(status)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(outputStream -> OBJECT_MAPPER.writeValue(outputStream, response));
+    }
+
+    static ResponseEntity<StreamingResponseBody> single(FileDownload download, String fileName) {
+        HttpHeaders headers = baseHeaders(download, fileName);
+        headers.setContentType(contentType(download));
+        if (download.getContentLength() != null) {
+            headers.setContentLength(download.getContentLength());
+        }
+        HttpStatus status = HttpStatus.OK;
+        if (download.isPartial()) {
+            headers.set(HttpHeaders.CONTENT_RANGE, download.getContentRange());
+            status = HttpStatus.PARTIAL_CONTENT;
+        }
+        StreamingResponseBody body = outputStream -> {
+            try (download) {
+                long bytes = copy(download, outputStream);
+                log.info("Streamed {} bytes of {}", bytes, download.getKey());
+            }
+        };
+        return ResponseEntity.status(status).headers(headers).body(body);
+    }
+
+    /**
+     * Streams every requested range as one part of a {@code multipart/byteranges} body. The first range is
+     * already open as a partial download; the remaining ones are fetched one at a time through {@code rangeFetcher}, pinned to the
+     * first response's ETag so all parts come from the same object version.
+     */
+    static ResponseEntity<StreamingResponseBody> multipart(FileDownload first, String fileName, List<HttpRange> ranges,
+                                                          BiFunction<String, String, FileDownload> rangeFetcher) {
+        String partContentType = contentType(first).toString();
+        String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+
+        HttpHeaders headers = baseHeaders(first, fileName);
+        headers.setContentType(MediaType.parseMediaType("multipart/byteranges; boundary=" + boundary));
+
+        StreamingResponseBody body = outputStream -> {
+            FileDownload part = first;
+            for (int i = 0; i < ranges.size(); i++) {
+                if (i > 0) {
+                    part = rangeFetcher.apply(BYTES_UNIT + ranges.get(i), first.getETag());
+                }
+                try (FileDownload current = part) {
+                    writeAscii(outputStream, "\r\n--" + boundary + "\r\n"
+                            + HttpHeaders.CONTENT_TYPE + ": " + partContentType + "\r\n"
+                            + HttpHeaders.CONTENT_RANGE + ": " + current.getContentRange() + "\r\n\r\n");
+                    copy(current, outputStream);
+                }
+            }
+            writeAscii(outputStream, "\r\n--" + boundary + "--\r\n");
+        };
+        return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT).headers(headers).body(body);
+    }
+
+    private static HttpHeaders baseHeaders(FileDownload download, String fileName) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+        if (download.getETag() != null) {
+            headers.setETag(download.getETag());
+        }
+        if (download.getLastModified() != null) {
+            headers.setLastModified(download.getLastModified());
+        }
+        if (download.getContentEncoding() != null) {
+            headers.set(HttpHeaders.CONTENT_ENCODING, download.getContentEncoding());
+        }
+        if (download.isCompressed()) {
+            // The body depends on Accept-Encoding, so caches must not hand one form to clients asking for the other.
+            headers.setVary(List.of(HttpHeaders.ACCEPT_ENCODING));
+        }
+        headers.setContentDisposition(ContentDisposition.attachment().filename(fileName, StandardCharsets.UTF_8).build());
+        return headers;
+    }
+
+    private static MediaType contentType(FileDownload download) {
+        return download.getContentType() != null
+                ? MediaType.parseMediaType(download.getContentType())
+                : MediaType.APPLICATION_OCTET_STREAM;
+    }
+
+    static long copy(FileDownload download, OutputStream outputStream) throws IOException {
+        byte[] buffer;
+        try {
+            buffer = DOWNLOAD_BUFFERS.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a download buffer");
+        }
+        try {
+            return download.transferTo(outputStream, buffer);
+        } finally {
+            DOWNLOAD_BUFFERS.release(buffer);
+        }
+    }
+
+    private static void writeAscii(OutputStream outputStream, String text) throws IOException {
+        outputStream.write(text.getBytes(StandardCharsets.US_ASCII));
+    }
+}
@@ -1,32 +1,58 @@
 package com.guardians.udss.controller;
 
+import com.guardians.udss.admission.AdmissionControlled;
+import com.guardians.udss.exception.OperationRejectedException;
+import com.guardians.udss.exception.PreconditionFailedException;
+import com.guardians.udss.exception.RangeNotSatisfiableException;
+import com.guardians.udss.model.DeleteResult;
+import com.guardians.udss.model.DownloadOptions;
+import com.guardians.udss.model.FileDownload;
+import com.guardians.udss.model.OperationType;
+import com.guardians.udss.model.SearchPage;
+import com.guardians.udss.model.UploadResult;
 import com.guardians.udss.response.ApiResponse;
+import com.guardians.udss.services.BatchUpload;
 import com.guardians.udss.services.S3FileService;
-import com.guardians.udss.services.S3FileServiceImpl;
+import com.guardians.udss.util.MultipartReader;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
 import io.swagger.v3.oas.annotations.Operation;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
 import java.util.List;
+import java.util.stream.Stream;
 
 @RestController
 @Slf4j
 @RequestMapping("/api/files")
 public class FileController {
 
+    static final String NEXT_TOKEN_HEADER = "X-Next-Token";
+    private static final String NDJSON_VALUE = "application/x-ndjson";
+    private static final int MAX_SEARCH_PAGE_SIZE = 1000;
+    private static final int SEARCH_STREAM_FLUSH_INTERVAL = 500;
+
     private final S3FileService s3FileService;
 
     @Autowired
-    public FileController(S3FileServiceImpl s3FileService) {
+    public FileController(S3FileService s3FileService) {
         this.s3FileService = s3FileService;
     }
 
     @Operation(summary = "Upload a file to the S3 bucket for a user")
+    @AdmissionControlled(OperationType.UPLOAD)
     @PostMapping(value = "/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     public ResponseEntity<ApiResponse<String>> uploadFile(
             @RequestParam String userName,
@@ -36,6 +62,8 @@ public class FileController {
             log.info("File uploaded successfully for user: {}", userName);
             ApiResponse<String> response = new ApiResponse<>(HttpStatus.CREATED.value(), "File uploaded successfully", fileKey);
             return ResponseEntity.status(HttpStatus.CREATED).body(response);
+        } catch (OperationRejectedException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Error uploading file for user {}: {}", userName, e.getMessage());
             ApiResponse<String> response = new ApiResponse<>(HttpStatus.INTERNAL_SERVER_ERROR.value(), "Failed to upload file. Please try again.", null);
@@ -43,19 +71,83 @@ public class FileController {
         }
     }
 
+    /**
+     * Parses the multipart body as a stream and hands each file to the batch as soon as its part is read, so
+     * the request is never spooled to disk. {@code userName} is a path variable because reading a request
+     * parameter would make the container parse, and buffer, the whole multipart body first.
+     */
+    @Operation(summary = "Upload many files to the S3 bucket for a user in one multipart request")
+    @AdmissionControlled(OperationType.UPLOAD)
+    @PostMapping(value = "/upload/batch/{userName}", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<ApiResponse<List<UploadResult>>> uploadFiles(
+            @PathVariable String userName,
+            HttpServletRequest request) {
+        BatchUpload batch = s3FileService.startBatchUpload(userName);
+        try {
+            MultipartReader parts = new MultipartReader(request.getInputStream(), MultipartReader.boundary(request.getContentType()));
+            for (MultipartReader.Part part = parts.next(); part != null; part = parts.next()) {
+                String name = part.getFilename();
+                if (name == null || name.isEmpty()) {
+                    continue;
+                }
+                try (InputStream content = part.getInputStream()) {
+                    batch.add(name, part.getContentType(), content);
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            log.error("Error reading batch upload for user {}: {}", userName, e.getMessage());
+            ApiResponse<List<UploadResult>> response = new ApiResponse<>(HttpStatus.BAD_REQUEST.value(), "Failed to read multipart request.", batch.finish());
+            return ResponseEntity.badRequest().body(response);
+        }
+        try {
+            List<UploadResult> results = batch.finish();
+            long uploaded = results.stream().filter(UploadResult::isUploaded).count();
+            log.info("Uploaded {} of {} files for user {}", uploaded, results.size(), userName);
+            ApiResponse<List<UploadResult>> response = new ApiResponse<>(HttpStatus.CREATED.value(),
+                    "Uploaded " + uploaded + " of " + results.size() + " files", results);
+            return ResponseEntity.status(HttpStatus.CREATED).body(response);
+        } catch (OperationRejectedException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Error uploading files for user {}: {}", userName, e.getMessage());
+            ApiResponse<List<UploadResult>> response = new ApiResponse<>(HttpStatus.INTERNAL_SERVER_ERROR.value(), "Failed to upload files. Please try again.", null);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+
     @Operation(summary = "Search files for a user in the S3 bucket")
+    @AdmissionControlled(OperationType.SEARCH)
     @GetMapping("/search")
     public ResponseEntity<ApiResponse<List<String>>> searchFiles(
             @RequestParam String userName,
-            @RequestParam String searchTerm) {
+            @RequestParam String searchTerm,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String nextToken) {
         try {
-            List<String> files = s3FileService.searchFiles(userName, searchTerm);
+            List<String> files;
+            HttpHeaders headers = new HttpHeaders();
+            if (limit == null && nextToken == null) {
+                files = s3FileService.searchFiles(userName, searchTerm);
+            } else {
+                int pageSize = limit == null ? MAX_SEARCH_PAGE_SIZE : Math.min(Math.max(limit, 1), MAX_SEARCH_PAGE_SIZE);
+                SearchPage page = s3FileService.searchFiles(userName, searchTerm, pageSize, nextToken);
+                files = page.getKeys();
+                if (page.getNextToken() != null) {
+                    headers.set(NEXT_TOKEN_HEADER, page.getNextToken());
+                }
+            }
             if (files.isEmpty()) {
                 ApiResponse<List<String>> response = new ApiResponse<>(HttpStatus.NOT_FOUND.value(), "No files found matching the search term.", null);
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
             }
             ApiResponse<List<String>> response = new ApiResponse<>(HttpStatus.OK.value(), "Files retrieved successfully", files);
-            return ResponseEntity.ok(response);
+            return ResponseEntity.ok().headers(headers).body(response);
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid search request for user {}: {}", userName, e.getMessage());
+            ApiResponse<List<String>> response = new ApiResponse<>(HttpStatus.BAD_REQUEST.value(), e.getMessage(), null);
+            return ResponseEntity.badRequest().body(response);
+        } catch (OperationRejectedException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Error searching files for user {}: {}", userName, e.getMessage());
             ApiResponse<List<String>> response = new ApiResponse<>(HttpStatus.INTERNAL_SERVER_ERROR.value(), "Failed to search files. Please try again.", null);
@@ -63,35 +155,116 @@ public class FileController {
         }
     }
 
+    @Operation(summary = "Stream all matching files for a user as newline-delimited JSON")
+    @AdmissionControlled(OperationType.SEARCH)
+    @GetMapping(value = "/search/stream", produces = NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamSearchFiles(
+            @RequestParam String userName,
+            @RequestParam String searchTerm) {
+        StreamingResponseBody body = outputStream -> {
+            JsonStringEncoder encoder = JsonStringEncoder.getInstance();
+            long count = 0;
+            try (Stream<String> keys = s3FileService.streamFiles(userName, searchTerm)) {
+                Iterator<String> iterator = keys.iterator();
+                while (iterator.hasNext()) {
+                    outputStream.write('"');
+                    outputStream.write(encoder.quoteAsUTF8(iterator.next()));
+                    outputStream.write('"');
+                    outputStream.write('\n');
+                    if (++count % SEARCH_STREAM_FLUSH_INTERVAL == 0) {
+                        outputStream.flush();
+                    }
+                }
+            }
+            log.info("Streamed {} search results for user: {}", count, userName);
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON_VALUE)).body(body);
+    }
+
     @Operation(summary = "Download a specific file from S3 for a user")
+    @AdmissionControlled(OperationType.DOWNLOAD)
     @GetMapping("/download")
-    public ResponseEntity<ApiResponse<String>> downloadFile(
+    public ResponseEntity<StreamingResponseBody> downloadFile(
             @RequestParam String userName,
-            @RequestParam String fileName) {
+            @RequestParam String fileName,
+            @RequestHeader HttpHeaders requestHeaders) {
         String key = userName + "/" + fileName;
+        List<HttpRange> ranges = DownloadResponses.parseRanges(requestHeaders);
 
+        FileDownload download;
         try {
-            String fileDownloadUrl = s3FileService.downloadFile(key).toString();
-            ApiResponse<String> response = new ApiResponse<>(HttpStatus.OK.value(), "File downloaded successfully", fileDownloadUrl);
-            return ResponseEntity.ok(response);
+            download = s3FileService.downloadFile(key, DownloadResponses.toOptions(requestHeaders, ranges));
+            if (ranges.size() > 1 && download.isPartial() && (download.isCompressed() || download.getTotalLength() == null)) {
+                // Ranges of a compressed object would address its compressed bytes; send it whole instead.
+                download.close();
+                download = s3FileService.downloadFile(key, DownloadResponses.toOptions(requestHeaders, List.of()));
+            }
+        } catch (RangeNotSatisfiableException e) {
+            log.warn("Unsatisfiable range requested for user {}: {}", userName, e.getMessage());
+            return DownloadResponses.error(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE, "Requested range not satisfiable.");
+        } catch (PreconditionFailedException e) {
+            log.warn("Precondition failed for user {}: {}", userName, e.getMessage());
+            return DownloadResponses.error(HttpStatus.PRECONDITION_FAILED, "Precondition failed.");
+        } catch (OperationRejectedException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Error downloading file for user {}: {}", userName, e.getMessage());
-            ApiResponse<String> response = new ApiResponse<>(HttpStatus.NOT_FOUND.value(), "File not found.", null);
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+            return DownloadResponses.error(HttpStatus.NOT_FOUND, "File not found.");
         }
+
+        if (download.isNotModified()) {
+            return DownloadResponses.notModified(download);
+        }
+        if (ranges.size() > 1 && download.isPartial()) {
+            return DownloadResponses.multipart(download, fileName, ranges, (range, eTag) ->
+                    s3FileService.downloadFile(key, DownloadOptions.builder().range(range).ifMatch(eTag).build()));
+        }
+        return DownloadResponses.single(download, fileName);
     }
 
     @Operation(summary = "Delete a specific file from S3 for a user")
+    @AdmissionControlled(OperationType.DELETE)
     @DeleteMapping("/delete")
     public ResponseEntity<ApiResponse<String>> deleteFile(@RequestParam String userName, @RequestParam String fileName) {
         try {
             s3FileService.deleteFile(userName, fileName); // Call delete from service layer
             ApiResponse<String> response = new ApiResponse<>(HttpStatus.NO_CONTENT.value(), "File deleted successfully", null);
             return ResponseEntity.ok(response);
+        } catch (OperationRejectedException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Error deleting file for user {}: {}", userName, e.getMessage());
             ApiResponse<String> response = new ApiResponse<>(HttpStatus.NOT_FOUND.value(), "Error deleting file", null);
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
         }
     }
+
+    @Operation(summary = "Delete several files, or all files, of a user from the S3 bucket")
+    @AdmissionControlled(OperationType.DELETE)
+    @PostMapping("/delete/batch")
+    public ResponseEntity<ApiResponse<List<DeleteResult>>> deleteFiles(
+            @RequestParam String userName,
+            @RequestParam(defaultValue = "false") boolean all,
+            @RequestBody(required = false) List<String> fileNames) {
+        if (!all && (fileNames == null || fileNames.isEmpty())) {
+            ApiResponse<List<DeleteResult>> response = new ApiResponse<>(HttpStatus.BAD_REQUEST.value(), "Provide file names to delete, or set all=true.", null);
+            return ResponseEntity.badRequest().body(response);
+        }
+        try {
+            List<DeleteResult> results = all
+                    ? s3FileService.deleteAllFiles(userName)
+                    : s3FileService.deleteFiles(userName, fileNames);
+            long deleted = results.stream().filter(DeleteResult::isDeleted).count();
+            log.info("Deleted {} of {} files for user {}", deleted, results.size(), userName);
+            ApiResponse<List<DeleteResult>> response = new ApiResponse<>(HttpStatus.OK.value(),
+                    "Deleted " + deleted + " of " + results.size() + " files", results);
+            return ResponseEntity.ok(response);
+        } catch (OperationRejectedException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Error deleting files for user {}: {}", userName, e.getMessage());
+            ApiResponse<List<DeleteResult>> response = new ApiResponse<>(HttpStatus.INTERNAL_SERVER_ERROR.value(), "Error deleting files", null);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
 }
@@ -0,0 +1,144 @@
+package com.guardians.udss.controller;
+
+import com.guardians.udss.config.StorageConfig;
+import com.guardians.udss.exception.FileNotFoundException;
+import com.guardians.udss.exception.OperationRejectedException;
+import com.guardians.udss.model.PresignedMultipartUpload;
+import com.guardians.udss.model.PresignedUrl;
+import com.guardians.udss.model.UploadedPart;
+import com.guardians.udss.response.ApiResponse;
+import com.guardians.udss.services.S3PresignService;
+import io.swagger.v3.oas.annotations.Operation;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Presigned URLs for transfers that bypass this service: the client moves the bytes directly to or from S3
+ * and calls {@code /complete} afterwards so the new file is registered.
+ */
+@RestController
+@Slf4j
+@ConditionalOnProperty(prefix = "udss.storage", name = "backend", havingValue = StorageConfig.S3, matchIfMissing = true)
+@RequestMapping("/api/files/presign")
+public class PresignController {
+
+    private final S3PresignService s3PresignService;
+
+    @Autowired
+    public PresignController(S3PresignService s3PresignService) {
+        this.s3PresignService = s3PresignService;
+    }
+
+    @Operation(summary = "Get a presigned URL to download a file directly from S3")
+    @GetMapping("/download")
+    public ResponseEntity<ApiResponse<PresignedUrl>> presignDownload(@RequestParam String userName, @RequestParam String fileName) {
+        try {
+            PresignedUrl url = s3PresignService.presignDownload(userName, fileName);
+            ApiResponse<PresignedUrl> response = new ApiResponse<>(HttpStatus.OK.value(), "Presigned download URL created", url);
+            return ResponseEntity.ok(response);
+        } catch (OperationRejectedException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Error presigning download for user {}: {}", userName, e.getMessage());
+            ApiResponse<PresignedUrl> response = new ApiResponse<>(HttpStatus.INTERNAL_SERVER_ERROR.value(), "Failed to create download URL.", null);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+
+    @Operation(summary = "Get a presigned URL to upload a file directly to S3")
+    @PostMapping("/upload")
+    public ResponseEntity<ApiResponse<PresignedUrl>> presignUpload(
+            @RequestParam String userName,
+            @RequestParam String fileName,
+            @RequestParam(required = false) String contentType) {
+        try {
+            PresignedUrl url = s3PresignService.presignUpload(userName, fileName, contentType);
+            ApiResponse<PresignedUrl> response = new ApiResponse<>(HttpStatus.OK.value(), "Presigned upload URL created", url);
+            return ResponseEntity.ok(response);
+        } catch (OperationRejectedException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Error presigning upload for user {}: {}", userName, e.getMessage());
+            ApiResponse<PresignedUrl> response = new ApiResponse<>(HttpStatus.INTERNAL_SERVER_ERROR.value(), "Failed to create upload URL.", null);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+
+    @Operation(summary = "Start a multipart upload and get a presigned URL for each part")
+    @PostMapping("/multipart")
+    public ResponseEntity<ApiResponse<PresignedMultipartUpload>> startMultipartUpload(
+            @RequestParam String userName,
+            @RequestParam String fileName,
+            @RequestParam long size,
+            @RequestParam(required = false) String contentType) {
+        if (size <= 0) {
+            ApiResponse<PresignedMultipartUpload> response = new ApiResponse<>(HttpStatus.BAD_REQUEST.value(), "size must be positive.", null);
+            return ResponseEntity.badRequest().body(response);
+        }
+        try {
+            PresignedMultipartUpload upload = s3PresignService.startMultipartUpload(userName, fileName, contentType, size);
+            ApiResponse<PresignedMultipartUpload> response = new ApiResponse<>(HttpStatus.OK.value(), "Multipart upload started", upload);
+            return ResponseEntity.ok(response);
+        } catch (OperationRejectedException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Error starting multipart upload for user {}: {}", userName, e.getMessage());
+            ApiResponse<PresignedMultipartUpload> response = new ApiResponse<>(HttpStatus.INTERNAL_SERVER_ERROR.value(), "Failed to start multipart upload.", null);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+
+    @Operation(summary = "Register a file uploaded through a presigned URL, completing a multipart upload if uploadId is given")
+    @PostMapping("/complete")
+    public ResponseEntity<ApiResponse<String>> completeUpload(
+            @RequestParam String userName,
+            @RequestParam String fileName,
+            @RequestParam(required = false) String uploadId,
+            @RequestBody(required = false) List<UploadedPart> parts) {
+        if (uploadId != null && (parts == null || parts.isEmpty())) {
+            ApiResponse<String> response = new ApiResponse<>(HttpStatus.BAD_REQUEST.value(), "Uploaded parts are required to complete a multipart upload.", null);
+            return ResponseEntity.badRequest().body(response);
+        }
+        try {
+            String fileKey = s3PresignService.completeUpload(userName, fileName, uploadId, parts == null ? Collections.emptyList() : parts);
+            log.info("Presigned upload completed for user: {}", userName);
+            ApiResponse<String> response = new ApiResponse<>(HttpStatus.CREATED.value(), "File uploaded successfully", fileKey);
+            return ResponseEntity.status(HttpStatus.CREATED).body(response);
+        } catch (FileNotFoundException e) {
+            ApiResponse<String> response = new ApiResponse<>(HttpStatus.NOT_FOUND.value(), "Uploaded file not found.", null);
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+        } catch (OperationRejectedException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Error completing upload for user {}: {}", userName, e.getMessage());
+            ApiResponse<String> response = new ApiResponse<>(HttpStatus.INTERNAL_SERVER_ERROR.value(), "Failed to complete upload. Please try again.", null);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+
+    @Operation(summary = "Abort a multipart upload started through /multipart")
+    @DeleteMapping("/multipart")
+    public ResponseEntity<ApiResponse<String>> abortMultipartUpload(
+            @RequestParam String userName,
+            @RequestParam String fileName,
+            @RequestParam String uploadId) {
+        try {
+            s3PresignService.abortMultipartUpload(userName, fileName, uploadId);
+            ApiResponse<String> response = new ApiResponse<>(HttpStatus.NO_CONTENT.value(), "Multipart upload aborted", null);
+            return ResponseEntity.ok(response);
+        } catch (OperationRejectedException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Error aborting multipart upload for user {}: {}", userName, e.getMessage());
+            ApiResponse<String> response = new ApiResponse<>(HttpStatus.INTERNAL_SERVER_ERROR.value(), "Failed to abort multipart upload.", null);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.guardians.udss.controller;
+
+import com.guardians.udss.services.DedupStore;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.util.Map;
+
+/**
+ * Answers 400 to requests for a user name whose keys would fall in the deduplication namespace, before the
+ * handler runs or admission control charges the user. The services check again for callers other than the
+ * controllers. With the local storage backend there is no deduplication namespace and nothing is reserved.
+ */
+@Component
+public class ReservedNameInterceptor implements HandlerInterceptor {
+
+    private static final String USER_PARAMETER = "userName";
+
+    private final DedupStore dedupStore;
+
+    @Autowired
+    public ReservedNameInterceptor(@Nullable DedupStore dedupStore) {
+        this.dedupStore = dedupStore;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (dedupStore == null || request.getDispatcherType() != DispatcherType.REQUEST) {
+            return true;
+        }
+        // The path variable first: reading a parameter of a streamed multipart request would parse its body.
+        Map<String, String> pathVariables =
+                (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        String user = pathVariables != null ? pathVariables.get(USER_PARAMETER) : null;
+        if (user == null) {
+            user = request.getParameter(USER_PARAMETER);
+        }
+        if (user != null) {
+            dedupStore.checkUserName(user);
+        }
+        return true;
+    }
+}
@@ -3,6 +3,7 @@ package com.guardians.udss.exception;
 import com.guardians.udss.response.ApiResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -21,6 +22,42 @@ public class GlobalExceptionHandler {
                 .body(ApiResponse.error(ex.getMessage(), HttpStatus.NOT_FOUND));
     }
 
+    @ExceptionHandler(RangeNotSatisfiableException.class)
+    public ResponseEntity<ApiResponse<String>> handleRangeNotSatisfiableException(RangeNotSatisfiableException ex) {
+        logger.warn("Range not satisfiable: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                .body(ApiResponse.error(ex.getMessage(), HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE));
+    }
+
+    @ExceptionHandler(PreconditionFailedException.class)
+    public ResponseEntity<ApiResponse<String>> handlePreconditionFailedException(PreconditionFailedException ex) {
+        logger.warn("Precondition failed: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED)
+                .body(ApiResponse.error(ex.getMessage(), HttpStatus.PRECONDITION_FAILED));
+    }
+
+    @ExceptionHandler(ReservedNameException.class)
+    public ResponseEntity<ApiResponse<String>> handleReservedNameException(ReservedNameException ex) {
+        logger.warn("Reserved name: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(ApiResponse.error(ex.getMessage(), HttpStatus.BAD_REQUEST));
+    }
+
+    @ExceptionHandler(OperationRejectedException.class)
+    public ResponseEntity<ApiResponse<String>> handleOperationRejectedException(OperationRejectedException ex) {
+        logger.warn("Operation rejected: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .body(ApiResponse.error(ex.getMessage(), HttpStatus.SERVICE_UNAVAILABLE));
+    }
+
+    @ExceptionHandler(TooManyRequestsException.class)
+    public ResponseEntity<ApiResponse<String>> handleTooManyRequestsException(TooManyRequestsException ex) {
+        logger.warn("Request rejected: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(ex.getRetryAfterSeconds()))
+                .body(ApiResponse.error(ex.getMessage(), HttpStatus.TOO_MANY_REQUESTS));
+    }
+
     @ExceptionHandler(S3Exception.class)
     public ResponseEntity<ApiResponse<String>> handleS3Exception(S3Exception ex) {
         logger.error("S3 error: {}", ex.awsErrorDetails().errorMessage());
@@ -0,0 +1,7 @@
+package com.guardians.udss.exception;
+
+public class OperationRejectedException extends RuntimeException {
+    public OperationRejectedException(String message) {
+        super(message);
+    }
+}
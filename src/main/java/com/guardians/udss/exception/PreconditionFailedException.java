@@ -0,0 +1,7 @@
+package com.guardians.udss.exception;
+
+public class PreconditionFailedException extends RuntimeException {
+    public PreconditionFailedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package com.guardians.udss.exception;
+
+public class RangeNotSatisfiableException extends RuntimeException {
+    public RangeNotSatisfiableException(String message) {
+        super(message);
+    }
+}
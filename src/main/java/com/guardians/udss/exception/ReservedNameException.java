@@ -0,0 +1,7 @@
+package com.guardians.udss.exception;
+
+public class ReservedNameException extends RuntimeException {
+    public ReservedNameException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,18 @@
+package com.guardians.udss.exception;
+
+/**
+ * A request refused by admission control; {@code retryAfterSeconds} is sent back as {@code Retry-After}.
+ */
+public class TooManyRequestsException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public TooManyRequestsException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,29 @@
+package com.guardians.udss.index;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interns content types as small integer ids so each indexed file stores an {@code int} instead of a string.
+ */
+final class ContentTypeTable {
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+
+    synchronized int idOf(String contentType) {
+        Integer id = ids.get(contentType);
+        if (id == null) {
+            id = names.size();
+            names.add(contentType);
+            ids.put(contentType, id);
+        }
+        return id;
+    }
+
+    synchronized String nameOf(int id) {
+        return names.get(id);
+    }
+}
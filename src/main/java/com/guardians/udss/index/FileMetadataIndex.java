@@ -0,0 +1,227 @@
+package com.guardians.udss.index;
+
+import com.guardians.udss.config.IndexConfig;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * In-process index of file metadata, keyed by username. A user's index is built lazily from the backing
+ * store on first use and rebuilt once it is older than {@code udss.index.refresh-after}; in between it is kept
+ * current by {@link #recordUpload} and {@link #recordDelete}. When {@code udss.index.snapshot-path} is set
+ * the index is written there periodically and on shutdown, and read back at startup.
+ */
+@Component
+@Slf4j
+public class FileMetadataIndex {
+
+    private static final int SNAPSHOT_MAGIC = 0x55445349;
+    private static final int SNAPSHOT_VERSION = 1;
+
+    private final IndexConfig indexConfig;
+    private final ContentTypeTable contentTypes = new ContentTypeTable();
+    private final Map<String, UserFileIndex> users = new ConcurrentHashMap<>();
+    private ScheduledExecutorService snapshotScheduler;
+
+    @Autowired
+    public FileMetadataIndex(IndexConfig indexConfig) {
+        this.indexConfig = indexConfig;
+    }
+
+    public boolean isEnabled() {
+        return indexConfig.isEnabled();
+    }
+
+    public List<String> search(String username, String searchTerm, IndexLoader loader) {
+        UserFileIndex index = loaded(username, loader);
+        Lock readLock = index.lock().readLock();
+        readLock.lock();
+        try {
+            return index.search(searchTerm);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    public IndexedFile find(String username, String filename, IndexLoader loader) {
+        UserFileIndex index = loaded(username, loader);
+        Lock readLock = index.lock().readLock();
+        readLock.lock();
+        try {
+            return index.get(filename);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    public void recordUpload(String username, String filename, long size, Instant lastModified, String contentType) {
+        UserFileIndex index = users.get(username);
+        if (index == null) {
+            // Not indexed yet; the object will be picked up when the user's index is first built.
+            return;
+        }
+        Lock writeLock = index.lock().writeLock();
+        writeLock.lock();
+        try {
+            index.put(filename, size, lastModified.toEpochMilli(), contentType);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public void recordDelete(String username, String filename) {
+        UserFileIndex index = users.get(username);
+        if (index == null) {
+            return;
+        }
+        Lock writeLock = index.lock().writeLock();
+        writeLock.lock();
+        try {
+            index.remove(filename);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public void invalidate(String username) {
+        users.remove(username);
+    }
+
+    private UserFileIndex loaded(String username, IndexLoader loader) {
+        UserFileIndex index = users.computeIfAbsent(username, name -> new UserFileIndex(name + "/", contentTypes));
+        if (isFresh(index)) {
+            return index;
+        }
+        Lock writeLock = index.lock().writeLock();
+        writeLock.lock();
+        try {
+            if (!isFresh(index)) {
+                long startedAt = System.currentTimeMillis();
+                index.clear();
+                int prefixLength = index.getPrefix().length();
+                try (Stream<IndexedFile> files = loader.listAll(username)) {
+                    files.forEach(file -> index.put(file.getKey().substring(prefixLength), file.getSize(),
+                            file.getLastModified().toEpochMilli(), file.getContentType()));
+                }
+                index.setLoadedAtMillis(startedAt);
+                log.info("Indexed {} files for user {} in {} ms", index.size(), username, System.currentTimeMillis() - startedAt);
+            }
+        } catch (RuntimeException e) {
+            index.setLoadedAtMillis(0);
+            throw e;
+        } finally {
+            writeLock.unlock();
+        }
+        return index;
+    }
+
+    private boolean isFresh(UserFileIndex index) {
+        long loadedAt = index.getLoadedAtMillis();
+        return loadedAt > 0 && System.currentTimeMillis() - loadedAt < indexConfig.getRefreshAfter().toMillis();
+    }
+
+    @PostConstruct
+    public void start() {
+        Path snapshot = snapshotPath();
+        if (snapshot == null) {
+            return;
+        }
+        if (Files.exists(snapshot)) {
+            readSnapshot(snapshot);
+        }
+        long interval = indexConfig.getSnapshotInterval().toMillis();
+        snapshotScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metadata-index-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshotScheduler.scheduleWithFixedDelay(() -> writeSnapshot(snapshot), interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (snapshotScheduler != null) {
+            snapshotScheduler.shutdownNow();
+            writeSnapshot(snapshotPath());
+        }
+    }
+
+    void writeSnapshot(Path snapshot) {
+        Path temp = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+        List<UserFileIndex> indexes = new ArrayList<>(users.values());
+        try {
+            if (snapshot.getParent() != null) {
+                Files.createDirectories(snapshot.getParent());
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new GZIPOutputStream(Files.newOutputStream(temp))))) {
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeInt(SNAPSHOT_VERSION);
+                out.writeInt(indexes.size());
+                for (UserFileIndex index : indexes) {
+                    Lock readLock = index.lock().readLock();
+                    readLock.lock();
+                    try {
+                        index.writeTo(out);
+                    } finally {
+                        readLock.unlock();
+                    }
+                }
+            }
+            Files.move(temp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.debug("Wrote metadata index snapshot for {} users to {}", indexes.size(), snapshot);
+        } catch (IOException e) {
+            log.error("Error writing metadata index snapshot to {}: {}", snapshot, e.getMessage());
+        }
+    }
+
+    void readSnapshot(Path snapshot) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(snapshot))))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+                log.warn("Ignoring metadata index snapshot {} with unknown format", snapshot);
+                return;
+            }
+            int userCount = in.readInt();
+            for (int i = 0; i < userCount; i++) {
+                String prefix = in.readUTF();
+                UserFileIndex index = new UserFileIndex(prefix, contentTypes);
+                index.readEntries(in);
+                users.put(prefix.substring(0, prefix.length() - 1), index);
+            }
+            log.info("Loaded metadata index snapshot for {} users from {}", userCount, snapshot);
+        } catch (IOException e) {
+            users.clear();
+            log.error("Error reading metadata index snapshot from {}: {}", snapshot, e.getMessage());
+        }
+    }
+
+    private Path snapshotPath() {
+        String path = indexConfig.getSnapshotPath();
+        return path == null || path.isBlank() ? null : Paths.get(path);
+    }
+}
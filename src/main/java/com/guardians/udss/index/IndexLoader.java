@@ -0,0 +1,11 @@
+package com.guardians.udss.index;
+
+import java.util.stream.Stream;
+
+/**
+ * Lists every file of a user from the backing store, used to (re)build that user's index.
+ */
+@FunctionalInterface
+public interface IndexLoader {
+    Stream<IndexedFile> listAll(String username);
+}
@@ -0,0 +1,21 @@
+package com.guardians.udss.index;
+
+import lombok.Getter;
+
+import java.time.Instant;
+
+@Getter
+public class IndexedFile {
+
+    private final String key;
+    private final long size;
+    private final Instant lastModified;
+    private final String contentType;
+
+    public IndexedFile(String key, long size, long lastModifiedMillis, String contentType) {
+        this.key = key;
+        this.size = size;
+        this.lastModified = Instant.ofEpochMilli(lastModifiedMillis);
+        this.contentType = contentType;
+    }
+}
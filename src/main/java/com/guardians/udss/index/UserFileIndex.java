@@ -0,0 +1,273 @@
+package com.guardians.udss.index;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Metadata of one user's files. Names are stored relative to the shared {@code username/} prefix and the
+ * per-file metadata lives in parallel primitive arrays indexed by slot. Substring search goes through a
+ * trigram index: the posting list of the rarest trigram of the search term yields the candidate slots,
+ * which are then verified with {@link String#contains}. Removed slots are left as holes and reclaimed by
+ * compaction once they outnumber live entries.
+ */
+final class UserFileIndex {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int GRAM = 3;
+    private static final int NO_TYPE = -1;
+
+    private final String prefix;
+    private final ContentTypeTable contentTypes;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private String[] names = new String[INITIAL_CAPACITY];
+    private long[] sizes = new long[INITIAL_CAPACITY];
+    private long[] lastModified = new long[INITIAL_CAPACITY];
+    private int[] typeIds = new int[INITIAL_CAPACITY];
+    private int slotCount;
+    private int liveCount;
+    private Map<String, Integer> slotsByName = new HashMap<>();
+    private Map<Long, Postings> postings = new HashMap<>();
+
+    private volatile long loadedAtMillis;
+
+    UserFileIndex(String prefix, ContentTypeTable contentTypes) {
+        this.prefix = prefix.intern();
+        this.contentTypes = contentTypes;
+    }
+
+    String getPrefix() {
+        return prefix;
+    }
+
+    ReadWriteLock lock() {
+        return lock;
+    }
+
+    long getLoadedAtMillis() {
+        return loadedAtMillis;
+    }
+
+    void setLoadedAtMillis(long loadedAtMillis) {
+        this.loadedAtMillis = loadedAtMillis;
+    }
+
+    int size() {
+        return liveCount;
+    }
+
+    // Callers hold the write lock for the mutators below and at least the read lock for the queries.
+
+    void put(String name, long size, long modifiedMillis, String contentType) {
+        int typeId = contentType == null ? NO_TYPE : contentTypes.idOf(contentType);
+        Integer existing = slotsByName.get(name);
+        if (existing != null) {
+            sizes[existing] = size;
+            lastModified[existing] = modifiedMillis;
+            if (typeId != NO_TYPE) {
+                typeIds[existing] = typeId;
+            }
+            return;
+        }
+        ensureCapacity(slotCount + 1);
+        int slot = slotCount++;
+        names[slot] = name;
+        sizes[slot] = size;
+        lastModified[slot] = modifiedMillis;
+        typeIds[slot] = typeId;
+        slotsByName.put(name, slot);
+        liveCount++;
+        addGrams(name, slot);
+    }
+
+    void remove(String name) {
+        Integer slot = slotsByName.remove(name);
+        if (slot == null) {
+            return;
+        }
+        names[slot] = null;
+        liveCount--;
+        int holes = slotCount - liveCount;
+        if (holes > 64 && holes > liveCount) {
+            compact();
+        }
+    }
+
+    void clear() {
+        names = new String[INITIAL_CAPACITY];
+        sizes = new long[INITIAL_CAPACITY];
+        lastModified = new long[INITIAL_CAPACITY];
+        typeIds = new int[INITIAL_CAPACITY];
+        slotCount = 0;
+        liveCount = 0;
+        slotsByName = new HashMap<>();
+        postings = new HashMap<>();
+    }
+
+    IndexedFile get(String name) {
+        Integer slot = slotsByName.get(name);
+        return slot == null ? null : toFile(slot);
+    }
+
+    /**
+     * Returns the full keys containing {@code term}, sorted. Matches the semantics of {@code key.contains(term)}
+     * on the full {@code username/name} key.
+     */
+    List<String> search(String term) {
+        List<String> matches = new ArrayList<>();
+        if (prefix.contains(term)) {
+            for (int slot = 0; slot < slotCount; slot++) {
+                if (names[slot] != null) {
+                    matches.add(names[slot]);
+                }
+            }
+        } else if (term.indexOf('/') >= 0) {
+            // Only a term containing the separator can straddle the prefix and the name.
+            for (int slot = 0; slot < slotCount; slot++) {
+                if (names[slot] != null && (prefix + names[slot]).contains(term)) {
+                    matches.add(names[slot]);
+                }
+            }
+        } else if (term.length() < GRAM) {
+            for (int slot = 0; slot < slotCount; slot++) {
+                if (names[slot] != null && names[slot].contains(term)) {
+                    matches.add(names[slot]);
+                }
+            }
+        } else {
+            Postings candidates = rarestPostings(term);
+            if (candidates != null) {
+                for (int i = 0; i < candidates.size; i++) {
+                    String name = names[candidates.slots[i]];
+                    if (name != null && name.contains(term)) {
+                        matches.add(name);
+                    }
+                }
+            }
+        }
+        matches.sort(null);
+        matches.replaceAll(name -> prefix + name);
+        return matches;
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeUTF(prefix);
+        out.writeLong(loadedAtMillis);
+        out.writeInt(liveCount);
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (names[slot] != null) {
+                out.writeUTF(names[slot]);
+                out.writeLong(sizes[slot]);
+                out.writeLong(lastModified[slot]);
+                out.writeUTF(typeIds[slot] == NO_TYPE ? "" : contentTypes.nameOf(typeIds[slot]));
+            }
+        }
+    }
+
+    void readEntries(DataInputStream in) throws IOException {
+        loadedAtMillis = in.readLong();
+        int count = in.readInt();
+        ensureCapacity(count);
+        for (int i = 0; i < count; i++) {
+            String name = in.readUTF();
+            long size = in.readLong();
+            long modified = in.readLong();
+            String contentType = in.readUTF();
+            put(name, size, modified, contentType.isEmpty() ? null : contentType);
+        }
+    }
+
+    private IndexedFile toFile(int slot) {
+        String contentType = typeIds[slot] == NO_TYPE ? null : contentTypes.nameOf(typeIds[slot]);
+        return new IndexedFile(prefix + names[slot], sizes[slot], lastModified[slot], contentType);
+    }
+
+    private Postings rarestPostings(String term) {
+        Postings rarest = null;
+        for (int i = 0; i + GRAM <= term.length(); i++) {
+            Postings candidate = postings.get(gram(term, i));
+            if (candidate == null) {
+                return null;
+            }
+            if (rarest == null || candidate.size < rarest.size) {
+                rarest = candidate;
+            }
+        }
+        return rarest;
+    }
+
+    private void addGrams(String name, int slot) {
+        for (int i = 0; i + GRAM <= name.length(); i++) {
+            postings.computeIfAbsent(gram(name, i), g -> new Postings()).add(slot);
+        }
+    }
+
+    private static long gram(String text, int offset) {
+        return ((long) text.charAt(offset) << 32) | ((long) text.charAt(offset + 1) << 16) | text.charAt(offset + 2);
+    }
+
+    private void compact() {
+        String[] oldNames = names;
+        long[] oldSizes = sizes;
+        long[] oldModified = lastModified;
+        int[] oldTypes = typeIds;
+        int oldCount = slotCount;
+        int capacity = Math.max(INITIAL_CAPACITY, liveCount * 2);
+
+        names = new String[capacity];
+        sizes = new long[capacity];
+        lastModified = new long[capacity];
+        typeIds = new int[capacity];
+        slotCount = 0;
+        liveCount = 0;
+        slotsByName = new HashMap<>();
+        postings = new HashMap<>();
+        for (int slot = 0; slot < oldCount; slot++) {
+            if (oldNames[slot] != null) {
+                int target = slotCount++;
+                names[target] = oldNames[slot];
+                sizes[target] = oldSizes[slot];
+                lastModified[target] = oldModified[slot];
+                typeIds[target] = oldTypes[slot];
+                slotsByName.put(oldNames[slot], target);
+                liveCount++;
+                addGrams(oldNames[slot], target);
+            }
+        }
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= names.length) {
+            return;
+        }
+        int capacity = Math.max(required, names.length * 2);
+        names = Arrays.copyOf(names, capacity);
+        sizes = Arrays.copyOf(sizes, capacity);
+        lastModified = Arrays.copyOf(lastModified, capacity);
+        typeIds = Arrays.copyOf(typeIds, capacity);
+    }
+
+    private static final class Postings {
+        private int[] slots = new int[4];
+        private int size;
+
+        void add(int slot) {
+            // Grams of one name are added together, so a repeated gram only needs a check against the tail.
+            if (size > 0 && slots[size - 1] == slot) {
+                return;
+            }
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+            }
+            slots[size++] = slot;
+        }
+    }
+}
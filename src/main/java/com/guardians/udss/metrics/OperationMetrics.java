@@ -0,0 +1,84 @@
+package com.guardians.udss.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Service-level timings of file operations and the sizes of the files they move. Together with the per-call
+ * {@code udss.s3.requests} timers from {@link S3MetricsInterceptor} these separate time spent in S3 from the
+ * service's own overhead.
+ */
+@Component
+public class OperationMetrics {
+
+    public static final String SEARCH = "search";
+    public static final String DOWNLOAD = "download";
+    public static final String UPLOAD = "upload";
+    public static final String DELETE = "delete";
+    public static final String BATCH_DELETE = "batch_delete";
+
+    private static final double[] PERCENTILES = {0.5, 0.95, 0.99};
+
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public OperationMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @FunctionalInterface
+    public interface Operation<T, E extends Exception> {
+        T run() throws E;
+    }
+
+    /**
+     * Runs {@code operation} and records its duration under {@code udss.operation}, tagged with the exception
+     * type when it fails.
+     */
+    public <T, E extends Exception> T time(String name, Operation<T, E> operation) throws E {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "success";
+        try {
+            return operation.run();
+        } catch (Exception e) {
+            outcome = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            sample.stop(Timer.builder("udss.operation")
+                    .description("Duration of file operations, including time spent in S3")
+                    .tag("operation", name)
+                    .tag("outcome", outcome)
+                    .publishPercentiles(PERCENTILES)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry));
+        }
+    }
+
+    public void recordFileSize(String name, long bytes) {
+        DistributionSummary.builder("udss.file.size")
+                .description("Size of files uploaded and downloaded")
+                .baseUnit("bytes")
+                .tag("operation", name)
+                .publishPercentiles(PERCENTILES)
+                .register(meterRegistry)
+                .record(bytes);
+    }
+
+    /**
+     * Counts the bytes of an upload stored compressed with {@code encoding}, before and after compression.
+     */
+    public void recordCompression(String encoding, long originalBytes, long compressedBytes) {
+        meterRegistry.counter("udss.compression.original.bytes", "encoding", encoding).increment(originalBytes);
+        meterRegistry.counter("udss.compression.compressed.bytes", "encoding", encoding).increment(compressedBytes);
+    }
+
+    /**
+     * Counts a deduplicated upload by whether its content was already stored.
+     */
+    public void recordDedup(boolean duplicate) {
+        meterRegistry.counter("udss.dedup.uploads", "outcome", duplicate ? "duplicate" : "new").increment();
+    }
+}
@@ -0,0 +1,131 @@
+package com.guardians.udss.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.SdkRequest;
+import software.amazon.awssdk.core.SdkResponse;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttribute;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+import software.amazon.awssdk.core.interceptor.SdkExecutionAttribute;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records every S3 API call made through the SDK: latency including retries, HTTP status and error code,
+ * the number of retries, bytes sent or announced for download, and keys per listing page.
+ */
+@Component
+public class S3MetricsInterceptor implements ExecutionInterceptor {
+
+    private static final ExecutionAttribute<Long> STARTED_AT = new ExecutionAttribute<>("udss.metrics.startedAt");
+    private static final ExecutionAttribute<Integer> ATTEMPTS = new ExecutionAttribute<>("udss.metrics.attempts");
+    private static final double[] PERCENTILES = {0.5, 0.95, 0.99};
+
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public S3MetricsInterceptor(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public void beforeExecution(Context.BeforeExecution context, ExecutionAttributes executionAttributes) {
+        executionAttributes.putAttribute(STARTED_AT, System.nanoTime());
+        executionAttributes.putAttribute(ATTEMPTS, 0);
+    }
+
+    @Override
+    public void beforeTransmission(Context.BeforeTransmission context, ExecutionAttributes executionAttributes) {
+        // Runs once per attempt, so the count includes retries.
+        Integer attempts = executionAttributes.getAttribute(ATTEMPTS);
+        executionAttributes.putAttribute(ATTEMPTS, attempts == null ? 1 : attempts + 1);
+    }
+
+    @Override
+    public void afterExecution(Context.AfterExecution context, ExecutionAttributes executionAttributes) {
+        String operation = operation(executionAttributes);
+        record(operation, String.valueOf(context.httpResponse().statusCode()), "none", executionAttributes);
+
+        SdkRequest request = context.request();
+        SdkResponse response = context.response();
+        if (request instanceof PutObjectRequest || request instanceof UploadPartRequest) {
+            // The request object only carries a length when the caller set one, and the wire size includes
+            // aws-chunked framing, so take the payload length from the request body.
+            context.requestBody()
+                    .flatMap(RequestBody::optionalContentLength)
+                    .ifPresent(length -> transfer(operation, "upload").record(length));
+        }
+        if (response instanceof GetObjectResponse get && get.contentLength() != null) {
+            transfer(operation, "download").record(get.contentLength());
+        } else if (response instanceof ListObjectsV2Response page && page.keyCount() != null) {
+            DistributionSummary.builder("udss.s3.list.page.size")
+                    .description("Keys returned per ListObjectsV2 page")
+                    .register(meterRegistry)
+                    .record(page.keyCount());
+        }
+    }
+
+    @Override
+    public void onExecutionFailure(Context.FailedExecution context, ExecutionAttributes executionAttributes) {
+        Throwable failure = context.exception();
+        String status = context.httpResponse().map(response -> String.valueOf(response.statusCode())).orElse("none");
+        String errorCode = failure.getClass().getSimpleName();
+        if (failure instanceof AwsServiceException serviceException) {
+            status = String.valueOf(serviceException.statusCode());
+            if (serviceException.awsErrorDetails() != null && serviceException.awsErrorDetails().errorCode() != null) {
+                errorCode = serviceException.awsErrorDetails().errorCode();
+            }
+        }
+        record(operation(executionAttributes), status, errorCode, executionAttributes);
+    }
+
+    private void record(String operation, String status, String errorCode, ExecutionAttributes executionAttributes) {
+        Long startedAt = executionAttributes.getAttribute(STARTED_AT);
+        if (startedAt != null) {
+            Timer.builder("udss.s3.requests")
+                    .description("Latency of S3 API calls, including SDK retries")
+                    .tag("operation", operation)
+                    .tag("status", status)
+                    .tag("error", errorCode)
+                    .publishPercentiles(PERCENTILES)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        }
+        Integer attempts = executionAttributes.getAttribute(ATTEMPTS);
+        if (attempts != null && attempts > 1) {
+            Counter.builder("udss.s3.retries")
+                    .description("S3 API call attempts beyond the first")
+                    .tag("operation", operation)
+                    .register(meterRegistry)
+                    .increment(attempts - 1);
+        }
+    }
+
+    private DistributionSummary transfer(String operation, String direction) {
+        return DistributionSummary.builder("udss.s3.transfer")
+                .description("Bytes per S3 request body or response body")
+                .baseUnit("bytes")
+                .tag("operation", operation)
+                .tag("direction", direction)
+                .publishPercentiles(PERCENTILES)
+                .register(meterRegistry);
+    }
+
+    private static String operation(ExecutionAttributes executionAttributes) {
+        String operation = executionAttributes.getAttribute(SdkExecutionAttribute.OPERATION_NAME);
+        return operation != null ? operation : "unknown";
+    }
+}
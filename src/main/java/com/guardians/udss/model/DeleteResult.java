@@ -0,0 +1,28 @@
+package com.guardians.udss.model;
+
+import lombok.Getter;
+
+/**
+ * Outcome of deleting one key as part of a batch. {@code error} is {@code null} when the key was deleted.
+ */
+@Getter
+public class DeleteResult {
+
+    private final String key;
+    private final boolean deleted;
+    private final String error;
+
+    public DeleteResult(String key, boolean deleted, String error) {
+        this.key = key;
+        this.deleted = deleted;
+        this.error = error;
+    }
+
+    public static DeleteResult deleted(String key) {
+        return new DeleteResult(key, true, null);
+    }
+
+    public static DeleteResult failed(String key, String error) {
+        return new DeleteResult(key, false, error);
+    }
+}
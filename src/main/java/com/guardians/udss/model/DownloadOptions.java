@@ -0,0 +1,24 @@
+package com.guardians.udss.model;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.time.Instant;
+
+/**
+ * Optional byte range and preconditions for a download, mapped one-to-one onto the matching S3 GET headers.
+ * {@code range} uses the HTTP form, e.g. {@code bytes=0-1023}. {@code acceptEncoding} is the client's
+ * {@code Accept-Encoding} header; it is not sent to S3 but decides whether a compressed object is decoded.
+ */
+@Getter
+@Builder(toBuilder = true)
+public class DownloadOptions {
+
+    public static final DownloadOptions NONE = DownloadOptions.builder().build();
+
+    private final String range;
+    private final String ifMatch;
+    private final String ifNoneMatch;
+    private final Instant ifModifiedSince;
+    private final String acceptEncoding;
+}
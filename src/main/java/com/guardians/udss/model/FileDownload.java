@@ -0,0 +1,154 @@
+package com.guardians.udss.model;
+
+import lombok.AccessLevel;
+import lombok.Builder;
+import lombok.Getter;
+import software.amazon.awssdk.http.Abortable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.function.UnaryOperator;
+
+/**
+ * An open download together with the object metadata needed for the HTTP response. The caller owns the
+ * content stream and must close the download, which releases the underlying storage connection.
+ */
+@Getter
+public class FileDownload implements Closeable {
+
+    private final String key;
+    private final InputStream content;
+    private final Long contentLength;
+    private final String contentType;
+    private final String eTag;
+    private final Instant lastModified;
+    private final String contentRange;
+    private final boolean notModified;
+    /** {@code Content-Encoding} of the content as streamed; {@code null} for identity. */
+    private final String contentEncoding;
+    /** Size before compression of an object stored compressed, when recorded. */
+    private final Long decodedLength;
+    /** Whether the content is a compressed object decompressed for this download. */
+    private final boolean decoded;
+
+    @Getter(AccessLevel.NONE)
+    private boolean drained;
+    @Getter(AccessLevel.NONE)
+    private Runnable closeAction;
+
+    @Builder
+    public FileDownload(String key, InputStream content, Long contentLength, String contentType, String eTag,
+                        Instant lastModified, String contentRange, boolean notModified, String contentEncoding,
+                        Long decodedLength, boolean decoded) {
+        this.key = key;
+        this.content = content;
+        this.contentLength = contentLength;
+        this.contentType = contentType;
+        this.eTag = eTag;
+        this.lastModified = lastModified;
+        this.contentRange = contentRange;
+        this.notModified = notModified;
+        this.contentEncoding = contentEncoding;
+        this.decodedLength = decodedLength;
+        this.decoded = decoded;
+    }
+
+    public static FileDownload notModified(String key, String eTag) {
+        return FileDownload.builder().key(key).eTag(eTag).notModified(true).build();
+    }
+
+    /**
+     * Registers an action to run once the download is closed, after the content stream is released.
+     */
+    public FileDownload onClose(Runnable action) {
+        Runnable previous = closeAction;
+        closeAction = previous == null ? action : () -> {
+            previous.run();
+            action.run();
+        };
+        return this;
+    }
+
+    /**
+     * Returns a copy of this download whose content is {@code wrapper} applied to the current content stream.
+     * Close actions carry over, so only the returned download may be used and closed afterwards.
+     */
+    public FileDownload withContent(UnaryOperator<InputStream> wrapper) {
+        FileDownload wrapped = new FileDownload(key, wrapper.apply(content), contentLength, contentType, eTag,
+                lastModified, contentRange, notModified, contentEncoding, decodedLength, decoded);
+        wrapped.closeAction = closeAction;
+        return wrapped;
+    }
+
+    /**
+     * Returns a copy of this full download of a compressed object whose content is decompressed by
+     * {@code decoder}. Like {@link #withContent}, only the returned download may be used afterwards.
+     */
+    public FileDownload withDecodedContent(UnaryOperator<InputStream> decoder) {
+        FileDownload wrapped = new FileDownload(key, decoder.apply(content), decodedLength, contentType, eTag,
+                lastModified, null, notModified, null, decodedLength, true);
+        wrapped.closeAction = closeAction;
+        return wrapped;
+    }
+
+    /**
+     * Whether the stored object is compressed, whether it is sent that way or decoded for this download.
+     */
+    public boolean isCompressed() {
+        return contentEncoding != null || decoded;
+    }
+
+    public boolean isPartial() {
+        return contentRange != null;
+    }
+
+    /**
+     * Total object size taken from a {@code bytes first-last/total} content range, or the content length for a
+     * full download; {@code null} when unknown.
+     */
+    public Long getTotalLength() {
+        if (contentRange == null) {
+            return contentLength;
+        }
+        int slash = contentRange.lastIndexOf('/');
+        if (slash < 0 || contentRange.endsWith("*")) {
+            return null;
+        }
+        return Long.parseLong(contentRange.substring(slash + 1).trim());
+    }
+
+    /**
+     * Copies the remaining content to {@code out} through the given buffer and returns the number of bytes written.
+     */
+    public long transferTo(OutputStream out, byte[] buffer) throws IOException {
+        long transferred = 0;
+        int read;
+        while ((read = content.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+            transferred += read;
+        }
+        drained = true;
+        return transferred;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (content == null) {
+                return;
+            }
+            // Closing a half-read HTTP stream would drain it first; aborting drops the connection instead.
+            if (!drained && content instanceof Abortable abortable) {
+                abortable.abort();
+            }
+            content.close();
+        } finally {
+            if (closeAction != null) {
+                closeAction.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package com.guardians.udss.model;
+
+public enum OperationType {
+    SEARCH,
+    DOWNLOAD,
+    UPLOAD,
+    DELETE
+}
@@ -0,0 +1,25 @@
+package com.guardians.udss.model;
+
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * A started multipart upload with one presigned PUT per part, in part-number order. Every part except the
+ * last must be exactly {@code partSize} bytes.
+ */
+@Getter
+public class PresignedMultipartUpload {
+
+    private final String key;
+    private final String uploadId;
+    private final long partSize;
+    private final List<PresignedUrl> parts;
+
+    public PresignedMultipartUpload(String key, String uploadId, long partSize, List<PresignedUrl> parts) {
+        this.key = key;
+        this.uploadId = uploadId;
+        this.partSize = partSize;
+        this.parts = parts;
+    }
+}
@@ -0,0 +1,28 @@
+package com.guardians.udss.model;
+
+import lombok.Getter;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * A presigned request the client sends straight to S3. {@code headers} lists the headers that were signed
+ * and must be sent with exactly these values.
+ */
+@Getter
+public class PresignedUrl {
+
+    private final String key;
+    private final String method;
+    private final String url;
+    private final Map<String, String> headers;
+    private final Instant expiresAt;
+
+    public PresignedUrl(String key, String method, String url, Map<String, String> headers, Instant expiresAt) {
+        this.key = key;
+        this.method = method;
+        this.url = url;
+        this.headers = headers;
+        this.expiresAt = expiresAt;
+    }
+}
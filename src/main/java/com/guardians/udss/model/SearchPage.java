@@ -0,0 +1,21 @@
+package com.guardians.udss.model;
+
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * One page of search results. {@code nextToken} is an opaque cursor for the following page and is
+ * {@code null} on the last page.
+ */
+@Getter
+public class SearchPage {
+
+    private final List<String> keys;
+    private final String nextToken;
+
+    public SearchPage(List<String> keys, String nextToken) {
+        this.keys = keys;
+        this.nextToken = nextToken;
+    }
+}
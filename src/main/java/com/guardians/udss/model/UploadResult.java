@@ -0,0 +1,30 @@
+package com.guardians.udss.model;
+
+import lombok.Getter;
+
+/**
+ * Outcome of uploading one file as part of a batch. {@code error} is {@code null} when the file was stored.
+ */
+@Getter
+public class UploadResult {
+
+    private final String key;
+    private final boolean uploaded;
+    private final long size;
+    private final String error;
+
+    public UploadResult(String key, boolean uploaded, long size, String error) {
+        this.key = key;
+        this.uploaded = uploaded;
+        this.size = size;
+        this.error = error;
+    }
+
+    public static UploadResult uploaded(String key, long size) {
+        return new UploadResult(key, true, size, null);
+    }
+
+    public static UploadResult failed(String key, String error) {
+        return new UploadResult(key, false, 0, error);
+    }
+}
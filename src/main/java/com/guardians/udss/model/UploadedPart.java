@@ -0,0 +1,16 @@
+package com.guardians.udss.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A part the client uploaded through a presigned URL, with the ETag S3 returned for it.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadedPart {
+    private int partNumber;
+    private String etag;
+}
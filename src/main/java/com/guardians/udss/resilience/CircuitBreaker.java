@@ -0,0 +1,98 @@
+package com.guardians.udss.resilience;
+
+/**
+ * Count-based circuit breaker. It opens once the share of failures among the last {@code window} calls
+ * reaches the threshold, rejects every call while open, then lets a few trial calls through: if they all
+ * succeed it closes again, a single failure opens it for another period.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureRateThreshold;
+    private final int minimumCalls;
+    private final long openNanos;
+    private final int halfOpenCalls;
+    private final boolean[] outcomes;
+
+    private State state = State.CLOSED;
+    private int calls;
+    private int failures;
+    private int next;
+    private long openUntilNanos;
+    private int trialsStarted;
+    private int trialsSucceeded;
+
+    public CircuitBreaker(int failureRateThreshold, int window, int minimumCalls, long openNanos, int halfOpenCalls) {
+        this.failureRateThreshold = failureRateThreshold;
+        this.outcomes = new boolean[Math.max(1, window)];
+        this.minimumCalls = Math.max(1, Math.min(minimumCalls, outcomes.length));
+        this.openNanos = openNanos;
+        this.halfOpenCalls = Math.max(1, halfOpenCalls);
+    }
+
+    /**
+     * Whether a call may start now. A call that was let through must report its outcome through
+     * {@link #record}.
+     */
+    public synchronized boolean tryAcquire(long nowNanos) {
+        if (state == State.OPEN && nowNanos - openUntilNanos >= 0) {
+            state = State.HALF_OPEN;
+            trialsStarted = 0;
+            trialsSucceeded = 0;
+        }
+        if (state == State.HALF_OPEN) {
+            if (trialsStarted >= halfOpenCalls) {
+                return false;
+            }
+            trialsStarted++;
+            return true;
+        }
+        return state == State.CLOSED;
+    }
+
+    public synchronized void record(boolean failure, long nowNanos) {
+        if (state == State.HALF_OPEN) {
+            if (failure) {
+                open(nowNanos);
+            } else if (++trialsSucceeded >= halfOpenCalls) {
+                close();
+            }
+            return;
+        }
+        if (state == State.OPEN) {
+            // A call that started before the breaker opened; its outcome no longer matters.
+            return;
+        }
+        if (calls == outcomes.length && outcomes[next]) {
+            failures--;
+        }
+        outcomes[next] = failure;
+        next = (next + 1) % outcomes.length;
+        calls = Math.min(outcomes.length, calls + 1);
+        if (failure) {
+            failures++;
+        }
+        if (calls >= minimumCalls && failures * 100L >= (long) failureRateThreshold * calls) {
+            open(nowNanos);
+        }
+    }
+
+    public synchronized State state() {
+        return state;
+    }
+
+    private void open(long nowNanos) {
+        state = State.OPEN;
+        openUntilNanos = nowNanos + openNanos;
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        calls = 0;
+        failures = 0;
+        next = 0;
+    }
+}
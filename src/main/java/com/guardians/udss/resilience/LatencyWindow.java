@@ -0,0 +1,48 @@
+package com.guardians.udss.resilience;
+
+import java.util.Arrays;
+
+/**
+ * The most recent successful call latencies of one S3 operation, from which the hedge delay is taken. The
+ * percentile is recomputed from a sorted copy every few samples rather than on every read.
+ */
+final class LatencyWindow {
+
+    private static final int CAPACITY = 1024;
+    private static final int MIN_SAMPLES = 64;
+    private static final int RECOMPUTE_EVERY = 32;
+
+    private final long[] samples = new long[CAPACITY];
+    private int count;
+    private int next;
+    private int sinceRecompute;
+    private double cachedPercentile = Double.NaN;
+    private long cachedValue = -1;
+
+    synchronized void record(long nanos) {
+        samples[next] = nanos;
+        next = (next + 1) % CAPACITY;
+        count = Math.min(CAPACITY, count + 1);
+        if (++sinceRecompute >= RECOMPUTE_EVERY) {
+            cachedValue = -1;
+        }
+    }
+
+    /**
+     * The given percentile (0..1) of the window in nanoseconds, or -1 until enough samples are in.
+     */
+    synchronized long percentile(double percentile) {
+        if (count < MIN_SAMPLES) {
+            return -1;
+        }
+        if (cachedValue < 0 || cachedPercentile != percentile) {
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile * count) - 1;
+            cachedValue = sorted[Math.max(0, Math.min(count - 1, index))];
+            cachedPercentile = percentile;
+            sinceRecompute = 0;
+        }
+        return cachedValue;
+    }
+}
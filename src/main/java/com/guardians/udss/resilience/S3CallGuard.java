@@ -0,0 +1,376 @@
+package com.guardians.udss.resilience;
+
+import com.guardians.udss.config.S3ResilienceConfig;
+import com.guardians.udss.exception.OperationRejectedException;
+import com.guardians.udss.metrics.OperationMetrics;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.exception.ApiCallTimeoutException;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.exception.SdkServiceException;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Wraps S3 calls with a deadline, a circuit breaker and, for idempotent reads, request hedging.
+ * <p>
+ * A read runs on the caller's thread; if it has not answered within the configured percentile of the
+ * operation's recent latencies, a second, identical request is sent from a small bounded pool and whichever
+ * succeeds first is used. When the backup wins, the caller's thread is interrupted so the SDK aborts the
+ * first request. The losing result is handed to the caller's {@code discard} action once it arrives, so an
+ * open response stream is released. Backups are limited to a share of all reads by a token budget, so a
+ * general slowdown does not double the load on S3, and are skipped when every hedge thread is busy. Every
+ * call gets the remaining time to its deadline, which the caller passes on to the SDK as the call's
+ * {@code apiCallTimeout}.
+ * <p>
+ * Timeouts, connection errors and 5xx responses count as failures for the shared circuit breaker; client
+ * errors such as a missing key do not. While the breaker is open, calls fail at once with
+ * {@link OperationRejectedException}.
+ */
+@Component
+@Slf4j
+public class S3CallGuard {
+
+    private static final double MAX_HEDGE_TOKENS = 10;
+
+    private final S3ResilienceConfig config;
+    private final MeterRegistry meterRegistry;
+    private final CircuitBreaker circuitBreaker;
+    private final ScheduledThreadPoolExecutor timer;
+    private final ThreadPoolExecutor hedgeExecutor;
+    private final Map<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+    private double hedgeTokens = MAX_HEDGE_TOKENS;
+
+    @Autowired
+    public S3CallGuard(S3ResilienceConfig config, MeterRegistry meterRegistry) {
+        this.config = config;
+        this.meterRegistry = meterRegistry;
+        this.circuitBreaker = new CircuitBreaker(config.getCircuitBreakerFailureRateThreshold(),
+                config.getCircuitBreakerWindow(), config.getCircuitBreakerMinimumCalls(),
+                config.getCircuitBreakerOpenDuration().toNanos(), config.getCircuitBreakerHalfOpenCalls());
+        this.timer = new ScheduledThreadPoolExecutor(1, daemonThreads("s3-hedge-timer-"));
+        this.timer.setRemoveOnCancelPolicy(true);
+        // No queue: a backup that cannot start at once is no longer worth sending.
+        this.hedgeExecutor = new ThreadPoolExecutor(0, Math.max(1, config.getHedgingThreads()), 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), daemonThreads("s3-hedged-read-"));
+        Gauge.builder("udss.s3.circuit.state", circuitBreaker, breaker -> breaker.state().ordinal())
+                .description("S3 circuit breaker state: 0 closed, 1 open, 2 half-open")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+        hedgeExecutor.shutdown();
+    }
+
+    public Duration readDeadline() {
+        return config.getReadDeadline();
+    }
+
+    /**
+     * Runs an idempotent read such as GetObject, ListObjectsV2 or HeadObject. {@code attempt} is called on the
+     * caller's thread with the time left until the deadline, and possibly a second time, concurrently, on a
+     * hedge thread; {@code discard} releases a result that arrived too late to be used.
+     */
+    public <T> T read(String operation, Function<Duration, T> attempt, Consumer<T> discard) {
+        acquire(operation);
+        long startedAt = System.nanoTime();
+        try {
+            T result = config.isHedgingEnabled()
+                    ? hedged(operation, attempt, discard, startedAt + config.getReadDeadline().toNanos())
+                    : attempt.apply(config.getReadDeadline());
+            circuitBreaker.record(false, System.nanoTime());
+            return result;
+        } catch (RuntimeException e) {
+            circuitBreaker.record(isFailure(e), System.nanoTime());
+            throw e;
+        }
+    }
+
+    /**
+     * Runs a call that must not be repeated, such as an upload or a delete, behind the circuit breaker only.
+     * Its deadline is the client's default {@code apiCallTimeout}.
+     */
+    public <T, E extends Exception> T write(String operation, OperationMetrics.Operation<T, E> call) throws E {
+        acquire(operation);
+        try {
+            T result = call.run();
+            circuitBreaker.record(false, System.nanoTime());
+            return result;
+        } catch (RuntimeException e) {
+            circuitBreaker.record(isFailure(e), System.nanoTime());
+            throw e;
+        } catch (Exception e) {
+            circuitBreaker.record(false, System.nanoTime());
+            throw e;
+        }
+    }
+
+    private void acquire(String operation) {
+        if (config.isCircuitBreakerEnabled() && !circuitBreaker.tryAcquire(System.nanoTime())) {
+            meterRegistry.counter("udss.s3.circuit.rejected", "operation", operation).increment();
+            throw new OperationRejectedException("S3 is unavailable, try again later");
+        }
+    }
+
+    private <T> T hedged(String operation, Function<Duration, T> attempt, Consumer<T> discard, long deadlineNanos) {
+        LatencyWindow window = latencies.computeIfAbsent(operation, this::newWindow);
+        HedgedCall<T> call = new HedgedCall<>(operation, window, attempt, discard, deadlineNanos);
+        depositHedgeToken();
+
+        meterRegistry.counter("udss.s3.hedge.attempts", "operation", operation, "attempt", "primary").increment();
+        ScheduledFuture<?> hedge = timer.schedule(call::hedge,
+                Math.min(hedgeDelayNanos(window), remaining(deadlineNanos)), TimeUnit.NANOSECONDS);
+        ScheduledFuture<?> expiry = timer.schedule(call::abandon, remaining(deadlineNanos), TimeUnit.NANOSECONDS);
+        try {
+            call.runPrimary();
+        } finally {
+            hedge.cancel(false);
+            expiry.cancel(false);
+        }
+        Winner<T> winner = call.await(remaining(deadlineNanos));
+        if (winner == null) {
+            call.abandon();
+            meterRegistry.counter("udss.s3.deadline.exceeded", "operation", operation).increment();
+            log.warn("S3 {} did not answer within {}", operation, config.getReadDeadline());
+            throw ApiCallTimeoutException.create(config.getReadDeadline().toMillis());
+        }
+        meterRegistry.counter("udss.s3.hedge.wins", "operation", operation,
+                "attempt", winner.hedge ? "hedge" : "primary").increment();
+        return winner.result;
+    }
+
+    private LatencyWindow newWindow(String operation) {
+        LatencyWindow window = new LatencyWindow();
+        Gauge.builder("udss.s3.hedge.delay", window, ignored -> hedgeDelayNanos(window) / 1e9)
+                .description("Time after which a backup request is sent")
+                .tag("operation", operation)
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        return window;
+    }
+
+    /**
+     * The configured percentile of recent latencies, within the configured bounds; the upper bound until
+     * enough calls have been seen.
+     */
+    private long hedgeDelayNanos(LatencyWindow window) {
+        long percentile = window.percentile(config.getHedgingPercentile());
+        long max = config.getHedgingMaxDelay().toNanos();
+        return percentile < 0 ? max : Math.max(config.getHedgingMinDelay().toNanos(), Math.min(max, percentile));
+    }
+
+    private synchronized void depositHedgeToken() {
+        hedgeTokens = Math.min(MAX_HEDGE_TOKENS, hedgeTokens + config.getHedgingMaxRatio());
+    }
+
+    private synchronized boolean tryWithdrawHedgeToken() {
+        if (hedgeTokens < 1) {
+            return false;
+        }
+        hedgeTokens -= 1;
+        return true;
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static long remaining(long deadlineNanos) {
+        return Math.max(0, deadlineNanos - System.nanoTime());
+    }
+
+    private static boolean isFailure(RuntimeException e) {
+        if (e instanceof SdkServiceException service) {
+            return service.statusCode() >= 500 || service.isThrottlingException();
+        }
+        return e instanceof SdkClientException;
+    }
+
+    private static final class Winner<T> {
+        private final T result;
+        private final boolean hedge;
+
+        private Winner(T result, boolean hedge) {
+            this.result = result;
+            this.hedge = hedge;
+        }
+    }
+
+    /**
+     * The caller's attempt and at most one backup racing for {@link #winner}. An attempt that succeeds after the
+     * race is decided, or after the caller gave up, has its result discarded; the race fails only once every
+     * launched attempt has failed.
+     */
+    private final class HedgedCall<T> {
+        private final String operation;
+        private final LatencyWindow window;
+        private final Function<Duration, T> attempt;
+        private final Consumer<T> discard;
+        private final long deadlineNanos;
+        private final Thread caller = Thread.currentThread();
+        private final CompletableFuture<Winner<T>> winner = new CompletableFuture<>();
+        private final AtomicInteger running = new AtomicInteger(1);
+        private boolean primaryRunning = true;
+        private boolean primaryInterrupted;
+
+        private HedgedCall(String operation, LatencyWindow window, Function<Duration, T> attempt, Consumer<T> discard,
+                           long deadlineNanos) {
+            this.operation = operation;
+            this.window = window;
+            this.attempt = attempt;
+            this.discard = discard;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        /**
+         * Runs the first attempt on the caller's thread. Returns once it has finished, or has been interrupted
+         * because the backup won or the deadline passed.
+         */
+        void runPrimary() {
+            long startedAt = System.nanoTime();
+            T result;
+            try {
+                result = attempt.apply(Duration.ofNanos(Math.max(1, deadlineNanos - startedAt)));
+            } catch (RuntimeException e) {
+                primaryFinished();
+                failed(e);
+                return;
+            }
+            primaryFinished();
+            window.record(System.nanoTime() - startedAt);
+            if (!winner.complete(new Winner<>(result, false))) {
+                discardQuietly(result);
+            }
+        }
+
+        /**
+         * Sends the backup, if the first attempt is still waiting and the budget and the hedge pool allow it.
+         * Runs on the timer thread.
+         */
+        synchronized void hedge() {
+            if (!primaryRunning || winner.isDone() || remaining(deadlineNanos) == 0) {
+                return;
+            }
+            if (!tryWithdrawHedgeToken()) {
+                meterRegistry.counter("udss.s3.hedge.skipped", "operation", operation).increment();
+                return;
+            }
+            running.incrementAndGet();
+            long startedAt = System.nanoTime();
+            try {
+                hedgeExecutor.execute(() -> {
+                    T result;
+                    try {
+                        result = attempt.apply(Duration.ofNanos(Math.max(1, deadlineNanos - startedAt)));
+                    } catch (RuntimeException e) {
+                        failed(e);
+                        return;
+                    }
+                    window.record(System.nanoTime() - startedAt);
+                    if (winner.complete(new Winner<>(result, true))) {
+                        interruptPrimary();
+                    } else {
+                        discardQuietly(result);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                running.decrementAndGet();
+                meterRegistry.counter("udss.s3.hedge.skipped", "operation", operation).increment();
+                return;
+            }
+            meterRegistry.counter("udss.s3.hedge.attempts", "operation", operation, "attempt", "hedge").increment();
+        }
+
+        private synchronized void interruptPrimary() {
+            if (primaryRunning && !primaryInterrupted) {
+                primaryInterrupted = true;
+                caller.interrupt();
+            }
+        }
+
+        /**
+         * Marks the first attempt as finished and clears the interrupt this call may have sent it, so it does
+         * not leak into whatever the caller's thread does next.
+         */
+        private synchronized void primaryFinished() {
+            primaryRunning = false;
+            if (primaryInterrupted) {
+                Thread.interrupted();
+            }
+        }
+
+        private void failed(RuntimeException e) {
+            if (running.decrementAndGet() == 0) {
+                winner.completeExceptionally(e);
+            }
+        }
+
+        /**
+         * The winning attempt, or {@code null} if none has succeeded within {@code timeoutNanos} or the call
+         * was abandoned. Rethrows the last failure once every attempt has failed.
+         */
+        Winner<T> await(long timeoutNanos) {
+            try {
+                return winner.get(timeoutNanos, TimeUnit.NANOSECONDS);
+            } catch (TimeoutException | CancellationException e) {
+                return null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                abandon();
+                throw new OperationRejectedException("Interrupted while waiting for S3");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause() instanceof CompletionException ? e.getCause().getCause() : e.getCause();
+                if (cause instanceof RuntimeException runtime) {
+                    throw runtime;
+                }
+                throw new RuntimeException(cause);
+            }
+        }
+
+        /**
+         * Gives up on the race; attempts still running will discard their results, and a first attempt still
+         * blocking the caller's thread is interrupted.
+         */
+        void abandon() {
+            if (winner.cancel(false)) {
+                interruptPrimary();
+            }
+        }
+
+        private void discardQuietly(T result) {
+            try {
+                discard.accept(result);
+            } catch (RuntimeException e) {
+                log.warn("Error releasing unused S3 response: {}", e.getMessage());
+            }
+        }
+    }
+}
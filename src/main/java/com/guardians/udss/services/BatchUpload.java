@@ -0,0 +1,122 @@
+package com.guardians.udss.services;
+
+import com.guardians.udss.model.UploadResult;
+import com.guardians.udss.util.BufferPool;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * A batch of uploads for one user, fed file by file while the request body is parsed. A file that fits in
+ * one pooled buffer is read into it and uploaded in the background, so parsing moves on to the next file
+ * straight away; the pool size bounds how many such uploads are in flight. A larger file is streamed to S3
+ * directly from the request on the calling thread, since its bytes are only readable until the next file
+ * is parsed.
+ */
+@Slf4j
+public class BatchUpload {
+
+    @FunctionalInterface
+    interface FileStore {
+        /**
+         * Stores one file and returns its size; {@code size} is {@code -1} when it is not known up front.
+         */
+        long store(String filename, String contentType, InputStream content, long size) throws IOException;
+    }
+
+    private final String username;
+    private final BufferPool buffers;
+    private final ExecutorService executor;
+    private final FileStore fileStore;
+    private final List<Future<UploadResult>> results = new ArrayList<>();
+
+    BatchUpload(String username, BufferPool buffers, ExecutorService executor, FileStore fileStore) {
+        this.username = username;
+        this.buffers = buffers;
+        this.executor = executor;
+        this.fileStore = fileStore;
+    }
+
+    /**
+     * Adds a file to the batch. Returns once {@code content} has been fully read; the upload itself may
+     * still be in progress. Throws only if reading {@code content} fails.
+     */
+    public void add(String filename, String contentType, InputStream content) throws IOException {
+        byte[] buffer = acquireBuffer();
+        int length;
+        try {
+            length = S3MultipartUploader.readFully(content, buffer);
+        } catch (IOException e) {
+            buffers.release(buffer);
+            throw e;
+        }
+
+        if (length < buffer.length) {
+            results.add(executor.submit(() -> {
+                try {
+                    return store(filename, contentType, new ByteArrayInputStream(buffer, 0, length), length);
+                } finally {
+                    buffers.release(buffer);
+                }
+            }));
+            return;
+        }
+        try {
+            InputStream whole = new SequenceInputStream(new ByteArrayInputStream(buffer, 0, length), content);
+            results.add(CompletableFuture.completedFuture(store(filename, contentType, whole, -1)));
+        } finally {
+            buffers.release(buffer);
+        }
+    }
+
+    /**
+     * Waits for every upload of the batch and returns their results in the order the files were added.
+     */
+    public List<UploadResult> finish() {
+        List<UploadResult> finished = new ArrayList<>(results.size());
+        for (Future<UploadResult> result : results) {
+            try {
+                finished.add(result.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                results.forEach(pending -> pending.cancel(true));
+                throw new RuntimeException("Interrupted while uploading files to S3 bucket");
+            } catch (ExecutionException e) {
+                // store() reports its own failures, so this only happens on an unexpected error.
+                throw new RuntimeException("Error uploading files to S3 bucket", e.getCause());
+            }
+        }
+        return finished;
+    }
+
+    private UploadResult store(String filename, String contentType, InputStream content, long size) {
+        String key = username + "/" + filename;
+        try {
+            return UploadResult.uploaded(key, fileStore.store(filename, contentType, content, size));
+        } catch (IOException e) {
+            log.error("Error reading file input stream for key {}: {}", key, e.getMessage());
+            return UploadResult.failed(key, "Error reading file input stream");
+        } catch (RuntimeException e) {
+            return UploadResult.failed(key, e.getMessage());
+        }
+    }
+
+    private byte[] acquireBuffer() throws InterruptedIOException {
+        try {
+            return buffers.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for an upload buffer");
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package com.guardians.udss.services;
+
+import com.guardians.udss.config.DedupConfig;
+import com.guardians.udss.config.S3Config;
+import com.guardians.udss.config.StorageConfig;
+import com.guardians.udss.exception.ReservedNameException;
+import com.guardians.udss.resilience.S3CallGuard;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Content-addressed storage for deduplicated uploads. Each distinct content is stored once as a blob under
+ * {@code <prefix>blobs/<sha-256>}; the user's key becomes an empty reference object whose metadata names the
+ * blob. Every reference also leaves a marker under {@code <prefix>refs/<sha-256>/<key>}, and the markers are
+ * the blob's reference count: the blob is deleted when the last one goes.
+ * <p>
+ * Adding and releasing references to a blob are serialized per blob within this instance only; instances
+ * sharing a bucket can still race a final release against a new upload of the same content. Content is sent
+ * without holding the blob's lock: a reference is recorded before its blob is uploaded or copied, so a
+ * concurrent release never sees the blob as unreferenced in the meantime.
+ */
+@Component
+@ConditionalOnProperty(prefix = "udss.storage", name = "backend", havingValue = StorageConfig.S3, matchIfMissing = true)
+@Slf4j
+public class DedupStore {
+
+    /** Metadata key on a reference object holding the SHA-256 of the blob it points to. */
+    static final String BLOB_METADATA = "blob-sha256";
+    /**
+     * Metadata key on an object uploaded through a presigned URL over a reference, holding the SHA-256 of the
+     * blob the reference pointed to so that completing the upload can release it.
+     */
+    static final String REPLACED_BLOB_METADATA = "replaced-blob-sha256";
+    /** Largest object a single {@code CopyObject} call can copy. */
+    static final long MAX_COPY_SIZE = 5L * 1024 * 1024 * 1024;
+    private static final int LOCK_STRIPES = 64;
+
+    private final DedupConfig dedupConfig;
+    private final S3Client s3Client;
+    private final S3CallGuard callGuard;
+    private final String bucketName;
+    private final Lock[] locks = new Lock[LOCK_STRIPES];
+
+    @Autowired
+    public DedupStore(DedupConfig dedupConfig, S3Config s3Config, S3Client s3Client, S3CallGuard callGuard) {
+        this.dedupConfig = dedupConfig;
+        this.s3Client = s3Client;
+        this.callGuard = callGuard;
+        this.bucketName = s3Config.getBucketName();
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    public boolean isEnabled() {
+        return dedupConfig.isEnabled();
+    }
+
+    /**
+     * Rejects a user whose keys would fall under the dedup prefix, or whose listing would take in the keys under
+     * it. The namespace is reserved whether or not deduplication is enabled, so that enabling it later finds
+     * nothing of a user's there.
+     */
+    public void checkUserName(String username) {
+        String prefix = dedupConfig.getPrefix();
+        String userPrefix = username + "/";
+        if (prefix != null && !prefix.isEmpty() && (userPrefix.startsWith(prefix) || prefix.startsWith(userPrefix))) {
+            throw new ReservedNameException("User name is reserved: " + username);
+        }
+    }
+
+    /**
+     * Rejects a {@code username/filename} key whose user name {@link #checkUserName} rejects.
+     */
+    public void checkKey(String key) {
+        int separator = key.indexOf('/');
+        checkUserName(separator < 0 ? key : key.substring(0, separator));
+    }
+
+    String blobKey(String sha256) {
+        return dedupConfig.getPrefix() + "blobs/" + sha256;
+    }
+
+    private String markerPrefix(String sha256) {
+        return dedupConfig.getPrefix() + "refs/" + sha256 + "/";
+    }
+
+    /**
+     * Lock held while checking for the blob with the given hash and adding or releasing a reference to it.
+     */
+    Lock lockFor(String sha256) {
+        return locks[Math.floorMod(sha256.hashCode(), locks.length)];
+    }
+
+    /**
+     * The hash of the blob {@code key} refers to, or {@code null} when the key is a plain object or missing.
+     */
+    String referencedBlob(String key) {
+        HeadObjectResponse head = head(key);
+        return head == null ? null : head.metadata().get(BLOB_METADATA);
+    }
+
+    private boolean blobExists(String sha256) {
+        return head(blobKey(sha256)) != null;
+    }
+
+    private HeadObjectResponse head(String key) {
+        return callGuard.read("HeadObject", timeout -> headOrNull(key, timeout), ignored -> {
+        });
+    }
+
+    private HeadObjectResponse headOrNull(String key, Duration timeout) {
+        try {
+            return s3Client.headObject(HeadObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .overrideConfiguration(override -> override.apiCallTimeout(timeout))
+                    .build());
+        } catch (NoSuchKeyException e) {
+            return null;
+        } catch (S3Exception e) {
+            // HEAD responses carry no error body, so a missing key is not always reported as NoSuchKey.
+            if (e.statusCode() == 404) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Copies the plain object at {@code key} to the blob for {@code sha256}, keeping its content type, encoding
+     * and metadata. Returns {@code false}, copying nothing, when the object is too large for a single copy.
+     */
+    boolean copyToBlob(String key, String sha256, long size) {
+        if (size > MAX_COPY_SIZE) {
+            log.warn("Not deduplicating {}: {} bytes is above the single copy limit", key, size);
+            return false;
+        }
+        s3Client.copyObject(CopyObjectRequest.builder()
+                .sourceBucket(bucketName)
+                .sourceKey(key)
+                .destinationBucket(bucketName)
+                .destinationKey(blobKey(sha256))
+                .acl(ObjectCannedACL.PUBLIC_READ)
+                .metadataDirective(MetadataDirective.COPY)
+                .build());
+        return true;
+    }
+
+    /**
+     * Records {@code key} as a reference to the blob for {@code sha256} and returns whether the blob already
+     * exists. If it does not, the caller stores it next and calls {@link #release} if that fails; the marker
+     * written here keeps a concurrent release from deleting the blob in the meantime.
+     */
+    boolean addReference(String key, String sha256) {
+        Lock lock = lockFor(sha256);
+        lock.lock();
+        try {
+            boolean exists = blobExists(sha256);
+            s3Client.putObject(PutObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(markerPrefix(sha256) + key)
+                    .build(), RequestBody.empty());
+            return exists;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Replaces {@code key} with an empty reference object pointing at the blob for {@code sha256}, once the
+     * reference has been added and the blob stored. Like every stored object it is public-read, but its public
+     * URL serves the empty reference rather than the content; deduplicated files are read through the API or a
+     * presigned download URL.
+     */
+    void writeReference(String key, String sha256, String contentType) {
+        s3Client.putObject(PutObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .acl(ObjectCannedACL.PUBLIC_READ)
+                .contentType(contentType)
+                .metadata(Map.of(BLOB_METADATA, sha256))
+                .build(), RequestBody.empty());
+    }
+
+    /**
+     * Drops the reference from {@code key} to the blob for {@code sha256} and deletes the blob when no other
+     * reference remains. The reference object itself is left to the caller.
+     */
+    void release(String key, String sha256) {
+        Lock lock = lockFor(sha256);
+        lock.lock();
+        try {
+            s3Client.deleteObject(DeleteObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(markerPrefix(sha256) + key)
+                    .build());
+            boolean referenced = !s3Client.listObjectsV2(ListObjectsV2Request.builder()
+                    .bucket(bucketName)
+                    .prefix(markerPrefix(sha256))
+                    .maxKeys(1)
+                    .build()).contents().isEmpty();
+            if (!referenced) {
+                s3Client.deleteObject(DeleteObjectRequest.builder()
+                        .bucket(bucketName)
+                        .key(blobKey(sha256))
+                        .build());
+                log.info("Deleted blob {} after its last reference {} was removed", sha256, key);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    static String toHex(MessageDigest digest) {
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Reads {@code inputStream} to the end and returns the hex SHA-256 of its content.
+     */
+    static String sha256(InputStream inputStream) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[64 * 1024];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+        }
+        return toHex(digest);
+    }
+}
@@ -0,0 +1,489 @@
+package com.guardians.udss.services;
+
+import com.guardians.udss.config.StorageConfig;
+import com.guardians.udss.exception.FileNotFoundException;
+import com.guardians.udss.index.FileMetadataIndex;
+import com.guardians.udss.index.IndexedFile;
+import com.guardians.udss.metrics.OperationMetrics;
+import com.guardians.udss.model.DeleteResult;
+import com.guardians.udss.model.DownloadOptions;
+import com.guardians.udss.model.FileDownload;
+import com.guardians.udss.model.SearchPage;
+import com.guardians.udss.util.BufferPool;
+import com.guardians.udss.util.FileRegionDownloads;
+import com.guardians.udss.util.FileRegionInputStream;
+import com.guardians.udss.util.SearchTokens;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * File service on a local or network-attached directory instead of S3, enabled with
+ * {@code udss.storage.backend=local}. A key {@code username/filename} lives at
+ * {@code <root>/<shard>/<username>/<filename>}, where the shard is two hex digits derived from the user name,
+ * so no single directory holds every user. Uploads are written to a temp file under {@code <root>/.tmp} and
+ * renamed into place, so readers see either the old file or the complete new one. Downloads read the file
+ * through a {@link FileRegionInputStream}. The ETag is derived from the modification time and size, and the
+ * content type is kept in an extended attribute where the file system supports them and guessed from the
+ * file name otherwise. Compression and deduplication are S3-only; the page cache stands in for the object
+ * cache.
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(prefix = "udss.storage", name = "backend", havingValue = StorageConfig.LOCAL)
+public class LocalFileServiceImpl implements S3FileService {
+
+    private static final String TEMP_DIRECTORY = ".tmp";
+    private static final String CONTENT_TYPE_ATTRIBUTE = "udss.content-type";
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final StorageConfig storageConfig;
+    private final FileMetadataIndex metadataIndex;
+    private final OperationMetrics operationMetrics;
+    private final Path root;
+    private final Path tempDirectory;
+    private final boolean contentTypeAttributes;
+    private final ExecutorService batchUploadExecutor;
+    private final BufferPool batchUploadBuffers;
+
+    @Autowired
+    public LocalFileServiceImpl(StorageConfig storageConfig, FileMetadataIndex metadataIndex,
+                                OperationMetrics operationMetrics) throws IOException {
+        this.storageConfig = storageConfig;
+        this.metadataIndex = metadataIndex;
+        this.operationMetrics = operationMetrics;
+        this.root = Paths.get(storageConfig.getLocalRoot()).toAbsolutePath().normalize();
+        this.tempDirectory = root.resolve(TEMP_DIRECTORY);
+        Files.createDirectories(tempDirectory);
+        FileStore fileStore = Files.getFileStore(root);
+        this.contentTypeAttributes = fileStore.supportsFileAttributeView(UserDefinedFileAttributeView.class);
+        int uploadParallelism = Math.max(1, storageConfig.getLocalBatchUploadParallelism());
+        AtomicInteger threadCount = new AtomicInteger();
+        this.batchUploadExecutor = Executors.newFixedThreadPool(uploadParallelism, runnable -> {
+            Thread thread = new Thread(runnable, "local-batch-upload-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.batchUploadBuffers = new BufferPool(Math.toIntExact(storageConfig.getLocalBatchUploadBufferSize().toBytes()), uploadParallelism);
+        log.info("Storing files under {} ({}, content types {})", root, fileStore.type(),
+                contentTypeAttributes ? "in extended attributes" : "guessed from file names");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        batchUploadExecutor.shutdown();
+    }
+
+    public List<String> searchFiles(String username, String searchTerm) {
+        return operationMetrics.time(OperationMetrics.SEARCH,
+                () -> matchingKeys(username, searchTerm, null).collect(Collectors.toList()));
+    }
+
+    public SearchPage searchFiles(String username, String searchTerm, int limit, String nextToken) {
+        return operationMetrics.time(OperationMetrics.SEARCH, () -> {
+            String startAfter = SearchTokens.decode(nextToken, username + "/");
+            List<String> keys = matchingKeys(username, searchTerm, startAfter)
+                    .limit(limit + 1L)
+                    .collect(Collectors.toCollection(ArrayList::new));
+            if (keys.size() <= limit) {
+                return new SearchPage(keys, null);
+            }
+            keys.remove(limit);
+            return new SearchPage(keys, SearchTokens.encode(keys.get(limit - 1)));
+        });
+    }
+
+    public Stream<String> streamFiles(String username, String searchTerm) {
+        return operationMetrics.time(OperationMetrics.SEARCH, () -> matchingKeys(username, searchTerm, null));
+    }
+
+    /**
+     * Returns the matching keys in key order, from the metadata index when it is enabled and otherwise from a
+     * walk of the user's directory.
+     */
+    private Stream<String> matchingKeys(String username, String searchTerm, String startAfter) {
+        List<String> keys = metadataIndex.isEnabled()
+                ? metadataIndex.search(username, searchTerm, this::listAllFiles)
+                : listKeys(username).stream().filter(key -> key.contains(searchTerm)).collect(Collectors.toList());
+        if (startAfter == null) {
+            return keys.stream();
+        }
+        int position = Collections.binarySearch(keys, startAfter);
+        int from = position >= 0 ? position + 1 : -position - 1;
+        return keys.subList(from, keys.size()).stream();
+    }
+
+    private Stream<IndexedFile> listAllFiles(String username) {
+        return listKeys(username).stream().map(key -> {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(pathOf(key), BasicFileAttributes.class);
+                return new IndexedFile(key, attributes.size(), attributes.lastModifiedTime().toMillis(), null);
+            } catch (NoSuchFileException e) {
+                return null;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }).filter(Objects::nonNull);
+    }
+
+    /**
+     * All keys of the user in key order. Unlike an S3 listing this cannot be paged, so the whole directory
+     * tree is walked at once.
+     */
+    private List<String> listKeys(String username) {
+        Path userDirectory = userDirectory(username);
+        if (!Files.isDirectory(userDirectory)) {
+            return Collections.emptyList();
+        }
+        try (Stream<Path> paths = Files.walk(userDirectory)) {
+            return paths.filter(Files::isRegularFile)
+                    .map(path -> username + "/" + toKeyPath(userDirectory.relativize(path)))
+                    .sorted()
+                    .collect(Collectors.toList());
+        } catch (IOException | UncheckedIOException e) {
+            log.error("Error listing files in local storage for user {}: {}", username, e.getMessage());
+            throw new RuntimeException("Error searching files in local storage");
+        }
+    }
+
+    public FileDownload downloadFile(String key, DownloadOptions options) {
+        return operationMetrics.time(OperationMetrics.DOWNLOAD, () -> {
+            FileDownload download = openFile(key, options);
+            if (!download.isNotModified() && download.getContentLength() != null) {
+                operationMetrics.recordFileSize(OperationMetrics.DOWNLOAD, download.getContentLength());
+            }
+            return download;
+        });
+    }
+
+    /**
+     * Opens the file and answers the download options the way S3 answers the matching GET headers. The file
+     * is opened before its attributes are read, so a concurrent upload that renames a new file into place
+     * cannot change the length of what is streamed.
+     */
+    private FileDownload openFile(String key, DownloadOptions options) {
+        Path path = pathOf(key);
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            log.error("File not found in local storage: {}", key);
+            throw new FileNotFoundException("File not found in local storage for key: " + key);
+        } catch (IOException e) {
+            log.error("Error opening file in local storage with key {}: {}", key, e.getMessage());
+            throw new RuntimeException("Error downloading file from local storage");
+        }
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            if (attributes.isDirectory()) {
+                channel.close();
+                throw new FileNotFoundException("File not found in local storage for key: " + key);
+            }
+            long size = channel.size();
+            String eTag = eTag(attributes.lastModifiedTime().to(TimeUnit.MICROSECONDS), size);
+            return FileRegionDownloads.open(key, channel, 0, size, contentType(path), eTag,
+                    attributes.lastModifiedTime().toInstant(), options);
+        } catch (IOException e) {
+            closeQuietly(channel);
+            log.error("Error reading file in local storage with key {}: {}", key, e.getMessage());
+            throw new RuntimeException("Error downloading file from local storage");
+        }
+    }
+
+    public String uploadFile(String username, MultipartFile file) {
+        return operationMetrics.time(OperationMetrics.UPLOAD, () -> {
+            String filename = file.getOriginalFilename();
+            String key = username + "/" + filename;
+            Path target = pathOf(key);
+            Path temp = createTempFile();
+            try {
+                // Lets the container move an upload it already spooled to disk instead of copying it.
+                file.transferTo(temp.toFile());
+                commit(temp, target, file.getContentType());
+            } catch (IOException e) {
+                deleteQuietly(temp);
+                log.error("Error writing file to local storage with key {}: {}", key, e.getMessage());
+                throw new RuntimeException("Error uploading file to local storage");
+            }
+            recordUpload(username, filename, file.getSize(), file.getContentType());
+            return key;
+        });
+    }
+
+    public BatchUpload startBatchUpload(String username) {
+        return new BatchUpload(username, batchUploadBuffers, batchUploadExecutor,
+                (filename, contentType, content, size) -> storeFile(username, filename, contentType, content));
+    }
+
+    /**
+     * Stores one file under {@code username/filename} and returns its size.
+     */
+    private long storeFile(String username, String filename, String contentType, InputStream inputStream) throws IOException {
+        return operationMetrics.time(OperationMetrics.UPLOAD, () -> {
+            String key = username + "/" + filename;
+            Path target = pathOf(key);
+            Path temp = createTempFile();
+            long size = 0;
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                byte[] buffer = new byte[COPY_BUFFER_SIZE];
+                int read;
+                while ((read = inputStream.read(buffer)) != -1) {
+                    ByteBuffer source = ByteBuffer.wrap(buffer, 0, read);
+                    while (source.hasRemaining()) {
+                        channel.write(source);
+                    }
+                    size += read;
+                }
+            } catch (IOException e) {
+                deleteQuietly(temp);
+                log.error("Error writing file to local storage with key {}: {}", key, e.getMessage());
+                throw e;
+            }
+            try {
+                commit(temp, target, contentType);
+            } catch (IOException e) {
+                deleteQuietly(temp);
+                log.error("Error writing file to local storage with key {}: {}", key, e.getMessage());
+                throw new RuntimeException("Error uploading file to local storage");
+            }
+            recordUpload(username, filename, size, contentType);
+            return size;
+        });
+    }
+
+    private Path createTempFile() {
+        try {
+            return Files.createTempFile(tempDirectory, "upload-", ".tmp");
+        } catch (IOException e) {
+            log.error("Error creating temp file in {}: {}", tempDirectory, e.getMessage());
+            throw new RuntimeException("Error uploading file to local storage");
+        }
+    }
+
+    /**
+     * Makes a fully written temp file the content of {@code target}: records the content type, forces the
+     * data to disk when configured, and renames the file into place. The rename either replaces the old file
+     * as a whole or fails, so readers never see a partial one. A concurrent delete may remove the target's
+     * freshly created directory before the rename, which is then retried once.
+     */
+    private void commit(Path temp, Path target, String contentType) throws IOException {
+        if (contentType != null && contentTypeAttributes) {
+            writeContentType(temp, contentType);
+        }
+        if (storageConfig.isLocalFsync()) {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+        }
+        for (int attempt = 1; ; attempt++) {
+            Files.createDirectories(target.getParent());
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                return;
+            } catch (NoSuchFileException e) {
+                if (attempt == 2 || !Files.exists(temp)) {
+                    throw e;
+                }
+            } catch (AtomicMoveNotSupportedException e) {
+                log.error("Temp directory {} is not on the same file system as {}", tempDirectory, target);
+                throw e;
+            }
+        }
+    }
+
+    private void recordUpload(String username, String filename, long size, String contentType) {
+        metadataIndex.recordUpload(username, filename, size, Instant.now(), contentType);
+        operationMetrics.recordFileSize(OperationMetrics.UPLOAD, size);
+        log.info("Stored {}/{} ({} bytes) in local storage", username, filename, size);
+    }
+
+    public void deleteFile(String username, String filename) {
+        operationMetrics.time(OperationMetrics.DELETE, () -> {
+            String key = username + "/" + filename;
+            try {
+                // Like S3, deleting a key that does not exist succeeds.
+                delete(username, key);
+                metadataIndex.recordDelete(username, filename);
+                log.info("Successfully deleted file with key: {}", key);
+            } catch (IOException e) {
+                log.error("Error deleting file from local storage with key {}: {}", key, e.getMessage());
+                throw new RuntimeException("Error deleting file from local storage");
+            }
+            return null;
+        });
+    }
+
+    public List<DeleteResult> deleteFiles(String username, List<String> filenames) {
+        return operationMetrics.time(OperationMetrics.BATCH_DELETE, () -> {
+            List<String> keys = filenames.stream().distinct().map(filename -> username + "/" + filename)
+                    .collect(Collectors.toList());
+            List<DeleteResult> results = deleteKeys(username, keys);
+            for (DeleteResult result : results) {
+                if (result.isDeleted()) {
+                    metadataIndex.recordDelete(username, result.getKey().substring(username.length() + 1));
+                }
+            }
+            return results;
+        });
+    }
+
+    public List<DeleteResult> deleteAllFiles(String username) {
+        return operationMetrics.time(OperationMetrics.BATCH_DELETE, () -> {
+            List<DeleteResult> results = deleteKeys(username, listKeys(username));
+            metadataIndex.invalidate(username);
+            return results;
+        });
+    }
+
+    private List<DeleteResult> deleteKeys(String username, List<String> keys) {
+        List<DeleteResult> results = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            try {
+                delete(username, key);
+                results.add(DeleteResult.deleted(key));
+            } catch (IOException | RuntimeException e) {
+                log.error("Error deleting file from local storage with key {}: {}", key, e.getMessage());
+                results.add(DeleteResult.failed(key, e.getMessage()));
+            }
+        }
+        log.info("Deleted {} keys from local storage", keys.size());
+        return results;
+    }
+
+    /**
+     * Deletes the file of {@code key}, then the directories it leaves empty up to and including the user's.
+     */
+    private void delete(String username, String key) throws IOException {
+        Path path = pathOf(key);
+        Files.deleteIfExists(path);
+        Path userDirectory = userDirectory(username);
+        for (Path directory = path.getParent(); directory.startsWith(userDirectory); directory = directory.getParent()) {
+            try {
+                Files.deleteIfExists(directory);
+            } catch (DirectoryNotEmptyException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Maps a key onto its file, refusing any key whose file name would leave the user's directory.
+     */
+    private Path pathOf(String key) {
+        int separator = key.indexOf('/');
+        if (separator <= 0 || separator == key.length() - 1) {
+            throw new FileNotFoundException("File not found in local storage for key: " + key);
+        }
+        Path userDirectory = userDirectory(key.substring(0, separator));
+        Path path = userDirectory.resolve(key.substring(separator + 1)).normalize();
+        if (!path.startsWith(userDirectory) || path.equals(userDirectory)) {
+            log.error("Rejected key {} outside its user's directory", key);
+            throw new FileNotFoundException("File not found in local storage for key: " + key);
+        }
+        return path;
+    }
+
+    private Path userDirectory(String username) {
+        if (username.isEmpty() || username.equals(".") || username.equals("..")
+                || username.indexOf('/') >= 0 || username.indexOf('\\') >= 0) {
+            throw new FileNotFoundException("No files in local storage for user: " + username);
+        }
+        return root.resolve(shard(username)).resolve(username);
+    }
+
+    private static String shard(String username) {
+        CRC32 crc = new CRC32();
+        crc.update(username.getBytes(StandardCharsets.UTF_8));
+        return String.format("%02x", crc.getValue() & 0xff);
+    }
+
+    private static String toKeyPath(Path relative) {
+        return relative.getFileSystem().getSeparator().equals("/")
+                ? relative.toString()
+                : relative.toString().replace(relative.getFileSystem().getSeparator(), "/");
+    }
+
+    /**
+     * Strong ETag from the modification time in microseconds and the size. An upload always renames a new
+     * file into place, so the time changes with every write.
+     */
+    private static String eTag(long lastModifiedMicros, long size) {
+        return "\"" + Long.toHexString(lastModifiedMicros) + "-" + Long.toHexString(size) + "\"";
+    }
+
+    private String contentType(Path path) {
+        if (contentTypeAttributes) {
+            try {
+                UserDefinedFileAttributeView view = Files.getFileAttributeView(path, UserDefinedFileAttributeView.class);
+                if (view.list().contains(CONTENT_TYPE_ATTRIBUTE)) {
+                    ByteBuffer value = ByteBuffer.allocate(view.size(CONTENT_TYPE_ATTRIBUTE));
+                    view.read(CONTENT_TYPE_ATTRIBUTE, value);
+                    return new String(value.array(), 0, value.position(), StandardCharsets.UTF_8);
+                }
+            } catch (IOException e) {
+                log.debug("Error reading content type of {}: {}", path, e.getMessage());
+            }
+        }
+        return MediaTypeFactory.getMediaType(path.getFileName().toString()).map(Object::toString).orElse(null);
+    }
+
+    private void writeContentType(Path path, String contentType) {
+        try {
+            Files.getFileAttributeView(path, UserDefinedFileAttributeView.class)
+                    .write(CONTENT_TYPE_ATTRIBUTE, ByteBuffer.wrap(contentType.getBytes(StandardCharsets.UTF_8)));
+        } catch (IOException | UnsupportedOperationException e) {
+            // Some mounts report support but refuse user attributes; the type is guessed from the name instead.
+            log.debug("Error recording content type of {}: {}", path, e.getMessage());
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Error deleting temp file {}: {}", path, e.getMessage());
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("Error closing file channel: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.guardians.udss.services;
+
+import com.guardians.udss.model.DownloadOptions;
+import com.guardians.udss.model.FileDownload;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+public interface S3AsyncFileService {
+
+     CompletableFuture<List<String>> searchFiles(String username, String searchTerm);
+     CompletableFuture<FileDownload> downloadFile(String key, DownloadOptions options);
+     CompletableFuture<String> uploadFile(String username, MultipartFile file);
+     CompletableFuture<Void> deleteFile(String username, String filename);
+
+}
@@ -0,0 +1,412 @@
+package com.guardians.udss.services;
+
+import com.guardians.udss.cache.ObjectCache;
+import com.guardians.udss.compression.CompressionPolicy;
+import com.guardians.udss.compression.ContentEncoding;
+import com.guardians.udss.config.S3Config;
+import com.guardians.udss.index.FileMetadataIndex;
+import com.guardians.udss.index.IndexedFile;
+import com.guardians.udss.model.DownloadOptions;
+import com.guardians.udss.model.FileDownload;
+import com.guardians.udss.spool.UploadSpool;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-blocking counterpart of {@link S3FileServiceImpl} built on the CRT-based {@link S3AsyncClient}, which
+ * splits large PUTs and GETs into parallel parts by itself. It shares the upload spool, the download cache and
+ * the compression policy with the blocking service: uploads are spooled while the spool has room, downloads are
+ * served from the spool and the cache, and uploads the policy selects are compressed on the way, as a stream of
+ * unknown length that the client uploads in parts. The spool and the cache work on local disk and the calling
+ * thread, so they run on the small {@code aws.s3.async.io-threads} pool, as do the reads from an upload's input
+ * stream, metadata index rebuilds and deduplication lookups; all other S3 traffic is driven by the CRT event
+ * loop. Uploads here are never deduplicated. Enabled with {@code aws.s3.async.enabled=true}.
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(prefix = "aws.s3.async", name = "enabled", havingValue = "true")
+public class S3AsyncFileServiceImpl implements S3AsyncFileService {
+
+    private final S3Config s3Config;
+    private final S3AsyncClient s3AsyncClient;
+    private final FileMetadataIndex metadataIndex;
+    private final ObjectCache objectCache;
+    private final CompressionPolicy compressionPolicy;
+    private final DedupStore dedupStore;
+    private final UploadSpool uploadSpool;
+    private final ExecutorService ioExecutor;
+
+    @Autowired
+    public S3AsyncFileServiceImpl(S3Config s3Config, S3AsyncClient s3AsyncClient, FileMetadataIndex metadataIndex,
+                                  ObjectCache objectCache, CompressionPolicy compressionPolicy, DedupStore dedupStore,
+                                  UploadSpool uploadSpool) {
+        this.s3Config = s3Config;
+        this.s3AsyncClient = s3AsyncClient;
+        this.metadataIndex = metadataIndex;
+        this.objectCache = objectCache;
+        this.compressionPolicy = compressionPolicy;
+        this.dedupStore = dedupStore;
+        this.uploadSpool = uploadSpool;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.ioExecutor = Executors.newFixedThreadPool(Math.max(1, s3Config.getAsyncIoThreads()), runnable -> {
+            Thread thread = new Thread(runnable, "s3-async-io-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ioExecutor.shutdown();
+    }
+
+    public CompletableFuture<List<String>> searchFiles(String username, String searchTerm) {
+        dedupStore.checkUserName(username);
+        CompletableFuture<List<String>> stored = storedKeys(username, searchTerm);
+        return uploadSpool.isEnabled() ? stored.thenApply(keys -> withSpooledKeys(username, searchTerm, keys)) : stored;
+    }
+
+    private CompletableFuture<List<String>> storedKeys(String username, String searchTerm) {
+        if (metadataIndex.isEnabled()) {
+            return CompletableFuture.supplyAsync(
+                    () -> metadataIndex.search(username, searchTerm, name -> listAllFiles(name).join().stream()), ioExecutor);
+        }
+
+        List<String> keys = new ArrayList<>();
+        return s3AsyncClient.listObjectsV2Paginator(listRequest(username)).contents()
+                .subscribe(object -> {
+                    if (object.key().contains(searchTerm)) {
+                        keys.add(object.key());
+                    }
+                })
+                .handle((ignored, error) -> {
+                    if (error != null) {
+                        log.error("Error searching files in S3 for user {} with term {}: {}", username, searchTerm, unwrap(error).getMessage());
+                        throw new RuntimeException("Error searching files in S3 bucket");
+                    }
+                    return keys;
+                });
+    }
+
+    /**
+     * Merges uploads still waiting in the spool into the keys found in S3, in key order.
+     */
+    private List<String> withSpooledKeys(String username, String searchTerm, List<String> keys) {
+        List<String> spooled = uploadSpool.pendingKeys(username, searchTerm, null);
+        if (spooled.isEmpty()) {
+            return keys;
+        }
+        TreeSet<String> merged = new TreeSet<>(keys);
+        merged.addAll(spooled);
+        return new ArrayList<>(merged);
+    }
+
+    /**
+     * Like the blocking service, serves an upload still waiting in the spool from there, goes through the
+     * download cache otherwise, and decodes an object stored compressed unless the client accepts its coding,
+     * fetching the whole object again when a range of it was requested.
+     */
+    public CompletableFuture<FileDownload> downloadFile(String key, DownloadOptions options) {
+        dedupStore.checkKey(key);
+        return spooledDownload(key, options).thenCompose(spooled -> spooled != null
+                ? CompletableFuture.completedFuture(spooled)
+                : storedDownload(key, options));
+    }
+
+    private CompletableFuture<FileDownload> storedDownload(String key, DownloadOptions options) {
+        return cachedObject(key, options).thenCompose(download -> {
+            ContentEncoding encoding = S3Responses.encodingToDecode(download, options);
+            if (encoding == null) {
+                return CompletableFuture.completedFuture(download);
+            }
+            if (!download.isPartial()) {
+                return CompletableFuture.completedFuture(download.withDecodedContent(encoding::decompress));
+            }
+            closeQuietly(download);
+            return cachedObject(key, S3Responses.withoutRange(options))
+                    .thenApply(whole -> whole.withDecodedContent(encoding::decompress));
+        });
+    }
+
+    /**
+     * Serves an upload that is still waiting in the spool, or completes with {@code null} once it is in S3.
+     */
+    private CompletableFuture<FileDownload> spooledDownload(String key, DownloadOptions options) {
+        if (!uploadSpool.isEnabled()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return uploadSpool.download(key, options);
+            } catch (IOException e) {
+                log.error("Error reading spooled file with key {}: {}", key, e.getMessage());
+                throw new RuntimeException("Error downloading file from S3 bucket");
+            }
+        }, ioExecutor);
+    }
+
+    /**
+     * Fetches the object through the download cache when it is enabled. The cache calls its origin on the
+     * calling thread and waits for the response headers, so it runs on the I/O pool; the body still streams
+     * from the CRT client.
+     */
+    private CompletableFuture<FileDownload> cachedObject(String key, DownloadOptions options) {
+        if (!objectCache.isEnabled()) {
+            return fetchObject(key, options);
+        }
+        return CompletableFuture.supplyAsync(
+                () -> objectCache.download(key, options, (origin, originOptions) -> join(fetchObject(origin, originOptions))),
+                ioExecutor);
+    }
+
+    private CompletableFuture<FileDownload> fetchObject(String key, DownloadOptions options) {
+        if (!dedupStore.isEnabled()) {
+            return getObject(key, key, options);
+        }
+        return referencedBlob(key)
+                .thenCompose(blob -> getObject(key, blob == null ? key : dedupStore.blobKey(blob), options));
+    }
+
+    private CompletableFuture<FileDownload> getObject(String key, String storedKey, DownloadOptions options) {
+        GetObjectRequest getObjectRequest = S3Responses.getObjectRequest(s3Config.getBucketName(), storedKey, options);
+
+        return s3AsyncClient.getObject(getObjectRequest, AsyncResponseTransformer.toBlockingInputStream())
+                .handle((object, error) -> {
+                    if (error == null) {
+                        return S3Responses.toFileDownload(key, object);
+                    }
+                    Throwable cause = unwrap(error);
+                    if (cause instanceof S3Exception s3Exception) {
+                        return S3Responses.downloadFailure(key, options, s3Exception);
+                    }
+                    log.error("Error downloading file from S3 with key {}: {}", key, cause.getMessage());
+                    throw new RuntimeException("Error downloading file from S3 bucket");
+                });
+    }
+
+    public CompletableFuture<String> uploadFile(String username, MultipartFile file) {
+        dedupStore.checkUserName(username);
+        String key = username + "/" + file.getOriginalFilename();
+        if (!uploadSpool.isEnabled()) {
+            return putFile(username, key, file);
+        }
+        // Acknowledged once on local disk, like the blocking service; a full spool falls back to S3.
+        return CompletableFuture.supplyAsync(() -> spool(key, file), ioExecutor)
+                .thenCompose(spooled -> spooled ? CompletableFuture.completedFuture(key) : putFile(username, key, file));
+    }
+
+    private boolean spool(String key, MultipartFile file) {
+        try (InputStream inputStream = file.getInputStream()) {
+            boolean spooled = uploadSpool.append(key, file.getContentType(), inputStream, file.getSize());
+            if (spooled) {
+                log.info("Spooled {} ({} bytes) for upload", key, file.getSize());
+            }
+            return spooled;
+        } catch (IOException e) {
+            log.error("Error reading file input stream: {}", e.getMessage());
+            throw new RuntimeException("Error reading file input stream");
+        }
+    }
+
+    /**
+     * Writes the file to S3. A file the compression policy selects is compressed while it is uploaded, with the
+     * coding stored as its {@code Content-Encoding} and the original size in its metadata, as the blocking
+     * service does.
+     */
+    private CompletableFuture<String> putFile(String username, String key, MultipartFile file) {
+        ContentEncoding encoding = compressionPolicy.select(file.getContentType(), file.getSize());
+        PutObjectRequest.Builder putObjectRequest = PutObjectRequest.builder()
+                .bucket(s3Config.getBucketName())
+                .key(key)
+                .acl(ObjectCannedACL.PUBLIC_READ)
+                .contentType(file.getContentType());
+        InputStream inputStream;
+        AsyncRequestBody requestBody;
+        try {
+            inputStream = file.getInputStream();
+            if (encoding == null) {
+                putObjectRequest.contentLength(file.getSize());
+                requestBody = AsyncRequestBody.fromInputStream(inputStream, file.getSize(), ioExecutor);
+            } else {
+                putObjectRequest.contentEncoding(encoding.getToken())
+                        .metadata(Map.of(S3Responses.ORIGINAL_SIZE_METADATA, Long.toString(file.getSize())));
+                inputStream = compressionPolicy.compress(inputStream, encoding);
+                // The compressed length is only known at the end.
+                requestBody = AsyncRequestBody.fromInputStream(inputStream, null, ioExecutor);
+            }
+        } catch (IOException e) {
+            log.error("Error reading file input stream: {}", e.getMessage());
+            return CompletableFuture.failedFuture(new RuntimeException("Error reading file input stream"));
+        }
+        InputStream content = inputStream;
+
+        // Uploads are not deduplicated here, but replacing a reference must still release its blob.
+        return recordSpooledSupersede(key)
+                .thenCompose(ignored -> referencedBlob(key))
+                .thenCompose(previousBlob -> s3AsyncClient.putObject(putObjectRequest.build(), requestBody)
+                        .thenApply(response -> previousBlob))
+                .handle((previousBlob, error) -> {
+                    closeQuietly(content);
+                    if (error != null) {
+                        log.error("Error uploading file to S3 bucket with key {}: {}", key, unwrap(error).getMessage());
+                        throw new RuntimeException("Error uploading file to S3 bucket");
+                    }
+                    releaseBlob(key, previousBlob);
+                    objectCache.invalidate(key);
+                    metadataIndex.recordUpload(username, file.getOriginalFilename(), file.getSize(), Instant.now(), file.getContentType());
+                    return key;
+                });
+    }
+
+    public CompletableFuture<Void> deleteFile(String username, String filename) {
+        dedupStore.checkUserName(username);
+        String key = username + "/" + filename;
+        DeleteObjectRequest deleteObjectRequest = DeleteObjectRequest.builder()
+                .bucket(s3Config.getBucketName())
+                .key(key)
+                .build();
+
+        return recordSpooledDelete(key)
+                .thenCompose(ignored -> referencedBlob(key))
+                .thenCompose(blob -> s3AsyncClient.deleteObject(deleteObjectRequest).thenApply(response -> blob))
+                .handle((blob, error) -> {
+                    if (error != null) {
+                        log.error("Error deleting file from S3 with key {}: {}", key, unwrap(error).getMessage());
+                        throw new RuntimeException("Error deleting file from S3 bucket");
+                    }
+                    releaseBlob(key, blob);
+                    objectCache.invalidate(key);
+                    metadataIndex.recordDelete(username, filename);
+                    log.info("Successfully deleted file with key: {}", key);
+                    return null;
+                });
+    }
+
+    private CompletableFuture<List<IndexedFile>> listAllFiles(String username) {
+        List<IndexedFile> files = new ArrayList<>();
+        return s3AsyncClient.listObjectsV2Paginator(listRequest(username)).contents()
+                .subscribe(object -> files.add(new IndexedFile(object.key(), object.size(), object.lastModified().toEpochMilli(), null)))
+                .thenApply(ignored -> files);
+    }
+
+    /**
+     * The blob {@code key} refers to, looked up on the I/O pool as {@link DedupStore} uses the blocking client;
+     * {@code null} when deduplication is disabled or the key is not a reference.
+     */
+    private CompletableFuture<String> referencedBlob(String key) {
+        if (!dedupStore.isEnabled()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.supplyAsync(() -> dedupStore.referencedBlob(key), ioExecutor);
+    }
+
+    /**
+     * Logs in the spool, on the I/O pool since it may wait for a running upload, that {@code key} is written
+     * straight to S3, so a spooled upload of it cannot land on top of this newer one later.
+     */
+    private CompletableFuture<Void> recordSpooledSupersede(String key) {
+        return onSpool(() -> uploadSpool.recordSupersede(key));
+    }
+
+    /**
+     * Logs the delete in the spool so a pending upload of the key is dropped, not uploaded after the delete.
+     */
+    private CompletableFuture<Void> recordSpooledDelete(String key) {
+        return onSpool(() -> uploadSpool.recordDelete(key));
+    }
+
+    private CompletableFuture<Void> onSpool(SpoolAction action) {
+        if (!uploadSpool.isEnabled()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.runAsync(() -> {
+            try {
+                action.run();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, ioExecutor);
+    }
+
+    private void releaseBlob(String key, String blob) {
+        if (blob == null) {
+            return;
+        }
+        ioExecutor.execute(() -> {
+            try {
+                dedupStore.release(key, blob);
+            } catch (RuntimeException e) {
+                log.warn("Error releasing blob {} of key {}: {}", blob, key, e.getMessage());
+            }
+        });
+    }
+
+    private ListObjectsV2Request listRequest(String username) {
+        return ListObjectsV2Request.builder()
+                .bucket(s3Config.getBucketName())
+                .prefix(username + "/")
+                .build();
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    /**
+     * Waits for {@code future}, rethrowing its failure as is so callers such as the cache see the original
+     * exception.
+     */
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private static void closeQuietly(InputStream inputStream) {
+        try {
+            inputStream.close();
+        } catch (IOException e) {
+            log.warn("Error closing upload stream: {}", e.getMessage());
+        }
+    }
+
+    private static void closeQuietly(FileDownload download) {
+        try {
+            download.close();
+        } catch (IOException e) {
+            log.warn("Error closing download of {}: {}", download.getKey(), e.getMessage());
+        }
+    }
+
+    @FunctionalInterface
+    private interface SpoolAction {
+        void run() throws IOException;
+    }
+}
@@ -1,15 +1,28 @@
 package com.guardians.udss.services;
 
+import com.guardians.udss.model.DeleteResult;
+import com.guardians.udss.model.DownloadOptions;
+import com.guardians.udss.model.FileDownload;
+import com.guardians.udss.model.SearchPage;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.InputStream;
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface S3FileService {
 
      List<String> searchFiles(String username, String searchTerm);
-     InputStream downloadFile(String key);
+     SearchPage searchFiles(String username, String searchTerm, int limit, String nextToken);
+     Stream<String> streamFiles(String username, String searchTerm);
+     FileDownload downloadFile(String key, DownloadOptions options);
+
+     default FileDownload downloadFile(String key) {
+          return downloadFile(key, DownloadOptions.NONE);
+     }
      String uploadFile(String username, MultipartFile file);
+     BatchUpload startBatchUpload(String username);
      void deleteFile(String username, String filename);
+     List<DeleteResult> deleteFiles(String username, List<String> filenames);
+     List<DeleteResult> deleteAllFiles(String username);
 
 }
@@ -1,131 +1,754 @@
 package com.guardians.udss.services;
 
+import com.guardians.udss.cache.ObjectCache;
+import com.guardians.udss.compression.CompressingInputStream;
+import com.guardians.udss.compression.CompressionPolicy;
+import com.guardians.udss.compression.ContentEncoding;
 import com.guardians.udss.config.S3Config;
+import com.guardians.udss.config.StorageConfig;
 import com.guardians.udss.exception.FileNotFoundException;
+import com.guardians.udss.index.FileMetadataIndex;
+import com.guardians.udss.index.IndexedFile;
+import com.guardians.udss.metrics.OperationMetrics;
+import com.guardians.udss.model.DeleteResult;
+import com.guardians.udss.model.DownloadOptions;
+import com.guardians.udss.model.FileDownload;
+import com.guardians.udss.model.OperationType;
+import com.guardians.udss.model.SearchPage;
+import com.guardians.udss.resilience.S3CallGuard;
+import com.guardians.udss.spool.UploadSpool;
+import com.guardians.udss.util.BufferPool;
+import com.guardians.udss.util.SearchTokens;
+import com.guardians.udss.util.VirtualThreads;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
-import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
-import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
-import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.exception.SdkException;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.*;
 import java.io.IOException;
 import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 @Service
 @Slf4j
+@ConditionalOnProperty(prefix = "udss.storage", name = "backend", havingValue = StorageConfig.S3, matchIfMissing = true)
 public class S3FileServiceImpl implements S3FileService{
 
+    private static final int MAX_DELETE_BATCH = 1000;
 
     private final S3Config s3Config;
     private final S3Client s3Client;
+    private final S3MultipartUploader multipartUploader;
+    private final FileMetadataIndex metadataIndex;
+    private final S3OperationLimiter operationLimiter;
+    private final ObjectCache objectCache;
+    private final OperationMetrics operationMetrics;
+    private final CompressionPolicy compressionPolicy;
+    private final DedupStore dedupStore;
+    private final S3CallGuard callGuard;
+    private final UploadSpool uploadSpool;
+    private final ExecutorService batchDeleteExecutor;
+    private final ExecutorService batchUploadExecutor;
+    private final BufferPool batchUploadBuffers;
 
     @Autowired
-    public S3FileServiceImpl(S3Config s3Config) {
+    public S3FileServiceImpl(S3Config s3Config, S3Client s3Client, S3MultipartUploader multipartUploader,
+                             FileMetadataIndex metadataIndex, S3OperationLimiter operationLimiter,
+                             ObjectCache objectCache, OperationMetrics operationMetrics,
+                             CompressionPolicy compressionPolicy, DedupStore dedupStore, S3CallGuard callGuard,
+                             UploadSpool uploadSpool) {
         this.s3Config = s3Config;
-        this.s3Client = S3Client.builder()
-                .region(Region.of(s3Config.getRegion()))
-                .credentialsProvider(StaticCredentialsProvider.create(
-                        AwsBasicCredentials.create(s3Config.getAccessKey(), s3Config.getSecretKey())))
-                .build();
+        this.s3Client = s3Client;
+        this.multipartUploader = multipartUploader;
+        this.metadataIndex = metadataIndex;
+        this.operationLimiter = operationLimiter;
+        this.objectCache = objectCache;
+        this.operationMetrics = operationMetrics;
+        this.compressionPolicy = compressionPolicy;
+        this.dedupStore = dedupStore;
+        this.callGuard = callGuard;
+        this.uploadSpool = uploadSpool;
+        this.batchDeleteExecutor = VirtualThreads.newExecutor(s3Config.isVirtualThreads(),
+                Math.max(1, s3Config.getBatchDeleteParallelism()), daemonThreads("s3-batch-delete-"));
+        int uploadParallelism = Math.max(1, s3Config.getBatchUploadParallelism());
+        this.batchUploadExecutor = VirtualThreads.newExecutor(s3Config.isVirtualThreads(),
+                uploadParallelism, daemonThreads("s3-batch-upload-"));
+        this.batchUploadBuffers = new BufferPool(Math.toIntExact(s3Config.getBatchUploadBufferSize().toBytes()), uploadParallelism);
+    }
+
+    /**
+     * Starts moving spooled uploads to S3, including those left from before a restart.
+     */
+    @PostConstruct
+    public void startUploadSpool() {
+        uploadSpool.start((key, contentType, content, size) -> {
+            int separator = key.indexOf('/');
+            storeFile(key.substring(0, separator), key.substring(separator + 1), contentType, content, size, null);
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        batchDeleteExecutor.shutdown();
+        batchUploadExecutor.shutdown();
+    }
+
+    private static ThreadFactory daemonThreads(String namePrefix) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
     }
 
     public List<String> searchFiles(String username, String searchTerm) {
-        String prefix = username + "/";
+        dedupStore.checkUserName(username);
+        return operationMetrics.time(OperationMetrics.SEARCH, () -> {
+            try (S3OperationLimiter.Permit permit = operationLimiter.acquire(OperationType.SEARCH)) {
+                return matchingKeys(username, searchTerm, null).collect(Collectors.toList());
+            } catch (S3Exception e) {
+                log.error("Error searching files in S3 for user {} with term {}: {}", username, searchTerm, e.awsErrorDetails().errorMessage());
+                throw new RuntimeException("Error searching files in S3 bucket");
+            }
+        });
+    }
+
+    public SearchPage searchFiles(String username, String searchTerm, int limit, String nextToken) {
+        dedupStore.checkUserName(username);
+        return operationMetrics.time(OperationMetrics.SEARCH, () -> {
+            String startAfter = SearchTokens.decode(nextToken, username + "/");
+            try (S3OperationLimiter.Permit permit = operationLimiter.acquire(OperationType.SEARCH)) {
+                List<String> keys = matchingKeys(username, searchTerm, startAfter)
+                        .limit(limit + 1L)
+                        .collect(Collectors.toCollection(ArrayList::new));
+                if (keys.size() <= limit) {
+                    return new SearchPage(keys, null);
+                }
+                keys.remove(limit);
+                return new SearchPage(keys, SearchTokens.encode(keys.get(limit - 1)));
+            } catch (S3Exception e) {
+                log.error("Error searching files in S3 for user {} with term {}: {}", username, searchTerm, e.awsErrorDetails().errorMessage());
+                throw new RuntimeException("Error searching files in S3 bucket");
+            }
+        });
+    }
+
+    public Stream<String> streamFiles(String username, String searchTerm) {
+        dedupStore.checkUserName(username);
+        return operationMetrics.time(OperationMetrics.SEARCH, () -> {
+            S3OperationLimiter.Permit permit = operationLimiter.acquire(OperationType.SEARCH);
+            try {
+                return matchingKeys(username, searchTerm, null).onClose(permit::close);
+            } catch (RuntimeException e) {
+                permit.close();
+                throw e;
+            }
+        });
+    }
+
+    /**
+     * Returns the matching keys in key order: those in S3, merged with uploads still waiting in the spool.
+     */
+    private Stream<String> matchingKeys(String username, String searchTerm, String startAfter) {
+        Stream<String> stored = storedKeys(username, searchTerm, startAfter);
+        List<String> spooled = uploadSpool.pendingKeys(username, searchTerm, startAfter);
+        return spooled.isEmpty() ? stored : mergeSorted(stored, spooled);
+    }
+
+    /**
+     * Merges two streams of keys in key order into one, dropping a key found in both: an upload that has
+     * just reached S3 while its spool record is not yet settled.
+     */
+    private static Stream<String> mergeSorted(Stream<String> first, List<String> second) {
+        Iterator<String> left = first.iterator();
+        Iterator<String> right = second.iterator();
+        Spliterator<String> merged = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.DISTINCT) {
+            private String nextLeft;
+            private String nextRight;
+            private boolean started;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super String> action) {
+                if (!started) {
+                    nextLeft = left.hasNext() ? left.next() : null;
+                    nextRight = right.hasNext() ? right.next() : null;
+                    started = true;
+                }
+                if (nextLeft == null && nextRight == null) {
+                    return false;
+                }
+                int order = nextLeft == null ? 1 : nextRight == null ? -1 : nextLeft.compareTo(nextRight);
+                String key = order <= 0 ? nextLeft : nextRight;
+                if (order <= 0) {
+                    nextLeft = left.hasNext() ? left.next() : null;
+                }
+                if (order >= 0) {
+                    nextRight = right.hasNext() ? right.next() : null;
+                }
+                action.accept(key);
+                return true;
+            }
+        };
+        return StreamSupport.stream(merged, false).onClose(first::close);
+    }
+
+    /**
+     * Returns the matching keys in S3 in key order, from the metadata index when it is enabled and otherwise by
+     * lazily paging through the user's listing; further LIST calls are only issued as the stream is consumed.
+     */
+    private Stream<String> storedKeys(String username, String searchTerm, String startAfter) {
+        if (metadataIndex.isEnabled()) {
+            List<String> keys = metadataIndex.search(username, searchTerm, this::listAllFiles);
+            if (startAfter == null) {
+                return keys.stream();
+            }
+            int position = Collections.binarySearch(keys, startAfter);
+            int from = position >= 0 ? position + 1 : -position - 1;
+            return keys.subList(from, keys.size()).stream();
+        }
+
+        return listObjects(username, startAfter)
+                .map(S3Object::key)
+                .filter(key -> key.contains(searchTerm));
+    }
+
+    private Stream<IndexedFile> listAllFiles(String username) {
+        return listObjects(username, null)
+                .map(object -> new IndexedFile(object.key(), object.size(), object.lastModified().toEpochMilli(), null));
+    }
+
+    private Stream<S3Object> listObjects(String username, String startAfter) {
         ListObjectsV2Request request = ListObjectsV2Request.builder()
                 .bucket(s3Config.getBucketName())
-                .prefix(prefix)
+                .prefix(username + "/")
+                .startAfter(startAfter)
                 .build();
 
-        try {
-            ListObjectsV2Response result = s3Client.listObjectsV2(request);
+        return listPages(request).flatMap(page -> page.contents().stream());
+    }
 
-            return result.contents().stream()
-                    .map(S3Object::key)
-                    .filter(key -> key.contains(searchTerm))
-                    .collect(Collectors.toList());
-        } catch (S3Exception e) {
-            log.error("Error searching files in S3 for user {} with term {}: {}", username, searchTerm, e.awsErrorDetails().errorMessage());
-            throw new RuntimeException("Error searching files in S3 bucket");
+    /**
+     * Pages of a listing, each fetched through the call guard only when the stream reaches it. This stands in
+     * for the SDK paginator, which would issue the page requests itself.
+     */
+    private Stream<ListObjectsV2Response> listPages(ListObjectsV2Request request) {
+        Spliterator<ListObjectsV2Response> pages = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.NONNULL) {
+            private ListObjectsV2Request next = request;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super ListObjectsV2Response> action) {
+                if (next == null) {
+                    return false;
+                }
+                ListObjectsV2Request current = next;
+                ListObjectsV2Response page = callGuard.read("ListObjectsV2", timeout -> s3Client.listObjectsV2(
+                        current.toBuilder().overrideConfiguration(override -> override.apiCallTimeout(timeout)).build()),
+                        ignored -> {
+                        });
+                next = Boolean.TRUE.equals(page.isTruncated())
+                        ? request.toBuilder().continuationToken(page.nextContinuationToken()).build()
+                        : null;
+                action.accept(page);
+                return true;
+            }
+        };
+        return StreamSupport.stream(pages, false);
+    }
+
+    public FileDownload downloadFile(String key, DownloadOptions options) {
+        dedupStore.checkKey(key);
+        return operationMetrics.time(OperationMetrics.DOWNLOAD, () -> {
+            FileDownload spooled = spooledDownload(key, options);
+            if (spooled != null) {
+                return spooled;
+            }
+            FileDownload download = objectCache.download(key, options, this::fetchObject);
+            ContentEncoding encoding = S3Responses.encodingToDecode(download, options);
+            if (encoding != null) {
+                if (download.isPartial()) {
+                    closeQuietly(download);
+                    download = objectCache.download(key, S3Responses.withoutRange(options), this::fetchObject);
+                }
+                download = download.withDecodedContent(encoding::decompress);
+            }
+            if (!download.isNotModified() && download.getContentLength() != null) {
+                operationMetrics.recordFileSize(OperationMetrics.DOWNLOAD, download.getContentLength());
+            }
+            return download;
+        });
+    }
+
+    /**
+     * Serves an upload that is still waiting in the spool, or returns {@code null} once it is in S3.
+     */
+    private FileDownload spooledDownload(String key, DownloadOptions options) {
+        try {
+            return uploadSpool.download(key, options);
+        } catch (IOException e) {
+            log.error("Error reading spooled file with key {}: {}", key, e.getMessage());
+            throw new RuntimeException("Error downloading file from S3 bucket");
         }
     }
 
-    public InputStream downloadFile(String key) {
-        GetObjectRequest getObjectRequest = GetObjectRequest.builder()
-                .bucket(s3Config.getBucketName())
-                .key(key)
-                .build();
+    private static void closeQuietly(FileDownload download) {
+        try {
+            download.close();
+        } catch (IOException e) {
+            log.warn("Error closing download of {}: {}", download.getKey(), e.getMessage());
+        }
+    }
 
+    private FileDownload fetchObject(String key, DownloadOptions options) {
+        // The permit is held until the caller closes the download, as the connection is busy until then.
+        S3OperationLimiter.Permit permit = operationLimiter.acquire(OperationType.DOWNLOAD);
         try {
-            return s3Client.getObject(getObjectRequest);
-        } catch (NoSuchKeyException e) {
-            log.error("File not found in S3: {}", key);
-            throw new FileNotFoundException("File not found in S3 bucket for key: " + key);
+            String storedKey = key;
+            if (dedupStore.isEnabled()) {
+                String blob = dedupStore.referencedBlob(key);
+                if (blob != null) {
+                    storedKey = dedupStore.blobKey(blob);
+                }
+            }
+            GetObjectRequest getObjectRequest = S3Responses.getObjectRequest(s3Config.getBucketName(), storedKey, options);
+            ResponseInputStream<GetObjectResponse> object = callGuard.read("GetObject", timeout -> s3Client.getObject(
+                    getObjectRequest.toBuilder().overrideConfiguration(override -> override.apiCallTimeout(timeout)).build()),
+                    S3Responses::discard);
+            return S3Responses.toFileDownload(key, object).onClose(permit::close);
         } catch (S3Exception e) {
-            log.error("Error downloading file from S3 with key {}: {}", key, e.awsErrorDetails().errorMessage());
-            throw new RuntimeException("Error downloading file from S3 bucket");
+            permit.close();
+            return S3Responses.downloadFailure(key, options, e);
+        } catch (RuntimeException e) {
+            permit.close();
+            throw e;
         }
     }
 
     public String uploadFile(String username, MultipartFile file) {
-        String key = username + "/" + file.getOriginalFilename();
-
+        dedupStore.checkUserName(username);
         try (InputStream inputStream = file.getInputStream()) {
-            PutObjectRequest putObjectRequest = PutObjectRequest.builder()
-                    .bucket(s3Config.getBucketName())
-                    .key(key)
-                    .acl(ObjectCannedACL.PUBLIC_READ)
-                    .contentType(file.getContentType())
-                    .build();
-
-            s3Client.putObject(putObjectRequest, software.amazon.awssdk.core.sync.RequestBody.fromInputStream(inputStream, file.getSize()));
+            String key = username + "/" + file.getOriginalFilename();
+            // Acknowledged once on local disk; the spool's drainer runs the upload below later.
+            if (uploadSpool.isEnabled() && uploadSpool.append(key, file.getContentType(), inputStream, file.getSize())) {
+                log.info("Spooled {} ({} bytes) for upload", key, file.getSize());
+                return key;
+            }
+            recordSpooledSupersede(key);
+            // The container has the upload on local disk or in memory, so hashing it first costs no S3 traffic.
+            String sha256 = null;
+            if (dedupStore.isEnabled()) {
+                try (InputStream hashed = file.getInputStream()) {
+                    sha256 = DedupStore.sha256(hashed);
+                }
+            }
+            storeFile(username, file.getOriginalFilename(), file.getContentType(), inputStream, file.getSize(), sha256);
             return key;
         } catch (IOException e) {
             log.error("Error reading file input stream: {}", e.getMessage());
             throw new RuntimeException("Error reading file input stream");
-        } catch (S3Exception e) {
-            log.error("Error uploading file to S3 bucket with key {}: {}", key, e.awsErrorDetails().errorMessage());
-            throw new RuntimeException("Error uploading file to S3 bucket");
         }
     }
 
-    public void deleteFile(String key) {
-        DeleteObjectRequest deleteObjectRequest = DeleteObjectRequest.builder()
+    public BatchUpload startBatchUpload(String username) {
+        dedupStore.checkUserName(username);
+        return new BatchUpload(username, batchUploadBuffers, batchUploadExecutor,
+                (filename, contentType, content, size) -> {
+                    recordSpooledSupersede(username + "/" + filename);
+                    return storeFile(username, filename, contentType, content, size, null);
+                });
+    }
+
+    /**
+     * Stores one file under {@code username/filename} and returns its size. With deduplication enabled the
+     * content goes to its blob instead, see {@link #storeDeduplicated}; {@code sha256} is its hash when the
+     * caller already knows it.
+     */
+    private long storeFile(String username, String filename, String contentType, InputStream inputStream, long size,
+                           String sha256) throws IOException {
+        return operationMetrics.time(OperationMetrics.UPLOAD, () -> {
+            String key = username + "/" + filename;
+
+            try (S3OperationLimiter.Permit permit = operationLimiter.acquire(OperationType.UPLOAD)) {
+                long storedSize = callGuard.write("PutObject", () -> dedupStore.isEnabled()
+                        ? storeDeduplicated(key, contentType, inputStream, size, sha256)
+                        : putContent(key, contentType, inputStream, size));
+                objectCache.invalidate(key);
+                metadataIndex.recordUpload(username, filename, storedSize, Instant.now(), contentType);
+                operationMetrics.recordFileSize(OperationMetrics.UPLOAD, storedSize);
+                return storedSize;
+            } catch (S3Exception e) {
+                log.error("Error uploading file to S3 bucket with key {}: {}", key, e.awsErrorDetails().errorMessage());
+                throw new RuntimeException("Error uploading file to S3 bucket");
+            } catch (SdkClientException e) {
+                log.error("Error uploading file to S3 bucket with key {}: {}", key, e.getMessage());
+                throw new RuntimeException("Error uploading file to S3 bucket");
+            }
+        });
+    }
+
+    /**
+     * Writes the content to {@code key} and returns its size. A stream of unknown length ({@code size < 0})
+     * always goes through the multipart uploader, which does not need the length up front. A file the
+     * compression policy selects is compressed while it is uploaded, with the coding stored as its
+     * {@code Content-Encoding} and the original size in its metadata; the returned size is the original one.
+     */
+    private long putContent(String key, String contentType, InputStream inputStream, long size) throws IOException {
+        ContentEncoding encoding = compressionPolicy.select(contentType, size);
+        if (encoding != null) {
+            return storeCompressed(key, contentType, encoding, inputStream, size);
+        }
+        if (size < 0 || size >= s3Config.getMultipartThreshold().toBytes()) {
+            return multipartUploader.upload(key, contentType, inputStream);
+        }
+        PutObjectRequest putObjectRequest = PutObjectRequest.builder()
                 .bucket(s3Config.getBucketName())
                 .key(key)
+                .acl(ObjectCannedACL.PUBLIC_READ)
+                .contentType(contentType)
                 .build();
 
-        try {
-            s3Client.deleteObject(deleteObjectRequest);
-            log.info("File with key {} deleted successfully from S3 bucket.", key);
-        } catch (NoSuchKeyException e) {
-            log.error("File not found in S3 for deletion: {}", key);
-            throw new FileNotFoundException("File not found in S3 bucket for key: " + key);
-        } catch (S3Exception e) {
-            log.error("Error deleting file from S3 with key {}: {}", key, e.awsErrorDetails().errorMessage());
-            throw new RuntimeException("Error deleting file from S3 bucket");
+        s3Client.putObject(putObjectRequest, software.amazon.awssdk.core.sync.RequestBody.fromInputStream(inputStream, size));
+        return size;
+    }
+
+    /**
+     * Stores the content once under its SHA-256 and points {@code key} at it. When the hash is known before
+     * the upload, passed in or taken from a stream that can be re-read, a blob that already exists is not
+     * uploaded again. A one-pass stream is uploaded to {@code key} while it is hashed and only then moved to a
+     * new blob or dropped in favour of an existing one, which saves storage but not the transfer.
+     */
+    private long storeDeduplicated(String key, String contentType, InputStream inputStream, long size,
+                                   String sha256) throws IOException {
+        String previousBlob = dedupStore.referencedBlob(key);
+        if (sha256 == null && size >= 0 && inputStream.markSupported()) {
+            inputStream.mark(Integer.MAX_VALUE);
+            sha256 = DedupStore.sha256(inputStream);
+            inputStream.reset();
+        }
+
+        long storedSize = size;
+        boolean linked = true;
+        // Only the reference bookkeeping takes the blob's lock; the content is sent after the reference is recorded.
+        if (sha256 != null) {
+            boolean duplicate = dedupStore.addReference(key, sha256);
+            if (!duplicate) {
+                try {
+                    putContent(dedupStore.blobKey(sha256), contentType, inputStream, size);
+                } catch (IOException | RuntimeException e) {
+                    dedupStore.release(key, sha256);
+                    throw e;
+                }
+            }
+            operationMetrics.recordDedup(duplicate);
+            dedupStore.writeReference(key, sha256, contentType);
+            log.info("Stored {} as a reference to {} blob {}", key, duplicate ? "existing" : "new", sha256);
+        } else {
+            MessageDigest digest = DedupStore.newDigest();
+            storedSize = putContent(key, contentType, new DigestInputStream(inputStream, digest), size);
+            sha256 = DedupStore.toHex(digest);
+            boolean duplicate = dedupStore.addReference(key, sha256);
+            try {
+                linked = duplicate || dedupStore.copyToBlob(key, sha256, storedSize);
+            } catch (RuntimeException e) {
+                dedupStore.release(key, sha256);
+                throw e;
+            }
+            if (linked) {
+                operationMetrics.recordDedup(duplicate);
+                dedupStore.writeReference(key, sha256, contentType);
+                log.info("Stored {} as a reference to {} blob {}", key, duplicate ? "existing" : "new", sha256);
+            } else {
+                dedupStore.release(key, sha256);
+                log.info("Stored {} as a plain object", key);
+            }
         }
+        if (previousBlob != null && (!linked || !previousBlob.equals(sha256))) {
+            dedupStore.release(key, previousBlob);
+        }
+        return storedSize;
     }
 
-    public void deleteFile(String username, String filename) {
-        String key = username + "/" + filename;
+    private long storeCompressed(String key, String contentType, ContentEncoding encoding, InputStream inputStream,
+                                 long size) throws IOException {
+        // A stream of unknown length is only measured once it is compressed, too late for the metadata.
+        Map<String, String> metadata = size < 0 ? Map.of()
+                : Map.of(S3Responses.ORIGINAL_SIZE_METADATA, Long.toString(size));
+        try (CompressingInputStream compressed = compressionPolicy.compress(inputStream, encoding)) {
+            multipartUploader.upload(key, contentType, encoding.getToken(), metadata, compressed);
+            operationMetrics.recordCompression(encoding.getToken(), compressed.getSourceBytes(), compressed.getCompressedBytes());
+            log.debug("Stored {} with {}: {} bytes compressed to {}", key, encoding.getToken(),
+                    compressed.getSourceBytes(), compressed.getCompressedBytes());
+            return compressed.getSourceBytes();
+        }
+    }
 
-        try {
+    public void deleteFile(String key) {
+        dedupStore.checkKey(key);
+        operationMetrics.time(OperationMetrics.DELETE, () -> {
             DeleteObjectRequest deleteObjectRequest = DeleteObjectRequest.builder()
                     .bucket(s3Config.getBucketName())
                     .key(key)
                     .build();
 
-            s3Client.deleteObject(deleteObjectRequest);
-            log.info("Successfully deleted file with key: {}", key);
-        } catch (S3Exception e) {
-            log.error("Error deleting file from S3 with key {}: {}", key, e.awsErrorDetails().errorMessage());
+            try (S3OperationLimiter.Permit permit = operationLimiter.acquire(OperationType.DELETE)) {
+                recordSpooledDelete(key);
+                String blob = dedupStore.isEnabled() ? dedupStore.referencedBlob(key) : null;
+                callGuard.write("DeleteObject", () -> s3Client.deleteObject(deleteObjectRequest));
+                if (blob != null) {
+                    releaseBlob(key, blob);
+                }
+                objectCache.invalidate(key);
+                int separator = key.indexOf('/');
+                if (separator > 0) {
+                    metadataIndex.recordDelete(key.substring(0, separator), key.substring(separator + 1));
+                }
+                log.info("File with key {} deleted successfully from S3 bucket.", key);
+            } catch (NoSuchKeyException e) {
+                log.error("File not found in S3 for deletion: {}", key);
+                throw new FileNotFoundException("File not found in S3 bucket for key: " + key);
+            } catch (S3Exception e) {
+                log.error("Error deleting file from S3 with key {}: {}", key, e.awsErrorDetails().errorMessage());
+                throw new RuntimeException("Error deleting file from S3 bucket");
+            }
+            return null;
+        });
+    }
+
+    public void deleteFile(String username, String filename) {
+        dedupStore.checkUserName(username);
+        operationMetrics.time(OperationMetrics.DELETE, () -> {
+            String key = username + "/" + filename;
+
+            try (S3OperationLimiter.Permit permit = operationLimiter.acquire(OperationType.DELETE)) {
+                DeleteObjectRequest deleteObjectRequest = DeleteObjectRequest.builder()
+                        .bucket(s3Config.getBucketName())
+                        .key(key)
+                        .build();
+
+                recordSpooledDelete(key);
+                String blob = dedupStore.isEnabled() ? dedupStore.referencedBlob(key) : null;
+                callGuard.write("DeleteObject", () -> s3Client.deleteObject(deleteObjectRequest));
+                if (blob != null) {
+                    releaseBlob(key, blob);
+                }
+                objectCache.invalidate(key);
+                metadataIndex.recordDelete(username, filename);
+                log.info("Successfully deleted file with key: {}", key);
+            } catch (S3Exception e) {
+                log.error("Error deleting file from S3 with key {}: {}", key, e.awsErrorDetails().errorMessage());
+                throw new RuntimeException("Error deleting file from S3 bucket");
+            }
+            return null;
+        });
+    }
+
+    public List<DeleteResult> deleteFiles(String username, List<String> filenames) {
+        dedupStore.checkUserName(username);
+        return operationMetrics.time(OperationMetrics.BATCH_DELETE, () -> {
+            String prefix = username + "/";
+            List<String> keys = new ArrayList<>(new LinkedHashSet<>(filenames));
+            keys.replaceAll(filename -> prefix + filename);
+            keys.forEach(this::recordSpooledDelete);
+
+            List<Future<List<DeleteResult>>> batches = new ArrayList<>();
+            for (int from = 0; from < keys.size(); from += MAX_DELETE_BATCH) {
+                List<String> batch = keys.subList(from, Math.min(keys.size(), from + MAX_DELETE_BATCH));
+                batches.add(batchDeleteExecutor.submit(() -> deleteBatch(batch)));
+            }
+            List<DeleteResult> results = awaitBatches(batches);
+            for (DeleteResult result : results) {
+                if (result.isDeleted()) {
+                    objectCache.invalidate(result.getKey());
+                    metadataIndex.recordDelete(username, result.getKey().substring(prefix.length()));
+                }
+            }
+            return results;
+        });
+    }
+
+    /**
+     * Deletes every object under the user's prefix. Each listing page holds at most 1000 keys, so it becomes
+     * one {@code DeleteObjects} call, submitted as soon as the page arrives while the listing continues. The
+     * user's cache entries and index are dropped afterwards whether or not the listing got through.
+     */
+    public List<DeleteResult> deleteAllFiles(String username) {
+        dedupStore.checkUserName(username);
+        return operationMetrics.time(OperationMetrics.BATCH_DELETE, () -> {
+            ListObjectsV2Request request = ListObjectsV2Request.builder()
+                    .bucket(s3Config.getBucketName())
+                    .prefix(username + "/")
+                    .build();
+
+            List<String> spooledKeys;
+            try {
+                spooledKeys = uploadSpool.recordDeleteAll(username);
+            } catch (IOException e) {
+                log.error("Error recording deletion of spooled files of user {}: {}", username, e.getMessage());
+                throw new RuntimeException("Error deleting files from S3 bucket");
+            }
+            List<Future<List<DeleteResult>>> batches = new ArrayList<>();
+            try {
+                try (S3OperationLimiter.Permit permit = operationLimiter.acquire(OperationType.SEARCH)) {
+                    listPages(request).forEach(page -> {
+                        List<String> keys = page.contents().stream().map(S3Object::key).collect(Collectors.toList());
+                        if (!keys.isEmpty()) {
+                            batches.add(batchDeleteExecutor.submit(() -> deleteBatch(keys)));
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    // The batches already submitted go ahead; wait for them before invalidating.
+                    awaitBatches(batches);
+                    log.error("Error listing files in S3 for deletion of user {}: {}", username, e.getMessage());
+                    throw e instanceof S3Exception ? new RuntimeException("Error deleting files from S3 bucket") : e;
+                }
+                List<DeleteResult> results = awaitBatches(batches);
+                // Spooled files that had not reached S3 yet were not listed; they are gone all the same.
+                Set<String> listed = results.stream().map(DeleteResult::getKey).collect(Collectors.toSet());
+                spooledKeys.stream().filter(key -> !listed.contains(key)).map(DeleteResult::deleted).forEach(results::add);
+                return results;
+            } finally {
+                objectCache.invalidatePrefix(username + "/");
+                metadataIndex.invalidate(username);
+            }
+        });
+    }
+
+    /**
+     * Logs the delete in the spool so a pending upload of the key is dropped, not uploaded after the delete.
+     */
+    private void recordSpooledDelete(String key) {
+        try {
+            uploadSpool.recordDelete(key);
+        } catch (IOException e) {
+            log.error("Error recording deletion of spooled file with key {}: {}", key, e.getMessage());
             throw new RuntimeException("Error deleting file from S3 bucket");
         }
     }
 
+    /**
+     * Logs in the spool that {@code key} is written straight to S3, so a spooled upload of it cannot land on
+     * top of this newer one later.
+     */
+    private void recordSpooledSupersede(String key) {
+        try {
+            uploadSpool.recordSupersede(key);
+        } catch (IOException e) {
+            log.error("Error recording direct upload of spooled file with key {}: {}", key, e.getMessage());
+            throw new RuntimeException("Error uploading file to S3 bucket");
+        }
+    }
+
+    private List<DeleteResult> deleteBatch(List<String> keys) {
+        DeleteObjectsRequest request = DeleteObjectsRequest.builder()
+                .bucket(s3Config.getBucketName())
+                .delete(Delete.builder()
+                        .objects(keys.stream().map(key -> ObjectIdentifier.builder().key(key).build()).collect(Collectors.toList()))
+                        .quiet(true)
+                        .build())
+                .build();
+
+        try (S3OperationLimiter.Permit permit = operationLimiter.acquire(OperationType.DELETE)) {
+            Map<String, String> blobs = referencedBlobs(keys);
+            // Quiet mode: the response only lists the keys that could not be deleted.
+            Map<String, S3Error> errors = callGuard.write("DeleteObjects", () -> s3Client.deleteObjects(request)).errors().stream()
+                    .collect(Collectors.toMap(S3Error::key, error -> error, (first, second) -> first));
+            List<DeleteResult> results = new ArrayList<>(keys.size());
+            for (String key : keys) {
+                S3Error error = errors.get(key);
+                results.add(error == null ? DeleteResult.deleted(key) : DeleteResult.failed(key, error.code() + ": " + error.message()));
+                if (error == null && blobs.containsKey(key)) {
+                    releaseBlob(key, blobs.get(key));
+                }
+            }
+            log.info("Deleted {} of {} keys in batch from S3 bucket", keys.size() - errors.size(), keys.size());
+            return results;
+        } catch (S3Exception e) {
+            log.error("Error deleting batch of {} keys from S3: {}", keys.size(), e.awsErrorDetails().errorMessage());
+            return failedBatch(keys, e.awsErrorDetails().errorCode());
+        } catch (RuntimeException e) {
+            log.error("Error deleting batch of {} keys from S3: {}", keys.size(), e.getMessage());
+            return failedBatch(keys, e.getMessage());
+        }
+    }
+
+    /**
+     * The blobs the given keys refer to, by key. DeleteObjects does not return metadata, so with deduplication
+     * enabled every key costs a HEAD request before the batch is deleted.
+     */
+    private Map<String, String> referencedBlobs(List<String> keys) {
+        Map<String, String> blobs = new HashMap<>();
+        if (dedupStore.isEnabled()) {
+            for (String key : keys) {
+                String blob = dedupStore.referencedBlob(key);
+                if (blob != null) {
+                    blobs.put(key, blob);
+                }
+            }
+        }
+        return blobs;
+    }
+
+    /**
+     * Releases the blob of a key that is already deleted. A failure only leaves the blob stored, so it is
+     * logged rather than reported as a failed delete.
+     */
+    private void releaseBlob(String key, String blob) {
+        try {
+            dedupStore.release(key, blob);
+        } catch (SdkException e) {
+            log.warn("Error releasing blob {} of deleted key {}: {}", blob, key, e.getMessage());
+        }
+    }
+
+    private static List<DeleteResult> failedBatch(List<String> keys, String error) {
+        return keys.stream().map(key -> DeleteResult.failed(key, error)).collect(Collectors.toList());
+    }
+
+    private static List<DeleteResult> awaitBatches(List<Future<List<DeleteResult>>> batches) {
+        List<DeleteResult> results = new ArrayList<>();
+        for (Future<List<DeleteResult>> batch : batches) {
+            try {
+                results.addAll(batch.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                batches.forEach(pending -> pending.cancel(true));
+                throw new RuntimeException("Interrupted while deleting files from S3 bucket");
+            } catch (ExecutionException e) {
+                // deleteBatch reports its own failures, so this only happens on an unexpected error.
+                throw new RuntimeException("Error deleting files from S3 bucket", e.getCause());
+            }
+        }
+        return results;
+    }
+
 }
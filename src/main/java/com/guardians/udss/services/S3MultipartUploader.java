@@ -0,0 +1,324 @@
+package com.guardians.udss.services;
+
+import com.guardians.udss.config.S3Config;
+import com.guardians.udss.config.StorageConfig;
+import com.guardians.udss.util.BufferPool;
+import com.guardians.udss.util.VirtualThreads;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Uploads large objects with the S3 multipart API. Parts are read sequentially from the source stream into
+ * pooled buffers and uploaded in parallel on a bounded executor; each part is retried on its own and the
+ * whole upload is aborted if any part ultimately fails.
+ */
+@Component
+@ConditionalOnProperty(prefix = "udss.storage", name = "backend", havingValue = StorageConfig.S3, matchIfMissing = true)
+@Slf4j
+public class S3MultipartUploader implements AutoCloseable {
+
+    static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+    private static final long RETRY_BACKOFF_MILLIS = 200;
+
+    private final S3Client s3Client;
+    private final String bucketName;
+    private final int maxPartRetries;
+    private final BufferPool partBuffers;
+    private final ExecutorService executor;
+
+    @Autowired
+    public S3MultipartUploader(S3Client s3Client, S3Config s3Config) {
+        this.s3Client = s3Client;
+        this.bucketName = s3Config.getBucketName();
+        this.maxPartRetries = Math.max(0, s3Config.getMultipartMaxPartRetries());
+
+        long partSize = s3Config.getMultipartPartSize().toBytes();
+        if (partSize < MIN_PART_SIZE) {
+            log.warn("Multipart part size {} is below the S3 minimum, using {} bytes", partSize, MIN_PART_SIZE);
+            partSize = MIN_PART_SIZE;
+        }
+        int parallelism = Math.max(1, s3Config.getMultipartParallelism());
+        // One spare buffer per worker lets the next part be read while the current ones are in flight.
+        this.partBuffers = new BufferPool(Math.toIntExact(partSize), parallelism * 2);
+        this.executor = VirtualThreads.newExecutor(s3Config.isVirtualThreads(), parallelism, new PartThreadFactory());
+    }
+
+    /**
+     * Uploads the stream to {@code key} and returns the number of bytes uploaded. The length does not need to
+     * be known up front.
+     */
+    public long upload(String key, String contentType, InputStream inputStream) throws IOException {
+        byte[] firstBuffer = acquireBuffer();
+        int firstLength;
+        try {
+            firstLength = readFully(inputStream, firstBuffer);
+        } catch (IOException e) {
+            partBuffers.release(firstBuffer);
+            throw e;
+        }
+        return uploadMultipart(key, contentType, null, Map.of(), inputStream, firstBuffer, firstLength);
+    }
+
+    /**
+     * Uploads a stream whose length is only known once it has been read, such as compressed output, with the
+     * given {@code Content-Encoding} and user metadata. An object that fits in a single part is sent with one
+     * PUT instead of a multipart upload.
+     */
+    public long upload(String key, String contentType, String contentEncoding, Map<String, String> metadata,
+                       InputStream inputStream) throws IOException {
+        byte[] firstBuffer = acquireBuffer();
+        int firstLength;
+        try {
+            firstLength = readFully(inputStream, firstBuffer);
+        } catch (IOException e) {
+            partBuffers.release(firstBuffer);
+            throw e;
+        }
+        if (firstLength == firstBuffer.length) {
+            return uploadMultipart(key, contentType, contentEncoding, metadata, inputStream, firstBuffer, firstLength);
+        }
+        try {
+            PutObjectRequest request = PutObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .acl(ObjectCannedACL.PUBLIC_READ)
+                    .contentType(contentType)
+                    .contentEncoding(contentEncoding)
+                    .metadata(metadata)
+                    .build();
+            s3Client.putObject(request, RequestBody.fromContentProvider(
+                    () -> new ByteArrayInputStream(firstBuffer, 0, firstLength), firstLength, contentType));
+            return firstLength;
+        } finally {
+            partBuffers.release(firstBuffer);
+        }
+    }
+
+    /**
+     * Runs the multipart upload with {@code firstBuffer}, already read from the stream, as its first part.
+     * Takes ownership of the buffer.
+     */
+    private long uploadMultipart(String key, String contentType, String contentEncoding, Map<String, String> metadata,
+                                 InputStream inputStream, byte[] firstBuffer, int firstLength) throws IOException {
+        CreateMultipartUploadRequest createRequest = CreateMultipartUploadRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .acl(ObjectCannedACL.PUBLIC_READ)
+                .contentType(contentType)
+                .contentEncoding(contentEncoding)
+                .metadata(metadata)
+                .build();
+        String uploadId;
+        try {
+            uploadId = s3Client.createMultipartUpload(createRequest).uploadId();
+        } catch (RuntimeException e) {
+            partBuffers.release(firstBuffer);
+            throw e;
+        }
+        log.info("Started multipart upload {} for key {}", uploadId, key);
+
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        List<Future<CompletedPart>> parts = new ArrayList<>();
+        long totalBytes = 0;
+        byte[] nextBuffer = firstBuffer;
+        int nextLength = firstLength;
+        try {
+            int partNumber = 1;
+            boolean lastPart = false;
+            while (!lastPart && failure.get() == null) {
+                byte[] buffer;
+                int length;
+                if (nextBuffer != null) {
+                    buffer = nextBuffer;
+                    length = nextLength;
+                    nextBuffer = null;
+                } else {
+                    buffer = acquireBuffer();
+                    try {
+                        length = readFully(inputStream, buffer);
+                    } catch (IOException e) {
+                        partBuffers.release(buffer);
+                        throw e;
+                    }
+                }
+                if (length == 0 && partNumber > 1) {
+                    partBuffers.release(buffer);
+                    break;
+                }
+                lastPart = length < buffer.length;
+                totalBytes += length;
+                int number = partNumber++;
+                parts.add(executor.submit(() -> {
+                    try {
+                        if (failure.get() != null) {
+                            throw new IllegalStateException("Multipart upload " + uploadId + " already failed");
+                        }
+                        return uploadPart(key, uploadId, number, buffer, length);
+                    } catch (RuntimeException e) {
+                        failure.compareAndSet(null, e);
+                        throw e;
+                    } finally {
+                        partBuffers.release(buffer);
+                    }
+                }));
+            }
+
+            List<CompletedPart> completedParts = new ArrayList<>(parts.size());
+            for (Future<CompletedPart> part : parts) {
+                completedParts.add(part.get());
+            }
+            s3Client.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(completedParts).build())
+                    .build());
+            log.info("Completed multipart upload {} for key {} with {} parts", uploadId, key, completedParts.size());
+            return totalBytes;
+        } catch (ExecutionException e) {
+            abort(key, uploadId, parts);
+            Throwable cause = failure.get() != null ? failure.get() : e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IOException("Multipart upload failed for key " + key, cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abort(key, uploadId, parts);
+            throw new InterruptedIOException("Interrupted during multipart upload for key " + key);
+        } catch (IOException | RuntimeException e) {
+            if (nextBuffer != null) {
+                partBuffers.release(nextBuffer);
+            }
+            abort(key, uploadId, parts);
+            if (failure.get() != null) {
+                throw failure.get();
+            }
+            throw e;
+        }
+    }
+
+    private CompletedPart uploadPart(String key, String uploadId, int partNumber, byte[] buffer, int length) {
+        UploadPartRequest request = UploadPartRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .uploadId(uploadId)
+                .partNumber(partNumber)
+                .contentLength((long) length)
+                .build();
+        for (int attempt = 0; ; attempt++) {
+            try {
+                RequestBody body = RequestBody.fromContentProvider(
+                        () -> new ByteArrayInputStream(buffer, 0, length), length, "application/octet-stream");
+                String eTag = s3Client.uploadPart(request, body).eTag();
+                return CompletedPart.builder().partNumber(partNumber).eTag(eTag).build();
+            } catch (SdkException e) {
+                if (attempt >= maxPartRetries || !isRetryable(e)) {
+                    log.error("Part {} of multipart upload {} failed after {} attempts: {}", partNumber, uploadId, attempt + 1, e.getMessage());
+                    throw e;
+                }
+                log.warn("Retrying part {} of multipart upload {} (attempt {}): {}", partNumber, uploadId, attempt + 1, e.getMessage());
+                sleepBeforeRetry(attempt);
+            }
+        }
+    }
+
+    private void abort(String key, String uploadId, List<Future<CompletedPart>> parts) {
+        // Let in-flight parts settle first, otherwise S3 may keep parts that finish after the abort.
+        for (Future<CompletedPart> part : parts) {
+            try {
+                part.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException ignored) {
+                // already reported by the failing part
+            }
+        }
+        try {
+            s3Client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .build());
+            log.warn("Aborted multipart upload {} for key {}", uploadId, key);
+        } catch (SdkException e) {
+            log.error("Error aborting multipart upload {} for key {}: {}", uploadId, key, e.getMessage());
+        }
+    }
+
+    private byte[] acquireBuffer() throws InterruptedIOException {
+        try {
+            return partBuffers.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a part buffer");
+        }
+    }
+
+    private static boolean isRetryable(SdkException e) {
+        if (e instanceof S3Exception s3Exception) {
+            int status = s3Exception.statusCode();
+            return status >= 500 || status == 429;
+        }
+        return e instanceof SdkClientException || e.retryable();
+    }
+
+    private static void sleepBeforeRetry(int attempt) {
+        try {
+            Thread.sleep(RETRY_BACKOFF_MILLIS << Math.min(attempt, 5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw SdkClientException.create("Interrupted while retrying part upload", e);
+        }
+    }
+
+    static int readFully(InputStream inputStream, byte[] buffer) throws IOException {
+        int total = 0;
+        while (total < buffer.length) {
+            int read = inputStream.read(buffer, total, buffer.length - total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    private static final class PartThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "s3-multipart-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.guardians.udss.services;
+
+import com.guardians.udss.config.S3Config;
+import com.guardians.udss.exception.OperationRejectedException;
+import com.guardians.udss.model.OperationType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Caps the number of concurrent S3 calls per operation type. With virtual threads a burst of requests no
+ * longer queues in Tomcat's thread pool, so these semaphores are what keep uploads from taking every
+ * connection of the SDK's HTTP pool away from downloads and searches.
+ */
+@Component
+public class S3OperationLimiter {
+
+    private final Map<OperationType, Semaphore> permits = new EnumMap<>(OperationType.class);
+    private final long acquireTimeoutMillis;
+
+    @Autowired
+    public S3OperationLimiter(S3Config s3Config) {
+        permits.put(OperationType.SEARCH, new Semaphore(s3Config.getSearchConcurrency(), true));
+        permits.put(OperationType.DOWNLOAD, new Semaphore(s3Config.getDownloadConcurrency(), true));
+        permits.put(OperationType.UPLOAD, new Semaphore(s3Config.getUploadConcurrency(), true));
+        permits.put(OperationType.DELETE, new Semaphore(s3Config.getDeleteConcurrency(), true));
+        this.acquireTimeoutMillis = s3Config.getConcurrencyAcquireTimeout().toMillis();
+    }
+
+    public Permit acquire(OperationType type) {
+        Semaphore semaphore = permits.get(type);
+        try {
+            if (!semaphore.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new OperationRejectedException("Too many concurrent " + type.name().toLowerCase() + " operations");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OperationRejectedException("Interrupted while waiting to start " + type.name().toLowerCase());
+        }
+        AtomicBoolean released = new AtomicBoolean();
+        return () -> {
+            if (released.compareAndSet(false, true)) {
+                semaphore.release();
+            }
+        };
+    }
+
+    public int available(OperationType type) {
+        return permits.get(type).availablePermits();
+    }
+
+    /**
+     * A held permit; closing it more than once releases it only once.
+     */
+    @FunctionalInterface
+    public interface Permit extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
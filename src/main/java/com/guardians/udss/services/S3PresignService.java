@@ -0,0 +1,17 @@
+package com.guardians.udss.services;
+
+import com.guardians.udss.model.PresignedMultipartUpload;
+import com.guardians.udss.model.PresignedUrl;
+import com.guardians.udss.model.UploadedPart;
+
+import java.util.List;
+
+public interface S3PresignService {
+
+     PresignedUrl presignDownload(String username, String filename);
+     PresignedUrl presignUpload(String username, String filename, String contentType);
+     PresignedMultipartUpload startMultipartUpload(String username, String filename, String contentType, long size);
+     String completeUpload(String username, String filename, String uploadId, List<UploadedPart> parts);
+     void abortMultipartUpload(String username, String filename, String uploadId);
+
+}
@@ -0,0 +1,261 @@
+package com.guardians.udss.services;
+
+import com.guardians.udss.cache.ObjectCache;
+import com.guardians.udss.config.S3Config;
+import com.guardians.udss.config.StorageConfig;
+import com.guardians.udss.exception.FileNotFoundException;
+import com.guardians.udss.index.FileMetadataIndex;
+import com.guardians.udss.model.OperationType;
+import com.guardians.udss.model.PresignedMultipartUpload;
+import com.guardians.udss.model.PresignedUrl;
+import com.guardians.udss.model.UploadedPart;
+import com.guardians.udss.spool.UploadSpool;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.awscore.presigner.PresignedRequest;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Hands out presigned S3 URLs so clients move file bytes directly to and from the bucket. Keys keep the
+ * {@code username/filename} layout of {@link S3FileServiceImpl}, and uploads use the same canned ACL. The
+ * service only sees the upload again in {@link #completeUpload}, which registers the new key with the
+ * metadata index and the download cache. Handing out an upload URL supersedes a spooled upload of the key, as
+ * a direct upload through {@link S3FileServiceImpl} does.
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(prefix = "udss.storage", name = "backend", havingValue = StorageConfig.S3, matchIfMissing = true)
+public class S3PresignServiceImpl implements S3PresignService {
+
+    private static final int MAX_PARTS = 10_000;
+
+    private final S3Config s3Config;
+    private final S3Client s3Client;
+    private final S3Presigner s3Presigner;
+    private final FileMetadataIndex metadataIndex;
+    private final ObjectCache objectCache;
+    private final S3OperationLimiter operationLimiter;
+    private final DedupStore dedupStore;
+    private final UploadSpool uploadSpool;
+
+    @Autowired
+    public S3PresignServiceImpl(S3Config s3Config, S3Client s3Client, S3Presigner s3Presigner,
+                                FileMetadataIndex metadataIndex, ObjectCache objectCache,
+                                S3OperationLimiter operationLimiter, DedupStore dedupStore, UploadSpool uploadSpool) {
+        this.s3Config = s3Config;
+        this.s3Client = s3Client;
+        this.s3Presigner = s3Presigner;
+        this.metadataIndex = metadataIndex;
+        this.objectCache = objectCache;
+        this.operationLimiter = operationLimiter;
+        this.dedupStore = dedupStore;
+        this.uploadSpool = uploadSpool;
+    }
+
+    /**
+     * Signs a GET for the file. A deduplicated file is signed against its blob, since the key itself only holds
+     * an empty reference; presigned uploads, which bypass the service, always store plain objects.
+     */
+    public PresignedUrl presignDownload(String username, String filename) {
+        dedupStore.checkUserName(username);
+        String key = username + "/" + filename;
+        String storedKey = key;
+        if (dedupStore.isEnabled()) {
+            String blob = dedupStore.referencedBlob(key);
+            if (blob != null) {
+                storedKey = dedupStore.blobKey(blob);
+            }
+        }
+        GetObjectRequest getObjectRequest = GetObjectRequest.builder()
+                .bucket(s3Config.getBucketName())
+                .key(storedKey)
+                .build();
+
+        return toPresignedUrl(key, s3Presigner.presignGetObject(presign -> presign
+                .signatureDuration(s3Config.getPresignExpiry())
+                .getObjectRequest(getObjectRequest)));
+    }
+
+    /**
+     * Signs a PUT of the file. When the key is a reference to a blob, the upload replaces it; the blob is named
+     * in the signed metadata so that {@link #completeUpload} can release it.
+     */
+    public PresignedUrl presignUpload(String username, String filename, String contentType) {
+        dedupStore.checkUserName(username);
+        String key = username + "/" + filename;
+        recordSpooledSupersede(key);
+        String replacedBlob = dedupStore.isEnabled() ? dedupStore.referencedBlob(key) : null;
+        PutObjectRequest putObjectRequest = PutObjectRequest.builder()
+                .bucket(s3Config.getBucketName())
+                .key(key)
+                .acl(ObjectCannedACL.PUBLIC_READ)
+                .contentType(contentType)
+                .metadata(replacedBlob == null ? Map.of() : Map.of(DedupStore.REPLACED_BLOB_METADATA, replacedBlob))
+                .build();
+
+        return toPresignedUrl(key, s3Presigner.presignPutObject(presign -> presign
+                .signatureDuration(s3Config.getPresignExpiry())
+                .putObjectRequest(putObjectRequest)));
+    }
+
+    public PresignedMultipartUpload startMultipartUpload(String username, String filename, String contentType, long size) {
+        dedupStore.checkUserName(username);
+        String key = username + "/" + filename;
+        recordSpooledSupersede(key);
+        // Grow the part size when the configured one would need more parts than S3 allows.
+        long partSize = Math.max(Math.max(s3Config.getMultipartPartSize().toBytes(), S3MultipartUploader.MIN_PART_SIZE),
+                (size + MAX_PARTS - 1) / MAX_PARTS);
+        int partCount = (int) Math.max(1, (size + partSize - 1) / partSize);
+
+        CreateMultipartUploadRequest createRequest = CreateMultipartUploadRequest.builder()
+                .bucket(s3Config.getBucketName())
+                .key(key)
+                .acl(ObjectCannedACL.PUBLIC_READ)
+                .contentType(contentType)
+                .build();
+
+        String uploadId;
+        try (S3OperationLimiter.Permit permit = operationLimiter.acquire(OperationType.UPLOAD)) {
+            uploadId = s3Client.createMultipartUpload(createRequest).uploadId();
+        } catch (S3Exception e) {
+            log.error("Error starting multipart upload with key {}: {}", key, e.awsErrorDetails().errorMessage());
+            throw new RuntimeException("Error uploading file to S3 bucket");
+        }
+
+        List<PresignedUrl> parts = new ArrayList<>(partCount);
+        for (int partNumber = 1; partNumber <= partCount; partNumber++) {
+            UploadPartRequest uploadPartRequest = UploadPartRequest.builder()
+                    .bucket(s3Config.getBucketName())
+                    .key(key)
+                    .uploadId(uploadId)
+                    .partNumber(partNumber)
+                    .build();
+            parts.add(toPresignedUrl(key, s3Presigner.presignUploadPart(presign -> presign
+                    .signatureDuration(s3Config.getPresignExpiry())
+                    .uploadPartRequest(uploadPartRequest))));
+        }
+        log.info("Started presigned multipart upload {} for key {} with {} parts", uploadId, key, partCount);
+        return new PresignedMultipartUpload(key, uploadId, partSize, parts);
+    }
+
+    /**
+     * Called by the client once its upload finished. For a multipart upload the parts are assembled first;
+     * in both cases the object is then looked up and registered like an upload through this service. A blob
+     * the key referred to before the upload is released: for a multipart upload the reference is still in
+     * place until the parts are assembled, a single PUT names it in the metadata signed by {@link #presignUpload}.
+     */
+    public String completeUpload(String username, String filename, String uploadId, List<UploadedPart> parts) {
+        dedupStore.checkUserName(username);
+        String key = username + "/" + filename;
+
+        try (S3OperationLimiter.Permit permit = operationLimiter.acquire(OperationType.UPLOAD)) {
+            String replacedBlob = null;
+            if (uploadId != null) {
+                replacedBlob = dedupStore.isEnabled() ? dedupStore.referencedBlob(key) : null;
+                List<CompletedPart> completedParts = parts.stream()
+                        .sorted(Comparator.comparingInt(UploadedPart::getPartNumber))
+                        .map(part -> CompletedPart.builder().partNumber(part.getPartNumber()).eTag(part.getEtag()).build())
+                        .collect(Collectors.toList());
+                s3Client.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                        .bucket(s3Config.getBucketName())
+                        .key(key)
+                        .uploadId(uploadId)
+                        .multipartUpload(CompletedMultipartUpload.builder().parts(completedParts).build())
+                        .build());
+                log.info("Completed presigned multipart upload {} for key {} with {} parts", uploadId, key, completedParts.size());
+            }
+
+            HeadObjectResponse head = s3Client.headObject(HeadObjectRequest.builder()
+                    .bucket(s3Config.getBucketName())
+                    .key(key)
+                    .build());
+            if (uploadId == null) {
+                replacedBlob = head.metadata().get(DedupStore.REPLACED_BLOB_METADATA);
+            }
+            objectCache.invalidate(key);
+            metadataIndex.recordUpload(username, filename, head.contentLength(), head.lastModified(), head.contentType());
+            if (replacedBlob != null) {
+                releaseBlob(key, replacedBlob);
+            }
+            return key;
+        } catch (NoSuchKeyException e) {
+            log.error("Uploaded file not found in S3: {}", key);
+            throw new FileNotFoundException("File not found in S3 bucket for key: " + key);
+        } catch (S3Exception e) {
+            if (e.statusCode() == 404) {
+                // HEAD responses carry no error body, so a missing key is not reported as NoSuchKey.
+                log.error("Uploaded file not found in S3: {}", key);
+                throw new FileNotFoundException("File not found in S3 bucket for key: " + key);
+            }
+            log.error("Error completing upload with key {}: {}", key, e.awsErrorDetails().errorMessage());
+            throw new RuntimeException("Error uploading file to S3 bucket");
+        }
+    }
+
+    public void abortMultipartUpload(String username, String filename, String uploadId) {
+        dedupStore.checkUserName(username);
+        String key = username + "/" + filename;
+
+        try (S3OperationLimiter.Permit permit = operationLimiter.acquire(OperationType.UPLOAD)) {
+            s3Client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(s3Config.getBucketName())
+                    .key(key)
+                    .uploadId(uploadId)
+                    .build());
+            log.info("Aborted presigned multipart upload {} for key {}", uploadId, key);
+        } catch (S3Exception e) {
+            log.error("Error aborting multipart upload {} with key {}: {}", uploadId, key, e.awsErrorDetails().errorMessage());
+            throw new RuntimeException("Error aborting upload in S3 bucket");
+        }
+    }
+
+    /**
+     * Releases the blob a replaced reference pointed to. A failure only leaves the blob stored, so it is logged
+     * rather than failing the upload.
+     */
+    /**
+     * Logs in the spool that the client is about to write {@code key} itself, so a spooled upload of it cannot
+     * land on top of the client's upload later.
+     */
+    private void recordSpooledSupersede(String key) {
+        try {
+            uploadSpool.recordSupersede(key);
+        } catch (IOException e) {
+            log.error("Error recording presigned upload of spooled file with key {}: {}", key, e.getMessage());
+            throw new RuntimeException("Error uploading file to S3 bucket");
+        }
+    }
+
+    private void releaseBlob(String key, String blob) {
+        try {
+            dedupStore.release(key, blob);
+        } catch (SdkException e) {
+            log.warn("Error releasing blob {} of replaced key {}: {}", blob, key, e.getMessage());
+        }
+    }
+
+    private static PresignedUrl toPresignedUrl(String key, PresignedRequest presigned) {
+        Map<String, String> headers = new LinkedHashMap<>();
+        presigned.signedHeaders().forEach((name, values) -> {
+            // The client's HTTP stack sets Host from the URL.
+            if (!name.equalsIgnoreCase("host")) {
+                headers.put(name, String.join(",", values));
+            }
+        });
+        return new PresignedUrl(key, presigned.httpRequest().method().name(), presigned.url().toString(),
+                headers, presigned.expiration());
+    }
+}
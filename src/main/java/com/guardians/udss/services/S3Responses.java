@@ -0,0 +1,121 @@
+package com.guardians.udss.services;
+
+import com.guardians.udss.compression.ContentEncoding;
+import com.guardians.udss.exception.FileNotFoundException;
+import com.guardians.udss.exception.PreconditionFailedException;
+import com.guardians.udss.exception.RangeNotSatisfiableException;
+import com.guardians.udss.model.DownloadOptions;
+import com.guardians.udss.model.FileDownload;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.IOException;
+
+/**
+ * Request and response mapping shared by the blocking and asynchronous S3 file services.
+ */
+@Slf4j
+final class S3Responses {
+
+    /** User metadata key holding the size before compression of an object stored compressed. */
+    static final String ORIGINAL_SIZE_METADATA = "original-size";
+
+    private S3Responses() {
+    }
+
+    static GetObjectRequest getObjectRequest(String bucketName, String key, DownloadOptions options) {
+        return GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .range(options.getRange())
+                .ifMatch(options.getIfMatch())
+                .ifNoneMatch(options.getIfNoneMatch())
+                .ifModifiedSince(options.getIfModifiedSince())
+                .build();
+    }
+
+    static FileDownload toFileDownload(String key, ResponseInputStream<GetObjectResponse> object) {
+        GetObjectResponse response = object.response();
+        return FileDownload.builder()
+                .key(key)
+                .content(object)
+                .contentLength(response.contentLength())
+                .contentType(response.contentType())
+                .eTag(response.eTag())
+                .lastModified(response.lastModified())
+                .contentRange(response.contentRange())
+                .contentEncoding(response.contentEncoding())
+                .decodedLength(originalSize(response))
+                .build();
+    }
+
+    private static Long originalSize(GetObjectResponse response) {
+        String originalSize = response.metadata().get(ORIGINAL_SIZE_METADATA);
+        try {
+            return originalSize == null ? null : Long.valueOf(originalSize);
+        } catch (NumberFormatException e) {
+            log.warn("Ignoring invalid {} metadata '{}'", ORIGINAL_SIZE_METADATA, originalSize);
+            return null;
+        }
+    }
+
+    /**
+     * The coding to remove before {@code download} is returned, or {@code null} when it can be sent as stored:
+     * it is not compressed, uses a coding this service does not produce, or the client accepts the coding.
+     */
+    static ContentEncoding encodingToDecode(FileDownload download, DownloadOptions options) {
+        if (download.isNotModified()) {
+            return null;
+        }
+        ContentEncoding encoding = ContentEncoding.fromToken(download.getContentEncoding());
+        return encoding == null || encoding.isAcceptedBy(options.getAcceptEncoding()) ? null : encoding;
+    }
+
+    /**
+     * Releases a GET response that will not be read, dropping its connection rather than draining it.
+     */
+    static void discard(ResponseInputStream<GetObjectResponse> object) {
+        object.abort();
+        try {
+            object.close();
+        } catch (IOException e) {
+            log.debug("Error closing discarded S3 response: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Options to fetch the whole object in place of a range, since a range of compressed bytes cannot be
+     * decoded on its own.
+     */
+    static DownloadOptions withoutRange(DownloadOptions options) {
+        return options.toBuilder().range(null).build();
+    }
+
+    /**
+     * Maps a failed GET onto the download contract: a 304 becomes a not-modified download, anything else is
+     * rethrown as the matching service exception.
+     */
+    static FileDownload downloadFailure(String key, DownloadOptions options, S3Exception e) {
+        if (e instanceof NoSuchKeyException) {
+            log.error("File not found in S3: {}", key);
+            throw new FileNotFoundException("File not found in S3 bucket for key: " + key);
+        }
+        if (e.statusCode() == HttpStatus.NOT_MODIFIED.value()) {
+            String eTag = e.awsErrorDetails().sdkHttpResponse().firstMatchingHeader("ETag").orElse(null);
+            return FileDownload.notModified(key, eTag);
+        }
+        if (e.statusCode() == HttpStatus.PRECONDITION_FAILED.value()) {
+            throw new PreconditionFailedException("Precondition failed for key: " + key);
+        }
+        if (e.statusCode() == HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value()) {
+            throw new RangeNotSatisfiableException("Range " + options.getRange() + " not satisfiable for key: " + key);
+        }
+        log.error("Error downloading file from S3 with key {}: {}", key, e.awsErrorDetails().errorMessage());
+        throw new RuntimeException("Error downloading file from S3 bucket");
+    }
+}
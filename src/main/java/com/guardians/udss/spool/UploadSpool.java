@@ -0,0 +1,889 @@
+package com.guardians.udss.spool;
+
+import com.guardians.udss.config.SpoolConfig;
+import com.guardians.udss.model.DownloadOptions;
+import com.guardians.udss.model.FileDownload;
+import com.guardians.udss.util.FileRegionDownloads;
+import com.guardians.udss.util.FileRegionInputStream;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Write-behind spool for uploads, enabled by {@code udss.spool.enabled}.
+ * <p>
+ * An upload is appended as one record to the active segment file under {@code udss.spool.directory}, forced
+ * to disk, and only then acknowledged. Appends only take a lock to reserve their place in the segment and
+ * write the record header; contents are copied, checksummed and forced side by side. A background drainer hands pending records to an {@link Uploader}
+ * several at a time, retrying failures with exponential backoff, and deletes a segment once it and every
+ * older segment are fully uploaded. Segments are only ever appended to and deleted whole.
+ * <p>
+ * Each record carries a CRC-32 over its header and content. On startup the segments are replayed in order:
+ * valid records are queued again, an incomplete record at the end of the newest segment, left by a crash
+ * before it was acknowledged, is cut off, and one that was still being copied while later ones finished is
+ * skipped. Deletes of spooled keys are logged as tombstone records so a replay
+ * does not bring a deleted file back, and only the newest record of a key is ever uploaded; an older one that
+ * is still queued is dropped. A write that bypasses the spool logs the same tombstone first, see
+ * {@link #recordSupersede}. Until its record is uploaded a file is served from the spool.
+ */
+@Component
+@Slf4j
+public class UploadSpool {
+
+    /** "USP1". */
+    private static final int RECORD_MAGIC = 0x55535031;
+    private static final byte UPLOAD = 1;
+    private static final byte DELETE = 2;
+    /** An upload whose content could not be copied, with later records behind it. */
+    private static final byte ABORTED = 0;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_NAME_LENGTH = 0xFFFF;
+
+    /**
+     * Moves one spooled file to its final storage.
+     */
+    @FunctionalInterface
+    public interface Uploader {
+        void upload(String key, String contentType, InputStream content, long size) throws IOException;
+    }
+
+    private final SpoolConfig config;
+    private final MeterRegistry meterRegistry;
+    private final Object appendLock = new Object();
+    private final NavigableMap<Long, Segment> segments = new TreeMap<>();
+    private final NavigableMap<Long, Record> pending = new TreeMap<>();
+    private final NavigableMap<String, Record> latest = new TreeMap<>();
+    private final Set<String> inFlight = new HashSet<>();
+    private Path directory;
+    private Segment active;
+    private long nextSequence = 1;
+    private long nextSegmentId = 1;
+    private long spooledBytes;
+    private long pendingBytes;
+    private boolean replaying;
+    private ExecutorService uploadExecutor;
+    private Thread drainer;
+    private volatile boolean running;
+
+    @Autowired
+    public UploadSpool(SpoolConfig config, MeterRegistry meterRegistry) {
+        this.config = config;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public boolean isEnabled() {
+        return config.isEnabled();
+    }
+
+    /**
+     * Creates the spool directory and replays the segments left by the previous run.
+     */
+    @PostConstruct
+    public void open() throws IOException {
+        if (!config.isEnabled()) {
+            return;
+        }
+        directory = Paths.get(config.getDirectory());
+        Files.createDirectories(directory);
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.filter(path -> segmentId(path) > 0)
+                    .sorted((first, second) -> Long.compare(segmentId(first), segmentId(second)))
+                    .collect(Collectors.toList());
+        }
+        synchronized (this) {
+            replaying = true;
+        }
+        for (int i = 0; i < files.size(); i++) {
+            Path path = files.get(i);
+            Segment segment = new Segment(segmentId(path), path);
+            segments.put(segment.id, segment);
+            nextSegmentId = segment.id + 1;
+            replay(segment, i == files.size() - 1);
+        }
+        synchronized (this) {
+            replaying = false;
+            deleteUploadedSegments();
+            log.info("Upload spool at {} holds {} files ({} bytes) waiting for upload", directory, pending.size(), pendingBytes);
+        }
+        Gauge.builder("udss.spool.pending.files", this, spool -> spool.snapshot()[0])
+                .description("Spooled files not yet uploaded")
+                .register(meterRegistry);
+        Gauge.builder("udss.spool.pending.bytes", this, spool -> spool.snapshot()[1])
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("udss.spool.size", this, spool -> spool.snapshot()[2])
+                .description("Disk space taken by spool segments")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("udss.spool.oldest.age", this, UploadSpool::oldestPendingAgeSeconds)
+                .description("Time the oldest pending file has been waiting for upload")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Starts draining the spool to {@code uploader}.
+     */
+    public synchronized void start(Uploader uploader) {
+        if (!config.isEnabled() || running) {
+            return;
+        }
+        running = true;
+        AtomicInteger threadCount = new AtomicInteger();
+        uploadExecutor = Executors.newFixedThreadPool(Math.max(1, config.getUploadParallelism()), runnable -> {
+            Thread thread = new Thread(runnable, "upload-spool-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        drainer = new Thread(() -> drain(uploader), "upload-spool-drainer");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    /**
+     * Stops the drainer. Uploads in progress get a few seconds to finish; anything not uploaded stays in the
+     * spool for the next start.
+     */
+    @PreDestroy
+    public void close() {
+        synchronized (this) {
+            running = false;
+            notifyAll();
+        }
+        if (drainer != null) {
+            drainer.interrupt();
+        }
+        if (uploadExecutor != null) {
+            uploadExecutor.shutdown();
+            try {
+                uploadExecutor.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (appendLock) {
+            synchronized (this) {
+                Segment last = active;
+                if (last != null) {
+                    active = null;
+                    sealIfRetired(last);
+                }
+            }
+        }
+    }
+
+    /**
+     * Appends an upload of {@code size} bytes and returns once it is on disk, or returns {@code false} without
+     * reading {@code content} if the spool is full.
+     */
+    public boolean append(String key, String contentType, InputStream content, long size) throws IOException {
+        Reservation reservation;
+        synchronized (appendLock) {
+            synchronized (this) {
+                if (spooledBytes + size > config.getMaxSize().toBytes()) {
+                    meterRegistry.counter("udss.spool.full").increment();
+                    return false;
+                }
+            }
+            reservation = reserve(UPLOAD, key, contentType, size);
+        }
+        complete(reservation, content);
+        meterRegistry.counter("udss.spool.appended").increment();
+        return true;
+    }
+
+    /**
+     * Logs the deletion of {@code key} if the spool has a record of it, and waits for an upload of it that is
+     * already running, so the caller's delete in storage comes after it. Returns whether a not yet uploaded
+     * file was dropped.
+     */
+    public boolean recordDelete(String key) throws IOException {
+        return writeTombstone(key);
+    }
+
+    /**
+     * Logs that {@code key} is about to be written to storage without going through the spool, and waits for
+     * an upload of it that is already running. A spooled file of the key that is not uploaded yet is dropped,
+     * also by a replay, so it cannot overwrite the newer write once the drainer gets to it. The file is
+     * dropped even if the write then fails, as it would be by a delete.
+     */
+    public void recordSupersede(String key) throws IOException {
+        if (writeTombstone(key)) {
+            meterRegistry.counter("udss.spool.superseded").increment();
+        }
+    }
+
+    /**
+     * Logs a tombstone for {@code key} if the spool has a record of it and waits for a running upload of it.
+     * Returns whether a not yet uploaded file was dropped.
+     */
+    private boolean writeTombstone(String key) throws IOException {
+        if (!config.isEnabled()) {
+            return false;
+        }
+        boolean dropped;
+        Reservation reservation;
+        synchronized (appendLock) {
+            synchronized (this) {
+                Record record = latest.get(key);
+                if (record == null || record.type == DELETE) {
+                    return false;
+                }
+                dropped = record.state != State.DONE;
+            }
+            reservation = reserve(DELETE, key, null, 0);
+        }
+        complete(reservation, InputStream.nullInputStream());
+        synchronized (this) {
+            while (inFlight.contains(key)) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for the spooled upload of " + key);
+                }
+            }
+        }
+        return dropped;
+    }
+
+    /**
+     * Logs the deletion of every spooled file of {@code username} and returns the keys of those not yet
+     * uploaded.
+     */
+    public List<String> recordDeleteAll(String username) throws IOException {
+        if (!config.isEnabled()) {
+            return List.of();
+        }
+        List<String> keys;
+        synchronized (this) {
+            keys = new ArrayList<>(userRecords(username).keySet());
+        }
+        List<String> dropped = new ArrayList<>();
+        for (String key : keys) {
+            if (recordDelete(key)) {
+                dropped.add(key);
+            }
+        }
+        return dropped;
+    }
+
+    /**
+     * The keys of {@code username} waiting for upload that contain {@code searchTerm} and sort after
+     * {@code startAfter}, in key order.
+     */
+    public synchronized List<String> pendingKeys(String username, String searchTerm, String startAfter) {
+        if (!config.isEnabled()) {
+            return List.of();
+        }
+        return userRecords(username).values().stream()
+                .filter(record -> record.type == UPLOAD && record.state != State.DONE)
+                .map(record -> record.key)
+                .filter(key -> key.contains(searchTerm) && (startAfter == null || key.compareTo(startAfter) > 0))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Serves {@code key} from the spool if it is waiting for upload, otherwise returns {@code null}.
+     */
+    public FileDownload download(String key, DownloadOptions options) throws IOException {
+        Record record;
+        synchronized (this) {
+            record = config.isEnabled() ? latest.get(key) : null;
+            if (record == null || record.type != UPLOAD || record.state == State.DONE) {
+                return null;
+            }
+        }
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(record.segment.path, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            // Uploaded and cleaned up in the meantime.
+            return null;
+        }
+        String eTag = "\"spool-" + Long.toHexString(record.sequence) + "\"";
+        String contentType = record.contentType != null ? record.contentType : "application/octet-stream";
+        return FileRegionDownloads.open(key, channel, record.dataOffset, record.length, contentType, eTag,
+                Instant.ofEpochMilli(record.createdAt), options);
+    }
+
+    private Map<String, Record> userRecords(String username) {
+        String prefix = username + "/";
+        return latest.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+    }
+
+    /**
+     * Reserves the space of one record at the end of the active segment and writes its header. Called with
+     * {@link #appendLock} held, so sequence numbers follow the order of the log and every reserved record starts
+     * with a whole header that tells a replay how far to skip if its content never arrives.
+     */
+    private Reservation reserve(byte type, String key, String contentType, long size) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] typeBytes = contentType != null ? contentType.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        if (keyBytes.length > MAX_NAME_LENGTH || typeBytes.length > MAX_NAME_LENGTH) {
+            throw new IOException("Key or content type too long to spool: " + key);
+        }
+        Segment segment = activeSegment();
+        long sequence;
+        synchronized (this) {
+            sequence = nextSequence++;
+        }
+        long createdAt = System.currentTimeMillis();
+        ByteBuffer header = ByteBuffer.allocate(4 + 1 + 8 + 8 + 2 + keyBytes.length + 2 + typeBytes.length + 8);
+        header.putInt(RECORD_MAGIC).put(type).putLong(sequence).putLong(createdAt)
+                .putShort((short) keyBytes.length).put(keyBytes)
+                .putShort((short) typeBytes.length).put(typeBytes)
+                .putLong(size)
+                .flip();
+        CRC32 crc = new CRC32();
+        crc.update(header.array(), 4, header.limit() - 4);
+
+        long recordOffset = segment.size;
+        long dataOffset = recordOffset + header.limit();
+        try {
+            writeFully(segment.channel, header, recordOffset);
+        } catch (IOException e) {
+            truncate(segment, recordOffset);
+            throw e;
+        }
+        segment.size = dataOffset + size + 4;
+        synchronized (this) {
+            spooledBytes += segment.size - recordOffset;
+            segment.writers++;
+        }
+        return new Reservation(new Record(type, sequence, createdAt, key, contentType, segment, dataOffset, size),
+                recordOffset, crc);
+    }
+
+    /**
+     * Copies the content of a reserved record, forces it to disk and registers the record. Runs without
+     * {@link #appendLock}, alongside other appends.
+     */
+    private void complete(Reservation reservation, InputStream content) throws IOException {
+        Record record = reservation.record;
+        Segment segment = record.segment;
+        CRC32 crc = reservation.crc;
+        try {
+            long position = record.dataOffset;
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            long copied = 0;
+            int read;
+            while (copied < record.length
+                    && (read = content.read(buffer, 0, (int) Math.min(buffer.length, record.length - copied))) != -1) {
+                crc.update(buffer, 0, read);
+                position += writeFully(segment.channel, ByteBuffer.wrap(buffer, 0, read), position);
+                copied += read;
+            }
+            if (copied != record.length) {
+                throw new EOFException("Upload of " + record.key + " ended after " + copied + " of " + record.length + " bytes");
+            }
+            ByteBuffer trailer = ByteBuffer.allocate(4).putInt((int) crc.getValue()).flip();
+            writeFully(segment.channel, trailer, position);
+            if (config.isFsync()) {
+                segment.channel.force(false);
+            }
+        } catch (IOException | RuntimeException e) {
+            abort(reservation);
+            throw e;
+        }
+        synchronized (this) {
+            register(record);
+            segment.writers--;
+            sealIfRetired(segment);
+            notifyAll();
+        }
+    }
+
+    /**
+     * Gives up a reserved record that was not acknowledged, so the segment stays a sequence of whole records:
+     * at the end of the segment it is cut off, otherwise it is marked {@link #ABORTED} for a replay to skip.
+     */
+    private void abort(Reservation reservation) {
+        Record record = reservation.record;
+        Segment segment = record.segment;
+        long end = record.dataOffset + record.length + 4;
+        boolean truncated = false;
+        synchronized (appendLock) {
+            if (segment.size == end) {
+                truncated = truncate(segment, reservation.recordOffset);
+            } else {
+                try {
+                    writeFully(segment.channel, ByteBuffer.wrap(new byte[]{ABORTED}), reservation.recordOffset + 4);
+                } catch (IOException e) {
+                    // Its checksum no longer matches either way, which a replay also skips.
+                    log.error("Error marking aborted record in spool segment {}: {}", segment.path, e.getMessage());
+                }
+            }
+        }
+        synchronized (this) {
+            if (truncated) {
+                spooledBytes -= end - reservation.recordOffset;
+            }
+            segment.writers--;
+            sealIfRetired(segment);
+            notifyAll();
+        }
+    }
+
+    /**
+     * Cuts the end of a segment off at {@code size}. Called with {@link #appendLock} held.
+     */
+    private boolean truncate(Segment segment, long size) {
+        try {
+            segment.channel.truncate(size);
+            segment.size = size;
+            return true;
+        } catch (IOException e) {
+            log.error("Error truncating spool segment {}: {}", segment.path, e.getMessage());
+            return false;
+        }
+    }
+
+    private static int writeFully(FileChannel channel, ByteBuffer source, long position) throws IOException {
+        int written = 0;
+        while (source.hasRemaining()) {
+            written += channel.write(source, position + written);
+        }
+        return written;
+    }
+
+    /**
+     * The segment to append to, starting a new one once the current one has reached the segment size.
+     */
+    private Segment activeSegment() throws IOException {
+        if (active != null && active.size < config.getSegmentSize().toBytes()) {
+            return active;
+        }
+        long id;
+        synchronized (this) {
+            id = nextSegmentId++;
+        }
+        Path path = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+        Segment segment = new Segment(id, path);
+        segment.channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        if (config.isFsync()) {
+            forceDirectory();
+        }
+        synchronized (this) {
+            Segment previous = active;
+            segments.put(id, segment);
+            active = segment;
+            if (previous != null) {
+                sealIfRetired(previous);
+            }
+        }
+        return segment;
+    }
+
+    /**
+     * Makes a new segment's directory entry durable. Not every platform can open a directory for this.
+     */
+    private void forceDirectory() {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            log.debug("Could not force spool directory {}: {}", directory, e.getMessage());
+        }
+    }
+
+    /**
+     * Closes the append channel of a segment that is no longer appended to once the last copy into it is done.
+     */
+    private void sealIfRetired(Segment segment) {
+        if (segment != active && segment.writers == 0) {
+            segment.seal();
+            deleteUploadedSegments();
+        }
+    }
+
+    /**
+     * Makes {@code record} the newest of its key. An older record that is still waiting will not be uploaded;
+     * one being uploaded right now is settled when its upload ends. A record that finished copying after a
+     * newer one of its key was registered, or that a replay finds superseded, is dropped right away.
+     */
+    private void register(Record record) {
+        Record previous = latest.get(record.key);
+        if (previous != null && previous.sequence > record.sequence) {
+            if (record.type == UPLOAD) {
+                meterRegistry.counter("udss.spool.coalesced").increment();
+            }
+            record.state = State.DONE;
+            return;
+        }
+        latest.put(record.key, record);
+        if (previous != null && previous.state == State.PENDING) {
+            meterRegistry.counter("udss.spool.coalesced").increment();
+            settle(previous);
+        }
+        if (record.type == UPLOAD) {
+            pending.put(record.sequence, record);
+            record.segment.outstanding++;
+            pendingBytes += record.length;
+        } else {
+            record.state = State.DONE;
+        }
+    }
+
+    /**
+     * Marks an upload record as done, uploaded or superseded, and drops segments that no longer hold work.
+     */
+    private void settle(Record record) {
+        if (record.state == State.DONE) {
+            return;
+        }
+        record.state = State.DONE;
+        pending.remove(record.sequence);
+        record.segment.outstanding--;
+        pendingBytes -= record.length;
+        deleteUploadedSegments();
+    }
+
+    /**
+     * Deletes segments from the oldest on while they have nothing left to upload. Deleting strictly in order
+     * keeps a tombstone for as long as any older record of its key survives. Nothing is deleted until every
+     * segment has been replayed.
+     */
+    private void deleteUploadedSegments() {
+        while (!replaying && !segments.isEmpty()) {
+            Segment oldest = segments.firstEntry().getValue();
+            if (oldest == active || oldest.outstanding > 0 || oldest.writers > 0) {
+                return;
+            }
+            try {
+                Files.deleteIfExists(oldest.path);
+            } catch (IOException e) {
+                log.error("Error deleting spool segment {}: {}", oldest.path, e.getMessage());
+                return;
+            }
+            segments.remove(oldest.id);
+            spooledBytes -= oldest.size;
+            latest.values().removeIf(record -> record.segment == oldest);
+        }
+    }
+
+    private void drain(Uploader uploader) {
+        while (running) {
+            List<Record> batch;
+            synchronized (this) {
+                batch = nextBatch();
+                if (batch.isEmpty()) {
+                    try {
+                        long waitMillis = nextRetryDelayMillis();
+                        if (waitMillis > 0) {
+                            wait(waitMillis);
+                        } else {
+                            wait();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    continue;
+                }
+                for (Record record : batch) {
+                    record.state = State.UPLOADING;
+                    inFlight.add(record.key);
+                }
+            }
+            for (Record record : batch) {
+                uploadExecutor.execute(() -> upload(uploader, record));
+            }
+        }
+    }
+
+    /**
+     * Up to {@code batch-size} of the oldest pending records that are due, as many as there are free upload
+     * slots, and none of a key whose previous record is still being uploaded.
+     */
+    private List<Record> nextBatch() {
+        int free = Math.min(config.getBatchSize(), Math.max(1, config.getUploadParallelism()) - inFlight.size());
+        List<Record> batch = new ArrayList<>();
+        long now = System.nanoTime();
+        for (Record record : pending.values()) {
+            if (batch.size() >= free) {
+                break;
+            }
+            if (record.state == State.PENDING && record.nextAttemptAt - now <= 0 && !inFlight.contains(record.key)) {
+                batch.add(record);
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * Milliseconds until the earliest retry is due, or 0 if none is waiting.
+     */
+    private long nextRetryDelayMillis() {
+        long now = System.nanoTime();
+        long delay = 0;
+        for (Record record : pending.values()) {
+            if (record.state == State.PENDING && record.attempts > 0) {
+                long due = Math.max(1, TimeUnit.NANOSECONDS.toMillis(record.nextAttemptAt - now));
+                delay = delay == 0 ? due : Math.min(delay, due);
+            }
+        }
+        return delay;
+    }
+
+    private void upload(Uploader uploader, Record record) {
+        try (FileChannel channel = FileChannel.open(record.segment.path, StandardOpenOption.READ);
+             InputStream content = new FileRegionInputStream(channel, record.dataOffset, record.length)) {
+            uploader.upload(record.key, record.contentType, content, record.length);
+            meterRegistry.counter("udss.spool.uploaded").increment();
+            synchronized (this) {
+                inFlight.remove(record.key);
+                settle(record);
+                notifyAll();
+            }
+            retireDrainedSegment();
+        } catch (Exception e) {
+            meterRegistry.counter("udss.spool.upload.failures").increment();
+            synchronized (this) {
+                inFlight.remove(record.key);
+                if (latest.get(record.key) != record) {
+                    settle(record);
+                } else {
+                    record.attempts++;
+                    long delay = Math.min(config.getRetryMaxDelay().toNanos(),
+                            config.getRetryInitialDelay().toNanos() << Math.min(20, record.attempts - 1));
+                    record.nextAttemptAt = System.nanoTime() + delay;
+                    record.state = State.PENDING;
+                    log.warn("Upload of spooled file {} failed (attempt {}), retrying in {} ms: {}", record.key,
+                            record.attempts, TimeUnit.NANOSECONDS.toMillis(delay), e.getMessage());
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Closes and deletes the active segment once everything in the spool is uploaded, so an idle spool does
+     * not keep its last segment around. The next append starts a new one.
+     */
+    private void retireDrainedSegment() {
+        synchronized (appendLock) {
+            synchronized (this) {
+                if (active != null && active.writers == 0 && pending.isEmpty() && inFlight.isEmpty()) {
+                    active.seal();
+                    active = null;
+                    deleteUploadedSegments();
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the records of a segment left by an earlier run. A record that fails its checksum, or was marked
+     * aborted, was still being copied when later records finished and is skipped. A record that is cut short or
+     * has no valid header ends the replay of the segment: at the end of the newest segment it is an upload
+     * that was never acknowledged and is truncated away; anywhere else it is damage, and the rest of the
+     * segment is skipped.
+     */
+    private void replay(Segment segment, boolean newest) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment.path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long fileSize = channel.size();
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), COPY_BUFFER_SIZE));
+            long position = 0;
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            while (position < fileSize) {
+                long recordOffset = position;
+                Record record = null;
+                try {
+                    if (in.readInt() != RECORD_MAGIC) {
+                        throw new IOException("bad record marker");
+                    }
+                    CRC32 crc = new CRC32();
+                    byte type = in.readByte();
+                    long sequence = in.readLong();
+                    long createdAt = in.readLong();
+                    byte[] keyBytes = new byte[in.readUnsignedShort()];
+                    in.readFully(keyBytes);
+                    byte[] typeBytes = new byte[in.readUnsignedShort()];
+                    in.readFully(typeBytes);
+                    long length = in.readLong();
+                    long dataOffset = recordOffset + 4 + 1 + 8 + 8 + 2 + keyBytes.length + 2 + typeBytes.length + 8;
+                    if ((type != UPLOAD && type != DELETE && type != ABORTED) || keyBytes.length == 0 || length < 0
+                            || dataOffset + length + 4 > fileSize) {
+                        throw new EOFException("record extends past the end of the segment");
+                    }
+                    if (type == ABORTED) {
+                        in.skipNBytes(length + 4);
+                        position = dataOffset + length + 4;
+                        continue;
+                    }
+                    ByteBuffer header = ByteBuffer.allocate((int) (dataOffset - recordOffset - 4));
+                    header.put(type).putLong(sequence).putLong(createdAt)
+                            .putShort((short) keyBytes.length).put(keyBytes)
+                            .putShort((short) typeBytes.length).put(typeBytes)
+                            .putLong(length);
+                    crc.update(header.array());
+                    long remaining = length;
+                    while (remaining > 0) {
+                        int read = (int) Math.min(buffer.length, remaining);
+                        in.readFully(buffer, 0, read);
+                        crc.update(buffer, 0, read);
+                        remaining -= read;
+                    }
+                    boolean intact = in.readInt() == (int) crc.getValue();
+                    position = dataOffset + length + 4;
+                    if (!intact) {
+                        meterRegistry.counter("udss.spool.replay.discarded").increment();
+                        log.warn("Skipping unfinished record at offset {} of spool segment {}", recordOffset, segment.path);
+                        continue;
+                    }
+                    record = new Record(type, sequence, createdAt, new String(keyBytes, StandardCharsets.UTF_8),
+                            typeBytes.length == 0 ? null : new String(typeBytes, StandardCharsets.UTF_8),
+                            segment, dataOffset, length);
+                } catch (IOException e) {
+                    meterRegistry.counter("udss.spool.replay.discarded").increment();
+                    if (newest) {
+                        log.warn("Discarding incomplete record at offset {} of spool segment {}: {}", recordOffset, segment.path, e.getMessage());
+                        channel.truncate(recordOffset);
+                        position = recordOffset;
+                    } else {
+                        log.error("Damaged record at offset {} of spool segment {}, skipping the rest of it: {}",
+                                recordOffset, segment.path, e.getMessage());
+                    }
+                    break;
+                }
+                synchronized (this) {
+                    nextSequence = Math.max(nextSequence, record.sequence + 1);
+                    register(record);
+                }
+            }
+            segment.size = newest ? position : fileSize;
+            synchronized (this) {
+                spooledBytes += segment.size;
+            }
+        }
+    }
+
+    private static long segmentId(Path path) {
+        String name = path.getFileName().toString();
+        if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private synchronized long[] snapshot() {
+        return new long[]{pending.size(), pendingBytes, spooledBytes};
+    }
+
+    private synchronized double oldestPendingAgeSeconds() {
+        return pending.isEmpty() ? 0 : (System.currentTimeMillis() - pending.firstEntry().getValue().createdAt) / 1000.0;
+    }
+
+    private enum State {
+        PENDING, UPLOADING, DONE
+    }
+
+    private static final class Segment {
+        private final long id;
+        private final Path path;
+        private FileChannel channel;
+        private long size;
+        private int outstanding;
+        /** Appends still copying into the segment. */
+        private int writers;
+
+        private Segment(long id, Path path) {
+            this.id = id;
+            this.path = path;
+        }
+
+        /**
+         * Closes the append channel; the segment stays readable by path until it is deleted.
+         */
+        void seal() {
+            if (channel == null) {
+                return;
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Error closing spool segment {}: {}", path, e.getMessage());
+            }
+            channel = null;
+        }
+    }
+
+    private static final class Reservation {
+        private final Record record;
+        private final long recordOffset;
+        private final CRC32 crc;
+
+        private Reservation(Record record, long recordOffset, CRC32 crc) {
+            this.record = record;
+            this.recordOffset = recordOffset;
+            this.crc = crc;
+        }
+    }
+
+    private static final class Record {
+        private final byte type;
+        private final long sequence;
+        private final long createdAt;
+        private final String key;
+        private final String contentType;
+        private final Segment segment;
+        private final long dataOffset;
+        private final long length;
+        private State state = State.PENDING;
+        private int attempts;
+        private long nextAttemptAt = System.nanoTime();
+
+        private Record(byte type, long sequence, long createdAt, String key, String contentType, Segment segment,
+                       long dataOffset, long length) {
+            this.type = type;
+            this.sequence = sequence;
+            this.createdAt = createdAt;
+            this.key = key;
+            this.contentType = contentType;
+            this.segment = segment;
+            this.dataOffset = dataOffset;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.guardians.udss.startup;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Times the first API request an instance serves, the one that pays for whatever startup left to be done
+ * lazily. Next to Spring Boot's {@code application.ready.time} this publishes
+ * {@code udss.startup.first-request.duration}, how long that request took until its handler returned, and
+ * {@code udss.startup.first-request.time}, the JVM uptime when it did. Health checks and other requests outside
+ * {@code /api/} do not count.
+ */
+@Component
+public class FirstRequestMetrics extends OncePerRequestFilter {
+
+    private static final String API_PATH = "/api/";
+
+    private final MeterRegistry meterRegistry;
+    private final AtomicBoolean claimed = new AtomicBoolean();
+
+    @Autowired
+    public FirstRequestMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return claimed.get() || !request.getRequestURI().startsWith(request.getContextPath() + API_PATH);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        if (!claimed.compareAndSet(false, true)) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            long duration = System.nanoTime() - start;
+            long uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+            TimeGauge.builder("udss.startup.first-request.duration", () -> duration, TimeUnit.NANOSECONDS)
+                    .description("Time the first API request took until its handler returned")
+                    .register(meterRegistry);
+            TimeGauge.builder("udss.startup.first-request.time", () -> uptime, TimeUnit.MILLISECONDS)
+                    .description("JVM uptime when the first API request was answered")
+                    .register(meterRegistry);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.guardians.udss.startup;
+
+import com.guardians.udss.config.StartupConfig;
+import com.guardians.udss.services.S3FileService;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds what the first request would otherwise have to build, once the service has reported ready. With
+ * {@code spring.main.lazy-initialization} the context starts without the file service, its S3 client or the
+ * request mappings; this creates them on a background thread so startup is not held up by them and, unless a
+ * request arrives within the first moments, the first request does not pay for them either. Building the file
+ * service also starts draining the upload spool. springdoc is left to be built when the API docs are asked for.
+ */
+@Component
+@Slf4j
+public class StartupWarmUp implements ApplicationListener<ApplicationReadyEvent> {
+
+    private final StartupConfig startupConfig;
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public StartupWarmUp(StartupConfig startupConfig, MeterRegistry meterRegistry) {
+        this.startupConfig = startupConfig;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        if (!startupConfig.isWarmUp()) {
+            return;
+        }
+        Thread thread = new Thread(() -> warmUp(event.getApplicationContext()), "startup-warm-up");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    void warmUp(ConfigurableApplicationContext applicationContext) {
+        long start = System.nanoTime();
+        try {
+            applicationContext.getBeanProvider(S3FileService.class).getIfAvailable();
+            applicationContext.getBeansOfType(HandlerMapping.class);
+            long elapsed = System.nanoTime() - start;
+            meterRegistry.timer("udss.startup.warm-up").record(elapsed, TimeUnit.NANOSECONDS);
+            log.info("Warmed up the file service and request mappings in {} ms", TimeUnit.NANOSECONDS.toMillis(elapsed));
+        } catch (RuntimeException e) {
+            // The first request builds whatever is missing and reports the same failure to its caller.
+            if (applicationContext.isActive()) {
+                log.warn("Error warming up after startup: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.guardians.udss.util;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Fixed-capacity pool of reusable byte buffers. At most {@code capacity} buffers are ever handed out at
+ * the same time, so callers block in {@link #acquire()} instead of allocating without bound.
+ */
+public class BufferPool {
+
+    private final int bufferSize;
+    private final Semaphore permits;
+    private final Queue<byte[]> free = new ConcurrentLinkedQueue<>();
+
+    public BufferPool(int bufferSize, int capacity) {
+        if (bufferSize <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("Buffer size and capacity must be positive");
+        }
+        this.bufferSize = bufferSize;
+        this.permits = new Semaphore(capacity, true);
+    }
+
+    public byte[] acquire() throws InterruptedException {
+        permits.acquire();
+        byte[] buffer = free.poll();
+        return buffer != null ? buffer : new byte[bufferSize];
+    }
+
+    public void release(byte[] buffer) {
+        free.offer(buffer);
+        permits.release();
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public int available() {
+        return permits.availablePermits();
+    }
+}
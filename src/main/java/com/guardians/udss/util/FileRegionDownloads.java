@@ -0,0 +1,88 @@
+package com.guardians.udss.util;
+
+import com.guardians.udss.exception.PreconditionFailedException;
+import com.guardians.udss.exception.RangeNotSatisfiableException;
+import com.guardians.udss.model.DownloadOptions;
+import com.guardians.udss.model.FileDownload;
+import org.springframework.http.HttpRange;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Serves content kept in a region of a local file the way S3 answers a GET: conditional headers are checked
+ * against the given ETag and modification time, and a range is cut out of the region.
+ */
+public final class FileRegionDownloads {
+
+    private FileRegionDownloads() {
+    }
+
+    /**
+     * Answers {@code options} for the {@code size} bytes at {@code offset} of {@code channel}. The returned
+     * download owns the channel; when no content is returned, or on failure, the channel is closed.
+     */
+    public static FileDownload open(String key, FileChannel channel, long offset, long size, String contentType,
+                                    String eTag, Instant lastModified, DownloadOptions options) throws IOException {
+        try {
+            if (options.getIfMatch() != null && !matchesETag(options.getIfMatch(), eTag)) {
+                throw new PreconditionFailedException("Precondition failed for key: " + key);
+            }
+            boolean notModified = options.getIfNoneMatch() != null
+                    ? matchesETag(options.getIfNoneMatch(), eTag)
+                    : options.getIfModifiedSince() != null
+                            && !lastModified.truncatedTo(ChronoUnit.SECONDS).isAfter(options.getIfModifiedSince());
+            if (notModified) {
+                channel.close();
+                return FileDownload.notModified(key, eTag);
+            }
+
+            long start = 0;
+            long length = size;
+            String contentRange = null;
+            if (options.getRange() != null) {
+                try {
+                    HttpRange range = HttpRange.parseRanges(options.getRange()).get(0);
+                    start = range.getRangeStart(size);
+                    length = range.getRangeEnd(size) - start + 1;
+                } catch (IllegalArgumentException e) {
+                    length = 0;
+                }
+                if (start >= size || length <= 0) {
+                    throw new RangeNotSatisfiableException("Range " + options.getRange() + " not satisfiable for key: " + key);
+                }
+                contentRange = "bytes " + start + "-" + (start + length - 1) + "/" + size;
+            }
+            return FileDownload.builder()
+                    .key(key)
+                    .content(new FileRegionInputStream(channel, offset + start, length))
+                    .contentLength(length)
+                    .contentType(contentType)
+                    .eTag(eTag)
+                    .lastModified(lastModified)
+                    .contentRange(contentRange)
+                    .build();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Whether an {@code If-Match} or {@code If-None-Match} value names {@code eTag}, weak tags included.
+     */
+    public static boolean matchesETag(String header, String eTag) {
+        for (String candidate : header.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(eTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
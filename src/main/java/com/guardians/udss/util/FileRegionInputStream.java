@@ -0,0 +1,64 @@
+package com.guardians.udss.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads a byte range of an open file with positional reads, so the channel's own position is never touched and
+ * each read fills the caller's buffer straight from the file. Closing the stream closes the channel.
+ */
+public class FileRegionInputStream extends InputStream {
+
+    private final FileChannel channel;
+    private final long end;
+    private long position;
+
+    public FileRegionInputStream(FileChannel channel, long position, long length) {
+        this.channel = channel;
+        this.position = position;
+        this.end = position + length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (position >= end) {
+            return -1;
+        }
+        int read = channel.read(ByteBuffer.wrap(buffer, offset, (int) Math.min(length, end - position)), position);
+        if (read == -1) {
+            // The file was truncated underneath us; end the stream rather than spin.
+            position = end;
+            return -1;
+        }
+        position += read;
+        return read;
+    }
+
+    @Override
+    public long skip(long n) {
+        long skipped = Math.max(0, Math.min(n, end - position));
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return (int) Math.min(Integer.MAX_VALUE, end - position);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
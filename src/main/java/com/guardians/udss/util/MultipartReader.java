@@ -0,0 +1,293 @@
+package com.guardians.udss.util;
+
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads a {@code multipart/form-data} body one part at a time as it arrives, without buffering a part in memory
+ * or on disk. Each part's content is an {@link InputStream} that ends at the next boundary; moving to the next
+ * part skips whatever of the current one was not read.
+ */
+public class MultipartReader {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_HEADER_SIZE = 16 * 1024;
+
+    private final InputStream in;
+    /** CRLF, two dashes and the boundary: what ends every part. */
+    private final byte[] delimiter;
+    private final byte[] buffer;
+    private int position;
+    private int limit;
+    private boolean eof;
+    private PartInputStream current;
+    private boolean finished;
+
+    public MultipartReader(InputStream in, String boundary) {
+        if (boundary == null || boundary.isEmpty() || boundary.length() > 70) {
+            throw new IllegalArgumentException("Invalid multipart boundary: " + boundary);
+        }
+        this.in = in;
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.US_ASCII);
+        this.buffer = new byte[BUFFER_SIZE + delimiter.length];
+        // The first boundary is not preceded by a line break; pretend it is so every boundary looks the same.
+        buffer[0] = '\r';
+        buffer[1] = '\n';
+        this.limit = 2;
+    }
+
+    /**
+     * Reads the boundary parameter of a {@code multipart/*} content type, or {@code null} if there is none.
+     */
+    public static String boundary(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        for (String parameter : contentType.split(";")) {
+            String trimmed = parameter.trim();
+            if (trimmed.regionMatches(true, 0, "boundary=", 0, 9)) {
+                String value = trimmed.substring(9).trim();
+                if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+                    value = value.substring(1, value.length() - 1);
+                }
+                return value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Moves to the next part and returns it, or {@code null} after the last one.
+     */
+    public Part next() throws IOException {
+        if (finished) {
+            return null;
+        }
+        if (current == null) {
+            // Skips the preamble.
+            current = new PartInputStream();
+        }
+        current.skipRemaining();
+        skip(delimiter.length);
+        if (startsWith("--")) {
+            finished = true;
+            return null;
+        }
+        while (ensure(1) && (buffer[position] == ' ' || buffer[position] == '\t')) {
+            position++;
+        }
+        if (!startsWith("\r\n")) {
+            throw new IOException("Malformed multipart boundary line");
+        }
+        skip(2);
+        HttpHeaders headers = readHeaders();
+        current = new PartInputStream();
+        return new Part(headers, current);
+    }
+
+    private HttpHeaders readHeaders() throws IOException {
+        HttpHeaders headers = new HttpHeaders();
+        int size = 0;
+        while (true) {
+            String line = readLine();
+            size += line.length() + 2;
+            if (size > MAX_HEADER_SIZE) {
+                throw new IOException("Multipart part headers exceed " + MAX_HEADER_SIZE + " bytes");
+            }
+            if (line.isEmpty()) {
+                return headers;
+            }
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.add(line.substring(0, colon).trim(), line.substring(colon + 1).trim());
+            }
+        }
+    }
+
+    private String readLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        while (true) {
+            if (!ensure(2)) {
+                throw new EOFException("Unexpected end of multipart body in part headers");
+            }
+            if (buffer[position] == '\r' && buffer[position + 1] == '\n') {
+                position += 2;
+                // Browsers send file names as raw UTF-8.
+                return line.toString(StandardCharsets.UTF_8);
+            }
+            if (line.size() > MAX_HEADER_SIZE) {
+                throw new IOException("Multipart part headers exceed " + MAX_HEADER_SIZE + " bytes");
+            }
+            line.write(buffer[position++]);
+        }
+    }
+
+    private boolean startsWith(String expected) throws IOException {
+        if (!ensure(expected.length())) {
+            throw new EOFException("Unexpected end of multipart body");
+        }
+        for (int i = 0; i < expected.length(); i++) {
+            if (buffer[position + i] != expected.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void skip(int count) throws IOException {
+        if (!ensure(count)) {
+            throw new EOFException("Unexpected end of multipart body");
+        }
+        position += count;
+    }
+
+    /**
+     * Reads until at least {@code count} bytes are buffered, or returns {@code false} at the end of the body.
+     */
+    private boolean ensure(int count) throws IOException {
+        if (limit - position >= count) {
+            return true;
+        }
+        System.arraycopy(buffer, position, buffer, 0, limit - position);
+        limit -= position;
+        position = 0;
+        while (limit < count && !eof) {
+            int read = in.read(buffer, limit, buffer.length - limit);
+            if (read < 0) {
+                eof = true;
+            } else {
+                limit += read;
+            }
+        }
+        return limit >= count;
+    }
+
+    /**
+     * Index of the delimiter in the buffered bytes, or of where a delimiter cut off by the end of the buffer
+     * might start, or {@code -1} if neither.
+     */
+    private int findDelimiter() {
+        outer:
+        for (int start = position; start < limit; start++) {
+            for (int i = 0; i < delimiter.length; i++) {
+                if (start + i == limit) {
+                    return start;
+                }
+                if (buffer[start + i] != delimiter[i]) {
+                    continue outer;
+                }
+            }
+            return start;
+        }
+        return -1;
+    }
+
+    public static final class Part {
+        private final HttpHeaders headers;
+        private final InputStream content;
+
+        private Part(HttpHeaders headers, InputStream content) {
+            this.headers = headers;
+            this.content = content;
+        }
+
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        /**
+         * The form field name from {@code Content-Disposition}, or {@code null}.
+         */
+        public String getName() {
+            return contentDisposition().getName();
+        }
+
+        /**
+         * The file name from {@code Content-Disposition}, or {@code null} for a plain form field.
+         */
+        public String getFilename() {
+            return contentDisposition().getFilename();
+        }
+
+        public String getContentType() {
+            return headers.getFirst(HttpHeaders.CONTENT_TYPE);
+        }
+
+        public InputStream getInputStream() {
+            return content;
+        }
+
+        private ContentDisposition contentDisposition() {
+            String value = headers.getFirst(HttpHeaders.CONTENT_DISPOSITION);
+            try {
+                return value == null ? ContentDisposition.empty() : ContentDisposition.parse(value);
+            } catch (IllegalArgumentException e) {
+                return ContentDisposition.empty();
+            }
+        }
+    }
+
+    /**
+     * The content of one part: everything up to the next delimiter, which is left in the buffer.
+     */
+    private final class PartInputStream extends InputStream {
+        private boolean ended;
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] target, int offset, int length) throws IOException {
+            if (ended) {
+                return -1;
+            }
+            if (length == 0) {
+                return 0;
+            }
+            while (true) {
+                int found = findDelimiter();
+                if (found == position) {
+                    if (limit - position >= delimiter.length) {
+                        ended = true;
+                        return -1;
+                    }
+                } else {
+                    int available = (found < 0 ? limit : found) - position;
+                    if (available > 0) {
+                        int count = Math.min(length, available);
+                        System.arraycopy(buffer, position, target, offset, count);
+                        position += count;
+                        return count;
+                    }
+                }
+                // Nothing buffered, or only what may be the start of a delimiter: read on to find out.
+                if (!ensure(delimiter.length)) {
+                    throw new EOFException("Unexpected end of multipart body");
+                }
+            }
+        }
+
+        void skipRemaining() throws IOException {
+            byte[] discard = new byte[8192];
+            while (read(discard, 0, discard.length) != -1) {
+                // Discarded.
+            }
+        }
+
+        /**
+         * Leaves the rest of the part to be skipped by {@link MultipartReader#next()}.
+         */
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.guardians.udss.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Encodes search cursors. A token is the URL-safe Base64 form of the last key returned, which is used as the
+ * exclusive start of the next page; it is only accepted for keys under the caller's own prefix.
+ */
+public final class SearchTokens {
+
+    private SearchTokens() {
+    }
+
+    public static String encode(String lastKey) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(lastKey.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String decode(String token, String prefix) {
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+        String lastKey;
+        try {
+            lastKey = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed search token");
+        }
+        if (!lastKey.startsWith(prefix)) {
+            throw new IllegalArgumentException("Search token does not belong to this user");
+        }
+        return lastKey;
+    }
+}
@@ -0,0 +1,106 @@
+package com.guardians.udss.util;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates virtual-thread executors when running on Java 21 or later. The build still targets Java 17, so the
+ * JDK 21 factory method is looked up reflectively and callers fall back to platform threads otherwise.
+ */
+public final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    public static boolean isSupported() {
+        return Runtime.version().feature() >= 21;
+    }
+
+    /**
+     * Returns an executor that runs at most {@code parallelism} tasks at once: on virtual threads if
+     * {@code enabled} and supported, otherwise on a fixed pool of {@code parallelism} threads from
+     * {@code platformFactory}. Tasks beyond the limit wait their turn in submission order either way.
+     */
+    public static ExecutorService newExecutor(boolean enabled, int parallelism, ThreadFactory platformFactory) {
+        if (enabled && isSupported()) {
+            try {
+                ExecutorService virtual = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+                return bounded(virtual, parallelism);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Virtual threads are not available on this runtime", e);
+            }
+        }
+        return Executors.newFixedThreadPool(parallelism, platformFactory);
+    }
+
+    static ExecutorService bounded(ExecutorService threadPerTask, int parallelism) {
+        return new BoundedExecutor(threadPerTask, parallelism);
+    }
+
+    /**
+     * Starts a virtual thread per task but lets only {@code parallelism} of them past a fair semaphore at a
+     * time, so a burst of submissions queues like it would on a fixed pool instead of all contending at once
+     * for what the tasks go on to use.
+     */
+    private static final class BoundedExecutor extends AbstractExecutorService {
+        private final ExecutorService delegate;
+        private final Semaphore permits;
+
+        private BoundedExecutor(ExecutorService delegate, int parallelism) {
+            this.delegate = delegate;
+            this.permits = new Semaphore(Math.max(1, parallelism), true);
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            delegate.execute(() -> {
+                try {
+                    permits.acquire();
+                } catch (InterruptedException e) {
+                    // Shut down while waiting: the task never runs, so whoever waits on it must not hang.
+                    if (command instanceof Future<?> future) {
+                        future.cancel(false);
+                    }
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                try {
+                    command.run();
+                } finally {
+                    permits.release();
+                }
+            });
+        }
+
+        @Override
+        public void shutdown() {
+            delegate.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return delegate.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return delegate.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return delegate.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return delegate.awaitTermination(timeout, unit);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.guardians.udss;
+
+import com.guardians.udss.services.DedupStore;
+import com.guardians.udss.services.LocalFileServiceImpl;
+import com.guardians.udss.services.S3FileService;
+import com.guardians.udss.services.S3MultipartUploader;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = "udss.storage.backend=local")
+class LocalStorageBackendTests {
+
+	@Autowired
+	private ApplicationContext applicationContext;
+
+	@Test
+	void noS3ClientIsBuiltForTheLocalBackend() {
+		assertInstanceOf(LocalFileServiceImpl.class, applicationContext.getBean(S3FileService.class));
+		for (Class<?> type : new Class<?>[]{SdkHttpClient.class, S3Client.class, S3Presigner.class,
+				S3MultipartUploader.class, DedupStore.class}) {
+			assertTrue(applicationContext.getBeansOfType(type).isEmpty(), type.getSimpleName());
+		}
+	}
+
+}
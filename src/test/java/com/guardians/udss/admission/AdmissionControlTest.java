@@ -0,0 +1,146 @@
+package com.guardians.udss.admission;
+
+import com.guardians.udss.config.AdmissionConfig;
+import com.guardians.udss.controller.FileController;
+import com.guardians.udss.exception.GlobalExceptionHandler;
+import com.guardians.udss.exception.TooManyRequestsException;
+import com.guardians.udss.model.OperationType;
+import com.guardians.udss.services.S3FileServiceImpl;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class AdmissionControlTest {
+
+    private AdmissionConfig admissionConfig;
+
+    @BeforeEach
+    void setUp() {
+        admissionConfig = new AdmissionConfig();
+        admissionConfig.setEnabled(true);
+        admissionConfig.setRequestsPerSecond(1);
+        admissionConfig.setRequestBurst(2);
+        admissionConfig.setBytesPerSecond(DataSize.ofKilobytes(1));
+        admissionConfig.setByteBurst(DataSize.ofKilobytes(4));
+        admissionConfig.setSearchConcurrency(1);
+        admissionConfig.setDownloadConcurrency(1);
+        admissionConfig.setUploadConcurrency(1);
+        admissionConfig.setDeleteConcurrency(1);
+        admissionConfig.setMaxWait(Duration.ofMillis(10));
+        admissionConfig.setRetryAfter(Duration.ofSeconds(2));
+        admissionConfig.setMaxTrackedUsers(100);
+        admissionConfig.setIdleSweepInterval(Duration.ofHours(1));
+    }
+
+    @Test
+    void requestsOverTheBurstAreRejectedPerUser() {
+        AdmissionControl admissionControl = new AdmissionControl(admissionConfig, new SimpleMeterRegistry());
+        admissionControl.updatePool(OperationType.SEARCH, 10, 0);
+
+        admissionControl.admit("kiranrana", OperationType.SEARCH, 0).close(0);
+        admissionControl.admit("kiranrana", OperationType.SEARCH, 0).close(0);
+        TooManyRequestsException rejected = assertThrows(TooManyRequestsException.class,
+                () -> admissionControl.admit("kiranrana", OperationType.SEARCH, 0));
+
+        assertEquals(1, rejected.getRetryAfterSeconds());
+        admissionControl.admit("someoneelse", OperationType.SEARCH, 0).close(0);
+    }
+
+    @Test
+    void largeUploadIsAdmittedButTheNextWaitsForTheByteDebt() {
+        AdmissionControl admissionControl = new AdmissionControl(admissionConfig, new SimpleMeterRegistry());
+
+        admissionControl.admit("kiranrana", OperationType.UPLOAD, 10 * 1024 + 512).close(0);
+        TooManyRequestsException rejected = assertThrows(TooManyRequestsException.class,
+                () -> admissionControl.admit("kiranrana", OperationType.UPLOAD, 1));
+
+        assertEquals(7, rejected.getRetryAfterSeconds());
+    }
+
+    @Test
+    void fullQueueFailsFastAndResizingTakesEffect() {
+        AdmissionControl admissionControl = new AdmissionControl(admissionConfig, new SimpleMeterRegistry());
+        admissionControl.updateUserLimits(0d, null, 0L, null);
+        admissionControl.updatePool(OperationType.DOWNLOAD, null, 0);
+
+        AdmissionControl.Ticket first = admissionControl.admit("kiranrana", OperationType.DOWNLOAD, 0);
+        TooManyRequestsException rejected = assertThrows(TooManyRequestsException.class,
+                () -> admissionControl.admit("someoneelse", OperationType.DOWNLOAD, 0));
+        assertEquals(2, rejected.getRetryAfterSeconds());
+
+        admissionControl.updatePool(OperationType.DOWNLOAD, 2, null);
+        AdmissionControl.Ticket second = admissionControl.admit("someoneelse", OperationType.DOWNLOAD, 0);
+        Map<String, Object> download = operation(admissionControl, "download");
+        assertEquals(2, download.get("active"));
+        assertEquals(0, download.get("queued"));
+
+        first.close(0);
+        first.close(0);
+        second.close(0);
+        assertEquals(0, operation(admissionControl, "download").get("active"));
+    }
+
+    @Test
+    void idleUsersAreForgottenInTheBackgroundOnceTooManyAreTracked() throws Exception {
+        admissionConfig.setRequestsPerSecond(1000);
+        admissionConfig.setBytesPerSecond(DataSize.ofMegabytes(1));
+        admissionConfig.setMaxTrackedUsers(2);
+        AdmissionControl admissionControl = new AdmissionControl(admissionConfig, new SimpleMeterRegistry());
+        admissionControl.updatePool(OperationType.SEARCH, 10, 0);
+        admissionControl.start();
+        try {
+            admissionControl.admit("kiranrana", OperationType.SEARCH, 0).close(0);
+            admissionControl.admit("someoneelse", OperationType.SEARCH, 0).close(0);
+            Thread.sleep(20);
+            // The third user goes over the limit; the two refilled ones are swept, not the one just admitted.
+            admissionControl.admit("thirduser", OperationType.SEARCH, 0).close(0);
+
+            long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+            while ((int) admissionControl.describe().get("trackedUsers") > 1 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue((int) admissionControl.describe().get("trackedUsers") <= 1);
+        } finally {
+            admissionControl.stop();
+        }
+    }
+
+    @Test
+    void interceptorAnswersRejectedRequestsWith429AndRetryAfter() throws Exception {
+        admissionConfig.setRequestBurst(1);
+        S3FileServiceImpl fileService = mock(S3FileServiceImpl.class);
+        when(fileService.searchFiles("kiranrana", "report")).thenReturn(List.of("kiranrana/report.pdf"));
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new FileController(fileService))
+                .addInterceptors(new AdmissionInterceptor(new AdmissionControl(admissionConfig, new SimpleMeterRegistry())))
+                .setControllerAdvice(new GlobalExceptionHandler())
+                .build();
+
+        mockMvc.perform(get("/api/files/search").param("userName", "kiranrana").param("searchTerm", "report"))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/api/files/search").param("userName", "kiranrana").param("searchTerm", "report"))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("Retry-After", "1"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> operation(AdmissionControl admissionControl, String name) {
+        Map<String, Object> operations = (Map<String, Object>) admissionControl.describe().get("operations");
+        return (Map<String, Object>) operations.get(name);
+    }
+}
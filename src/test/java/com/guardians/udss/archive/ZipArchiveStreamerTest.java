@@ -0,0 +1,118 @@
+package com.guardians.udss.archive;
+
+import com.guardians.udss.config.ArchiveConfig;
+import com.guardians.udss.config.IndexConfig;
+import com.guardians.udss.config.StorageConfig;
+import com.guardians.udss.index.FileMetadataIndex;
+import com.guardians.udss.metrics.OperationMetrics;
+import com.guardians.udss.services.LocalFileServiceImpl;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ZipArchiveStreamerTest {
+
+    @TempDir
+    Path root;
+
+    private LocalFileServiceImpl fileService;
+    private ZipArchiveStreamer streamer;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        StorageConfig storageConfig = new StorageConfig();
+        storageConfig.setLocalRoot(root.resolve("storage").toString());
+        storageConfig.setLocalFsync(false);
+        storageConfig.setLocalBatchUploadParallelism(1);
+        storageConfig.setLocalBatchUploadBufferSize(DataSize.ofKilobytes(64));
+        IndexConfig indexConfig = new IndexConfig();
+        indexConfig.setRefreshAfter(Duration.ofMinutes(1));
+        fileService = new LocalFileServiceImpl(storageConfig, new FileMetadataIndex(indexConfig),
+                new OperationMetrics(new SimpleMeterRegistry()));
+        ArchiveConfig archiveConfig = new ArchiveConfig();
+        archiveConfig.setPrefetch(2);
+        archiveConfig.setPrefetchThreads(2);
+        archiveConfig.setDeflateLevel(6);
+        archiveConfig.setStoredTypes(List.of("image/*", "application/zip"));
+        streamer = new ZipArchiveStreamer(fileService, archiveConfig, new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        streamer.shutdown();
+        fileService.shutdown();
+    }
+
+    @Test
+    void archiveOfAllFilesStoresCompressedTypesAndDeflatesTheRest() throws IOException {
+        byte[] photo = new byte[512 * 1024];
+        new Random(7).nextBytes(photo);
+        byte[] notes = "quarterly numbers\n".repeat(4096).getBytes(StandardCharsets.UTF_8);
+        fileService.uploadFile("kiranrana", new MockMultipartFile("file", "photo.jpg", "image/jpeg", photo));
+        fileService.uploadFile("kiranrana", new MockMultipartFile("file", "notes.txt", "text/plain", notes));
+        fileService.uploadFile("kiranrana", new MockMultipartFile("file", "scan.png", "application/octet-stream", new byte[0]));
+        fileService.uploadFile("someoneelse", new MockMultipartFile("file", "private.txt", "text/plain", notes));
+
+        Path archive = root.resolve("all.zip");
+        try (OutputStream out = Files.newOutputStream(archive)) {
+            streamer.write("kiranrana", null, out);
+        }
+
+        try (ZipFile zip = new ZipFile(archive.toFile())) {
+            assertEquals(List.of("notes.txt", "photo.jpg", "scan.png"),
+                    Collections.list(zip.entries()).stream().map(ZipEntry::getName).sorted().toList());
+            assertEquals(ZipEntry.STORED, zip.getEntry("photo.jpg").getMethod());
+            assertEquals(photo.length, zip.getEntry("photo.jpg").getCompressedSize());
+            assertEquals(ZipEntry.DEFLATED, zip.getEntry("notes.txt").getMethod());
+            // No content type of its own, so the extension decides.
+            assertEquals(ZipEntry.STORED, zip.getEntry("scan.png").getMethod());
+            assertArrayEquals(photo, read(zip, "photo.jpg"));
+            assertArrayEquals(notes, read(zip, "notes.txt"));
+            assertEquals(0, read(zip, "scan.png").length);
+        }
+    }
+
+    @Test
+    void namedFilesAreArchivedOnceAndMissingOnesLeftOut() throws IOException {
+        fileService.uploadFile("kiranrana", new MockMultipartFile("file", "a.txt", "text/plain", "first".getBytes(StandardCharsets.UTF_8)));
+        fileService.uploadFile("kiranrana", new MockMultipartFile("file", "b.txt", "text/plain", "second".getBytes(StandardCharsets.UTF_8)));
+
+        Path archive = root.resolve("named.zip");
+        try (OutputStream out = Files.newOutputStream(archive)) {
+            streamer.write("kiranrana", List.of("b.txt", "gone.txt", "a.txt", "b.txt"), out);
+        }
+
+        try (ZipFile zip = new ZipFile(archive.toFile())) {
+            assertEquals(List.of("b.txt", "a.txt"), Collections.list(zip.entries()).stream().map(ZipEntry::getName).toList());
+            assertNull(zip.getEntry("gone.txt"));
+            assertEquals("second", new String(read(zip, "b.txt"), StandardCharsets.UTF_8));
+        }
+    }
+
+    private static byte[] read(ZipFile zip, String name) throws IOException {
+        try (InputStream in = zip.getInputStream(zip.getEntry(name))) {
+            return in.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.guardians.udss.cache;
+
+import com.guardians.udss.config.CacheConfig;
+import com.guardians.udss.model.DownloadOptions;
+import com.guardians.udss.model.FileDownload;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiFunction;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ObjectCacheTest {
+
+    @TempDir
+    Path directory;
+
+    private CacheConfig cacheConfig;
+    private SimpleMeterRegistry meterRegistry;
+    private ObjectCache cache;
+    private final List<DownloadOptions> originCalls = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        cacheConfig = new CacheConfig();
+        cacheConfig.setEnabled(true);
+        cacheConfig.setMaxMemorySize(DataSize.ofBytes(64));
+        cacheConfig.setMaxDiskSize(DataSize.ofKilobytes(64));
+        cacheConfig.setMemoryObjectLimit(DataSize.ofBytes(32));
+        cacheConfig.setMaxObjectSize(DataSize.ofKilobytes(16));
+        cacheConfig.setDirectory(directory.toString());
+        cacheConfig.setValidateAfter(Duration.ofMinutes(5));
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new ObjectCache(cacheConfig, meterRegistry);
+        cache.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        cache.stop();
+    }
+
+    @Test
+    void secondDownloadIsServedFromCache() throws Exception {
+        byte[] content = bytes(20);
+
+        assertArrayEquals(content, read(cache.download("kiranrana/policy.pdf", DownloadOptions.NONE, origin(content, "\"v1\""))));
+        FileDownload hit = cache.download("kiranrana/policy.pdf", DownloadOptions.NONE, origin(content, "\"v1\""));
+
+        assertArrayEquals(content, read(hit));
+        assertEquals("\"v1\"", hit.getETag());
+        assertEquals(1, originCalls.size());
+    }
+
+    @Test
+    void largeObjectsAreCachedOnDiskAndServeRanges() throws Exception {
+        byte[] content = bytes(4000);
+        read(cache.download("kiranrana/template.docx", DownloadOptions.NONE, origin(content, "\"v1\"")));
+
+        FileDownload range = cache.download("kiranrana/template.docx",
+                DownloadOptions.builder().range("bytes=100-199").build(), origin(content, "\"v1\""));
+
+        assertEquals("bytes 100-199/4000", range.getContentRange());
+        byte[] expected = new byte[100];
+        System.arraycopy(content, 100, expected, 0, 100);
+        assertArrayEquals(expected, read(range));
+        assertEquals(1, originCalls.size());
+    }
+
+    @Test
+    void invalidateForcesAnotherOriginRead() throws Exception {
+        byte[] content = bytes(20);
+        read(cache.download("kiranrana/policy.pdf", DownloadOptions.NONE, origin(content, "\"v1\"")));
+
+        cache.invalidate("kiranrana/policy.pdf");
+        read(cache.download("kiranrana/policy.pdf", DownloadOptions.NONE, origin(content, "\"v1\"")));
+
+        assertEquals(2, originCalls.size());
+    }
+
+    @Test
+    void partiallyReadDownloadIsNotCached() throws Exception {
+        byte[] content = bytes(20);
+        FileDownload download = cache.download("kiranrana/policy.pdf", DownloadOptions.NONE, origin(content, "\"v1\""));
+        download.getContent().read(new byte[5]);
+        download.close();
+
+        read(cache.download("kiranrana/policy.pdf", DownloadOptions.NONE, origin(content, "\"v1\"")));
+
+        assertEquals(2, originCalls.size());
+    }
+
+    @Test
+    void leastRecentlyUsedEntriesAreEvictedByBytes() throws Exception {
+        read(cache.download("kiranrana/a", DownloadOptions.NONE, origin(bytes(30), "\"a\"")));
+        read(cache.download("kiranrana/b", DownloadOptions.NONE, origin(bytes(30), "\"b\"")));
+        read(cache.download("kiranrana/a", DownloadOptions.NONE, origin(bytes(30), "\"a\"")));
+        read(cache.download("kiranrana/c", DownloadOptions.NONE, origin(bytes(30), "\"c\"")));
+        originCalls.clear();
+
+        read(cache.download("kiranrana/a", DownloadOptions.NONE, origin(bytes(30), "\"a\"")));
+        assertTrue(originCalls.isEmpty());
+        read(cache.download("kiranrana/b", DownloadOptions.NONE, origin(bytes(30), "\"b\"")));
+        assertEquals(1, originCalls.size());
+    }
+
+    @Test
+    void fillsInProgressCountAgainstTheBudget() throws Exception {
+        FileDownload a = cache.download("kiranrana/a", DownloadOptions.NONE, origin(bytes(30), "\"a\""));
+        FileDownload b = cache.download("kiranrana/b", DownloadOptions.NONE, origin(bytes(30), "\"b\""));
+        FileDownload c = cache.download("kiranrana/c", DownloadOptions.NONE, origin(bytes(30), "\"c\""));
+        assertEquals(60, meterRegistry.get("udss.cache.reserved").tag("tier", "memory").gauge().value());
+
+        read(a);
+        read(b);
+        read(c);
+        originCalls.clear();
+
+        read(cache.download("kiranrana/a", DownloadOptions.NONE, origin(bytes(30), "\"a\"")));
+        read(cache.download("kiranrana/b", DownloadOptions.NONE, origin(bytes(30), "\"b\"")));
+        assertTrue(originCalls.isEmpty());
+        read(cache.download("kiranrana/c", DownloadOptions.NONE, origin(bytes(30), "\"c\"")));
+        assertEquals(1, originCalls.size());
+        assertEquals(0, meterRegistry.get("udss.cache.reserved").tag("tier", "memory").gauge().value());
+    }
+
+    @Test
+    void staleEntryIsRevalidatedByETag() throws Exception {
+        cacheConfig.setValidateAfter(Duration.ZERO);
+        byte[] content = bytes(20);
+        read(cache.download("kiranrana/policy.pdf", DownloadOptions.NONE, origin(content, "\"v1\"")));
+
+        FileDownload hit = cache.download("kiranrana/policy.pdf", DownloadOptions.NONE, origin(content, "\"v1\""));
+
+        assertArrayEquals(content, read(hit));
+        assertEquals("\"v1\"", originCalls.get(1).getIfNoneMatch());
+    }
+
+    @Test
+    void parseRangeHandlesOpenAndSuffixRanges() {
+        assertArrayEquals(new long[]{10, 99}, ObjectCache.parseRange("bytes=10-", 100));
+        assertArrayEquals(new long[]{90, 99}, ObjectCache.parseRange("bytes=-10", 100));
+        assertArrayEquals(new long[]{0, 99}, ObjectCache.parseRange("bytes=0-500", 100));
+        assertEquals(null, ObjectCache.parseRange("bytes=100-", 100));
+    }
+
+    /**
+     * Stand-in for S3: answers a conditional GET on the current ETag with 304, anything else with the content.
+     */
+    private BiFunction<String, DownloadOptions, FileDownload> origin(byte[] content, String eTag) {
+        return (key, options) -> {
+            originCalls.add(options);
+            if (eTag.equals(options.getIfNoneMatch())) {
+                return FileDownload.notModified(key, eTag);
+            }
+            return FileDownload.builder()
+                    .key(key)
+                    .content(new ByteArrayInputStream(content))
+                    .contentLength((long) content.length)
+                    .contentType("application/pdf")
+                    .eTag(eTag)
+                    .lastModified(Instant.parse("2024-01-01T00:00:00Z"))
+                    .build();
+        };
+    }
+
+    private static byte[] read(FileDownload download) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (download) {
+            download.transferTo(out, new byte[7]);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] bytes(int length) {
+        byte[] content = new byte[length];
+        for (int i = 0; i < length; i++) {
+            content[i] = (byte) ("policy".getBytes(StandardCharsets.US_ASCII)[i % 6] + i);
+        }
+        return content;
+    }
+}
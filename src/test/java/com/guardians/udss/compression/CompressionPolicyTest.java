@@ -0,0 +1,84 @@
+package com.guardians.udss.compression;
+
+import com.guardians.udss.config.CompressionConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompressionPolicyTest {
+
+    private CompressionConfig compressionConfig;
+
+    @BeforeEach
+    void setUp() {
+        compressionConfig = new CompressionConfig();
+        compressionConfig.setEnabled(true);
+        compressionConfig.setMinSize(DataSize.ofKilobytes(4));
+        compressionConfig.setRules(List.of("text/csv=zstd", "text/*=gzip"));
+        compressionConfig.setGzipLevel(6);
+        compressionConfig.setZstdLevel(3);
+    }
+
+    @Test
+    void firstMatchingRuleWins() {
+        CompressionPolicy policy = new CompressionPolicy(compressionConfig);
+
+        assertEquals(ContentEncoding.ZSTD, policy.select("text/csv; charset=UTF-8", 10_000));
+        assertEquals(ContentEncoding.GZIP, policy.select("text/plain", 10_000));
+        assertEquals(ContentEncoding.GZIP, policy.select("text/plain", -1));
+        assertNull(policy.select("image/png", 10_000));
+        assertNull(policy.select(null, 10_000));
+    }
+
+    @Test
+    void smallFilesAndDisabledPolicyAreStoredAsIs() {
+        assertNull(new CompressionPolicy(compressionConfig).select("text/plain", 1024));
+
+        compressionConfig.setEnabled(false);
+        assertNull(new CompressionPolicy(compressionConfig).select("text/plain", 10_000));
+    }
+
+    @Test
+    void rejectsRulesWithUnknownCodings() {
+        compressionConfig.setRules(List.of("text/*=brotli"));
+
+        assertThrows(IllegalArgumentException.class, () -> new CompressionPolicy(compressionConfig));
+    }
+
+    @Test
+    void compressedStreamsDecompressToTheSource() throws Exception {
+        CompressionPolicy policy = new CompressionPolicy(compressionConfig);
+        byte[] content = "2024-01-01,upload,kiranrana/report.csv\n".repeat(5_000).getBytes(StandardCharsets.UTF_8);
+
+        for (ContentEncoding encoding : ContentEncoding.values()) {
+            byte[] compressed;
+            try (CompressingInputStream in = policy.compress(new ByteArrayInputStream(content), encoding)) {
+                compressed = in.readAllBytes();
+                assertEquals(content.length, in.getSourceBytes());
+                assertEquals(compressed.length, in.getCompressedBytes());
+            }
+            assertTrue(compressed.length < content.length / 10);
+            assertArrayEquals(content, encoding.decompress(new ByteArrayInputStream(compressed)).readAllBytes());
+        }
+    }
+
+    @Test
+    void acceptEncodingHonoursQualityValuesAndWildcards() {
+        assertTrue(ContentEncoding.GZIP.isAcceptedBy("gzip, deflate, br"));
+        assertTrue(ContentEncoding.ZSTD.isAcceptedBy("br;q=1.0, *;q=0.5"));
+        assertFalse(ContentEncoding.GZIP.isAcceptedBy("*, gzip;q=0"));
+        assertFalse(ContentEncoding.ZSTD.isAcceptedBy("gzip"));
+        assertFalse(ContentEncoding.GZIP.isAcceptedBy(null));
+    }
+}
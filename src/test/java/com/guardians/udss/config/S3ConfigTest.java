@@ -0,0 +1,53 @@
+package com.guardians.udss.config;
+
+import com.guardians.udss.metrics.S3MetricsInterceptor;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.core.retry.RetryMode;
+import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.http.crt.AwsCrtHttpClient;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+class S3ConfigTest {
+
+    @Test
+    void clientIsBuiltWithEveryHttpClientAndKeepAliveSetting() {
+        for (String client : new String[]{"apache", "crt"}) {
+            for (boolean tcpKeepAlive : new boolean[]{true, false}) {
+                S3Config s3Config = clientConfig(client, tcpKeepAlive);
+                S3ResilienceConfig resilienceConfig = new S3ResilienceConfig();
+                resilienceConfig.setWriteDeadline(Duration.ofMinutes(5));
+                try (SdkHttpClient httpClient = s3Config.s3HttpClient();
+                     S3Client s3Client = s3Config.s3Client(httpClient, new S3MetricsInterceptor(new SimpleMeterRegistry()), resilienceConfig)) {
+                    Class<? extends SdkHttpClient> expected = client.equals("crt") ? AwsCrtHttpClient.class : ApacheHttpClient.class;
+                    assertInstanceOf(expected, httpClient);
+                    assertEquals("s3", s3Client.serviceName());
+                }
+            }
+        }
+    }
+
+    private static S3Config clientConfig(String client, boolean tcpKeepAlive) {
+        S3Config s3Config = new S3Config();
+        s3Config.setHttpClient(client);
+        s3Config.setMaxConnections(10);
+        s3Config.setConnectionAcquisitionTimeout(Duration.ofSeconds(10));
+        s3Config.setConnectionTimeout(Duration.ofSeconds(2));
+        s3Config.setSocketTimeout(Duration.ofSeconds(30));
+        s3Config.setConnectionTtl(Duration.ofMinutes(5));
+        s3Config.setConnectionMaxIdleTime(Duration.ofSeconds(60));
+        s3Config.setTcpKeepAlive(tcpKeepAlive);
+        s3Config.setRegion("us-east-1");
+        s3Config.setAccessKey("key");
+        s3Config.setSecretKey("secret");
+        s3Config.setRetryMode(RetryMode.ADAPTIVE_V2);
+        s3Config.setRetryMaxAttempts(4);
+        return s3Config;
+    }
+}
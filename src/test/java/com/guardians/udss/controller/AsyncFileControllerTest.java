@@ -0,0 +1,80 @@
+package com.guardians.udss.controller;
+
+import com.guardians.udss.model.DownloadOptions;
+import com.guardians.udss.model.FileDownload;
+import com.guardians.udss.response.ApiResponse;
+import com.guardians.udss.services.S3AsyncFileService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+class AsyncFileControllerTest {
+
+    private S3AsyncFileService s3AsyncFileService;
+    private AsyncFileController asyncFileController;
+
+    @BeforeEach
+    void setUp() {
+        s3AsyncFileService = mock(S3AsyncFileService.class);
+        asyncFileController = new AsyncFileController(s3AsyncFileService);
+    }
+
+    @Test
+    void uploadFileCompletesWithCreated() {
+        MockMultipartFile file = new MockMultipartFile("file", "dataengineer.pdf", "application/pdf", "sample content".getBytes());
+        when(s3AsyncFileService.uploadFile("kiranrana", file)).thenReturn(CompletableFuture.completedFuture("kiranrana/dataengineer.pdf"));
+
+        ResponseEntity<ApiResponse<String>> response = asyncFileController.uploadFile("kiranrana", file).join();
+
+        assertEquals(HttpStatus.CREATED, response.getStatusCode());
+        assertEquals("kiranrana/dataengineer.pdf", response.getBody().getData());
+    }
+
+    @Test
+    void uploadFileInternalServerErrorOnFailure() {
+        MockMultipartFile file = new MockMultipartFile("file", "dataengineer.pdf", "application/pdf", "sample content".getBytes());
+        when(s3AsyncFileService.uploadFile("kiranrana", file)).thenReturn(CompletableFuture.failedFuture(new RuntimeException("Upload error")));
+
+        ResponseEntity<ApiResponse<String>> response = asyncFileController.uploadFile("kiranrana", file).join();
+
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, response.getStatusCode());
+    }
+
+    @Test
+    void downloadFileStreamsThroughDispatcher() throws Exception {
+        String key = "kiranrana/dataengineer.pdf";
+        when(s3AsyncFileService.downloadFile(eq(key), any(DownloadOptions.class))).thenReturn(CompletableFuture.completedFuture(
+                FileDownload.builder().key(key).content(new ByteArrayInputStream("file content".getBytes())).contentLength(12L).build()));
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(asyncFileController).build();
+
+        MvcResult result = mockMvc.perform(get("/api/async/files/download")
+                        .param("userName", "kiranrana")
+                        .param("fileName", "dataengineer.pdf"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        MvcResult dispatched = mockMvc.perform(asyncDispatch(result)).andReturn();
+        if (dispatched.getRequest().isAsyncStarted()) {
+            dispatched = mockMvc.perform(asyncDispatch(dispatched)).andReturn();
+        }
+
+        assertEquals(200, dispatched.getResponse().getStatus());
+        assertEquals("file content", dispatched.getResponse().getContentAsString());
+    }
+}
@@ -1,7 +1,19 @@
 package com.guardians.udss.controller;
 
+import com.guardians.udss.config.DedupConfig;
+import com.guardians.udss.config.S3Config;
 import com.guardians.udss.controller.FileController;
+import com.guardians.udss.exception.GlobalExceptionHandler;
+import com.guardians.udss.exception.OperationRejectedException;
+import com.guardians.udss.exception.PreconditionFailedException;
+import com.guardians.udss.model.DeleteResult;
+import com.guardians.udss.model.DownloadOptions;
+import com.guardians.udss.model.FileDownload;
+import com.guardians.udss.model.SearchPage;
+import com.guardians.udss.model.UploadResult;
 import com.guardians.udss.response.ApiResponse;
+import com.guardians.udss.services.BatchUpload;
+import com.guardians.udss.services.DedupStore;
 import com.guardians.udss.services.S3FileService;
 import com.guardians.udss.services.S3FileServiceImpl;
 import org.junit.jupiter.api.BeforeEach;
@@ -12,19 +24,39 @@ import org.mockito.MockitoAnnotations;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.core.io.InputStreamResource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import software.amazon.awssdk.services.s3.S3Client;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.List;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 class FileControllerTest {
     @Autowired
     private MockMvc mockMvc;
@@ -47,7 +79,7 @@ class FileControllerTest {
         List<String> mockFiles = Arrays.asList("project1.pdf", "project2.pdf");
 
         when(s3FileService.searchFiles(userName, searchTerm)).thenReturn(mockFiles);
-        ResponseEntity<ApiResponse<List<String>>> response = fileController.searchFiles(userName, searchTerm);
+        ResponseEntity<ApiResponse<List<String>>> response = fileController.searchFiles(userName, searchTerm, null, null);
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals(mockFiles, response.getBody().getData());
     }
@@ -59,22 +91,73 @@ class FileControllerTest {
 
         when(s3FileService.searchFiles(userName, searchTerm)).thenThrow(new RuntimeException("Search error"));
 
-        ResponseEntity<ApiResponse<List<String>>> response = fileController.searchFiles(userName, searchTerm);
+        ResponseEntity<ApiResponse<List<String>>> response = fileController.searchFiles(userName, searchTerm, null, null);
 
         assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, response.getStatusCode());
     }
 
+    @Test
+    void searchFilesPageWithNextToken() throws Exception {
+        String userName = "kiranrana";
+        String searchTerm = "project";
+        List<String> mockFiles = Arrays.asList("kiranrana/project1.pdf", "kiranrana/project2.pdf");
+
+        when(s3FileService.searchFiles(userName, searchTerm, 2, null)).thenReturn(new SearchPage(mockFiles, "token"));
+        ResponseEntity<ApiResponse<List<String>>> response = fileController.searchFiles(userName, searchTerm, 2, null);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(mockFiles, response.getBody().getData());
+        assertEquals("token", response.getHeaders().getFirst(FileController.NEXT_TOKEN_HEADER));
+    }
+
+    @Test
+    void searchFilesBadRequestOnInvalidToken() throws Exception {
+        String userName = "kiranrana";
+        String searchTerm = "project";
+
+        when(s3FileService.searchFiles(userName, searchTerm, 1000, "bogus")).thenThrow(new IllegalArgumentException("Malformed search token"));
+        ResponseEntity<ApiResponse<List<String>>> response = fileController.searchFiles(userName, searchTerm, null, "bogus");
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+    }
+
+    @Test
+    void streamSearchFilesWritesNdjson() throws Exception {
+        String userName = "kiranrana";
+        String searchTerm = "project";
+
+        when(s3FileService.streamFiles(userName, searchTerm)).thenReturn(Stream.of("kiranrana/project1.pdf", "kiranrana/\"quoted\".pdf"));
+        ResponseEntity<StreamingResponseBody> response = fileController.streamSearchFiles(userName, searchTerm);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+
+        assertEquals("\"kiranrana/project1.pdf\"\n\"kiranrana/\\\"quoted\\\".pdf\"\n", out.toString());
+    }
+
     // Test case for downloadFile
     @Test
-    void downloadFileFileAsInputStreamResource() throws Exception {
+    void downloadFileStreamsContentWithHeaders() throws Exception {
         String userName = "kiranrana";
         String fileName = "dataengineer.pdf";
         String key = userName + "/" + fileName;
         InputStream mockInputStream = new ByteArrayInputStream("file content".getBytes());
-        when(s3FileService.downloadFile(key)).thenReturn(mockInputStream);
-        ResponseEntity<ApiResponse<String>> response = fileController.downloadFile(userName, fileName);
+        FileDownload download = FileDownload.builder()
+                .key(key)
+                .content(mockInputStream)
+                .contentLength(12L)
+                .contentType("application/pdf")
+                .eTag("\"abc123\"")
+                .build();
+        when(s3FileService.downloadFile(eq(key), any(DownloadOptions.class))).thenReturn(download);
+        ResponseEntity<?> response = fileController.downloadFile(userName, fileName, new HttpHeaders());
         assertEquals(HttpStatus.OK, response.getStatusCode());
-        assertNotNull(response.getBody());
+        assertEquals(12L, response.getHeaders().getContentLength());
+        assertEquals(MediaType.APPLICATION_PDF, response.getHeaders().getContentType());
+        assertEquals("\"abc123\"", response.getHeaders().getETag());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ((StreamingResponseBody) response.getBody()).writeTo(out);
+        assertEquals("file content", out.toString());
     }
 
 
@@ -84,13 +167,154 @@ class FileControllerTest {
         String fileName = "dataengineer.pdf";
         String key = userName + "/" + fileName;
 
-        when(s3FileService.downloadFile(key)).thenThrow(new RuntimeException("Download error"));
+        when(s3FileService.downloadFile(eq(key), any(DownloadOptions.class))).thenThrow(new RuntimeException("Download error"));
 
-        ResponseEntity<ApiResponse<String>> response = fileController.downloadFile(userName, fileName);
+        ResponseEntity<?> response = fileController.downloadFile(userName, fileName, new HttpHeaders());
 
         assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
     }
 
+    @Test
+    void downloadFilePartialContentForSingleRange() throws Exception {
+        String userName = "kiranrana";
+        String fileName = "dataengineer.pdf";
+        String key = userName + "/" + fileName;
+        HttpHeaders requestHeaders = new HttpHeaders();
+        requestHeaders.set(HttpHeaders.RANGE, "bytes=0-3");
+        FileDownload download = FileDownload.builder()
+                .key(key)
+                .content(new ByteArrayInputStream("file".getBytes()))
+                .contentLength(4L)
+                .contentRange("bytes 0-3/12")
+                .build();
+        when(s3FileService.downloadFile(eq(key), argThat(options -> "bytes=0-3".equals(options.getRange())))).thenReturn(download);
+
+        ResponseEntity<?> response = fileController.downloadFile(userName, fileName, requestHeaders);
+
+        assertEquals(HttpStatus.PARTIAL_CONTENT, response.getStatusCode());
+        assertEquals("bytes 0-3/12", response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+        assertEquals(4L, response.getHeaders().getContentLength());
+    }
+
+    @Test
+    void downloadFileMultipartForMultipleRanges() throws Exception {
+        String userName = "kiranrana";
+        String fileName = "dataengineer.pdf";
+        String key = userName + "/" + fileName;
+        HttpHeaders requestHeaders = new HttpHeaders();
+        requestHeaders.set(HttpHeaders.RANGE, "bytes=0-3,8-11");
+        FileDownload first = FileDownload.builder()
+                .key(key).content(new ByteArrayInputStream("file".getBytes())).contentLength(4L)
+                .contentRange("bytes 0-3/12").eTag("\"abc123\"").build();
+        FileDownload second = FileDownload.builder()
+                .key(key).content(new ByteArrayInputStream("tent".getBytes())).contentLength(4L)
+                .contentRange("bytes 8-11/12").eTag("\"abc123\"").build();
+        when(s3FileService.downloadFile(eq(key), argThat(options -> "bytes=0-3".equals(options.getRange())))).thenReturn(first);
+        when(s3FileService.downloadFile(eq(key), argThat(options -> "bytes=8-11".equals(options.getRange())))).thenReturn(second);
+
+        ResponseEntity<?> response = fileController.downloadFile(userName, fileName, requestHeaders);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ((StreamingResponseBody) response.getBody()).writeTo(out);
+
+        assertEquals(HttpStatus.PARTIAL_CONTENT, response.getStatusCode());
+        assertEquals("multipart", response.getHeaders().getContentType().getType());
+        assertTrue(out.toString().contains("Content-Range: bytes 0-3/12\r\n\r\nfile"));
+        assertTrue(out.toString().contains("Content-Range: bytes 8-11/12\r\n\r\ntent"));
+        assertEquals(2, out.toString().split("Content-Range").length - 1);
+        verify(s3FileService).downloadFile(eq(key), argThat(options -> "bytes=0-3".equals(options.getRange())
+                && options.getIfMatch() == null));
+        verify(s3FileService).downloadFile(eq(key), argThat(options -> "\"abc123\"".equals(options.getIfMatch())));
+    }
+
+    @Test
+    void downloadFileSendsCompressedFileWholeForMultipleRanges() throws Exception {
+        String key = "kiranrana/report.csv";
+        HttpHeaders requestHeaders = new HttpHeaders();
+        requestHeaders.set(HttpHeaders.RANGE, "bytes=0-3,8-11");
+        requestHeaders.set(HttpHeaders.ACCEPT_ENCODING, "gzip");
+        when(s3FileService.downloadFile(eq(key), argThat(options -> "bytes=0-3".equals(options.getRange())))).thenReturn(FileDownload.builder()
+                .key(key).content(new ByteArrayInputStream("abcd".getBytes())).contentLength(4L)
+                .contentRange("bytes 0-3/20").contentEncoding("gzip").build());
+        when(s3FileService.downloadFile(eq(key), argThat(options -> options.getRange() == null))).thenReturn(FileDownload.builder()
+                .key(key).content(new ByteArrayInputStream("whole gzipped bytes!".getBytes())).contentLength(20L)
+                .contentEncoding("gzip").build());
+
+        ResponseEntity<?> response = fileController.downloadFile("kiranrana", "report.csv", requestHeaders);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ((StreamingResponseBody) response.getBody()).writeTo(out);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("whole gzipped bytes!", out.toString());
+    }
+
+    @Test
+    void downloadFileStreamsThroughDispatcher() throws Exception {
+        String key = "kiranrana/dataengineer.pdf";
+        when(s3FileService.downloadFile(eq(key), any(DownloadOptions.class))).thenReturn(FileDownload.builder()
+                .key(key)
+                .content(new ByteArrayInputStream("file content".getBytes()))
+                .contentLength(12L)
+                .contentType("application/pdf")
+                .build());
+        mockMvc = MockMvcBuilders.standaloneSetup(fileController).build();
+
+        MvcResult result = mockMvc.perform(get("/api/files/download")
+                        .param("userName", "kiranrana")
+                        .param("fileName", "dataengineer.pdf"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_TYPE, "application/pdf"))
+                .andExpect(content().string("file content"));
+    }
+
+    @Test
+    void downloadFileNotFoundWritesApiResponseThroughDispatcher() throws Exception {
+        when(s3FileService.downloadFile(eq("kiranrana/missing.pdf"), any(DownloadOptions.class)))
+                .thenThrow(new RuntimeException("Download error"));
+        mockMvc = MockMvcBuilders.standaloneSetup(fileController).build();
+
+        MvcResult result = mockMvc.perform(get("/api/files/download")
+                        .param("userName", "kiranrana")
+                        .param("fileName", "missing.pdf"))
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("$.message").value("File not found."));
+    }
+
+    @Test
+    void downloadFileNotModifiedWhenETagMatches() throws Exception {
+        String userName = "kiranrana";
+        String fileName = "dataengineer.pdf";
+        String key = userName + "/" + fileName;
+        HttpHeaders requestHeaders = new HttpHeaders();
+        requestHeaders.setIfNoneMatch("\"abc123\"");
+        when(s3FileService.downloadFile(eq(key), argThat(options -> "\"abc123\"".equals(options.getIfNoneMatch()))))
+                .thenReturn(FileDownload.notModified(key, "\"abc123\""));
+
+        ResponseEntity<?> response = fileController.downloadFile(userName, fileName, requestHeaders);
+
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        assertNull(response.getBody());
+    }
+
+    @Test
+    void downloadFilePreconditionFailedWhenIfMatchDiffers() {
+        String key = "kiranrana/dataengineer.pdf";
+        HttpHeaders requestHeaders = new HttpHeaders();
+        requestHeaders.setIfMatch("\"old\"");
+        when(s3FileService.downloadFile(eq(key), argThat(options -> "\"old\"".equals(options.getIfMatch()))))
+                .thenThrow(new PreconditionFailedException("Precondition failed for key: " + key));
+
+        ResponseEntity<?> response = fileController.downloadFile("kiranrana", "dataengineer.pdf", requestHeaders);
+
+        assertEquals(HttpStatus.PRECONDITION_FAILED, response.getStatusCode());
+    }
+
     @Test
     void uploadFileSuccessMessage() throws Exception {
         String userName = "kiranrana";
@@ -140,4 +364,102 @@ class FileControllerTest {
         assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
         assertEquals("Error deleting file", response.getBody().getMessage());
     }
+
+    @Test
+    void deleteFilesReportsPerFileResults() {
+        String userName = "kiranrana";
+        List<String> fileNames = Arrays.asList("resume.pdf", "locked.pdf");
+
+        when(s3FileService.deleteFiles(userName, fileNames)).thenReturn(Arrays.asList(
+                DeleteResult.deleted("kiranrana/resume.pdf"),
+                DeleteResult.failed("kiranrana/locked.pdf", "AccessDenied: Access Denied")));
+        ResponseEntity<ApiResponse<List<DeleteResult>>> response = fileController.deleteFiles(userName, false, fileNames);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("Deleted 1 of 2 files", response.getBody().getMessage());
+        assertEquals(2, response.getBody().getData().size());
+    }
+
+    @Test
+    void deleteFilesBadRequestWithoutFileNames() {
+        ResponseEntity<ApiResponse<List<DeleteResult>>> response = fileController.deleteFiles("kiranrana", false, null);
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        verifyNoInteractions(s3FileService);
+    }
+
+    @Test
+    void deleteAllFilesUsesPrefixDelete() {
+        when(s3FileService.deleteAllFiles("kiranrana")).thenReturn(List.of(DeleteResult.deleted("kiranrana/resume.pdf")));
+        ResponseEntity<ApiResponse<List<DeleteResult>>> response = fileController.deleteFiles("kiranrana", true, null);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        verify(s3FileService, never()).deleteFiles(any(), any());
+    }
+
+    @Test
+    void uploadFilesStreamsEveryFilePartToTheBatch() throws Exception {
+        String userName = "kiranrana";
+        BatchUpload batch = mock(BatchUpload.class);
+        when(s3FileService.startBatchUpload(userName)).thenReturn(batch);
+        when(batch.finish()).thenReturn(Arrays.asList(
+                UploadResult.uploaded("kiranrana/a.txt", 5),
+                UploadResult.failed("kiranrana/b.txt", "Error uploading file to S3 bucket")));
+
+        String body = "--xyz\r\n"
+                + "Content-Disposition: form-data; name=\"note\"\r\n\r\nignored\r\n"
+                + "--xyz\r\n"
+                + "Content-Disposition: form-data; name=\"files\"; filename=\"a.txt\"\r\n"
+                + "Content-Type: text/plain\r\n\r\nhello\r\n"
+                + "--xyz\r\n"
+                + "Content-Disposition: form-data; name=\"files\"; filename=\"b.txt\"\r\n"
+                + "Content-Type: text/plain\r\n\r\nworld\r\n"
+                + "--xyz--\r\n";
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/files/upload/batch/" + userName);
+        request.setContentType("multipart/form-data; boundary=xyz");
+        request.setContent(body.getBytes(StandardCharsets.US_ASCII));
+
+        ResponseEntity<ApiResponse<List<UploadResult>>> response = fileController.uploadFiles(userName, request);
+
+        verify(batch).add(eq("a.txt"), eq("text/plain"), any(InputStream.class));
+        verify(batch).add(eq("b.txt"), eq("text/plain"), any(InputStream.class));
+        verify(batch, times(2)).add(any(), any(), any());
+        assertEquals(HttpStatus.CREATED, response.getStatusCode());
+        assertEquals("Uploaded 1 of 2 files", response.getBody().getMessage());
+    }
+
+    @Test
+    void reservedUserNameIsRejectedBeforeTheHandler() throws Exception {
+        DedupConfig dedupConfig = new DedupConfig();
+        dedupConfig.setPrefix(".dedup/");
+        DedupStore dedupStore = new DedupStore(dedupConfig, new S3Config(), mock(S3Client.class), null);
+        mockMvc = MockMvcBuilders.standaloneSetup(fileController)
+                .addInterceptors(new ReservedNameInterceptor(dedupStore))
+                .setControllerAdvice(new GlobalExceptionHandler())
+                .build();
+
+        mockMvc.perform(get("/api/files/search").param("userName", ".dedup").param("searchTerm", "blobs"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(post("/api/files/upload/batch/.dedup").contentType("multipart/form-data; boundary=xyz"))
+                .andExpect(status().isBadRequest());
+        verifyNoInteractions(s3FileService);
+    }
+
+    @Test
+    void rejectedOperationsAnswerServiceUnavailable() throws Exception {
+        when(s3FileService.downloadFile(eq("kiranrana/report.pdf"), any(DownloadOptions.class)))
+                .thenThrow(new OperationRejectedException("Too many concurrent download operations"));
+        doThrow(new OperationRejectedException("Too many concurrent delete operations"))
+                .when(s3FileService).deleteFile("kiranrana", "report.pdf");
+        when(s3FileService.searchFiles("kiranrana", "report"))
+                .thenThrow(new OperationRejectedException("Too many concurrent search operations"));
+        mockMvc = MockMvcBuilders.standaloneSetup(fileController)
+                .setControllerAdvice(new GlobalExceptionHandler())
+                .build();
+
+        mockMvc.perform(get("/api/files/download").param("userName", "kiranrana").param("fileName", "report.pdf"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(jsonPath("$.message").value("Too many concurrent download operations"));
+        mockMvc.perform(delete("/api/files/delete").param("userName", "kiranrana").param("fileName", "report.pdf"))
+                .andExpect(status().isServiceUnavailable());
+        mockMvc.perform(get("/api/files/search").param("userName", "kiranrana").param("searchTerm", "report"))
+                .andExpect(status().isServiceUnavailable());
+    }
 }
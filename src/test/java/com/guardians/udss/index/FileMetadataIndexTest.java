@@ -0,0 +1,89 @@
+package com.guardians.udss.index;
+
+import com.guardians.udss.config.IndexConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+class FileMetadataIndexTest {
+
+    private IndexConfig indexConfig;
+    private FileMetadataIndex index;
+    private AtomicInteger loads;
+    private IndexLoader loader;
+
+    @BeforeEach
+    void setUp() {
+        indexConfig = new IndexConfig();
+        indexConfig.setEnabled(true);
+        indexConfig.setRefreshAfter(Duration.ofMinutes(15));
+        indexConfig.setSnapshotInterval(Duration.ofMinutes(5));
+        index = new FileMetadataIndex(indexConfig);
+        loads = new AtomicInteger();
+        loader = username -> {
+            loads.incrementAndGet();
+            return Stream.of(
+                    new IndexedFile(username + "/project1.pdf", 10, 1000, null),
+                    new IndexedFile(username + "/report-project.docx", 20, 2000, null),
+                    new IndexedFile(username + "/notes.txt", 30, 3000, null));
+        };
+    }
+
+    @Test
+    void searchMatchesSubstringsInKeyOrderAndLoadsOnce() {
+        assertEquals(Arrays.asList("kiranrana/project1.pdf", "kiranrana/report-project.docx"),
+                index.search("kiranrana", "project", loader));
+        assertEquals(Collections.singletonList("kiranrana/notes.txt"), index.search("kiranrana", "te", loader));
+        assertEquals(Collections.emptyList(), index.search("kiranrana", "missing", loader));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void searchKeepsFullKeySemantics() {
+        assertEquals(3, index.search("kiranrana", "kiran", loader).size());
+        assertEquals(Collections.singletonList("kiranrana/notes.txt"), index.search("kiranrana", "rana/no", loader));
+    }
+
+    @Test
+    void uploadsAndDeletesKeepIndexCurrent() {
+        index.search("kiranrana", "project", loader);
+
+        index.recordUpload("kiranrana", "project2.pdf", 40, Instant.ofEpochMilli(4000), "application/pdf");
+        index.recordDelete("kiranrana", "project1.pdf");
+
+        assertEquals(Arrays.asList("kiranrana/project2.pdf", "kiranrana/report-project.docx"),
+                index.search("kiranrana", "project", loader));
+        IndexedFile uploaded = index.find("kiranrana", "project2.pdf", loader);
+        assertNotNull(uploaded);
+        assertEquals("application/pdf", uploaded.getContentType());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void snapshotRestoresIndexWithoutReloading(@TempDir Path tempDir) {
+        Path snapshot = tempDir.resolve("index.bin");
+        index.search("kiranrana", "project", loader);
+        index.recordUpload("kiranrana", "project2.pdf", 40, Instant.ofEpochMilli(4000), "application/pdf");
+        index.writeSnapshot(snapshot);
+
+        FileMetadataIndex restored = new FileMetadataIndex(indexConfig);
+        restored.readSnapshot(snapshot);
+        List<String> keys = restored.search("kiranrana", "project", loader);
+
+        assertEquals(3, keys.size());
+        assertEquals("application/pdf", restored.find("kiranrana", "project2.pdf", loader).getContentType());
+        assertEquals(1, loads.get());
+    }
+}
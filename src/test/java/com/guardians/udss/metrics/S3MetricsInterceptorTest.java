@@ -0,0 +1,88 @@
+package com.guardians.udss.metrics;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class S3MetricsInterceptorTest {
+
+    private HttpServer server;
+    private S3Client s3Client;
+    private SimpleMeterRegistry meterRegistry;
+    private final AtomicInteger putCalls = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            if ("PUT".equals(exchange.getRequestMethod())) {
+                // Fail the first attempt so the SDK retries.
+                int status = putCalls.getAndIncrement() == 0 ? 503 : 200;
+                // The SDK checks the ETag against the MD5 of "hello".
+                exchange.getResponseHeaders().add("ETag", "\"5d41402abc4b2a76b9719d911017c592\"");
+                exchange.sendResponseHeaders(status, -1);
+            } else {
+                byte[] body = ("<Error><Code>NoSuchKey</Code><Message>missing</Message></Error>").getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(404, body.length);
+                exchange.getResponseBody().write(body);
+            }
+            exchange.close();
+        });
+        server.start();
+
+        meterRegistry = new SimpleMeterRegistry();
+        s3Client = S3Client.builder()
+                .region(Region.US_EAST_1)
+                .endpointOverride(URI.create("http://127.0.0.1:" + server.getAddress().getPort()))
+                .forcePathStyle(true)
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("key", "secret")))
+                .overrideConfiguration(ClientOverrideConfiguration.builder()
+                        .addExecutionInterceptor(new S3MetricsInterceptor(meterRegistry))
+                        .build())
+                .build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        s3Client.close();
+        server.stop(0);
+    }
+
+    @Test
+    void recordsLatencyRetriesAndUploadedBytes() {
+        s3Client.putObject(builder -> builder.bucket("bucket").key("kiranrana/notes.txt"), RequestBody.fromString("hello"));
+
+        assertEquals(1, meterRegistry.get("udss.s3.requests").tag("operation", "PutObject").tag("status", "200").timer().count());
+        assertEquals(1.0, meterRegistry.get("udss.s3.retries").tag("operation", "PutObject").counter().count());
+        assertEquals(5.0, meterRegistry.get("udss.s3.transfer").tag("direction", "upload").summary().totalAmount());
+    }
+
+    @Test
+    void recordsS3ErrorCodes() {
+        assertThrows(NoSuchKeyException.class, () -> s3Client.getObjectAsBytes(builder -> builder.bucket("bucket").key("kiranrana/missing.txt")));
+
+        assertEquals(1, meterRegistry.get("udss.s3.requests")
+                .tag("operation", "GetObject")
+                .tag("status", "404")
+                .tag("error", "NoSuchKey")
+                .timer().count());
+    }
+}
@@ -0,0 +1,150 @@
+package com.guardians.udss.resilience;
+
+import com.guardians.udss.config.S3ResilienceConfig;
+import com.guardians.udss.exception.OperationRejectedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.core.exception.ApiCallTimeoutException;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class S3CallGuardTest {
+
+    private S3ResilienceConfig config;
+    private SimpleMeterRegistry meterRegistry;
+    private S3CallGuard callGuard;
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @BeforeEach
+    void setUp() {
+        config = new S3ResilienceConfig();
+        config.setReadDeadline(Duration.ofSeconds(2));
+        config.setHedgingEnabled(true);
+        config.setHedgingPercentile(0.95);
+        config.setHedgingMinDelay(Duration.ofMillis(10));
+        config.setHedgingMaxDelay(Duration.ofMillis(20));
+        config.setHedgingMaxRatio(0.05);
+        config.setHedgingThreads(4);
+        config.setCircuitBreakerEnabled(true);
+        config.setCircuitBreakerFailureRateThreshold(50);
+        config.setCircuitBreakerWindow(4);
+        config.setCircuitBreakerMinimumCalls(4);
+        config.setCircuitBreakerOpenDuration(Duration.ofMillis(50));
+        config.setCircuitBreakerHalfOpenCalls(1);
+        meterRegistry = new SimpleMeterRegistry();
+        callGuard = new S3CallGuard(config, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        callGuard.shutdown();
+    }
+
+    @Test
+    void slowReadIsHedgedAndTheLateResultDiscarded() throws InterruptedException {
+        AtomicInteger attempts = new AtomicInteger();
+        List<String> discarded = new CopyOnWriteArrayList<>();
+
+        String result = callGuard.read("GetObject", timeout -> {
+            if (attempts.incrementAndGet() == 1) {
+                awaitRelease();
+                return "primary";
+            }
+            return "hedge";
+        }, discarded::add);
+
+        assertEquals("hedge", result);
+        assertEquals(1, meterRegistry.counter("udss.s3.hedge.wins", "operation", "GetObject", "attempt", "hedge").count());
+        release.countDown();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (discarded.isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(List.of("primary"), discarded);
+    }
+
+    @Test
+    void readsRunOnTheCallersThreadAndOnlyBackupsUseTheHedgePool() {
+        List<Thread> threads = new CopyOnWriteArrayList<>();
+
+        assertEquals("fast", callGuard.read("HeadObject", timeout -> {
+            threads.add(Thread.currentThread());
+            return "fast";
+        }, ignored -> {
+        }));
+        assertEquals("hedge", callGuard.read("GetObject", timeout -> {
+            threads.add(Thread.currentThread());
+            if (threads.size() == 2) {
+                awaitRelease();
+                return "primary";
+            }
+            return "hedge";
+        }, ignored -> {
+        }));
+
+        assertEquals(Thread.currentThread(), threads.get(0));
+        assertEquals(Thread.currentThread(), threads.get(1));
+        assertTrue(threads.get(2).getName().startsWith("s3-hedged-read-"));
+        assertFalse(Thread.currentThread().isInterrupted());
+    }
+
+    @Test
+    void readFailsWhenNoAttemptAnswersBeforeTheDeadline() {
+        config.setReadDeadline(Duration.ofMillis(100));
+
+        assertThrows(ApiCallTimeoutException.class, () -> callGuard.read("ListObjectsV2", timeout -> {
+            awaitRelease();
+            return "late";
+        }, ignored -> {
+        }));
+        assertEquals(1, meterRegistry.counter("udss.s3.deadline.exceeded", "operation", "ListObjectsV2").count());
+    }
+
+    @Test
+    void breakerOpensOnFailuresButNotOnMissingKeysAndClosesAfterATrial() throws InterruptedException {
+        config.setHedgingEnabled(false);
+        S3Exception notFound = (S3Exception) S3Exception.builder().statusCode(404).message("Not Found").build();
+        for (int i = 0; i < 4; i++) {
+            assertThrows(S3Exception.class, () -> callGuard.read("HeadObject", timeout -> {
+                throw notFound;
+            }, ignored -> {
+            }));
+        }
+        // Two failures among the last four calls reach the 50% threshold; the 404s counted as successes.
+        for (int i = 0; i < 2; i++) {
+            assertThrows(SdkClientException.class, () -> callGuard.read("HeadObject", timeout -> {
+                throw SdkClientException.create("Connection reset");
+            }, ignored -> {
+            }));
+        }
+
+        assertThrows(OperationRejectedException.class, () -> callGuard.write("PutObject", () -> "stored"));
+        Thread.sleep(60);
+        assertEquals("stored", callGuard.write("PutObject", () -> "stored"));
+        assertEquals(CircuitBreaker.State.CLOSED.ordinal(), (int) meterRegistry.get("udss.s3.circuit.state").gauge().value());
+        assertTrue(meterRegistry.counter("udss.s3.circuit.rejected", "operation", "PutObject").count() > 0);
+    }
+
+    private void awaitRelease() {
+        try {
+            release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
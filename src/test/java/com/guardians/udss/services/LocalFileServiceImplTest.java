@@ -0,0 +1,143 @@
+package com.guardians.udss.services;
+
+import com.guardians.udss.config.IndexConfig;
+import com.guardians.udss.config.StorageConfig;
+import com.guardians.udss.exception.FileNotFoundException;
+import com.guardians.udss.exception.PreconditionFailedException;
+import com.guardians.udss.exception.RangeNotSatisfiableException;
+import com.guardians.udss.index.FileMetadataIndex;
+import com.guardians.udss.metrics.OperationMetrics;
+import com.guardians.udss.model.DeleteResult;
+import com.guardians.udss.model.DownloadOptions;
+import com.guardians.udss.model.FileDownload;
+import com.guardians.udss.model.SearchPage;
+import com.guardians.udss.model.UploadResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LocalFileServiceImplTest {
+
+    @TempDir
+    Path root;
+
+    private LocalFileServiceImpl service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        StorageConfig storageConfig = new StorageConfig();
+        storageConfig.setLocalRoot(root.toString());
+        storageConfig.setLocalFsync(true);
+        storageConfig.setLocalBatchUploadParallelism(2);
+        storageConfig.setLocalBatchUploadBufferSize(DataSize.ofBytes(16));
+        IndexConfig indexConfig = new IndexConfig();
+        indexConfig.setRefreshAfter(Duration.ofMinutes(1));
+        service = new LocalFileServiceImpl(storageConfig, new FileMetadataIndex(indexConfig),
+                new OperationMetrics(new SimpleMeterRegistry()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void uploadedFileIsServedWholeAndByRange() throws IOException {
+        byte[] content = new byte[1024 * 1024];
+        new Random(42).nextBytes(content);
+        service.uploadFile("kiranrana", new MockMultipartFile("file", "scan.bin", "application/octet-stream", content));
+
+        try (FileDownload download = service.downloadFile("kiranrana/scan.bin")) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(content.length, download.transferTo(out, new byte[8192]));
+            assertArrayEquals(content, out.toByteArray());
+            assertEquals(content.length, download.getContentLength());
+            assertNull(download.getContentRange());
+        }
+        try (FileDownload download = service.downloadFile("kiranrana/scan.bin",
+                DownloadOptions.builder().range("bytes=100-199").build())) {
+            assertEquals("bytes 100-199/" + content.length, download.getContentRange());
+            byte[] expected = new byte[100];
+            System.arraycopy(content, 100, expected, 0, 100);
+            assertArrayEquals(expected, download.getContent().readAllBytes());
+        }
+        assertThrows(RangeNotSatisfiableException.class, () -> service.downloadFile("kiranrana/scan.bin",
+                DownloadOptions.builder().range("bytes=" + content.length + "-").build()));
+        try (Stream<Path> temps = Files.list(root.resolve(".tmp"))) {
+            assertEquals(0, temps.count());
+        }
+    }
+
+    @Test
+    void conditionalDownloadIsNotModifiedForTheSameETagAndFailsIfMatchForAnother() throws IOException {
+        service.uploadFile("kiranrana", new MockMultipartFile("file", "notes.txt", "text/plain",
+                "first".getBytes(StandardCharsets.UTF_8)));
+        String eTag;
+        try (FileDownload download = service.downloadFile("kiranrana/notes.txt")) {
+            eTag = download.getETag();
+            assertEquals("text/plain", download.getContentType());
+        }
+
+        try (FileDownload download = service.downloadFile("kiranrana/notes.txt",
+                DownloadOptions.builder().ifNoneMatch(eTag).build())) {
+            assertTrue(download.isNotModified());
+        }
+        service.uploadFile("kiranrana", new MockMultipartFile("file", "notes.txt", "text/plain",
+                "second version".getBytes(StandardCharsets.UTF_8)));
+        try (FileDownload download = service.downloadFile("kiranrana/notes.txt",
+                DownloadOptions.builder().ifNoneMatch(eTag).build())) {
+            assertFalse(download.isNotModified());
+            assertEquals("second version", new String(download.getContent().readAllBytes(), StandardCharsets.UTF_8));
+        }
+        assertThrows(PreconditionFailedException.class, () -> service.downloadFile("kiranrana/notes.txt",
+                DownloadOptions.builder().ifMatch(eTag).build()));
+    }
+
+    @Test
+    void batchUploadSearchAndDeleteWorkOnTheUsersDirectory() throws Exception {
+        BatchUpload batch = service.startBatchUpload("kiranrana");
+        for (String name : List.of("a-report.pdf", "b-report.pdf", "c-photo.jpg", "d-report.pdf")) {
+            batch.add(name, "application/octet-stream", new ByteArrayInputStream(name.getBytes(StandardCharsets.UTF_8)));
+        }
+        assertTrue(batch.finish().stream().allMatch(UploadResult::isUploaded));
+
+        SearchPage first = service.searchFiles("kiranrana", "report", 2, null);
+        assertEquals(List.of("kiranrana/a-report.pdf", "kiranrana/b-report.pdf"), first.getKeys());
+        SearchPage second = service.searchFiles("kiranrana", "report", 2, first.getNextToken());
+        assertEquals(List.of("kiranrana/d-report.pdf"), second.getKeys());
+
+        List<DeleteResult> results = service.deleteAllFiles("kiranrana");
+        assertEquals(4, results.size());
+        assertTrue(results.stream().allMatch(DeleteResult::isDeleted));
+        assertEquals(List.of(), service.searchFiles("kiranrana", ""));
+        assertThrows(FileNotFoundException.class, () -> service.downloadFile("kiranrana/a-report.pdf"));
+    }
+
+    @Test
+    void keysCannotEscapeTheUsersDirectory() {
+        assertThrows(FileNotFoundException.class, () -> service.downloadFile("kiranrana/../someoneelse/secret.pdf"));
+        assertThrows(FileNotFoundException.class, () -> service.downloadFile("../etc/passwd"));
+    }
+}
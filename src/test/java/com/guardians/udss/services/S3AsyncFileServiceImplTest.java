@@ -0,0 +1,168 @@
+package com.guardians.udss.services;
+
+import com.guardians.udss.cache.ObjectCache;
+import com.guardians.udss.compression.CompressionPolicy;
+import com.guardians.udss.config.CacheConfig;
+import com.guardians.udss.config.CompressionConfig;
+import com.guardians.udss.config.DedupConfig;
+import com.guardians.udss.config.IndexConfig;
+import com.guardians.udss.config.S3Config;
+import com.guardians.udss.config.S3ResilienceConfig;
+import com.guardians.udss.config.SpoolConfig;
+import com.guardians.udss.index.FileMetadataIndex;
+import com.guardians.udss.model.DownloadOptions;
+import com.guardians.udss.model.FileDownload;
+import com.guardians.udss.resilience.S3CallGuard;
+import com.guardians.udss.spool.UploadSpool;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+import software.amazon.awssdk.services.s3.paginators.ListObjectsV2Publisher;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class S3AsyncFileServiceImplTest {
+
+    @TempDir
+    Path directory;
+
+    private S3AsyncClient s3AsyncClient;
+    private CacheConfig cacheConfig;
+    private CompressionConfig compressionConfig;
+    private SpoolConfig spoolConfig;
+    private UploadSpool uploadSpool;
+    private S3AsyncFileServiceImpl service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        s3AsyncClient = mock(S3AsyncClient.class);
+        S3Config s3Config = new S3Config();
+        s3Config.setBucketName("bucket");
+        s3Config.setAsyncIoThreads(2);
+        IndexConfig indexConfig = new IndexConfig();
+        indexConfig.setRefreshAfter(Duration.ofMinutes(1));
+        cacheConfig = new CacheConfig();
+        cacheConfig.setMaxMemorySize(DataSize.ofKilobytes(64));
+        cacheConfig.setMaxDiskSize(DataSize.ofKilobytes(64));
+        cacheConfig.setMemoryObjectLimit(DataSize.ofKilobytes(1));
+        cacheConfig.setMaxObjectSize(DataSize.ofKilobytes(16));
+        cacheConfig.setDirectory(directory.resolve("cache").toString());
+        cacheConfig.setValidateAfter(Duration.ofMinutes(5));
+        compressionConfig = new CompressionConfig();
+        compressionConfig.setMinSize(DataSize.ofBytes(0));
+        compressionConfig.setRules(List.of("text/*=gzip"));
+        compressionConfig.setGzipLevel(6);
+        spoolConfig = new SpoolConfig();
+        spoolConfig.setDirectory(directory.resolve("spool").toString());
+        spoolConfig.setSegmentSize(DataSize.ofMegabytes(1));
+        spoolConfig.setMaxSize(DataSize.ofMegabytes(1));
+        uploadSpool = new UploadSpool(spoolConfig, new SimpleMeterRegistry());
+        S3ResilienceConfig resilienceConfig = new S3ResilienceConfig();
+        resilienceConfig.setReadDeadline(Duration.ofSeconds(5));
+        resilienceConfig.setCircuitBreakerOpenDuration(Duration.ofSeconds(1));
+        ObjectCache objectCache = new ObjectCache(cacheConfig, new SimpleMeterRegistry());
+        service = new S3AsyncFileServiceImpl(s3Config, s3AsyncClient, new FileMetadataIndex(indexConfig), objectCache,
+                new CompressionPolicy(compressionConfig),
+                new DedupStore(new DedupConfig(), s3Config, mock(S3Client.class), new S3CallGuard(resilienceConfig, new SimpleMeterRegistry())),
+                uploadSpool);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+        uploadSpool.close();
+    }
+
+    @Test
+    void spooledUploadIsListedAndServedBeforeItReachesS3() throws Exception {
+        spoolConfig.setEnabled(true);
+        uploadSpool.open();
+        when(s3AsyncClient.listObjectsV2Paginator(any(ListObjectsV2Request.class)))
+                .thenAnswer(invocation -> new ListObjectsV2Publisher(s3AsyncClient, invocation.getArgument(0)));
+        when(s3AsyncClient.listObjectsV2(any(ListObjectsV2Request.class))).thenReturn(CompletableFuture.completedFuture(
+                ListObjectsV2Response.builder()
+                        .contents(S3Object.builder().key("kiranrana/a-report.pdf").build(),
+                                S3Object.builder().key("kiranrana/c-report.pdf").build())
+                        .build()));
+
+        assertEquals("kiranrana/b-report.pdf", service.uploadFile("kiranrana", new MockMultipartFile("file", "b-report.pdf",
+                "application/pdf", "draft".getBytes(StandardCharsets.UTF_8))).join());
+
+        assertEquals(List.of("kiranrana/a-report.pdf", "kiranrana/b-report.pdf", "kiranrana/c-report.pdf"),
+                service.searchFiles("kiranrana", "report").join());
+        try (FileDownload download = service.downloadFile("kiranrana/b-report.pdf", DownloadOptions.NONE).join()) {
+            assertEquals("draft", new String(download.getContent().readAllBytes(), StandardCharsets.UTF_8));
+        }
+        verify(s3AsyncClient, never()).putObject(any(PutObjectRequest.class), any(AsyncRequestBody.class));
+        verify(s3AsyncClient, never()).getObject(any(GetObjectRequest.class), anyBlockingTransformer());
+    }
+
+    @Test
+    void uploadsMatchingTheCompressionPolicyAreStoredCompressed() {
+        compressionConfig.setEnabled(true);
+        when(s3AsyncClient.putObject(any(PutObjectRequest.class), any(AsyncRequestBody.class)))
+                .thenReturn(CompletableFuture.completedFuture(PutObjectResponse.builder().build()));
+
+        service.uploadFile("kiranrana", new MockMultipartFile("file", "notes.txt", "text/plain", new byte[100])).join();
+        service.uploadFile("kiranrana", new MockMultipartFile("file", "scan.png", "image/png", new byte[100])).join();
+
+        ArgumentCaptor<PutObjectRequest> captor = ArgumentCaptor.forClass(PutObjectRequest.class);
+        verify(s3AsyncClient, times(2)).putObject(captor.capture(), any(AsyncRequestBody.class));
+        PutObjectRequest compressed = captor.getAllValues().get(0);
+        assertEquals("gzip", compressed.contentEncoding());
+        assertEquals("100", compressed.metadata().get(S3Responses.ORIGINAL_SIZE_METADATA));
+        assertNull(compressed.contentLength());
+        PutObjectRequest plain = captor.getAllValues().get(1);
+        assertNull(plain.contentEncoding());
+        assertEquals(100L, plain.contentLength());
+    }
+
+    @Test
+    void repeatedDownloadsAreServedFromTheCache() throws Exception {
+        cacheConfig.setEnabled(true);
+        byte[] content = "cached content".getBytes(StandardCharsets.UTF_8);
+        when(s3AsyncClient.getObject(any(GetObjectRequest.class), anyBlockingTransformer()))
+                .thenAnswer(invocation -> CompletableFuture.completedFuture(new ResponseInputStream<>(
+                        GetObjectResponse.builder().contentLength((long) content.length).contentType("text/plain")
+                                .eTag("\"v1\"").lastModified(Instant.now()).build(),
+                        AbortableInputStream.create(new ByteArrayInputStream(content)))));
+
+        for (int i = 0; i < 2; i++) {
+            try (FileDownload download = service.downloadFile("kiranrana/notes.txt", DownloadOptions.NONE).join()) {
+                assertEquals("cached content", new String(download.getContent().readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+
+        verify(s3AsyncClient, times(1)).getObject(any(GetObjectRequest.class), anyBlockingTransformer());
+    }
+
+    /**
+     * Matches the transformer the service passes to {@code getObject}, typed so the stubbing needs no raw types.
+     */
+    private static AsyncResponseTransformer<GetObjectResponse, ResponseInputStream<GetObjectResponse>> anyBlockingTransformer() {
+        return any();
+    }
+}
@@ -0,0 +1,397 @@
+package com.guardians.udss.services;
+
+import com.guardians.udss.cache.ObjectCache;
+import com.guardians.udss.compression.CompressionPolicy;
+import com.guardians.udss.config.CacheConfig;
+import com.guardians.udss.config.CompressionConfig;
+import com.guardians.udss.config.DedupConfig;
+import com.guardians.udss.config.IndexConfig;
+import com.guardians.udss.config.S3Config;
+import com.guardians.udss.config.S3ResilienceConfig;
+import com.guardians.udss.config.SpoolConfig;
+import com.guardians.udss.exception.OperationRejectedException;
+import com.guardians.udss.exception.ReservedNameException;
+import com.guardians.udss.index.FileMetadataIndex;
+import com.guardians.udss.metrics.OperationMetrics;
+import com.guardians.udss.model.DeleteResult;
+import com.guardians.udss.model.DownloadOptions;
+import com.guardians.udss.model.FileDownload;
+import com.guardians.udss.model.UploadResult;
+import com.guardians.udss.resilience.S3CallGuard;
+import com.guardians.udss.spool.UploadSpool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.mockito.ArgumentCaptor;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.Lock;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class S3FileServiceImplTest {
+
+    private S3Client s3Client;
+    private S3MultipartUploader multipartUploader;
+    private CompressionConfig compressionConfig;
+    private DedupConfig dedupConfig;
+    private SpoolConfig spoolConfig;
+    private UploadSpool uploadSpool;
+    private S3FileServiceImpl service;
+
+    private S3ResilienceConfig resilienceConfig;
+    private DedupStore dedupStore;
+    @BeforeEach
+    void setUp() {
+        s3Client = mock(S3Client.class);
+        S3Config s3Config = new S3Config();
+        s3Config.setBucketName("bucket");
+        s3Config.setBatchDeleteParallelism(2);
+        s3Config.setBatchUploadParallelism(2);
+        s3Config.setBatchUploadBufferSize(DataSize.ofBytes(16));
+        s3Config.setMultipartThreshold(DataSize.ofMegabytes(16));
+        s3Config.setSearchConcurrency(4);
+        s3Config.setDownloadConcurrency(4);
+        s3Config.setUploadConcurrency(4);
+        s3Config.setDeleteConcurrency(4);
+        s3Config.setConcurrencyAcquireTimeout(Duration.ofSeconds(1));
+        IndexConfig indexConfig = new IndexConfig();
+        indexConfig.setRefreshAfter(Duration.ofMinutes(1));
+
+        CacheConfig cacheConfig = new CacheConfig();
+        cacheConfig.setMaxMemorySize(DataSize.ofMegabytes(1));
+        cacheConfig.setMaxDiskSize(DataSize.ofMegabytes(1));
+        compressionConfig = new CompressionConfig();
+        compressionConfig.setMinSize(DataSize.ofBytes(0));
+        compressionConfig.setRules(List.of("text/*=gzip"));
+        compressionConfig.setGzipLevel(6);
+        dedupConfig = new DedupConfig();
+        dedupConfig.setPrefix(".dedup/");
+        multipartUploader = mock(S3MultipartUploader.class);
+        resilienceConfig = new S3ResilienceConfig();
+        resilienceConfig.setReadDeadline(Duration.ofSeconds(5));
+        resilienceConfig.setCircuitBreakerFailureRateThreshold(50);
+        resilienceConfig.setCircuitBreakerWindow(2);
+        resilienceConfig.setCircuitBreakerMinimumCalls(2);
+        resilienceConfig.setCircuitBreakerOpenDuration(Duration.ofSeconds(1));
+        S3CallGuard callGuard = new S3CallGuard(resilienceConfig, new SimpleMeterRegistry());
+        dedupStore = new DedupStore(dedupConfig, s3Config, s3Client, callGuard);
+        spoolConfig = new SpoolConfig();
+        uploadSpool = new UploadSpool(spoolConfig, new SimpleMeterRegistry());
+        service = new S3FileServiceImpl(s3Config, s3Client, multipartUploader,
+                new FileMetadataIndex(indexConfig), new S3OperationLimiter(s3Config),
+                new ObjectCache(cacheConfig, new SimpleMeterRegistry()), new OperationMetrics(new SimpleMeterRegistry()),
+                new CompressionPolicy(compressionConfig), dedupStore, callGuard,
+                uploadSpool);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+        uploadSpool.close();
+    }
+
+    @Test
+    void deleteFilesSplitsKeysIntoBatchesOfAThousand() {
+        when(s3Client.deleteObjects(any(DeleteObjectsRequest.class))).thenReturn(DeleteObjectsResponse.builder().build());
+        List<String> fileNames = IntStream.range(0, 2500).mapToObj(i -> "doc-" + i + ".pdf").collect(Collectors.toList());
+
+        List<DeleteResult> results = service.deleteFiles("kiranrana", fileNames);
+
+        ArgumentCaptor<DeleteObjectsRequest> captor = ArgumentCaptor.forClass(DeleteObjectsRequest.class);
+        verify(s3Client, times(3)).deleteObjects(captor.capture());
+        List<Integer> batchSizes = captor.getAllValues().stream()
+                .map(request -> request.delete().objects().size())
+                .sorted()
+                .collect(Collectors.toList());
+        assertEquals(List.of(500, 1000, 1000), batchSizes);
+        assertEquals(2500, results.size());
+        assertTrue(results.stream().allMatch(DeleteResult::isDeleted));
+        assertEquals("kiranrana/doc-0.pdf", results.get(0).getKey());
+    }
+
+    @Test
+    void deleteFilesReportsPerKeyErrors() {
+        when(s3Client.deleteObjects(any(DeleteObjectsRequest.class))).thenReturn(DeleteObjectsResponse.builder()
+                .errors(S3Error.builder().key("kiranrana/locked.pdf").code("AccessDenied").message("Access Denied").build())
+                .build());
+
+        List<DeleteResult> results = service.deleteFiles("kiranrana", List.of("resume.pdf", "locked.pdf"));
+
+        assertTrue(results.get(0).isDeleted());
+        assertFalse(results.get(1).isDeleted());
+        assertEquals("AccessDenied: Access Denied", results.get(1).getError());
+    }
+
+    @Test
+    void deleteAllFilesWaitsForSubmittedBatchesWhenTheListingFails() {
+        when(s3Client.listObjectsV2(any(ListObjectsV2Request.class)))
+                .thenReturn(ListObjectsV2Response.builder()
+                        .contents(S3Object.builder().key("kiranrana/a.pdf").build())
+                        .isTruncated(true)
+                        .nextContinuationToken("page-2")
+                        .build())
+                .thenThrow(SdkClientException.create("Connection reset"));
+        when(s3Client.deleteObjects(any(DeleteObjectsRequest.class))).thenReturn(DeleteObjectsResponse.builder().build());
+
+        SdkClientException failure = assertThrows(SdkClientException.class, () -> service.deleteAllFiles("kiranrana"));
+
+        assertEquals("Connection reset", failure.getMessage());
+        verify(s3Client).deleteObjects(any(DeleteObjectsRequest.class));
+        ArgumentCaptor<ListObjectsV2Request> captor = ArgumentCaptor.forClass(ListObjectsV2Request.class);
+        verify(s3Client, times(2)).listObjectsV2(captor.capture());
+        assertEquals("page-2", captor.getAllValues().get(1).continuationToken());
+    }
+
+    @Test
+    void batchUploadPutsSmallFilesAndStreamsLargeOnes() throws Exception {
+        when(multipartUploader.upload(any(), any(), any())).thenReturn(40L);
+        BatchUpload batch = service.startBatchUpload("kiranrana");
+
+        batch.add("notes.txt", "text/plain", new ByteArrayInputStream(new byte[10]));
+        batch.add("scan.pdf", "application/pdf", new ByteArrayInputStream(new byte[40]));
+        List<UploadResult> results = batch.finish();
+
+        verify(s3Client).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+        verify(multipartUploader).upload(eq("kiranrana/scan.pdf"), eq("application/pdf"), any());
+        assertEquals("kiranrana/notes.txt", results.get(0).getKey());
+        assertEquals(10, results.get(0).getSize());
+        assertEquals(40, results.get(1).getSize());
+        assertTrue(results.stream().allMatch(UploadResult::isUploaded));
+    }
+
+    @Test
+    void batchUploadCompressesMatchingFilesAndRecordsTheOriginalSize() throws Exception {
+        compressionConfig.setEnabled(true);
+        ByteArrayOutputStream uploaded = new ByteArrayOutputStream();
+        when(multipartUploader.upload(any(), any(), any(), any(), any())).thenAnswer(invocation -> {
+            long length = invocation.<InputStream>getArgument(4).transferTo(uploaded);
+            return length;
+        });
+        byte[] content = "id,name\n1,ki\n".getBytes(StandardCharsets.UTF_8);
+        BatchUpload batch = service.startBatchUpload("kiranrana");
+
+        batch.add("people.csv", "text/csv", new ByteArrayInputStream(content));
+        List<UploadResult> results = batch.finish();
+
+        verify(multipartUploader).upload(eq("kiranrana/people.csv"), eq("text/csv"), eq("gzip"),
+                eq(Map.of("original-size", Long.toString(content.length))), any());
+        verify(s3Client, never()).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+        assertEquals(content.length, results.get(0).getSize());
+        assertArrayEquals(content, new GZIPInputStream(new ByteArrayInputStream(uploaded.toByteArray())).readAllBytes());
+    }
+
+    @Test
+    void downloadDecodesCompressedObjectsUnlessTheClientAcceptsTheCoding() throws Exception {
+        byte[] content = "compressed at rest".getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(gzipped)) {
+            out.write(content);
+        }
+        GetObjectResponse response = GetObjectResponse.builder()
+                .contentEncoding("gzip")
+                .contentLength((long) gzipped.size())
+                .metadata(Map.of("original-size", Integer.toString(content.length)))
+                .build();
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenAnswer(invocation -> new ResponseInputStream<>(
+                response, AbortableInputStream.create(new ByteArrayInputStream(gzipped.toByteArray()))));
+
+        try (FileDownload decoded = service.downloadFile("kiranrana/notes.txt", DownloadOptions.NONE)) {
+            assertNull(decoded.getContentEncoding());
+            assertTrue(decoded.isCompressed());
+            assertEquals(content.length, decoded.getContentLength());
+            assertArrayEquals(content, decoded.getContent().readAllBytes());
+        }
+        DownloadOptions acceptsGzip = DownloadOptions.builder().acceptEncoding("gzip, deflate").build();
+        try (FileDownload encoded = service.downloadFile("kiranrana/notes.txt", acceptsGzip)) {
+            assertEquals("gzip", encoded.getContentEncoding());
+            assertEquals(gzipped.size(), encoded.getContentLength());
+            assertArrayEquals(gzipped.toByteArray(), encoded.getContent().readAllBytes());
+        }
+    }
+
+    @Test
+    void duplicateUploadOnlyWritesAReference() throws Exception {
+        dedupConfig.setEnabled(true);
+        byte[] content = "same bytes".getBytes(StandardCharsets.UTF_8);
+        String blobKey = ".dedup/blobs/" + DedupStore.sha256(new ByteArrayInputStream(content));
+        when(s3Client.headObject(any(HeadObjectRequest.class))).thenAnswer(invocation -> {
+            if (invocation.<HeadObjectRequest>getArgument(0).key().equals(blobKey)) {
+                return HeadObjectResponse.builder().contentLength((long) content.length).build();
+            }
+            throw NoSuchKeyException.builder().statusCode(404).build();
+        });
+        BatchUpload batch = service.startBatchUpload("kiranrana");
+
+        batch.add("copy.txt", "text/plain", new ByteArrayInputStream(content));
+        List<UploadResult> results = batch.finish();
+
+        ArgumentCaptor<PutObjectRequest> captor = ArgumentCaptor.forClass(PutObjectRequest.class);
+        verify(s3Client, times(2)).putObject(captor.capture(), any(RequestBody.class));
+        assertEquals(".dedup/refs/" + blobKey.substring(".dedup/blobs/".length()) + "/kiranrana/copy.txt",
+                captor.getAllValues().get(0).key());
+        assertEquals("kiranrana/copy.txt", captor.getAllValues().get(1).key());
+        assertEquals(blobKey.substring(".dedup/blobs/".length()), captor.getAllValues().get(1).metadata().get("blob-sha256"));
+        assertEquals(content.length, results.get(0).getSize());
+    }
+
+    @Test
+    void newBlobIsUploadedAfterItsReferenceIsRecordedAndWithoutHoldingItsLock() throws Exception {
+        dedupConfig.setEnabled(true);
+        byte[] content = "new bytes".getBytes(StandardCharsets.UTF_8);
+        String sha256 = DedupStore.sha256(new ByteArrayInputStream(content));
+        when(s3Client.headObject(any(HeadObjectRequest.class))).thenThrow(NoSuchKeyException.builder().statusCode(404).build());
+        List<Boolean> lockFreeDuringPut = new CopyOnWriteArrayList<>();
+        when(s3Client.putObject(any(PutObjectRequest.class), any(RequestBody.class))).thenAnswer(invocation -> {
+            Lock lock = dedupStore.lockFor(sha256);
+            lockFreeDuringPut.add(CompletableFuture.supplyAsync(() -> {
+                boolean free = lock.tryLock();
+                if (free) {
+                    lock.unlock();
+                }
+                return free;
+            }).join());
+            return PutObjectResponse.builder().build();
+        });
+        BatchUpload batch = service.startBatchUpload("kiranrana");
+
+        batch.add("new.txt", "text/plain", new ByteArrayInputStream(content));
+        batch.finish();
+
+        ArgumentCaptor<PutObjectRequest> captor = ArgumentCaptor.forClass(PutObjectRequest.class);
+        verify(s3Client, times(3)).putObject(captor.capture(), any(RequestBody.class));
+        assertEquals(List.of(".dedup/refs/" + sha256 + "/kiranrana/new.txt", ".dedup/blobs/" + sha256, "kiranrana/new.txt"),
+                captor.getAllValues().stream().map(PutObjectRequest::key).collect(Collectors.toList()));
+        assertEquals(List.of(false, true, true), lockFreeDuringPut);
+        assertEquals(ObjectCannedACL.PUBLIC_READ, captor.getAllValues().get(2).acl());
+    }
+
+    @Test
+    void deletingTheLastReferenceDeletesTheBlob() {
+        dedupConfig.setEnabled(true);
+        when(s3Client.headObject(any(HeadObjectRequest.class)))
+                .thenReturn(HeadObjectResponse.builder().metadata(Map.of("blob-sha256", "abc")).build());
+        when(s3Client.listObjectsV2(any(ListObjectsV2Request.class))).thenReturn(ListObjectsV2Response.builder().build());
+
+        service.deleteFile("kiranrana", "copy.txt");
+
+        ArgumentCaptor<DeleteObjectRequest> captor = ArgumentCaptor.forClass(DeleteObjectRequest.class);
+        verify(s3Client, times(3)).deleteObject(captor.capture());
+        assertEquals(List.of("kiranrana/copy.txt", ".dedup/refs/abc/kiranrana/copy.txt", ".dedup/blobs/abc"),
+                captor.getAllValues().stream().map(DeleteObjectRequest::key).collect(Collectors.toList()));
+    }
+
+    @Test
+    void userNamesInTheDedupNamespaceAreRejected() {
+        MockMultipartFile file = new MockMultipartFile("file", "blobs/abc", "text/plain", new byte[1]);
+
+        assertThrows(ReservedNameException.class, () -> service.uploadFile(".dedup", file));
+        assertThrows(ReservedNameException.class, () -> service.searchFiles(".dedup", "abc"));
+        assertThrows(ReservedNameException.class, () -> service.downloadFile(".dedup/blobs/abc"));
+        assertThrows(ReservedNameException.class, () -> service.deleteFile(".dedup/refs/abc/kiranrana/copy.txt"));
+        dedupConfig.setPrefix("system/.dedup/");
+        // Deleting everything of "system" would take the blobs with it.
+        assertThrows(ReservedNameException.class, () -> service.deleteAllFiles("system"));
+        assertThrows(ReservedNameException.class, () -> service.startBatchUpload("system/.dedup"));
+        verifyNoInteractions(s3Client);
+    }
+
+    @Test
+    void spooledUploadIsListedAndServedBeforeItReachesS3(@TempDir Path spoolDirectory) throws Exception {
+        spoolConfig.setEnabled(true);
+        spoolConfig.setDirectory(spoolDirectory.toString());
+        spoolConfig.setSegmentSize(DataSize.ofMegabytes(1));
+        spoolConfig.setMaxSize(DataSize.ofMegabytes(1));
+        uploadSpool.open();
+        when(s3Client.listObjectsV2(any(ListObjectsV2Request.class))).thenReturn(ListObjectsV2Response.builder()
+                .contents(S3Object.builder().key("kiranrana/a-report.pdf").build(),
+                        S3Object.builder().key("kiranrana/c-report.pdf").build())
+                .build());
+
+        service.uploadFile("kiranrana", new MockMultipartFile("file", "b-report.pdf", "application/pdf",
+                "draft".getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(List.of("kiranrana/a-report.pdf", "kiranrana/b-report.pdf", "kiranrana/c-report.pdf"),
+                service.searchFiles("kiranrana", "report"));
+        try (FileDownload download = service.downloadFile("kiranrana/b-report.pdf", DownloadOptions.NONE)) {
+            assertEquals("draft", new String(download.getContent().readAllBytes(), StandardCharsets.UTF_8));
+        }
+        verify(s3Client, never()).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+        verify(s3Client, never()).getObject(any(GetObjectRequest.class));
+    }
+
+    @Test
+    void directUploadSupersedesTheSpooledVersionBeforeTheSpoolDrains(@TempDir Path spoolDirectory) throws Exception {
+        spoolConfig.setEnabled(true);
+        spoolConfig.setDirectory(spoolDirectory.toString());
+        spoolConfig.setSegmentSize(DataSize.ofMegabytes(1));
+        spoolConfig.setMaxSize(DataSize.ofKilobytes(1));
+        spoolConfig.setUploadParallelism(1);
+        spoolConfig.setBatchSize(8);
+        uploadSpool.open();
+
+        service.uploadFile("kiranrana", new MockMultipartFile("file", "notes.txt", "application/octet-stream", new byte[10]));
+        // Too big for the spool, so it goes straight to S3.
+        service.uploadFile("kiranrana", new MockMultipartFile("file", "notes.txt", "application/octet-stream", new byte[2000]));
+        service.uploadFile("kiranrana", new MockMultipartFile("file", "later.txt", "application/octet-stream", new byte[20]));
+        service.startUploadSpool();
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!uploadSpool.pendingKeys("kiranrana", "", null).isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(List.of(), uploadSpool.pendingKeys("kiranrana", "", null));
+
+        ArgumentCaptor<PutObjectRequest> requests = ArgumentCaptor.forClass(PutObjectRequest.class);
+        ArgumentCaptor<RequestBody> bodies = ArgumentCaptor.forClass(RequestBody.class);
+        verify(s3Client, times(2)).putObject(requests.capture(), bodies.capture());
+        assertEquals(List.of("kiranrana/notes.txt", "kiranrana/later.txt"),
+                requests.getAllValues().stream().map(PutObjectRequest::key).collect(Collectors.toList()));
+        assertEquals(2000, bodies.getAllValues().get(0).optionalContentLength().orElseThrow());
+    }
+
+    @Test
+    void openCircuitRejectsDownloadsAndDeletesInsteadOfReportingMissingFiles() {
+        resilienceConfig.setCircuitBreakerEnabled(true);
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenThrow(SdkClientException.create("Connection reset"));
+        for (int i = 0; i < 2; i++) {
+            assertThrows(SdkClientException.class, () -> service.downloadFile("kiranrana/report.pdf", DownloadOptions.NONE));
+        }
+
+        OperationRejectedException rejected = assertThrows(OperationRejectedException.class,
+                () -> service.downloadFile("kiranrana/report.pdf", DownloadOptions.NONE));
+        assertEquals("S3 is unavailable, try again later", rejected.getMessage());
+        assertThrows(OperationRejectedException.class, () -> service.deleteFile("kiranrana", "report.pdf"));
+        verify(s3Client, never()).deleteObject(any(DeleteObjectRequest.class));
+    }
+}
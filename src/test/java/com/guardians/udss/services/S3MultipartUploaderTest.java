@@ -0,0 +1,113 @@
+package com.guardians.udss.services;
+
+import com.guardians.udss.config.S3Config;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.io.ByteArrayInputStream;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class S3MultipartUploaderTest {
+
+    private static final int PART_SIZE = (int) S3MultipartUploader.MIN_PART_SIZE;
+
+    private S3Client s3Client;
+    private S3MultipartUploader uploader;
+
+    @BeforeEach
+    void setUp() {
+        s3Client = mock(S3Client.class);
+        S3Config s3Config = new S3Config();
+        s3Config.setBucketName("bucket");
+        s3Config.setMultipartPartSize(DataSize.ofBytes(PART_SIZE));
+        s3Config.setMultipartParallelism(2);
+        s3Config.setMultipartMaxPartRetries(2);
+        uploader = new S3MultipartUploader(s3Client, s3Config);
+
+        when(s3Client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+                .thenReturn(CreateMultipartUploadResponse.builder().uploadId("upload-1").build());
+    }
+
+    @AfterEach
+    void tearDown() {
+        uploader.close();
+    }
+
+    @Test
+    void uploadSplitsStreamIntoOrderedParts() throws Exception {
+        when(s3Client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+                .thenAnswer(invocation -> UploadPartResponse.builder()
+                        .eTag("etag-" + invocation.getArgument(0, UploadPartRequest.class).partNumber())
+                        .build());
+
+        uploader.upload("kiranrana/scan.pdf", "application/pdf", new ByteArrayInputStream(new byte[PART_SIZE * 2 + 10]));
+
+        ArgumentCaptor<CompleteMultipartUploadRequest> captor = ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+        verify(s3Client).completeMultipartUpload(captor.capture());
+        assertEquals(3, captor.getValue().multipartUpload().parts().size());
+        assertEquals("etag-3", captor.getValue().multipartUpload().parts().get(2).eTag());
+        verify(s3Client, never()).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+    }
+
+    @Test
+    void uploadRetriesFailedPart() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        when(s3Client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+                .thenAnswer(invocation -> {
+                    if (calls.getAndIncrement() == 0) {
+                        throw serverError();
+                    }
+                    return UploadPartResponse.builder().eTag("etag").build();
+                });
+
+        uploader.upload("kiranrana/scan.pdf", "application/pdf", new ByteArrayInputStream(new byte[PART_SIZE / 2]));
+
+        verify(s3Client, times(2)).uploadPart(any(UploadPartRequest.class), any(RequestBody.class));
+        verify(s3Client).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+    }
+
+    @Test
+    void uploadAbortsWhenPartKeepsFailing() {
+        when(s3Client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class))).thenThrow(serverError());
+
+        assertThrows(S3Exception.class, () ->
+                uploader.upload("kiranrana/scan.pdf", "application/pdf", new ByteArrayInputStream(new byte[PART_SIZE / 2])));
+
+        verify(s3Client, times(3)).uploadPart(any(UploadPartRequest.class), any(RequestBody.class));
+        verify(s3Client).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+        verify(s3Client, never()).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+    }
+
+    @Test
+    void encodedUploadThatFitsOnePartIsSentWithASinglePut() throws Exception {
+        long uploaded = uploader.upload("kiranrana/notes.txt", "text/plain", "gzip", Map.of("original-size", "4096"),
+                new ByteArrayInputStream(new byte[100]));
+
+        ArgumentCaptor<PutObjectRequest> captor = ArgumentCaptor.forClass(PutObjectRequest.class);
+        verify(s3Client).putObject(captor.capture(), any(RequestBody.class));
+        assertEquals(100, uploaded);
+        assertEquals("gzip", captor.getValue().contentEncoding());
+        assertEquals("4096", captor.getValue().metadata().get("original-size"));
+        verify(s3Client, never()).createMultipartUpload(any(CreateMultipartUploadRequest.class));
+    }
+
+    private static S3Exception serverError() {
+        return (S3Exception) S3Exception.builder()
+                .statusCode(500)
+                .awsErrorDetails(AwsErrorDetails.builder().errorMessage("InternalError").build())
+                .build();
+    }
+}
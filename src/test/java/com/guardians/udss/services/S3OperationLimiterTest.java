@@ -0,0 +1,43 @@
+package com.guardians.udss.services;
+
+import com.guardians.udss.config.S3Config;
+import com.guardians.udss.exception.OperationRejectedException;
+import com.guardians.udss.model.OperationType;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class S3OperationLimiterTest {
+
+    @Test
+    void acquireTimesOutWhenEveryPermitIsHeldAndSucceedsOnceOneIsReleased() {
+        S3Config s3Config = new S3Config();
+        s3Config.setSearchConcurrency(1);
+        s3Config.setDownloadConcurrency(2);
+        s3Config.setUploadConcurrency(1);
+        s3Config.setDeleteConcurrency(1);
+        s3Config.setConcurrencyAcquireTimeout(Duration.ofMillis(50));
+        S3OperationLimiter limiter = new S3OperationLimiter(s3Config);
+
+        S3OperationLimiter.Permit first = limiter.acquire(OperationType.DOWNLOAD);
+        S3OperationLimiter.Permit second = limiter.acquire(OperationType.DOWNLOAD);
+        long start = System.nanoTime();
+        OperationRejectedException rejected = assertThrows(OperationRejectedException.class,
+                () -> limiter.acquire(OperationType.DOWNLOAD));
+        assertTrue(System.nanoTime() - start >= Duration.ofMillis(50).toNanos());
+        assertEquals("Too many concurrent download operations", rejected.getMessage());
+        // Other operation types have their own permits.
+        limiter.acquire(OperationType.SEARCH).close();
+
+        first.close();
+        first.close();
+        assertEquals(1, limiter.available(OperationType.DOWNLOAD));
+        limiter.acquire(OperationType.DOWNLOAD).close();
+        second.close();
+        assertEquals(2, limiter.available(OperationType.DOWNLOAD));
+    }
+}
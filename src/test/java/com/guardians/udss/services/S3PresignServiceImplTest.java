@@ -0,0 +1,172 @@
+package com.guardians.udss.services;
+
+import com.guardians.udss.cache.ObjectCache;
+import com.guardians.udss.config.CacheConfig;
+import com.guardians.udss.config.DedupConfig;
+import com.guardians.udss.config.IndexConfig;
+import com.guardians.udss.config.S3Config;
+import com.guardians.udss.config.S3ResilienceConfig;
+import com.guardians.udss.config.SpoolConfig;
+import com.guardians.udss.index.FileMetadataIndex;
+import com.guardians.udss.model.PresignedMultipartUpload;
+import com.guardians.udss.model.PresignedUrl;
+import com.guardians.udss.model.UploadedPart;
+import com.guardians.udss.resilience.S3CallGuard;
+import com.guardians.udss.spool.UploadSpool;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class S3PresignServiceImplTest {
+
+    private S3Client s3Client;
+    private S3Presigner s3Presigner;
+    private DedupConfig dedupConfig;
+    private S3PresignServiceImpl service;
+
+    @BeforeEach
+    void setUp() {
+        s3Client = mock(S3Client.class);
+        s3Presigner = S3Presigner.builder()
+                .region(Region.US_EAST_1)
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("key", "secret")))
+                .build();
+        S3Config s3Config = new S3Config();
+        s3Config.setBucketName("bucket");
+        s3Config.setPresignExpiry(Duration.ofMinutes(15));
+        s3Config.setMultipartPartSize(DataSize.ofMegabytes(8));
+        s3Config.setSearchConcurrency(4);
+        s3Config.setDownloadConcurrency(4);
+        s3Config.setUploadConcurrency(4);
+        s3Config.setDeleteConcurrency(4);
+        s3Config.setConcurrencyAcquireTimeout(Duration.ofSeconds(1));
+        IndexConfig indexConfig = new IndexConfig();
+        indexConfig.setRefreshAfter(Duration.ofMinutes(1));
+        CacheConfig cacheConfig = new CacheConfig();
+        cacheConfig.setMaxMemorySize(DataSize.ofMegabytes(1));
+        cacheConfig.setMaxDiskSize(DataSize.ofMegabytes(1));
+        S3ResilienceConfig resilienceConfig = new S3ResilienceConfig();
+        resilienceConfig.setReadDeadline(Duration.ofSeconds(5));
+        resilienceConfig.setCircuitBreakerOpenDuration(Duration.ofSeconds(1));
+        dedupConfig = new DedupConfig();
+        dedupConfig.setPrefix(".dedup/");
+
+        service = new S3PresignServiceImpl(s3Config, s3Client, s3Presigner, new FileMetadataIndex(indexConfig),
+                new ObjectCache(cacheConfig, new SimpleMeterRegistry()), new S3OperationLimiter(s3Config),
+                new DedupStore(dedupConfig, s3Config, s3Client, new S3CallGuard(resilienceConfig, new SimpleMeterRegistry())),
+                new UploadSpool(new SpoolConfig(), new SimpleMeterRegistry()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        s3Presigner.close();
+    }
+
+    @Test
+    void presignUploadSignsUserKeyAndAcl() {
+        PresignedUrl url = service.presignUpload("kiranrana", "resume.pdf", "application/pdf");
+
+        assertEquals("PUT", url.getMethod());
+        assertEquals("kiranrana/resume.pdf", url.getKey());
+        assertTrue(url.getUrl().contains("/kiranrana/resume.pdf"));
+        assertTrue(url.getUrl().contains("X-Amz-Expires=900"));
+        assertEquals("public-read", url.getHeaders().get("x-amz-acl"));
+        assertEquals("application/pdf", url.getHeaders().get("content-type"));
+    }
+
+    @Test
+    void startMultipartUploadPresignsEveryPart() {
+        when(s3Client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+                .thenReturn(CreateMultipartUploadResponse.builder().uploadId("upload-1").build());
+
+        PresignedMultipartUpload upload = service.startMultipartUpload("kiranrana", "video.mp4", "video/mp4",
+                DataSize.ofMegabytes(20).toBytes());
+
+        assertEquals("upload-1", upload.getUploadId());
+        assertEquals(DataSize.ofMegabytes(8).toBytes(), upload.getPartSize());
+        assertEquals(3, upload.getParts().size());
+        assertTrue(upload.getParts().get(2).getUrl().contains("partNumber=3"));
+        assertTrue(upload.getParts().get(2).getUrl().contains("uploadId=upload-1"));
+    }
+
+    @Test
+    void completeUploadAssemblesPartsInOrder() {
+        when(s3Client.headObject(any(HeadObjectRequest.class))).thenReturn(HeadObjectResponse.builder()
+                .contentLength(20L)
+                .lastModified(Instant.now())
+                .contentType("video/mp4")
+                .build());
+
+        String key = service.completeUpload("kiranrana", "video.mp4", "upload-1",
+                Arrays.asList(new UploadedPart(2, "\"b\""), new UploadedPart(1, "\"a\"")));
+
+        ArgumentCaptor<CompleteMultipartUploadRequest> captor = ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+        verify(s3Client).completeMultipartUpload(captor.capture());
+        assertEquals("kiranrana/video.mp4", key);
+        assertEquals(1, captor.getValue().multipartUpload().parts().get(0).partNumber());
+        assertEquals("\"b\"", captor.getValue().multipartUpload().parts().get(1).eTag());
+    }
+
+    @Test
+    void presignedUploadOverAReferenceReleasesItsBlobOnCompletion() {
+        dedupConfig.setEnabled(true);
+        when(s3Client.headObject(any(HeadObjectRequest.class)))
+                .thenReturn(HeadObjectResponse.builder().metadata(Map.of("blob-sha256", "abc")).build());
+        when(s3Client.listObjectsV2(any(ListObjectsV2Request.class))).thenReturn(ListObjectsV2Response.builder().build());
+
+        PresignedUrl url = service.presignUpload("kiranrana", "resume.pdf", "application/pdf");
+        assertEquals("abc", url.getHeaders().get("x-amz-meta-replaced-blob-sha256"));
+
+        // The client's PUT carries the signed metadata.
+        when(s3Client.headObject(any(HeadObjectRequest.class))).thenReturn(HeadObjectResponse.builder()
+                .contentLength(20L)
+                .lastModified(Instant.now())
+                .metadata(Map.of("replaced-blob-sha256", "abc"))
+                .build());
+        service.completeUpload("kiranrana", "resume.pdf", null, List.of());
+
+        ArgumentCaptor<DeleteObjectRequest> captor = ArgumentCaptor.forClass(DeleteObjectRequest.class);
+        verify(s3Client, times(2)).deleteObject(captor.capture());
+        assertEquals(List.of(".dedup/refs/abc/kiranrana/resume.pdf", ".dedup/blobs/abc"),
+                captor.getAllValues().stream().map(DeleteObjectRequest::key).collect(Collectors.toList()));
+    }
+
+    @Test
+    void completedMultipartUploadOverAReferenceReleasesItsBlob() {
+        dedupConfig.setEnabled(true);
+        when(s3Client.headObject(any(HeadObjectRequest.class))).thenReturn(
+                HeadObjectResponse.builder().metadata(Map.of("blob-sha256", "abc")).build(),
+                HeadObjectResponse.builder().contentLength(20L).lastModified(Instant.now()).build());
+        when(s3Client.listObjectsV2(any(ListObjectsV2Request.class))).thenReturn(ListObjectsV2Response.builder()
+                .contents(S3Object.builder().key(".dedup/refs/abc/saanvi/video.mp4").build())
+                .build());
+
+        service.completeUpload("kiranrana", "video.mp4", "upload-1", List.of(new UploadedPart(1, "\"a\"")));
+
+        // Another reference remains, so only this key's marker goes.
+        ArgumentCaptor<DeleteObjectRequest> captor = ArgumentCaptor.forClass(DeleteObjectRequest.class);
+        verify(s3Client).deleteObject(captor.capture());
+        assertEquals(".dedup/refs/abc/kiranrana/video.mp4", captor.getValue().key());
+    }
+}
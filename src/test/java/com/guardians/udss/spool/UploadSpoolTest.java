@@ -0,0 +1,206 @@
+package com.guardians.udss.spool;
+
+import com.guardians.udss.config.SpoolConfig;
+import com.guardians.udss.model.DownloadOptions;
+import com.guardians.udss.model.FileDownload;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UploadSpoolTest {
+
+    @TempDir
+    Path directory;
+
+    private UploadSpool spool;
+
+    @AfterEach
+    void tearDown() {
+        if (spool != null) {
+            spool.close();
+        }
+    }
+
+    @Test
+    void spooledFileIsServedAndListedUntilUploaded() throws Exception {
+        spool = openSpool();
+        assertTrue(append("kiranrana/notes.txt", "first draft"));
+
+        assertEquals(List.of("kiranrana/notes.txt"), spool.pendingKeys("kiranrana", "notes", null));
+        try (FileDownload download = spool.download("kiranrana/notes.txt", DownloadOptions.NONE)) {
+            assertEquals("text/plain", download.getContentType());
+            assertEquals("first draft", new String(download.getContent().readAllBytes(), StandardCharsets.UTF_8));
+        }
+        try (FileDownload download = spool.download("kiranrana/notes.txt", DownloadOptions.builder().range("bytes=6-").build())) {
+            assertEquals("draft", new String(download.getContent().readAllBytes(), StandardCharsets.UTF_8));
+        }
+
+        Map<String, String> uploaded = new ConcurrentHashMap<>();
+        spool.start((key, contentType, content, size) -> uploaded.put(key, new String(content.readAllBytes(), StandardCharsets.UTF_8)));
+        awaitEmpty(spool);
+
+        assertEquals(Map.of("kiranrana/notes.txt", "first draft"), uploaded);
+        assertNull(spool.download("kiranrana/notes.txt", DownloadOptions.NONE));
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!segments().isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(List.of(), segments());
+    }
+
+    @Test
+    void replayAfterACrashRequeuesAcknowledgedUploadsOnly() throws Exception {
+        spool = openSpool();
+        append("kiranrana/a.txt", "version one");
+        append("kiranrana/a.txt", "version two");
+        append("kiranrana/b.txt", "to be deleted");
+        append("kiranrana/c.txt", "kept");
+        append("kiranrana/d.txt", "written to S3 directly next");
+        spool.recordDelete("kiranrana/b.txt");
+        spool.recordSupersede("kiranrana/d.txt");
+        // A crash halfway through appending the next record leaves a torn tail.
+        Path segment = segments().get(0);
+        long intact = Files.size(segment);
+        // One still being copied while later ones finished is left unfinished in between.
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0}), 4 + 1 + 8 + 8 + 2 + "kiranrana/a.txt".length() + 2 + "text/plain".length() + 8);
+        }
+        Files.write(segment, new byte[]{0x55, 0x53, 0x50, 0x31, 1, 0, 0}, StandardOpenOption.APPEND);
+
+        UploadSpool replayed = openSpool();
+        try {
+            assertEquals(intact, Files.size(segment));
+            assertEquals(List.of("kiranrana/a.txt", "kiranrana/c.txt"), replayed.pendingKeys("kiranrana", "", null));
+
+            Map<String, String> uploaded = new ConcurrentHashMap<>();
+            replayed.start((key, contentType, content, size) -> uploaded.put(key, new String(content.readAllBytes(), StandardCharsets.UTF_8)));
+            awaitEmpty(replayed);
+            assertEquals(Map.of("kiranrana/a.txt", "version two", "kiranrana/c.txt", "kept"), uploaded);
+        } finally {
+            replayed.close();
+        }
+    }
+
+    @Test
+    void failedUploadIsRetriedAndFullSpoolDeclines() throws Exception {
+        spool = openSpool();
+        assertTrue(append("kiranrana/report.pdf", "quarterly"));
+        assertFalse(spool.append("kiranrana/huge.bin", null, new ByteArrayInputStream(new byte[0]), DataSize.ofMegabytes(2).toBytes()));
+
+        AtomicInteger attempts = new AtomicInteger();
+        spool.start((key, contentType, content, size) -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new IOException("S3 is down");
+            }
+        });
+        awaitEmpty(spool);
+
+        assertEquals(3, attempts.get());
+    }
+
+    @Test
+    void stalledAppendDoesNotHoldUpOthersAndIsSkippedOnReplayOnceItFails() throws Exception {
+        spool = openSpool();
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        InputStream stalled = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                reading.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+                throw new IOException("client went away");
+            }
+        };
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> slow = executor.submit(() -> spool.append("kiranrana/slow.bin", null, stalled, 100));
+            assertTrue(reading.await(10, TimeUnit.SECONDS));
+            assertTrue(assertTimeoutPreemptively(Duration.ofSeconds(10), () -> append("kiranrana/fast.txt", "not held up")));
+            release.countDown();
+            ExecutionException failure = assertThrows(ExecutionException.class, () -> slow.get(10, TimeUnit.SECONDS));
+            assertInstanceOf(IOException.class, failure.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(List.of("kiranrana/fast.txt"), spool.pendingKeys("kiranrana", "", null));
+
+        UploadSpool replayed = openSpool();
+        try {
+            assertEquals(List.of("kiranrana/fast.txt"), replayed.pendingKeys("kiranrana", "", null));
+        } finally {
+            replayed.close();
+        }
+    }
+
+    private UploadSpool openSpool() throws IOException {
+        SpoolConfig config = new SpoolConfig();
+        config.setEnabled(true);
+        config.setDirectory(directory.toString());
+        config.setFsync(true);
+        config.setSegmentSize(DataSize.ofMegabytes(1));
+        config.setMaxSize(DataSize.ofMegabytes(1));
+        config.setUploadParallelism(2);
+        config.setBatchSize(8);
+        config.setRetryInitialDelay(Duration.ofMillis(10));
+        config.setRetryMaxDelay(Duration.ofMillis(50));
+        UploadSpool opened = new UploadSpool(config, new SimpleMeterRegistry());
+        opened.open();
+        return opened;
+    }
+
+    private boolean append(String key, String content) throws IOException {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        return spool.append(key, "text/plain", new ByteArrayInputStream(bytes), bytes.length);
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().toList();
+        }
+    }
+
+    private static void awaitEmpty(UploadSpool spool) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!spool.pendingKeys("kiranrana", "", null).isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(List.of(), spool.pendingKeys("kiranrana", "", null));
+    }
+}
@@ -0,0 +1,47 @@
+package com.guardians.udss.startup;
+
+import com.guardians.udss.controller.FileController;
+import com.guardians.udss.services.S3FileServiceImpl;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class FirstRequestMetricsTest {
+
+    @Test
+    void onlyTheFirstApiRequestIsRecorded() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        S3FileServiceImpl fileService = mock(S3FileServiceImpl.class);
+        when(fileService.searchFiles("kiranrana", "report")).thenReturn(List.of("kiranrana/report.pdf"));
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new FileController(fileService))
+                .addFilters(new FirstRequestMetrics(meterRegistry))
+                .build();
+
+        mockMvc.perform(get("/actuator/health")).andExpect(status().isNotFound());
+        assertNull(meterRegistry.find("udss.startup.first-request.duration").timeGauge());
+
+        mockMvc.perform(get("/api/files/search").param("userName", "kiranrana").param("searchTerm", "report"))
+                .andExpect(status().isOk());
+        TimeGauge duration = meterRegistry.get("udss.startup.first-request.duration").timeGauge();
+        double first = duration.value(TimeUnit.NANOSECONDS);
+        assertTrue(first > 0);
+        assertTrue(meterRegistry.get("udss.startup.first-request.time").timeGauge().value(TimeUnit.MILLISECONDS) > 0);
+
+        mockMvc.perform(get("/api/files/search").param("userName", "kiranrana").param("searchTerm", "report"))
+                .andExpect(status().isOk());
+        assertEquals(first, duration.value(TimeUnit.NANOSECONDS));
+    }
+}
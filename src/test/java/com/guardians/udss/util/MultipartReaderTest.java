@@ -0,0 +1,79 @@
+package com.guardians.udss.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MultipartReaderTest {
+
+    private static final String LARGE = "0123456789\r\n--xy".repeat(10_000);
+
+    private static final String BODY = "preamble\r\n"
+            + "--xyz\r\n"
+            + "Content-Disposition: form-data; name=\"note\"\r\n\r\nskipped\r\n"
+            + "--xyz  \r\n"
+            + "Content-Disposition: form-data; name=\"files\"; filename=\"résumé.txt\"\r\n"
+            + "Content-Type: text/plain\r\n\r\n"
+            + LARGE + "\r\n"
+            + "--xyz\r\n"
+            + "Content-Disposition: form-data; name=\"files\"; filename=\"empty.txt\"\r\n\r\n"
+            + "\r\n"
+            + "--xyz--\r\n"
+            + "epilogue";
+
+    @Test
+    void partsAreReadInOrderWhateverTheReadSizes() throws IOException {
+        for (int chunk : new int[]{1, 7, 65536}) {
+            MultipartReader reader = new MultipartReader(chunked(BODY, chunk), "xyz");
+
+            MultipartReader.Part note = reader.next();
+            assertEquals("note", note.getName());
+            assertNull(note.getFilename());
+
+            MultipartReader.Part large = reader.next();
+            assertEquals("résumé.txt", large.getFilename());
+            assertEquals("text/plain", large.getContentType());
+            assertEquals(LARGE, new String(large.getInputStream().readAllBytes(), StandardCharsets.UTF_8));
+
+            MultipartReader.Part empty = reader.next();
+            assertEquals("empty.txt", empty.getFilename());
+            assertEquals(0, empty.getInputStream().readAllBytes().length);
+            assertNull(reader.next());
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    void truncatedBodyFails() throws IOException {
+        MultipartReader reader = new MultipartReader(chunked(BODY.substring(0, BODY.indexOf("0123") + 100), 4096), "xyz");
+        reader.next();
+        InputStream content = reader.next().getInputStream();
+
+        assertThrows(EOFException.class, content::readAllBytes);
+    }
+
+    @Test
+    void boundaryIsTakenFromTheContentType() {
+        assertEquals("xyz", MultipartReader.boundary("multipart/form-data; boundary=xyz"));
+        assertEquals("a b", MultipartReader.boundary("multipart/form-data; charset=UTF-8; Boundary=\"a b\""));
+        assertNull(MultipartReader.boundary("multipart/form-data"));
+    }
+
+    private static InputStream chunked(String body, int chunk) {
+        return new FilterInputStream(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8))) {
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                return super.read(buffer, offset, Math.min(length, chunk));
+            }
+        };
+    }
+}
@@ -0,0 +1,46 @@
+package com.guardians.udss.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VirtualThreadsTest {
+
+    @Test
+    void threadPerTaskExecutorRunsAtMostParallelismTasksAtOnce() throws Exception {
+        // A cached pool stands in for the virtual-thread-per-task executor, which needs Java 21.
+        ExecutorService executor = VirtualThreads.bounded(Executors.newCachedThreadPool(), 2);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(executor.submit(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                release.await();
+                running.decrementAndGet();
+                return null;
+            }));
+        }
+
+        Thread.sleep(100);
+        assertEquals(2, running.get());
+        release.countDown();
+        for (Future<?> future : futures) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+        assertEquals(2, maxRunning.get());
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+}